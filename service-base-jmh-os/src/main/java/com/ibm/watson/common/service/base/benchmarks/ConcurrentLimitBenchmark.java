@@ -0,0 +1,129 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base.benchmarks;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.watson.common.service.base.ServiceConcurrentLimit;
+import com.ibm.watson.common.service.base.ServiceConcurrentLimit.Admission;
+import com.ibm.watson.common.service.base.ServiceConcurrentLimit.AdmissionWaiter;
+
+/**
+ * Contention of {@link ServiceConcurrentLimit} admission: each operation acquires a permit and releases it.
+ *
+ * The admit mode only has a reject threshold, so every request is admitted with the compare-and-set on the
+ * request count.  The block mode has a blocking threshold below the number of threads, so requests also queue
+ * and are handed permits by releasing threads.  The limit is a singleton, so every run needs its own fork.
+ * Only the waiter overload of acquireRequest and the plain releaseRequest are used, so the benchmark
+ * measures the lock-free admission path without the tenant, priority and cost features.
+ *
+ *  java -jar target/benchmarks.jar ConcurrentLimitBenchmark
+ *  java -jar target/benchmarks.jar ConcurrentLimitBenchmark.acquireRelease128 -p mode=block
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentLimitBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class LimitState {
+		@Param({"admit", "block"})
+		public String mode;
+
+		ServiceConcurrentLimit limit;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			Properties properties = new Properties();
+			properties.setProperty(ServiceConcurrentLimit.CONCURRENT_REJECT_THRESHOLD, "100000");
+			if("block".equals(mode)) {
+				properties.setProperty(ServiceConcurrentLimit.CONCURRENT_BLOCKING_THRESHOLD, "4");
+			}
+			properties.setProperty(ServiceConcurrentLimit.CONCURRENT_URL_PATTERN_LIST, ".*");
+			limit = ServiceConcurrentLimit.createInstance(properties);
+		}
+	}
+
+	/**
+	 * Waiter of one benchmark thread, parks the thread until it is handed a permit
+	 */
+	@State(Scope.Thread)
+	public static class ThreadWaiter implements AdmissionWaiter {
+		private volatile Thread thread;
+		private volatile boolean resumed;
+
+		@Override
+		public void suspend() {
+			// Nothing to do, the thread parks after acquireRequest returns
+		}
+
+		@Override
+		public void resume() {
+			resumed = true;
+			LockSupport.unpark(thread);
+		}
+
+		@Override
+		public void reject() {
+			throw new IllegalStateException("No queue timeout is configured");
+		}
+
+		void acquire(ServiceConcurrentLimit limit) {
+			thread = Thread.currentThread();
+			resumed = false;
+			Admission admission = limit.acquireRequest(this);
+			if(admission == Admission.QUEUED) {
+				while(!resumed) {
+					LockSupport.park(this);
+				}
+			}
+			else if(admission != Admission.ADMITTED) {
+				throw new IllegalStateException("Request "+admission);
+			}
+		}
+	}
+
+	private static void acquireRelease(LimitState state, ThreadWaiter waiter) {
+		waiter.acquire(state.limit);
+		state.limit.releaseRequest();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public void acquireRelease8(LimitState state, ThreadWaiter waiter) {
+		acquireRelease(state, waiter);
+	}
+
+	@Benchmark
+	@Threads(32)
+	public void acquireRelease32(LimitState state, ThreadWaiter waiter) {
+		acquireRelease(state, waiter);
+	}
+
+	@Benchmark
+	@Threads(128)
+	public void acquireRelease128(LimitState state, ThreadWaiter waiter) {
+		acquireRelease(state, waiter);
+	}
+}
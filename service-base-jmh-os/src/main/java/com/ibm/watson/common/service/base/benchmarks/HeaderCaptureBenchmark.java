@@ -0,0 +1,151 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.watson.common.service.base.RequestHeaderCapture;
+import com.ibm.watson.common.service.base.security.MainServletFilter;
+
+/**
+ * Cost of copying the request headers that MainServletFilter saves in thread local storage, for requests
+ * with 30 to 60 headers.  The scan method is the filter code before the capture plan: walk every incoming
+ * header name, compare it with each header to copy and put the matches in a HashMap.  The plan method is
+ * {@link RequestHeaderCapture}: one container lookup per planned header into an array backed map.
+ *
+ * The request models a container header table, names and values in arrival order with a case-insensitive
+ * linear lookup.  The header names use the canonical case, which the scan needs to find them.
+ * Run with the gc profiler to see the allocation per request:
+ *
+ *  java -jar target/benchmarks.jar HeaderCaptureBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderCaptureBenchmark {
+
+	private static final String[] HEADERS_TO_COPY = {MainServletFilter.HEADER_WATSON_USER_INFO, MainServletFilter.HEADER_DP_CLIENET_ID,
+			MainServletFilter.HEADER_DP_WATSON_TRAN_ID, MainServletFilter.HEADER_AUTHORIZATION_TOKEN,
+			MainServletFilter.HEADER_WATSON_INSTANCE_PARAMETERS};
+
+	private static final String[] COMMON_HEADERS = {"Host", "User-Agent", "Accept", "Accept-Encoding", "Accept-Language",
+			"Connection", "Content-Type", "Content-Length", "Cache-Control", "Pragma", "Origin", "Referer", "Cookie",
+			"X-Forwarded-For", "X-Forwarded-Proto", "X-Forwarded-Host", "X-Forwarded-Port", "X-Real-IP", "X-Request-ID",
+			"X-Correlation-ID", "X-B3-TraceId", "X-B3-SpanId", "X-B3-ParentSpanId", "X-B3-Sampled", "Via", "Forwarded",
+			"If-None-Match", "If-Modified-Since", "Upgrade-Insecure-Requests", "DNT"};
+
+	@State(Scope.Benchmark)
+	public static class RequestState {
+		@Param({"30", "60"})
+		public int headerCount;
+
+		HttpServletRequest request;
+		RequestHeaderCapture plan;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			// Spread the headers to copy over the request, the rest are common and gateway headers
+			String[] names = new String[headerCount];
+			int step = headerCount / HEADERS_TO_COPY.length;
+			for(int i = 0; i < HEADERS_TO_COPY.length; i++) {
+				names[i*step + step/2] = HEADERS_TO_COPY[i];
+			}
+			int common = 0;
+			for(int i = 0; i < headerCount; i++) {
+				if(names[i] == null) {
+					names[i] = common < COMMON_HEADERS.length ? COMMON_HEADERS[common] : "X-Gateway-Header-"+common;
+					common++;
+				}
+			}
+			String[] values = new String[headerCount];
+			for(int i = 0; i < headerCount; i++) {
+				values[i] = "value-"+i+"-0123456789abcdef";
+			}
+			request = new HeaderTableRequest(names, values);
+			plan = new RequestHeaderCapture(HEADERS_TO_COPY);
+		}
+	}
+
+	/**
+	 * Request with a container style header table, the other request methods are not supported
+	 */
+	private static final class HeaderTableRequest extends HttpServletRequestWrapper {
+		private final String[] names;
+		private final String[] values;
+
+		HeaderTableRequest(String[] names, String[] values) {
+			super((HttpServletRequest)Proxy.newProxyInstance(HeaderCaptureBenchmark.class.getClassLoader(),
+					new Class<?>[] {HttpServletRequest.class}, (proxy, method, args) -> {
+						throw new UnsupportedOperationException(method.getName());
+					}));
+			this.names = names;
+			this.values = values;
+		}
+
+		@Override
+		public String getHeader(String name) {
+			for(int i = 0; i < names.length; i++) {
+				if(names[i].equalsIgnoreCase(name)) {
+					return values[i];
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public Enumeration<String> getHeaderNames() {
+			return Collections.enumeration(Arrays.asList(names));
+		}
+	}
+
+	@Benchmark
+	public Map<String,String> scan(RequestState state) {
+		HttpServletRequest httpRequest = state.request;
+		Map<String,String> headerMap = new HashMap<>();
+		Enumeration<String> headerNames = httpRequest.getHeaderNames();
+		int matchCount = 0;
+		while(headerNames.hasMoreElements() && matchCount < HEADERS_TO_COPY.length) {
+			String headerName = headerNames.nextElement();
+			for(String matchItem : HEADERS_TO_COPY) {
+				if(headerName.equals(matchItem)) {
+					matchCount++;
+					headerMap.put(matchItem, httpRequest.getHeader(matchItem));
+					break;
+				}
+			}
+		}
+		return headerMap;
+	}
+
+	@Benchmark
+	public Map<String,String> plan(RequestState state) {
+		return state.plan.capture(state.request);
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base.benchmarks;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.watson.common.service.base.RequestIdGenerator;
+import com.ibm.watson.common.service.base.RequestIdGenerators;
+
+/**
+ * Throughput of the built in request ID generators at 64 threads, one ID per request.  The uuid generator
+ * is UUID.randomUUID() and shares one SecureRandom, so it is expected to stop scaling under contention.
+ *
+ *  java -jar target/benchmarks.jar RequestIdGeneratorBenchmark
+ *  java -jar target/benchmarks.jar RequestIdGeneratorBenchmark -t 1
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(64)
+public class RequestIdGeneratorBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class GeneratorState {
+		@Param({RequestIdGenerators.UUID_GENERATOR, RequestIdGenerators.RANDOM_GENERATOR, RequestIdGenerators.TIME_ORDERED_GENERATOR})
+		public String generator;
+
+		RequestIdGenerator requestIdGenerator;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			Properties properties = new Properties();
+			properties.setProperty(RequestIdGenerators.REQUEST_ID_GENERATOR_PROPERTY, generator);
+			requestIdGenerator = RequestIdGenerators.fromProperties(properties);
+		}
+	}
+
+	@Benchmark
+	public String generate(GeneratorState state) {
+		return state.requestIdGenerator.generate();
+	}
+}
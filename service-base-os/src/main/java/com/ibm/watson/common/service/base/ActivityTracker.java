@@ -227,18 +227,18 @@ public class ActivityTracker {
 			//need to look at header info to get user account id, service's crn, etc
 			//bluemix-iamid for account id
 			//bluemix-crn for the servcie instance CRN
-			Map<String,String> headerInfo = getWatsonUserInfo();
+			WatsonUserInfo headerInfo = getWatsonUserInfo();
 
-			String instanceCRN = headerInfo.get("bluemix-crn");
+			String instanceCRN = headerInfo.getCrn();
 			String serviceProviderName = getServiceProviderName(instanceCRN);
 			String serviceCatalogName = getCatalogName(instanceCRN);
 
 			String credentialType = "apikey"; //token, user, or apikey
-			UserType userType = getUserType(headerInfo.get("bluemix-iamid")); //determined by prefix of bluemix-iamid or bluemix-subject
+			UserType userType = getUserType(headerInfo.getIamId()); //determined by prefix of bluemix-iamid or bluemix-subject
 			//initialtorType format is: service/security/clientid, service/security/account/user or service/security/account/serviceid
 			String initiatorType = "service/security/account/" + userType.name();
-			String initatorID = headerInfo.get("bluemix-iamid");
-			String initiatorName = headerInfo.get("bluemix-subject");;
+			String initatorID = headerInfo.getIamId();
+			String initiatorName = headerInfo.getSubject();
 			String initiatorSourceIPAddress = getSourceIPAddress(request);
 			JSONObject event = new JSONObject();
 
@@ -348,7 +348,7 @@ public class ActivityTracker {
 				String resourceCRN = addResourceValuesTo(instanceCRN, objectType, objectName);
 				target.put("id", resourceCRN);
 			}
-			String resourceGroupId = headerInfo.get("bluemix-resource-group");
+			String resourceGroupId = headerInfo.getResourceGroup();
 			if (resourceGroupId != null) {
 				target.put("resourceGroupId", resourceGroupId);
 			}
@@ -432,34 +432,19 @@ public class ActivityTracker {
 		}
 	}
 
-	private Map<String,String> getWatsonUserInfo() {
-		Map<String,String> requestHeaders = ServiceThreadLocal.getRequestHeaders();
-		Map<String,String> userInfoMap = new HashMap<String,String>();
-		String watsonUserInfo = null;
-		if(requestHeaders != null) {
-			watsonUserInfo = requestHeaders.get(MainServletFilter.HEADER_WATSON_USER_INFO);
-		} else {
+	private WatsonUserInfo getWatsonUserInfo() {
+		// Parsed once per request by MainServletFilter
+		WatsonUserInfo watsonUserInfo = ServiceThreadLocal.getWatsonUserInfo();
+		if (watsonUserInfo == null) {
 			logger.warn("ActivityTracker - No requestHeaders so unable to get info needed for activity tracker.");
+			watsonUserInfo = WatsonUserInfo.EMPTY;
 		}
-		if (watsonUserInfo != null) {
-			String[] wuiValues = watsonUserInfo.split(";");
-			for (int i = 0 ; i < wuiValues.length ; ++i) {
-				String[] nameValue = wuiValues[i].split("=");
-				if (nameValue.length != 2) {
-					logger.error("Unrecognized user info header value: "+nameValue);
-					continue;
-				}
-				userInfoMap.put(nameValue[0], nameValue[1]);
-				//logger.warn("ActivityTracker - name/value = " + nameValue[0] + "/" + nameValue[1]);
-			}
-
-		} else {
+		else if (watsonUserInfo.isEmpty()) {
 			// no header provided, so won't be able to properly log
 			logger.warn("ActivityTracker - No Watson USER INFO header passed in with request so no logging can be done.");
-			//return;
 		}
 
-		return userInfoMap;
+		return watsonUserInfo;
 	}
 
 
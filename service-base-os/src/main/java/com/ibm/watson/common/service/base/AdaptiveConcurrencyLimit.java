@@ -0,0 +1,187 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.watson.service.base.model.ConcurrentLimitSample;
+
+/**
+ * Latency based limit of concurrently running requests, used by {@link ServiceConcurrentLimit} in place of
+ * the static blocking threshold.
+ *
+ * Request latencies (the time a request holds a permit, not counting the time it was queued) are collected
+ * over a sample window.  At the end of each window the average latency is compared with the no-load baseline,
+ * the lowest window average seen.  The baseline slowly drifts toward the average of lightly loaded windows so
+ * it follows a lasting change in request cost, but not toward the latency of an overloaded service.
+ *
+ * While the average stays within the tolerance of the baseline the limit grows by its square root, and as the
+ * average rises above it the limit shrinks in proportion (gradient), at most by half per window.  The limit is
+ * not changed while fewer than half of the permits are in use, and it is kept between the configured minimum
+ * and maximum.
+ */
+public final class AdaptiveConcurrencyLimit {
+	private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimit.class.getName());
+
+	public static final int HISTORY_SIZE = 60;
+
+	private static final double TOLERANCE = 1.5;		// Latency / baseline ratio accepted before the limit shrinks
+	private static final double MIN_GRADIENT = 0.5;		// Largest decrease per window
+	private static final double SMOOTHING = 0.2;		// Weight of the new estimate
+	private static final double BASELINE_DRIFT = 0.01;	// Weight of the window average in the baseline when above it
+	private static final long MIN_WINDOW_SAMPLES = 10;	// Windows with fewer samples are extended
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final long windowNanos;
+
+	private volatile double estimatedLimit;
+	private volatile int limit;
+	private volatile double noLoadLatencyNanos;	// Zero until the first window
+
+	private final LongAdder windowLatencyNanos = new LongAdder();
+	private final LongAdder windowSamples = new LongAdder();
+	private final AtomicInteger windowPeakInFlight = new AtomicInteger();
+	private final AtomicLong windowStartNanos = new AtomicLong(System.nanoTime());
+
+	private final ArrayDeque<ConcurrentLimitSample> history = new ArrayDeque<>(HISTORY_SIZE);
+
+	/**
+	 * @param minLimit Lowest limit, at least 1
+	 * @param maxLimit Highest limit
+	 * @param initialLimit Starting limit
+	 * @param windowMs Sample window in milliseconds
+	 */
+	public AdaptiveConcurrencyLimit(int minLimit, int maxLimit, int initialLimit, long windowMs) {
+		if(minLimit < 1 || maxLimit < minLimit || windowMs <= 0) {
+			throw new IllegalArgumentException("Invalid adaptive limit bounds, min="+minLimit+", max="+maxLimit+", window="+windowMs);
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+		limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+		estimatedLimit = limit;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public int getMinLimit() {
+		return minLimit;
+	}
+
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	/**
+	 * Get the no-load latency baseline
+	 * @return Baseline in milliseconds, zero until the first window completes
+	 */
+	public double getNoLoadLatencyMs() {
+		return noLoadLatencyNanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Get the recent limit updates
+	 * @return Copy of the updates, oldest first
+	 */
+	public List<ConcurrentLimitSample> getHistory() {
+		synchronized(history) {
+			List<ConcurrentLimitSample> copy = new ArrayList<>(history.size());
+			for(ConcurrentLimitSample sample : history) {
+				copy.add(new ConcurrentLimitSample(sample.getTimestamp(), sample.getLimit(), sample.getLatencyMs(),
+						sample.getNoLoadLatencyMs(), sample.getSampleCount()));
+			}
+			return copy;
+		}
+	}
+
+	/**
+	 * Record the latency of a completed request.  The thread that ends a sample window updates the limit.
+	 * @param latencyNanos Time the request held its permit
+	 * @param inFlight Requests holding a permit when the request completed, including itself
+	 */
+	public void sample(long latencyNanos, int inFlight) {
+		windowLatencyNanos.add(latencyNanos);
+		windowSamples.increment();
+		int peak;
+		do {
+			peak = windowPeakInFlight.get();
+		} while(inFlight > peak && !windowPeakInFlight.compareAndSet(peak, inFlight));
+
+		long start = windowStartNanos.get();
+		long now = System.nanoTime();
+		if(now - start >= windowNanos && windowStartNanos.compareAndSet(start, now)) {
+			update();
+		}
+	}
+
+	private void update() {
+		long samples = windowSamples.sumThenReset();
+		long latencySum = windowLatencyNanos.sumThenReset();
+		int peakInFlight = windowPeakInFlight.getAndSet(0);
+		if(samples < MIN_WINDOW_SAMPLES) {
+			// Too few samples to judge, carry them into the next window
+			windowSamples.add(samples);
+			windowLatencyNanos.add(latencySum);
+			windowPeakInFlight.accumulateAndGet(peakInFlight, Math::max);
+			return;
+		}
+
+		double latency = (double) latencySum / samples;
+		double estimate = estimatedLimit;
+		boolean lightLoad = peakInFlight < estimate / 2;
+		double baseline = noLoadLatencyNanos;
+		if(baseline == 0 || latency < baseline) {
+			baseline = latency;
+		}
+		else if(lightLoad) {
+			// Only a lightly loaded window shows the cost of a request, not queuing
+			baseline += (latency - baseline) * BASELINE_DRIFT;
+		}
+		noLoadLatencyNanos = baseline;
+
+		double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, TOLERANCE * baseline / latency));
+		double newEstimate;
+		if(lightLoad) {
+			// Not enough load to show whether the limit is too high or too low
+			newEstimate = estimate;
+		}
+		else {
+			newEstimate = estimate * gradient + Math.sqrt(estimate);
+			newEstimate = estimate * (1 - SMOOTHING) + newEstimate * SMOOTHING;
+		}
+		newEstimate = Math.max(minLimit, Math.min(maxLimit, newEstimate));
+		estimatedLimit = newEstimate;
+
+		int oldLimit = limit;
+		limit = (int) Math.round(newEstimate);
+		if(limit != oldLimit && logger.isDebugEnabled()) {
+			logger.debug("Adaptive concurrent limit changed from "+oldLimit+" to "+limit+", latency="+
+					latency/1000000+"ms, baseline="+baseline/1000000+"ms");
+		}
+
+		ConcurrentLimitSample sample = new ConcurrentLimitSample(System.currentTimeMillis(), limit,
+				latency/1000000, baseline/1000000, samples);
+		synchronized(history) {
+			if(history.size() == HISTORY_SIZE) {
+				history.removeFirst();
+			}
+			history.addLast(sample);
+		}
+	}
+}
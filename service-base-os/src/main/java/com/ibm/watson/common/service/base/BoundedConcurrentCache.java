@@ -0,0 +1,199 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Size bounded concurrent cache with approximate least recently used eviction.
+ *
+ * Entries are kept in a ConcurrentHashMap so reads never lock.  Eviction uses the CLOCK
+ * (second chance) algorithm: a read only sets a referenced flag on the entry, and when the cache
+ * is over capacity the oldest entries are visited in insertion order, evicting the first one that has not
+ * been referenced since it was last visited.  The size can briefly exceed the capacity while
+ * another thread is evicting.
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public class BoundedConcurrentCache<K,V> {
+
+	private final int capacity;
+	private final ConcurrentHashMap<K,Node<K,V>> map;
+	private final ConcurrentLinkedQueue<Node<K,V>> clock = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean evicting = new AtomicBoolean();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	private static final class Node<K,V> {
+		private final K key;
+		private final V value;
+		private volatile boolean referenced;
+		private volatile boolean removed;
+
+		private Node(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Create a cache
+	 * @param capacity Maximum number of entries, must be greater than zero
+	 */
+	public BoundedConcurrentCache(int capacity) {
+		if(capacity <= 0) {
+			throw new IllegalArgumentException("Cache capacity must be greater than zero, value="+capacity);
+		}
+		this.capacity = capacity;
+		map = new ConcurrentHashMap<>(Math.min(capacity, 1024)*4/3+1);
+	}
+
+	/**
+	 * Get a cached value
+	 * @param key Key
+	 * @return Cached value or null if not present
+	 */
+	public V get(K key) {
+		Node<K,V> node = map.get(key);
+		if(node == null) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		if(!node.referenced) {
+			node.referenced = true;	// Avoid the volatile write when already set
+		}
+		return node.value;
+	}
+
+	/**
+	 * Get a cached value, loading and caching it if not present.  Concurrent misses on the same
+	 * key may each call the loader, the first value cached is kept.  Null values are not cached.
+	 *
+	 * @param key Key
+	 * @param loader Function to create the value on a miss
+	 * @return Cached or loaded value
+	 */
+	public V get(K key, Function<? super K,? extends V> loader) {
+		V value = get(key);
+		if(value == null) {
+			V loaded = loader.apply(key);
+			if(loaded != null) {
+				value = putIfAbsent(key, loaded);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Add a value if the key is not already cached.  Cached values are never replaced so the
+	 * clock queue only holds live entries.
+	 *
+	 * @param key Key
+	 * @param value Value, must not be null
+	 * @return The value now cached for the key
+	 */
+	public V putIfAbsent(K key, V value) {
+		Node<K,V> node = new Node<>(key, value);
+		Node<K,V> existing = map.putIfAbsent(key, node);
+		if(existing != null) {
+			return existing.value;
+		}
+		clock.offer(node);
+		if(map.size() > capacity) {
+			evict();
+		}
+		return value;
+	}
+
+	/**
+	 * Remove all entries that match a condition.  Removed entries are not counted as evictions.
+	 * This visits every entry so it is meant for periodic clean up, not the request path.
+	 *
+	 * @param filter Condition on the key and value
+	 * @return Number of entries removed
+	 */
+	public int removeIf(BiPredicate<? super K,? super V> filter) {
+		int count = 0;
+		for(Node<K,V> node : map.values()) {
+			if(filter.test(node.key, node.value) && map.remove(node.key, node)) {
+				node.removed = true;
+				count++;
+			}
+		}
+		if(count > 0) {
+			clock.removeIf(node -> node.removed);
+		}
+		return count;
+	}
+
+	/**
+	 * Remove all entries
+	 */
+	public void clear() {
+		removeIf((key, value) -> true);
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Run the clock hand until the cache is within capacity.  Only one thread evicts at a time.
+	 */
+	private void evict() {
+		if(!evicting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			while(map.size() > capacity) {
+				Node<K,V> node = clock.poll();
+				if(node == null) {
+					break;
+				}
+				if(node.removed) {
+					// Removed concurrently by removeIf()
+					continue;
+				}
+				if(node.referenced) {
+					// Give the entry a second chance
+					node.referenced = false;
+					clock.offer(node);
+				}
+				else if(map.remove(node.key, node)) {
+					evictions.increment();
+				}
+			}
+		}
+		finally {
+			evicting.set(false);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable, array-backed map of the request headers captured by a {@link RequestHeaderCapture} plan.
+ * Values are stored in the plan's fixed slots so lookups never rehash, and key lookups ignore case.
+ * Keys are reported using the canonical header names of the plan.
+ */
+public final class CapturedRequestHeaders extends AbstractMap<String,String> {
+
+	private final RequestHeaderCapture plan;
+	private final String[] values;
+	private final int count;
+	private Set<Map.Entry<String,String>> entrySet;
+
+	CapturedRequestHeaders(RequestHeaderCapture plan, String[] values, int count) {
+		this.plan = plan;
+		this.values = values;
+		this.count = count;
+	}
+
+	/**
+	 * Get the capture plan that produced these headers
+	 * @return Capture plan
+	 */
+	public RequestHeaderCapture getPlan() {
+		return plan;
+	}
+
+	/**
+	 * Get the value of a slot
+	 * @param slot Slot index of the capture plan
+	 * @return Header value or null if not present on the request
+	 */
+	public String getValue(int slot) {
+		return values[slot];
+	}
+
+	@Override
+	public String get(Object key) {
+		if(!(key instanceof String)) {
+			return null;
+		}
+		int slot = plan.slotOf((String) key);
+		return slot < 0 ? null : values[slot];
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public int size() {
+		return count;
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super String, ? super String> action) {
+		for(int slot = 0; slot < values.length; slot++) {
+			if(values[slot] != null) {
+				action.accept(plan.getName(slot), values[slot]);
+			}
+		}
+	}
+
+	@Override
+	public Set<Map.Entry<String,String>> entrySet() {
+		if(entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<String,String>>() {
+				@Override
+				public Iterator<Map.Entry<String,String>> iterator() {
+					return new EntryIterator();
+				}
+
+				@Override
+				public int size() {
+					return count;
+				}
+			};
+		}
+		return entrySet;
+	}
+
+	private class EntryIterator implements Iterator<Map.Entry<String,String>> {
+		private int next = advance(0);
+
+		private int advance(int slot) {
+			while(slot < values.length && values[slot] == null) {
+				slot++;
+			}
+			return slot;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < values.length;
+		}
+
+		@Override
+		public Map.Entry<String,String> next() {
+			if(next >= values.length) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<String,String> entry = new AbstractMap.SimpleImmutableEntry<>(plan.getName(next), values[next]);
+			next = advance(next+1);
+			return entry;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregates concurrent limit events so an overload does not add thousands of log lines per second.
+ * The first event of a type is written right away.  Further events of the type are counted with the peak
+ * number of concurrent requests and written as one summary per interval.  An interval without events of
+ * the type ends the aggregation, so the next event is written right away again.
+ *
+ * Summaries are written by one daemon thread shared by all limits.  The thread stops when the last log is closed.
+ */
+final class ConcurrentEventLog {
+	private static final Logger logger = LoggerFactory.getLogger(ConcurrentEventLog.class.getName());
+
+	/**
+	 * Writes an event or a summary of events
+	 */
+	interface Writer {
+		/**
+		 * @param type Event type
+		 * @param concurrentRequests Concurrent requests of the event, or the peak of the summarized events
+		 * @param count Number of events
+		 */
+		void write(String type, int concurrentRequests, long count);
+	}
+
+	private static ScheduledExecutorService scheduler;	// Guarded by the class
+	private static int openLogs;	// Guarded by the class
+
+	/**
+	 * Counts of one event type
+	 */
+	private static final class EventCounter {
+		private final AtomicBoolean active = new AtomicBoolean();	// An event was written or counted in this interval
+		private final LongAdder count = new LongAdder();
+		private final AtomicInteger peak = new AtomicInteger();
+
+		private void updatePeak(int concurrentRequests) {
+			int max;
+			do {
+				max = peak.get();
+				if(concurrentRequests <= max) {
+					return;
+				}
+			} while(!peak.compareAndSet(max, concurrentRequests));
+		}
+	}
+
+	private final Writer writer;
+	private final Map<String,EventCounter> counters = new ConcurrentHashMap<>();
+	private ScheduledFuture<?> summaryTask;	// Guarded by the class, null once closed
+
+	/**
+	 * @param intervalMs Summary interval, must be positive
+	 * @param writer Writer of events and summaries
+	 */
+	ConcurrentEventLog(long intervalMs, Writer writer) {
+		this.writer = writer;
+		synchronized(ConcurrentEventLog.class) {
+			summaryTask = getScheduler().scheduleAtFixedRate(this::flush, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+			openLogs++;
+		}
+	}
+
+	/**
+	 * Stop the summaries of this log and write the pending one.  The shared thread is stopped with the last log.
+	 */
+	void close() {
+		synchronized(ConcurrentEventLog.class) {
+			if(summaryTask == null) {
+				return;
+			}
+			summaryTask.cancel(false);
+			summaryTask = null;
+			if(--openLogs == 0) {
+				scheduler.shutdownNow();
+				scheduler = null;
+			}
+		}
+		flush();
+	}
+
+	/**
+	 * Record an event, written right away if it is the first of its type in the interval
+	 * @param type Event type
+	 * @param concurrentRequests Concurrent requests of the event
+	 */
+	void record(String type, int concurrentRequests) {
+		EventCounter counter = counters.get(type);
+		if(counter == null) {
+			counter = counters.computeIfAbsent(type, key -> new EventCounter());
+		}
+		if(!counter.active.get() && counter.active.compareAndSet(false, true)) {
+			writer.write(type, concurrentRequests, 1);
+			return;
+		}
+		counter.count.increment();
+		counter.updatePeak(concurrentRequests);
+	}
+
+	/**
+	 * Write the summaries of the interval
+	 */
+	void flush() {
+		for(Map.Entry<String,EventCounter> entry : counters.entrySet()) {
+			EventCounter counter = entry.getValue();
+			long count = counter.count.sumThenReset();
+			int peak = counter.peak.getAndSet(0);
+			if(count > 0) {
+				try {
+					writer.write(entry.getKey(), peak, count);
+				}
+				catch(RuntimeException e) {
+					// Keep the summary task scheduled
+					logger.warn("Unable to write concurrent event summary: "+e);
+				}
+			}
+			else {
+				// Events counted after the sum are written with the next summary
+				counter.active.set(false);
+			}
+		}
+	}
+
+	private static synchronized ScheduledExecutorService getScheduler() {
+		if(scheduler == null) {
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+				Thread thread = new Thread(runnable, "concurrent-event-log");
+				thread.setDaemon(true);
+				return thread;
+			});
+			executor.setRemoveOnCancelPolicy(true);
+			scheduler = executor;
+		}
+		return scheduler;
+	}
+}
@@ -0,0 +1,409 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Default request metrics, used when the service does not set its own {@link ServiceMetrics}.
+ *
+ * Requests are counted per method, route and status class (2xx, 4xx, ...) with a latency histogram, request and
+ * response byte counters and a gauge of the requests in flight.  The route is the value of the
+ * {@link #ROUTE_ATTRIBUTE} request attribute, the @Path template set by {@link RouteTemplateFilter}.  Requests that
+ * did not reach a resource method, for example rejected by a limit or not found, are counted under the route
+ * "unmatched" and never under their path, so path IDs and scans do not create routes.  The number of routes is
+ * bounded, further routes are counted under the route "other", so memory does not grow with the number of distinct paths.
+ *
+ * Recording only uses LongAdder and atomic adds on the request thread.  The metrics are written in the Prometheus
+ * text format by reading the counters, so scraping never blocks a request.  Counts of requests recorded while the
+ * metrics are written may be partly included.
+ *
+ * Response bytes are counted from the Content-Length header of the response, chunked responses are not counted.
+ *
+ *  com_ibm_watson_health_services_enable_metrics - Set to false to disable the default metrics.  The default is true.
+ *  com_ibm_watson_health_common_metrics_max_routes - Maximum number of method and route pairs.  The default is 200.
+ *  com_ibm_watson_health_common_metrics_latency_buckets_ms - Ascending latency histogram bucket bounds in milliseconds,
+ *  								separated with \\,  The default is 1, 2, 5, 10, 20, 50, ... 60000.
+ */
+public class DefaultServiceMetrics implements ServiceMetrics {
+	private static final Logger logger = LoggerFactory.getLogger(DefaultServiceMetrics.class.getName());
+
+	public static final String METRICS_MAX_ROUTES = "com_ibm_watson_health_common_metrics_max_routes";
+	public static final String METRICS_LATENCY_BUCKETS = "com_ibm_watson_health_common_metrics_latency_buckets_ms";
+	public static final int METRICS_MAX_ROUTES_DEFAULT = 200;
+
+	/**
+	 * Request attribute holding the route of the request, for example the @Path template of the resource method
+	 */
+	public static final String ROUTE_ATTRIBUTE = "com.ibm.watson.common.service.base.route";
+
+	/**
+	 * Content type of the Prometheus text format
+	 */
+	public static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final String ENTRY_ATTRIBUTE = DefaultServiceMetrics.class.getName()+".entry";
+	private static final String OTHER = "other";
+	private static final String UNMATCHED = "unmatched";
+	private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+	private static final Set<String> METHODS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+			"GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH")));
+	private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private static volatile DefaultServiceMetrics instance;
+
+	private final int maxRoutes;
+	private final double[] boundsMs;
+	private final ConcurrentHashMap<String,RouteMetrics> routes = new ConcurrentHashMap<>();
+	private final AtomicInteger routeCount = new AtomicInteger();
+	private final LongAdder inFlight = new LongAdder();
+
+	/**
+	 * Counters of one method and route
+	 */
+	private final class RouteMetrics {
+		private final String method;
+		private final String route;
+		private final LongAdder[] requests = new LongAdder[STATUS_CLASSES.length];
+		private final AtomicReferenceArray<LatencyHistogram> latency = new AtomicReferenceArray<>(STATUS_CLASSES.length);
+		private final LongAdder requestBytes = new LongAdder();
+		private final LongAdder responseBytes = new LongAdder();
+
+		private RouteMetrics(String method, String route) {
+			this.method = method;
+			this.route = route;
+			for(int i = 0; i < requests.length; i++) {
+				requests[i] = new LongAdder();
+			}
+		}
+
+		private void record(int statusClass, long nanos, long requestLength, long responseLength) {
+			requests[statusClass].increment();
+			LatencyHistogram histogram = latency.get(statusClass);
+			if(histogram == null) {
+				latency.compareAndSet(statusClass, null, new LatencyHistogram(boundsMs));
+				histogram = latency.get(statusClass);
+			}
+			histogram.record(nanos);
+			if(requestLength > 0) {
+				requestBytes.add(requestLength);
+			}
+			if(responseLength > 0) {
+				responseBytes.add(responseLength);
+			}
+		}
+	}
+
+	/**
+	 * Create the default metrics
+	 * @param serviceProperties Service properties
+	 * @return Metrics instance
+	 */
+	public static synchronized DefaultServiceMetrics createInstance(Properties serviceProperties) {
+		if(instance != null) {
+			throw new IllegalStateException("Cannot create DefaultServiceMetrics instance more that once.");
+		}
+
+		instance = new DefaultServiceMetrics(serviceProperties);
+		return instance;
+	}
+
+	public static DefaultServiceMetrics getInstance() {
+		return instance;
+	}
+
+	private DefaultServiceMetrics(Properties serviceProperties) {
+		String maxRoutesProperty = serviceProperties.getProperty(METRICS_MAX_ROUTES, Integer.toString(METRICS_MAX_ROUTES_DEFAULT));
+		try {
+			maxRoutes = Integer.parseInt(maxRoutesProperty.trim());
+			if(maxRoutes < 1) {
+				throw new NumberFormatException("Value must be at least 1");
+			}
+		}
+		catch(NumberFormatException e) {
+			logger.error("Format exception for service property \""+METRICS_MAX_ROUTES+"\", value="+maxRoutesProperty);
+			throw new IllegalArgumentException("Format exception for service property "+METRICS_MAX_ROUTES+", value="+
+					maxRoutesProperty, e);
+		}
+		logger.info("Property "+METRICS_MAX_ROUTES+"="+maxRoutes);
+
+		String bucketsProperty = serviceProperties.getProperty(METRICS_LATENCY_BUCKETS, "").trim();
+		if(bucketsProperty.isEmpty()) {
+			boundsMs = LatencyHistogram.DEFAULT_BOUNDS_MS;
+		}
+		else {
+			try {
+				String[] items = bucketsProperty.split("\\\\,"); // delimiter is \\, in a properties file
+				boundsMs = new double[items.length];
+				for(int i = 0; i < items.length; i++) {
+					boundsMs[i] = Double.parseDouble(items[i].trim());
+					if(!(boundsMs[i] > 0) || Double.isInfinite(boundsMs[i])) {
+						throw new NumberFormatException("Bounds must be greater than zero");
+					}
+				}
+				new LatencyHistogram(boundsMs);	// Check the bounds are ascending
+			}
+			catch(IllegalArgumentException e) {
+				logger.error("Format exception for service property \""+METRICS_LATENCY_BUCKETS+"\", value="+bucketsProperty);
+				throw new IllegalArgumentException("Format exception for service property "+METRICS_LATENCY_BUCKETS+", value="+
+						bucketsProperty, e);
+			}
+			logger.info("Property "+METRICS_LATENCY_BUCKETS+"="+bucketsProperty);
+		}
+	}
+
+	@Override
+	public void filterEntry(HttpServletRequest request, HttpServletResponse response) {
+		if(request.getAttribute(ENTRY_ATTRIBUTE) == null) {
+			request.setAttribute(ENTRY_ATTRIBUTE, Boolean.TRUE);
+			inFlight.increment();
+		}
+	}
+
+	/**
+	 * Record a completed request.  Requests that were rejected before filterEntry are recorded but were never in flight.
+	 */
+	@Override
+	public void filterExit(HttpServletRequest request, HttpServletResponse response, double apiTime) {
+		if(request.getAttribute(ENTRY_ATTRIBUTE) != null) {
+			request.removeAttribute(ENTRY_ATTRIBUTE);
+			inFlight.decrement();
+		}
+
+		int status = response.getStatus();
+		int statusClass = status >= 100 && status < 600 ? status / 100 - 1 : STATUS_CLASSES.length - 1;
+		long responseLength = -1;
+		String contentLength = response.getHeader("Content-Length");
+		if(contentLength != null) {
+			try {
+				responseLength = Long.parseLong(contentLength.trim());
+			}
+			catch(NumberFormatException e) {
+				// Not counted
+			}
+		}
+		getRouteMetrics(request).record(statusClass, (long) (apiTime * NANOS_PER_SECOND), request.getContentLengthLong(), responseLength);
+	}
+
+	/**
+	 * @return Number of requests between filterEntry and filterExit
+	 */
+	public long getInFlightRequests() {
+		return inFlight.sum();
+	}
+
+	/**
+	 * @return Number of method and route pairs with metrics, including the overflow routes
+	 */
+	public int getRouteCount() {
+		return routes.size();
+	}
+
+	private RouteMetrics getRouteMetrics(HttpServletRequest request) {
+		String method = request.getMethod();
+		if(method == null || !METHODS.contains(method)) {
+			method = OTHER;
+		}
+		Object routeAttribute = request.getAttribute(ROUTE_ATTRIBUTE);
+		String route = routeAttribute != null ? routeAttribute.toString() : UNMATCHED;
+
+		String key = method+" "+route;
+		RouteMetrics metrics = routes.get(key);
+		if(metrics != null) {
+			return metrics;
+		}
+		if(routeCount.incrementAndGet() > maxRoutes) {
+			// Over the bound, count under the overflow route of the method
+			routeCount.decrementAndGet();
+			return getOverflowMetrics(method);
+		}
+		RouteMetrics created = new RouteMetrics(method, route);
+		metrics = routes.putIfAbsent(key, created);
+		if(metrics != null) {
+			routeCount.decrementAndGet();
+			return metrics;
+		}
+		return created;
+	}
+
+	private RouteMetrics getOverflowMetrics(String method) {
+		String key = method+" "+OTHER;
+		RouteMetrics metrics = routes.get(key);
+		if(metrics == null) {
+			metrics = routes.computeIfAbsent(key, k -> new RouteMetrics(k.substring(0, k.indexOf(' ')), OTHER));
+		}
+		return metrics;
+	}
+
+	/**
+	 * Write the metrics in the Prometheus text format.  Only reads counters, so requests are not blocked.
+	 * @param out Output
+	 * @throws IOException
+	 */
+	public void writePrometheus(Writer out) throws IOException {
+		List<RouteMetrics> snapshot = new ArrayList<>(routes.values());
+		snapshot.sort((a, b) -> a.route.equals(b.route) ? a.method.compareTo(b.method) : a.route.compareTo(b.route));
+
+		writeHeader(out, "http_server_requests_in_flight", "gauge", "Requests being processed.");
+		out.write("http_server_requests_in_flight "+inFlight.sum()+"\n");
+
+		writeHeader(out, "http_server_requests_total", "counter", "Completed requests.");
+		for(RouteMetrics metrics : snapshot) {
+			for(int i = 0; i < STATUS_CLASSES.length; i++) {
+				long count = metrics.requests[i].sum();
+				if(count > 0) {
+					out.write("http_server_requests_total"+labels(metrics, i)+"} "+count+"\n");
+				}
+			}
+		}
+
+		writeHeader(out, "http_server_request_duration_seconds", "histogram", "Request latency in seconds.");
+		for(RouteMetrics metrics : snapshot) {
+			for(int i = 0; i < STATUS_CLASSES.length; i++) {
+				LatencyHistogram histogram = metrics.latency.get(i);
+				if(histogram != null) {
+					writeHistogram(out, "http_server_request_duration_seconds", labels(metrics, i), histogram);
+				}
+			}
+		}
+
+		writeHeader(out, "http_server_request_bytes_total", "counter", "Request content bytes.");
+		for(RouteMetrics metrics : snapshot) {
+			out.write("http_server_request_bytes_total"+labels(metrics, -1)+"} "+metrics.requestBytes.sum()+"\n");
+		}
+
+		writeHeader(out, "http_server_response_bytes_total", "counter", "Response content bytes with a known length.");
+		for(RouteMetrics metrics : snapshot) {
+			out.write("http_server_response_bytes_total"+labels(metrics, -1)+"} "+metrics.responseBytes.sum()+"\n");
+		}
+
+		writeHeader(out, "service_request_phase_duration_seconds", "histogram", "Time requests spent in each processing phase.");
+		for(RequestTimings.Phase phase : RequestTimings.PHASES) {
+			writeHistogram(out, "service_request_phase_duration_seconds", "{phase=\""+phase.getName()+"\"",
+					RequestTimings.getHistogram(phase));
+		}
+
+		writeConcurrentLimitMetrics(out);
+	}
+
+	/**
+	 * Gauges and counters of the concurrent limit and its bulkheads
+	 */
+	private void writeConcurrentLimitMetrics(Writer out) throws IOException {
+		ServiceConcurrentLimit concurrentLimit = ServiceContext.getConcurrentLimit();
+		if(concurrentLimit == null) {
+			return;
+		}
+		List<ServiceConcurrentLimit> limits = new ArrayList<>();
+		if(concurrentLimit.isConcurrentThresholdEnabled()) {
+			limits.add(concurrentLimit);
+		}
+		limits.addAll(concurrentLimit.getBulkheads());
+		if(limits.isEmpty()) {
+			return;
+		}
+
+		writeHeader(out, "service_concurrent_requests", "gauge", "Requests holding a concurrent limit permit.");
+		for(ServiceConcurrentLimit limit : limits) {
+			out.write("service_concurrent_requests"+limitLabel(limit)+" "+limit.getConcurrentRequests()+"\n");
+		}
+		writeHeader(out, "service_concurrent_queued_requests", "gauge", "Requests waiting for a concurrent limit permit.");
+		for(ServiceConcurrentLimit limit : limits) {
+			out.write("service_concurrent_queued_requests"+limitLabel(limit)+" "+limit.getQueuedRequests()+"\n");
+		}
+		writeHeader(out, "service_concurrent_limit", "gauge", "Current concurrent limit.");
+		for(ServiceConcurrentLimit limit : limits) {
+			out.write("service_concurrent_limit"+limitLabel(limit)+" "+limit.getConcurrentLimit()+"\n");
+		}
+		writeHeader(out, "service_concurrent_rejected_requests_total", "counter", "Requests rejected by the concurrent limit.");
+		for(ServiceConcurrentLimit limit : limits) {
+			out.write("service_concurrent_rejected_requests_total"+limitLabel(limit)+" "+limit.getTotalRejectedRequests()+"\n");
+		}
+		writeHeader(out, "service_concurrent_blocked_requests_total", "counter", "Requests queued by the concurrent limit.");
+		for(ServiceConcurrentLimit limit : limits) {
+			out.write("service_concurrent_blocked_requests_total"+limitLabel(limit)+" "+limit.getTotalBlockedRequests()+"\n");
+		}
+	}
+
+	private static void writeHeader(Writer out, String name, String type, String help) throws IOException {
+		out.write("# HELP "+name+" "+help+"\n");
+		out.write("# TYPE "+name+" "+type+"\n");
+	}
+
+	/**
+	 * Write the cumulative buckets, sum and count of a histogram.  The labels are not closed so le can be added.
+	 */
+	private static void writeHistogram(Writer out, String name, String labels, LatencyHistogram histogram) throws IOException {
+		double[] bounds = histogram.getBoundsMs();
+		long[] counts = histogram.getBucketCounts();
+		long cumulative = 0;
+		for(int i = 0; i < bounds.length; i++) {
+			cumulative += counts[i];
+			out.write(name+"_bucket"+labels+",le=\""+(bounds[i] / 1000)+"\"} "+cumulative+"\n");
+		}
+		cumulative += counts[bounds.length];
+		out.write(name+"_bucket"+labels+",le=\"+Inf\"} "+cumulative+"\n");
+		out.write(name+"_sum"+labels+"} "+(histogram.getSumMs() / 1000)+"\n");
+		out.write(name+"_count"+labels+"} "+cumulative+"\n");
+	}
+
+	/**
+	 * @return Labels of a route without the closing brace
+	 */
+	private static String labels(RouteMetrics metrics, int statusClass) {
+		StringBuilder sb = new StringBuilder("{method=\"").append(metrics.method).append("\",route=\"");
+		escape(sb, metrics.route).append('"');
+		if(statusClass >= 0) {
+			sb.append(",status=\"").append(STATUS_CLASSES[statusClass]).append('"');
+		}
+		return sb.toString();
+	}
+
+	private static String limitLabel(ServiceConcurrentLimit limit) {
+		String name = limit.getBulkheadName();
+		return "{limit=\""+escape(new StringBuilder(), name != null ? name : "main").append("\"}");
+	}
+
+	private static StringBuilder escape(StringBuilder sb, String value) {
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch(c) {
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			default:
+				sb.append(c);
+				break;
+			}
+		}
+		return sb;
+	}
+}
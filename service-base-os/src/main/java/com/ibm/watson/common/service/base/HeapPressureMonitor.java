@@ -0,0 +1,314 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Heap pressure signal for {@link ServiceConcurrentLimit}.  Large in-flight requests can run the JVM out of
+ * memory well before the request count reaches the reject threshold, so admission also considers the heap.
+ *
+ * The heap is under pressure when the heap occupancy after garbage collection (the highest used after the last
+ * collection over the maximum of the tenured heap pools) reaches the shed percent, or when the share of time spent
+ * in garbage collection over the last window reaches the GC shed percent.  It is no longer under pressure once both are
+ * below their resume percents, so admission does not flap around a single threshold.
+ *
+ * Young generation pools are left out since they are close to empty after every collection.
+ * The tenured pools get a collection usage threshold at the shed percent and the garbage collectors are listened
+ * to, so the state is updated as soon as a collection ends.  Admission also updates it at most once per window
+ * in case the JVM does not send the notifications.
+ *
+ *  com_ibm_watson_health_common_concurrent_heap_shed_percent - Heap occupancy after GC at which new requests are shed.
+ *  								A value of zero disables the heap check.  The default is 0.
+ *  com_ibm_watson_health_common_concurrent_heap_resume_percent - Heap occupancy after GC below which requests are
+ *  								admitted again.  The default is the shed percent - 10.
+ *  com_ibm_watson_health_common_concurrent_gc_shed_percent - Percent of time spent in GC at which new requests are shed.
+ *  								A value of zero disables the GC check.  The default is 0.
+ *  com_ibm_watson_health_common_concurrent_gc_resume_percent - Percent of time spent in GC below which requests are
+ *  								admitted again.  The default is half of the GC shed percent.
+ *  com_ibm_watson_health_common_concurrent_heap_window_ms - Window of the GC time percent.  The default is 1000.
+ *  com_ibm_watson_health_common_concurrent_heap_action - reject to reject new requests under pressure, or queue to
+ *  								queue them until the pressure is gone.  Queued requests still run one at a time so
+ *  								the service makes progress.  Limits without a blocking threshold reject.
+ *  								The default is reject.
+ */
+public final class HeapPressureMonitor implements NotificationListener {
+	private static final Logger logger = LoggerFactory.getLogger(HeapPressureMonitor.class.getName());
+
+	public static final String HEAP_SHED_PERCENT = "com_ibm_watson_health_common_concurrent_heap_shed_percent";
+	public static final String HEAP_RESUME_PERCENT = "com_ibm_watson_health_common_concurrent_heap_resume_percent";
+	public static final String GC_SHED_PERCENT = "com_ibm_watson_health_common_concurrent_gc_shed_percent";
+	public static final String GC_RESUME_PERCENT = "com_ibm_watson_health_common_concurrent_gc_resume_percent";
+	public static final String HEAP_WINDOW = "com_ibm_watson_health_common_concurrent_heap_window_ms";
+	public static final String HEAP_ACTION = "com_ibm_watson_health_common_concurrent_heap_action";
+
+	/**
+	 * What admission does with new requests while the heap is under pressure
+	 */
+	public enum Action {
+		REJECT,
+		QUEUE
+	}
+
+	private final int shedPercent;
+	private final int resumePercent;
+	private final int gcShedPercent;
+	private final int gcResumePercent;
+	private final long windowNanos;
+	private final Action action;
+	private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();	// Tenured pools
+	private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+	private final List<Runnable> resumeListeners = new CopyOnWriteArrayList<>();
+
+	private volatile boolean underPressure;
+	private volatile int heapOccupancyPercent;
+	private volatile int gcTimePercent;
+	private final AtomicLong lastUpdateNanos = new AtomicLong(System.nanoTime());
+	private long windowStartNanos;	// Guarded by this
+	private long windowStartGcMillis;	// Guarded by this
+
+	private HeapPressureMonitor(int shedPercent, int resumePercent, int gcShedPercent, int gcResumePercent, long windowMs,
+			Action action) {
+		this.shedPercent = shedPercent;
+		this.resumePercent = resumePercent;
+		this.gcShedPercent = gcShedPercent;
+		this.gcResumePercent = gcResumePercent;
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+		this.action = action;
+
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if(isTenuredPool(pool)) {
+				heapPools.add(pool);
+				long max = pool.getUsage().getMax();
+				if(shedPercent > 0 && max > 0) {
+					pool.setCollectionUsageThreshold(max * shedPercent / 100);
+				}
+			}
+		}
+		((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+		for(GarbageCollectorMXBean collector : collectors) {
+			if(collector instanceof NotificationEmitter) {
+				((NotificationEmitter) collector).addNotificationListener(this, null, null);
+			}
+		}
+		windowStartNanos = System.nanoTime();
+		windowStartGcMillis = getGcMillis();
+	}
+
+	/**
+	 * Create the monitor if enabled
+	 * @param serviceProperties Service properties
+	 * @return Monitor or null if neither the heap nor the GC check is enabled
+	 */
+	static HeapPressureMonitor create(Properties serviceProperties) {
+		int shedPercent = getPercentProperty(serviceProperties, HEAP_SHED_PERCENT, 0);
+		int gcShedPercent = getPercentProperty(serviceProperties, GC_SHED_PERCENT, 0);
+		if(shedPercent == 0 && gcShedPercent == 0) {
+			return null;
+		}
+		int resumePercent = getPercentProperty(serviceProperties, HEAP_RESUME_PERCENT, Math.max(0, shedPercent - 10));
+		int gcResumePercent = getPercentProperty(serviceProperties, GC_RESUME_PERCENT, gcShedPercent / 2);
+		String windowProperty = serviceProperties.getProperty(HEAP_WINDOW, "1000").trim();
+		String actionProperty = serviceProperties.getProperty(HEAP_ACTION, Action.REJECT.name()).trim();
+		long windowMs;
+		Action action;
+		try {
+			windowMs = Long.parseLong(windowProperty);
+			action = Action.valueOf(actionProperty.toUpperCase());
+			if(windowMs <= 0 || resumePercent > shedPercent || gcResumePercent > gcShedPercent) {
+				throw new IllegalArgumentException("Window must be positive and resume percents must not be above shed percents");
+			}
+		}
+		catch(IllegalArgumentException e) {
+			logger.error("Invalid heap pressure properties, window="+windowProperty+", action="+actionProperty+
+					", heap shed/resume="+shedPercent+"/"+resumePercent+", gc shed/resume="+gcShedPercent+"/"+gcResumePercent);
+			throw new IllegalArgumentException("Invalid heap pressure properties \""+HEAP_WINDOW+"\"="+windowProperty+", \""+
+					HEAP_ACTION+"\"="+actionProperty+", resume percents must not be above shed percents", e);
+		}
+
+		logger.info("Heap pressure shedding enabled, heap shed/resume="+shedPercent+"/"+resumePercent+"%, gc shed/resume="+
+				gcShedPercent+"/"+gcResumePercent+"%, window="+windowMs+"ms, action="+action);
+		return new HeapPressureMonitor(shedPercent, resumePercent, gcShedPercent, gcResumePercent, windowMs, action);
+	}
+
+	/**
+	 * Check if the heap is under pressure.  Updates the state if it was not updated during the last window.
+	 * @return true if new requests should be shed
+	 */
+	public boolean isUnderPressure() {
+		long last = lastUpdateNanos.get();
+		long now = System.nanoTime();
+		if(now - last >= windowNanos && lastUpdateNanos.compareAndSet(last, now)) {
+			update();
+		}
+		return underPressure;
+	}
+
+	public Action getAction() {
+		return action;
+	}
+
+	/**
+	 * @return Heap occupancy after the last collection, in percent of the maximum
+	 */
+	public int getHeapOccupancyPercent() {
+		return heapOccupancyPercent;
+	}
+
+	/**
+	 * @return Percent of time spent in GC during the last complete window
+	 */
+	public int getGcTimePercent() {
+		return gcTimePercent;
+	}
+
+	/**
+	 * Remove the notification listeners from the platform MXBeans, so they do not keep the monitor and its
+	 * class loader after the application stops
+	 */
+	void close() {
+		removeListener((NotificationEmitter) ManagementFactory.getMemoryMXBean());
+		for(GarbageCollectorMXBean collector : collectors) {
+			if(collector instanceof NotificationEmitter) {
+				removeListener((NotificationEmitter) collector);
+			}
+		}
+	}
+
+	private void removeListener(NotificationEmitter emitter) {
+		try {
+			emitter.removeNotificationListener(this);
+		}
+		catch(ListenerNotFoundException e) {
+			// Already removed
+		}
+	}
+
+	/**
+	 * Add a task run when the pressure is gone, used to resume queued requests
+	 * @param listener Task, must not block
+	 */
+	void addResumeListener(Runnable listener) {
+		resumeListeners.add(listener);
+	}
+
+	/**
+	 * Called when a heap pool crosses its collection usage threshold or a garbage collection ends
+	 */
+	@Override
+	public void handleNotification(Notification notification, Object handback) {
+		if(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType()) ||
+				notification.getSource() != ManagementFactory.getMemoryMXBean()) {
+			lastUpdateNanos.set(System.nanoTime());
+			update();
+		}
+	}
+
+	/**
+	 * Check if a pool holds long lived objects.  Young generation pools (eden, survivor, nursery) do not support
+	 * a usage threshold on HotSpot and are recognized by name on other JVMs.
+	 */
+	private static boolean isTenuredPool(MemoryPoolMXBean pool) {
+		if(pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported() ||
+				!pool.isUsageThresholdSupported()) {
+			return false;
+		}
+		String name = pool.getName().toLowerCase();
+		return !(name.contains("eden") || name.contains("survivor") || name.contains("nursery"));
+	}
+
+	private synchronized void update() {
+		int occupancyPercent = 0;
+		for(MemoryPoolMXBean pool : heapPools) {
+			MemoryUsage usage = pool.getCollectionUsage();
+			if(usage != null) {
+				long max = usage.getMax() > 0 ? usage.getMax() : usage.getCommitted();
+				if(max > 0) {
+					occupancyPercent = Math.max(occupancyPercent, (int) (usage.getUsed() * 100 / max));
+				}
+			}
+		}
+		heapOccupancyPercent = occupancyPercent;
+
+		long now = System.nanoTime();
+		if(now - windowStartNanos >= windowNanos) {
+			long gcMillis = getGcMillis();
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(now - windowStartNanos);
+			gcTimePercent = (int) Math.min(100, (gcMillis - windowStartGcMillis) * 100 / Math.max(1, elapsedMillis));
+			windowStartNanos = now;
+			windowStartGcMillis = gcMillis;
+		}
+
+		boolean heapHigh = shedPercent > 0 && heapOccupancyPercent >= shedPercent;
+		boolean gcHigh = gcShedPercent > 0 && gcTimePercent >= gcShedPercent;
+		boolean heapLow = shedPercent == 0 || heapOccupancyPercent < resumePercent;
+		boolean gcLow = gcShedPercent == 0 || gcTimePercent < gcResumePercent;
+		if(!underPressure && (heapHigh || gcHigh)) {
+			underPressure = true;
+			logger.warn("Heap pressure, shedding new requests, heap occupancy="+heapOccupancyPercent+"%, gc time="+gcTimePercent+"%");
+		}
+		else if(underPressure && heapLow && gcLow) {
+			underPressure = false;
+			logger.info("Heap pressure gone, admitting requests, heap occupancy="+heapOccupancyPercent+"%, gc time="+gcTimePercent+"%");
+			for(Runnable listener : resumeListeners) {
+				try {
+					listener.run();
+				}
+				catch(RuntimeException e) {
+					logger.warn("Heap pressure resume listener failed: "+e);
+				}
+			}
+		}
+	}
+
+	private long getGcMillis() {
+		long total = 0;
+		for(GarbageCollectorMXBean collector : collectors) {
+			long time = collector.getCollectionTime();
+			if(time > 0) {
+				total += time;
+			}
+		}
+		return total;
+	}
+
+	private static int getPercentProperty(Properties serviceProperties, String name, int defaultValue) {
+		String value = serviceProperties.getProperty(name);
+		if(value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			int result = Integer.parseInt(value.trim());
+			if(result < 0 || result > 100) {
+				throw new NumberFormatException("Value must be between 0 and 100");
+			}
+			return result;
+		}
+		catch(NumberFormatException e) {
+			logger.error("Format exception for service property \""+name+"\", value="+value);
+			throw new IllegalArgumentException("Format exception for service property "+name+", value="+value, e);
+		}
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.watson.service.base.model.JvmStatus;
+import com.ibm.watson.service.base.model.MemoryPoolStatus;
+
+/**
+ * Samples the JVM runtime MXBeans (garbage collectors, memory pools, threads, class loading, buffer pools and
+ * CPU load) on a daemon thread at a fixed interval.  Each sample is published as a new {@link JvmStatus} through
+ * a volatile reference, so the status handler reads the last sample without locking or calling MXBeans on the
+ * request thread.  Published samples are never changed.
+ *
+ * The allocation rate is the sum of the bytes allocated by the live threads between two samples, when the JVM
+ * supports thread allocation counters.  Allocations of threads that ended between two samples are not counted.
+ *
+ *  com_ibm_watson_health_common_jvm_sample_interval_ms - Sampling interval.  A value of zero disables the sampler.
+ *  								The default is 5000.
+ */
+public class JvmRuntimeSampler {
+	private static final Logger logger = LoggerFactory.getLogger(JvmRuntimeSampler.class.getName());
+
+	public static final String JVM_SAMPLE_INTERVAL = "com_ibm_watson_health_common_jvm_sample_interval_ms";
+	public static final long JVM_SAMPLE_INTERVAL_DEFAULT = 5000;
+
+	private static final long MEGABYTES = 1024*1024;
+	private static final String DIRECT_BUFFER_POOL = "direct";
+	private static final String MAPPED_BUFFER_POOL = "mapped";
+
+	private static volatile JvmRuntimeSampler instance;
+
+	private final long intervalMs;
+	private volatile JvmStatus snapshot;
+	private ScheduledExecutorService scheduler;
+
+	// Only used by the sampler thread
+	private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+	private final List<MemoryPoolMXBean> memoryPools = ManagementFactory.getMemoryPoolMXBeans();
+	private final List<BufferPoolMXBean> bufferPools = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class);
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private final ClassLoadingMXBean classLoadingBean = ManagementFactory.getClassLoadingMXBean();
+	private final OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+	private Map<Long,Long> threadAllocatedBytes = new HashMap<>();
+	private long lastSampleNanos;
+	private long lastGcCount = -1;
+	private long lastGcTimeMs;
+
+	public static synchronized JvmRuntimeSampler createInstance(Properties serviceProperties) {
+		if(instance != null) {
+			throw new IllegalStateException("Cannot create JvmRuntimeSampler instance more that once.");
+		}
+
+		instance = new JvmRuntimeSampler(serviceProperties);
+		instance.start();
+		return instance;
+	}
+
+	public static JvmRuntimeSampler getInstance() {
+		return instance;
+	}
+
+	private JvmRuntimeSampler(Properties serviceProperties) {
+		String intervalProperty = serviceProperties.getProperty(JVM_SAMPLE_INTERVAL, Long.toString(JVM_SAMPLE_INTERVAL_DEFAULT));
+		try {
+			intervalMs = Long.parseLong(intervalProperty.trim());
+			if(intervalMs < 0) {
+				throw new NumberFormatException("Value must not be negative");
+			}
+		}
+		catch(NumberFormatException e) {
+			logger.error("Format exception for service property \""+JVM_SAMPLE_INTERVAL+"\", value="+intervalProperty);
+			throw new IllegalArgumentException("Format exception for service property "+JVM_SAMPLE_INTERVAL+", value="+
+					intervalProperty, e);
+		}
+		logger.info("Property "+JVM_SAMPLE_INTERVAL+"="+intervalMs);
+	}
+
+	private void start() {
+		if(!isEnabled()) {
+			return;
+		}
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "jvm-runtime-sampler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleAtFixedRate(this::sampleSafely, 0, intervalMs, TimeUnit.MILLISECONDS);
+		scheduler = executor;
+	}
+
+	public boolean isEnabled() {
+		return intervalMs > 0;
+	}
+
+	/**
+	 * Stop sampling, the last sample stays available
+	 */
+	public synchronized void shutdown() {
+		if(scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * @return Last sample, null before the first sample or if the sampler is disabled
+	 */
+	public JvmStatus getSnapshot() {
+		return snapshot;
+	}
+
+	private void sampleSafely() {
+		try {
+			snapshot = sample();
+		}
+		catch(RuntimeException e) {
+			// Keep the sampler scheduled
+			logger.warn("Unable to sample the JVM runtime: "+e);
+		}
+	}
+
+	/**
+	 * Take a sample.  Only called by the sampler thread.
+	 */
+	JvmStatus sample() {
+		long now = System.nanoTime();
+		long intervalNanos = lastSampleNanos != 0 ? now - lastSampleNanos : 0;
+		lastSampleNanos = now;
+
+		JvmStatus status = new JvmStatus();
+		status.setSampleTime(System.currentTimeMillis());
+		if(intervalNanos > 0) {
+			status.setSampleIntervalMs(TimeUnit.NANOSECONDS.toMillis(intervalNanos));
+		}
+
+		sampleGarbageCollectors(status, intervalNanos);
+		sampleAllocationRate(status, intervalNanos);
+		sampleMemoryPools(status);
+
+		status.setThreadCount(threadBean.getThreadCount());
+		status.setDaemonThreadCount(threadBean.getDaemonThreadCount());
+		status.setPeakThreadCount(threadBean.getPeakThreadCount());
+		status.setTotalStartedThreadCount(threadBean.getTotalStartedThreadCount());
+
+		status.setLoadedClassCount(classLoadingBean.getLoadedClassCount());
+		status.setTotalLoadedClassCount(classLoadingBean.getTotalLoadedClassCount());
+		status.setUnloadedClassCount(classLoadingBean.getUnloadedClassCount());
+
+		for(BufferPoolMXBean pool : bufferPools) {
+			if(DIRECT_BUFFER_POOL.equals(pool.getName())) {
+				status.setDirectBufferCount(pool.getCount());
+				status.setDirectBufferUsedBytes(pool.getMemoryUsed());
+				status.setDirectBufferCapacityBytes(pool.getTotalCapacity());
+			}
+			else if(MAPPED_BUFFER_POOL.equals(pool.getName())) {
+				status.setMappedBufferCount(pool.getCount());
+				status.setMappedBufferUsedBytes(pool.getMemoryUsed());
+				status.setMappedBufferCapacityBytes(pool.getTotalCapacity());
+			}
+		}
+
+		sampleCpu(status);
+		return status;
+	}
+
+	private void sampleGarbageCollectors(JvmStatus status, long intervalNanos) {
+		long gcCount = 0;
+		long gcTimeMs = 0;
+		for(GarbageCollectorMXBean collector : collectors) {
+			// -1 if not available for a collector
+			gcCount += Math.max(collector.getCollectionCount(), 0);
+			gcTimeMs += Math.max(collector.getCollectionTime(), 0);
+		}
+		status.setGcCount(gcCount);
+		status.setGcTimeMs(gcTimeMs);
+		if(lastGcCount >= 0 && intervalNanos > 0) {
+			status.setGcIntervalCount(gcCount - lastGcCount);
+			long intervalMs = Math.max(TimeUnit.NANOSECONDS.toMillis(intervalNanos), 1);
+			status.setGcTimePercent((int) Math.min(100, (gcTimeMs - lastGcTimeMs) * 100 / intervalMs));
+		}
+		lastGcCount = gcCount;
+		lastGcTimeMs = gcTimeMs;
+	}
+
+	private void sampleAllocationRate(JvmStatus status, long intervalNanos) {
+		if(!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+			return;
+		}
+		com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+		if(!allocationBean.isThreadAllocatedMemorySupported() || !allocationBean.isThreadAllocatedMemoryEnabled()) {
+			return;
+		}
+
+		long[] threadIds = allocationBean.getAllThreadIds();
+		long[] allocated = allocationBean.getThreadAllocatedBytes(threadIds);
+		long allocatedBytes = 0;
+		Map<Long,Long> current = new HashMap<>(threadIds.length*4/3+1);
+		for(int i = 0; i < threadIds.length; i++) {
+			if(allocated[i] < 0) {
+				continue;	// Thread ended
+			}
+			Long last = threadAllocatedBytes.get(threadIds[i]);
+			allocatedBytes += last != null ? allocated[i] - last : allocated[i];
+			current.put(threadIds[i], allocated[i]);
+		}
+		threadAllocatedBytes = current;
+		if(intervalNanos > 0) {
+			double seconds = intervalNanos / (double) TimeUnit.SECONDS.toNanos(1);
+			status.setAllocationRateMbPerSec(Math.round(allocatedBytes / seconds / MEGABYTES * 100) / 100.0);
+		}
+	}
+
+	private void sampleMemoryPools(JvmStatus status) {
+		List<MemoryPoolStatus> pools = new ArrayList<>(memoryPools.size());
+		for(MemoryPoolMXBean pool : memoryPools) {
+			if(!pool.isValid()) {
+				continue;
+			}
+			MemoryUsage usage = pool.getUsage();
+			MemoryPoolStatus poolStatus = new MemoryPoolStatus();
+			poolStatus.setName(pool.getName());
+			poolStatus.setType(pool.getType().name());
+			poolStatus.setUsedMb(usage.getUsed()/MEGABYTES);
+			poolStatus.setCommittedMb(usage.getCommitted()/MEGABYTES);
+			if(usage.getMax() >= 0) {
+				poolStatus.setMaxMb(usage.getMax()/MEGABYTES);
+			}
+			MemoryUsage afterGc = pool.getCollectionUsage();
+			if(afterGc != null) {
+				poolStatus.setUsedAfterGcMb(afterGc.getUsed()/MEGABYTES);
+			}
+			pools.add(poolStatus);
+		}
+		status.setMemoryPools(pools);
+	}
+
+	private void sampleCpu(JvmStatus status) {
+		double loadAverage = osBean.getSystemLoadAverage();
+		if(loadAverage >= 0) {
+			status.setSystemLoadAverage(loadAverage);
+		}
+		if(osBean instanceof com.sun.management.OperatingSystemMXBean) {
+			com.sun.management.OperatingSystemMXBean cpuBean = (com.sun.management.OperatingSystemMXBean) osBean;
+			// Negative if not available
+			double processLoad = cpuBean.getProcessCpuLoad();
+			if(processLoad >= 0) {
+				status.setProcessCpuPercent((int) Math.round(processLoad * 100));
+			}
+			// Deprecated for getCpuLoad in Java 14, which does not exist in Java 8 targeted by the service base
+			@SuppressWarnings("deprecation")
+			double systemLoad = cpuBean.getSystemCpuLoad();
+			if(systemLoad >= 0) {
+				status.setSystemCpuPercent((int) Math.round(systemLoad * 100));
+			}
+		}
+	}
+}
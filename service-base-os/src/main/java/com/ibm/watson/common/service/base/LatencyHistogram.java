@@ -0,0 +1,154 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ibm.watson.service.base.model.HistogramSnapshot;
+
+/**
+ * Lock-free latency histogram with fixed buckets.  Recording a value is a bucket search and a few atomic
+ * adds, so it can be called on every request.  Percentiles are estimated as the upper bound of the bucket
+ * holding the rank.
+ */
+public final class LatencyHistogram {
+
+	/**
+	 * Default bucket upper bounds in milliseconds, a last bucket without a bound holds larger values
+	 */
+	public static final double[] DEFAULT_BOUNDS_MS = {
+			1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000};
+
+	private final double[] boundsMs;
+	private final long[] boundsNanos;
+	private final AtomicLongArray counts;
+	private final LongAdder sumNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	public LatencyHistogram() {
+		this(DEFAULT_BOUNDS_MS);
+	}
+
+	/**
+	 * @param boundsMs Ascending bucket upper bounds in milliseconds
+	 */
+	public LatencyHistogram(double[] boundsMs) {
+		this.boundsMs = boundsMs.clone();
+		boundsNanos = new long[boundsMs.length];
+		for(int i = 0; i < boundsMs.length; i++) {
+			if(i > 0 && boundsMs[i] <= boundsMs[i-1]) {
+				throw new IllegalArgumentException("Histogram bounds must be ascending: "+Arrays.toString(boundsMs));
+			}
+			boundsNanos[i] = (long) (boundsMs[i] * TimeUnit.MILLISECONDS.toNanos(1));
+		}
+		counts = new AtomicLongArray(boundsMs.length + 1);
+	}
+
+	/**
+	 * Record a value
+	 * @param nanos Latency in nanoseconds, negative values are recorded as zero
+	 */
+	public void record(long nanos) {
+		if(nanos < 0) {
+			nanos = 0;
+		}
+		int index = Arrays.binarySearch(boundsNanos, nanos);
+		if(index < 0) {
+			index = -index - 1;	// First bound above the value
+		}
+		counts.incrementAndGet(index);
+		sumNanos.add(nanos);
+		long max;
+		do {
+			max = maxNanos.get();
+		} while(nanos > max && !maxNanos.compareAndSet(max, nanos));
+	}
+
+	public long getCount() {
+		long count = 0;
+		for(int i = 0; i < counts.length(); i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * @return Bucket upper bounds in milliseconds
+	 */
+	public double[] getBoundsMs() {
+		return boundsMs.clone();
+	}
+
+	/**
+	 * @return Count of each bucket, one more than the number of bounds
+	 */
+	public long[] getBucketCounts() {
+		long[] result = new long[counts.length()];
+		for(int i = 0; i < result.length; i++) {
+			result[i] = counts.get(i);
+		}
+		return result;
+	}
+
+	public double getSumMs() {
+		return toMs(sumNanos.sum());
+	}
+
+	/**
+	 * Take a snapshot of the histogram.  Values recorded during the snapshot may be partly included.
+	 * @return Snapshot
+	 */
+	public HistogramSnapshot snapshot() {
+		long[] bucketCounts = getBucketCounts();
+		long count = 0;
+		List<Long> countList = new ArrayList<>(bucketCounts.length);
+		for(long bucketCount : bucketCounts) {
+			count += bucketCount;
+			countList.add(bucketCount);
+		}
+		List<Double> boundList = new ArrayList<>(boundsMs.length);
+		for(double bound : boundsMs) {
+			boundList.add(bound);
+		}
+
+		HistogramSnapshot snapshot = new HistogramSnapshot();
+		snapshot.setCount(count);
+		snapshot.setSumMs(getSumMs());
+		double maxMs = toMs(maxNanos.get());
+		snapshot.setMaxMs(maxMs);
+		if(count > 0) {
+			snapshot.setP50Ms(percentile(bucketCounts, count, 0.50, maxMs));
+			snapshot.setP90Ms(percentile(bucketCounts, count, 0.90, maxMs));
+			snapshot.setP99Ms(percentile(bucketCounts, count, 0.99, maxMs));
+		}
+		snapshot.setBucketBoundsMs(boundList);
+		snapshot.setBucketCounts(countList);
+		return snapshot;
+	}
+
+	private double percentile(long[] bucketCounts, long count, double fraction, double maxMs) {
+		long rank = (long) Math.ceil(count * fraction);
+		long seen = 0;
+		for(int i = 0; i < bucketCounts.length; i++) {
+			seen += bucketCounts[i];
+			if(seen >= rank) {
+				// The last bucket has no bound, and no bucket bound is above the largest value
+				return i < boundsMs.length ? Math.min(boundsMs[i], maxMs) : maxMs;
+			}
+		}
+		return maxMs;
+	}
+
+	private static double toMs(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
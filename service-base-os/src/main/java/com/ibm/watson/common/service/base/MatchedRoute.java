@@ -0,0 +1,46 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.lang.reflect.Method;
+
+/**
+ * The JAX-RS resource method matched to a request and its @Path template, for example /v1/profiles/{id}.
+ * Metrics and logs use the template instead of the request path so that path parameters do not create
+ * a key per value.  Set by {@link RouteTemplateFilter}.
+ */
+public final class MatchedRoute {
+
+	private final String template;
+	private final Class<?> resourceClass;
+	private final Method resourceMethod;
+
+	MatchedRoute(String template, Class<?> resourceClass, Method resourceMethod) {
+		this.template = template;
+		this.resourceClass = resourceClass;
+		this.resourceMethod = resourceMethod;
+	}
+
+	/**
+	 * @return Path template of the resource class and method, with parameter regular expressions removed
+	 */
+	public String getTemplate() {
+		return template;
+	}
+
+	public Class<?> getResourceClass() {
+		return resourceClass;
+	}
+
+	public Method getResourceMethod() {
+		return resourceMethod;
+	}
+
+	@Override
+	public String toString() {
+		return template;
+	}
+}
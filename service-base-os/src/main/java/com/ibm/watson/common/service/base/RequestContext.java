@@ -0,0 +1,317 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.ibm.watson.common.service.base.security.Tenant;
+import com.ibm.watson.common.service.base.security.TenantManager;
+
+/**
+ * Per request state bound to the thread processing the request.  All of the values exposed by
+ * {@link ServiceThreadLocal}, {@link com.ibm.watson.common.service.base.security.TenantManager TenantManager}
+ * and {@link VersionManager} are held in one context object behind a single ThreadLocal, so binding
+ * or clearing the request state is one ThreadLocal operation.  The static accessors of those classes
+ * are views of the bound context.
+ *
+ * A context is handed to another thread with {@link #capture()} and {@link #restore(RequestContext)}, or
+ * {@link #runWith(RequestContext, Runnable)} to bind it for the duration of a task.  Capture does not copy
+ * the values.  The captured context becomes read only and a thread that later changes a value gets
+ * its own copy first, so changes are never seen by other threads sharing the context.
+ *
+ * <pre>
+ *	RequestContext context = RequestContext.capture();
+ *	executor.submit(() -> RequestContext.runWith(context, () -> doWork()));
+ * </pre>
+ */
+public final class RequestContext {
+
+	private static final ThreadLocal<RequestContext> current = new ThreadLocal<>();
+
+	private boolean shared;	// Captured, copy before changing.  Only read by threads the context is bound to.
+
+	private String correlationId;
+	private String requestId;
+	private String tenantArtifactVersion;
+	private String superTenantArtifactVersion;
+	private Map<String,String> requestHeaders;
+	private WatsonUserInfo watsonUserInfo;
+	private Boolean debug;
+	private RequestPriority priority;
+	private Integer requestCost;
+	private MatchedRoute matchedRoute;
+	private RequestTimings timings;
+	private Integer inputTextSize;
+	private Integer annotatorCount;
+	private Tenant tenant;
+	private Date version;
+
+	private RequestContext() {
+	}
+
+	private RequestContext(RequestContext other) {
+		correlationId = other.correlationId;
+		requestId = other.requestId;
+		tenantArtifactVersion = other.tenantArtifactVersion;
+		superTenantArtifactVersion = other.superTenantArtifactVersion;
+		requestHeaders = other.requestHeaders;
+		watsonUserInfo = other.watsonUserInfo;
+		debug = other.debug;
+		priority = other.priority;
+		requestCost = other.requestCost;
+		matchedRoute = other.matchedRoute;
+		timings = other.timings;
+		inputTextSize = other.inputTextSize;
+		annotatorCount = other.annotatorCount;
+		tenant = other.tenant;
+		version = other.version;
+	}
+
+	/**
+	 * Get the context bound to the current thread
+	 * @return Context or null if none is bound
+	 */
+	public static RequestContext current() {
+		return current.get();
+	}
+
+	/**
+	 * Capture the context of the current thread to hand it to another thread.
+	 * @return Read only context or null if none is bound
+	 */
+	public static RequestContext capture() {
+		RequestContext context = current.get();
+		if(context != null) {
+			context.shared = true;
+		}
+		return context;
+	}
+
+	/**
+	 * Bind a captured context to the current thread, replacing any bound context.
+	 * @param context Captured context, null to clear the current thread
+	 */
+	public static void restore(RequestContext context) {
+		if(context == null) {
+			current.remove();
+		}
+		else {
+			context.shared = true;
+			current.set(context);
+		}
+	}
+
+	/**
+	 * Remove the context from the current thread
+	 */
+	public static void clear() {
+		current.remove();
+	}
+
+	/**
+	 * Run a task with a context bound to the current thread.  The previous context of the thread
+	 * is restored when the task completes.
+	 *
+	 * @param context Captured context
+	 * @param task Task to run
+	 */
+	public static void runWith(RequestContext context, Runnable task) {
+		RequestContext previous = current.get();
+		restore(context);
+		try {
+			task.run();
+		}
+		finally {
+			restore(previous);
+		}
+	}
+
+	/**
+	 * Call a task with a context bound to the current thread.  The previous context of the thread
+	 * is restored when the task completes.
+	 *
+	 * @param context Captured context
+	 * @param task Task to call
+	 * @return Result of the task
+	 * @throws Exception Exception thrown by the task
+	 */
+	public static <T> T callWith(RequestContext context, Callable<T> task) throws Exception {
+		RequestContext previous = current.get();
+		restore(context);
+		try {
+			return task.call();
+		}
+		finally {
+			restore(previous);
+		}
+	}
+
+	/**
+	 * Wrap a task so it runs with the context of the current thread.
+	 * @param task Task to wrap
+	 * @return Task that binds the captured context while it runs
+	 */
+	public static Runnable wrap(Runnable task) {
+		RequestContext context = capture();
+		return () -> runWith(context, task);
+	}
+
+	/**
+	 * Get a context of the current thread that may be changed.  A shared context is copied
+	 * and the copy is bound in its place.
+	 *
+	 * @param create Bind a new context if none is bound
+	 * @return Context or null if none is bound and create is false
+	 */
+	static RequestContext writable(boolean create) {
+		RequestContext context = current.get();
+		if(context == null) {
+			if(create) {
+				context = new RequestContext();
+				current.set(context);
+			}
+		}
+		else if(context.shared) {
+			context = new RequestContext(context);
+			current.set(context);
+		}
+		return context;
+	}
+
+	/**
+	 * Set the tenant of the current thread.  Only TenantManager holds the access token, so the
+	 * tenant keeps the package visibility of {@code TenantManager.setTenant}.
+	 * @param tenant Tenant or null
+	 * @param access TenantManager access token
+	 */
+	public static void setCurrentTenant(Tenant tenant, TenantManager.Access access) {
+		if(access == null) {
+			throw new IllegalArgumentException("The tenant can only be set by TenantManager");
+		}
+		RequestContext context = writable(tenant != null);
+		if(context != null) {
+			context.tenant = tenant;
+		}
+	}
+
+	public String getCorrelationId() {
+		return correlationId;
+	}
+
+	void setCorrelationId(String correlationId) {
+		this.correlationId = correlationId;
+	}
+
+	public String getRequestId() {
+		return requestId;
+	}
+
+	void setRequestId(String requestId) {
+		this.requestId = requestId;
+	}
+
+	public String getTenantArtifactVersion() {
+		return tenantArtifactVersion;
+	}
+
+	void setTenantArtifactVersion(String tenantArtifactVersion) {
+		this.tenantArtifactVersion = tenantArtifactVersion;
+	}
+
+	public String getSuperTenantArtifactVersion() {
+		return superTenantArtifactVersion;
+	}
+
+	void setSuperTenantArtifactVersion(String superTenantArtifactVersion) {
+		this.superTenantArtifactVersion = superTenantArtifactVersion;
+	}
+
+	public Map<String,String> getRequestHeaders() {
+		return requestHeaders;
+	}
+
+	void setRequestHeaders(Map<String,String> requestHeaders) {
+		this.requestHeaders = requestHeaders;
+	}
+
+	public WatsonUserInfo getWatsonUserInfo() {
+		return watsonUserInfo;
+	}
+
+	void setWatsonUserInfo(WatsonUserInfo watsonUserInfo) {
+		this.watsonUserInfo = watsonUserInfo;
+	}
+
+	public Boolean getDebug() {
+		return debug;
+	}
+
+	void setDebug(Boolean debug) {
+		this.debug = debug;
+	}
+
+	public RequestPriority getPriority() {
+		return priority;
+	}
+
+	void setPriority(RequestPriority priority) {
+		this.priority = priority;
+	}
+
+	public Integer getRequestCost() {
+		return requestCost;
+	}
+
+	void setRequestCost(Integer requestCost) {
+		this.requestCost = requestCost;
+	}
+
+	public MatchedRoute getMatchedRoute() {
+		return matchedRoute;
+	}
+
+	void setMatchedRoute(MatchedRoute matchedRoute) {
+		this.matchedRoute = matchedRoute;
+	}
+
+	public RequestTimings getTimings() {
+		return timings;
+	}
+
+	void setTimings(RequestTimings timings) {
+		this.timings = timings;
+	}
+
+	public Integer getInputTextSize() {
+		return inputTextSize;
+	}
+
+	void setInputTextSize(Integer inputTextSize) {
+		this.inputTextSize = inputTextSize;
+	}
+
+	public Integer getAnnotatorCount() {
+		return annotatorCount;
+	}
+
+	void setAnnotatorCount(Integer annotatorCount) {
+		this.annotatorCount = annotatorCount;
+	}
+
+	public Tenant getTenant() {
+		return tenant;
+	}
+
+	public Date getVersion() {
+		return version;
+	}
+
+	void setVersion(Date version) {
+		this.version = version;
+	}
+}
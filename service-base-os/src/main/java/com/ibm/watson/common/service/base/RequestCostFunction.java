@@ -0,0 +1,22 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+/**
+ * Cost of the requests of a route, registered with {@link RequestCostPolicy#setCostFunction(String, RequestCostFunction)}
+ * for routes whose cost is not proportional to the request size.
+ */
+public interface RequestCostFunction {
+
+	/**
+	 * Get the cost of a request.  Called on the request thread before admission, so it must not block.
+	 * @param uri Request path info
+	 * @param size Request size in bytes, the Content-Length before admission and the size set with
+	 * 				{@link ServiceThreadLocal#setInputTextSize(Integer)} after the request, -1 if not known
+	 * @return Cost units, values below 1 count as 1
+	 */
+	int getCost(String uri, long size);
+}
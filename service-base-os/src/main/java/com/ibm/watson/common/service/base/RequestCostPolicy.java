@@ -0,0 +1,303 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.watson.service.base.model.RequestCostStatus;
+
+/**
+ * Resolves the cost of incoming requests for the cost limit of {@link ServiceConcurrentLimit}.  A large document
+ * holds much more memory while it runs than a small query, so a request is charged cost units from its size
+ * instead of one permit.  The cost comes from weight tiers of the Content-Length header, from the tiers or the
+ * fixed cost of the first matching route, or from a {@link RequestCostFunction} registered for the route.
+ *
+ * The cost is estimated before the request runs.  A service that knows the actual size of the request, for
+ * example after decoding the document, sets it with {@link ServiceThreadLocal#setInputTextSize(Integer)}, and the
+ * cost of the actual size is compared to the estimate when the request completes to help tune the tiers.
+ *
+ *  com_ibm_watson_health_common_request_cost_tiers - Cost tiers by request size, separated with \\,  Each tier is
+ *  								a size in bytes and the cost of requests of at least that size separated by :
+ *  								for example 10000:2\\,1000000:10\\,5000000:50  Smaller requests cost 1.
+ *  								No tiers means every request costs 1.
+ *  com_ibm_watson_health_common_request_cost_unknown_size - Cost of requests without a Content-Length, for example
+ *  								GET or chunked requests.  The default is 1.
+ *  com_ibm_watson_health_common_request_cost_routes - A list of route names separated with \\,.  A request is charged
+ *  								by the first matching route.
+ *  com_ibm_watson_health_common_request_cost_route_&lt;name&gt;_uri_pattern_list - URI patterns of a route, separated with \\,
+ *  com_ibm_watson_health_common_request_cost_route_&lt;name&gt;_tiers - Cost tiers of a route, like the tiers above.
+ *  com_ibm_watson_health_common_request_cost_route_&lt;name&gt;_cost - Fixed cost of every request of a route, used
+ *  								instead of the tiers.
+ */
+public final class RequestCostPolicy {
+	private static final Logger logger = LoggerFactory.getLogger(RequestCostPolicy.class.getName());
+
+	public static final String REQUEST_COST_TIERS = "com_ibm_watson_health_common_request_cost_tiers";
+	public static final String REQUEST_COST_UNKNOWN_SIZE = "com_ibm_watson_health_common_request_cost_unknown_size";
+	public static final String REQUEST_COST_ROUTES = "com_ibm_watson_health_common_request_cost_routes";
+	public static final String REQUEST_COST_ROUTE_PREFIX = "com_ibm_watson_health_common_request_cost_route_";
+
+	private static final int MAX_ROUTES = Integer.SIZE;
+
+	private static volatile RequestCostPolicy instance;
+
+	/**
+	 * Cost of each size tier, looked up with a binary search of the tier sizes
+	 */
+	private static final class CostTiers {
+		private final long[] sizes;
+		private final int[] costs;
+		private final String text;
+
+		private CostTiers(String property, String value) {
+			text = value;
+			List<long[]> tiers = new ArrayList<>();
+			for(String item : value.split("\\\\,")) { // delimiter is \\, in a properties file
+				item = item.trim();
+				if(item.isEmpty()) {
+					continue;
+				}
+				String[] parts = item.split(":");
+				try {
+					if(parts.length != 2) {
+						throw new NumberFormatException("Tier must be size:cost");
+					}
+					long size = Long.parseLong(parts[0].trim());
+					int cost = Integer.parseInt(parts[1].trim());
+					if(size < 0 || cost < 1 || (!tiers.isEmpty() && size <= tiers.get(tiers.size()-1)[0])) {
+						throw new NumberFormatException("Tier sizes must be ascending and costs at least 1");
+					}
+					tiers.add(new long[] {size, cost});
+				}
+				catch(NumberFormatException e) {
+					logger.error("Invalid request cost tier \""+item+"\" in service property \""+property+"\", value="+value);
+					throw new IllegalArgumentException("Invalid request cost tier "+item+" in service property "+property+
+							", tiers must be ascending size:cost entries", e);
+				}
+			}
+			sizes = new long[tiers.size()];
+			costs = new int[tiers.size()];
+			for(int i = 0; i < tiers.size(); i++) {
+				sizes[i] = tiers.get(i)[0];
+				costs[i] = (int) tiers.get(i)[1];
+			}
+		}
+
+		private boolean isEmpty() {
+			return sizes.length == 0;
+		}
+
+		private int getCost(long size) {
+			int index = Arrays.binarySearch(sizes, size);
+			if(index < 0) {
+				index = -index - 2;	// Last tier at or below the size
+			}
+			return index >= 0 ? costs[index] : 1;
+		}
+	}
+
+	/**
+	 * Route with its own tiers, fixed cost or cost function
+	 */
+	private static final class Route {
+		private final String name;
+		private final CostTiers tiers;
+		private final int fixedCost;	// 0 if not fixed
+		private volatile RequestCostFunction function;
+
+		private Route(String name, CostTiers tiers, int fixedCost) {
+			this.name = name;
+			this.tiers = tiers;
+			this.fixedCost = fixedCost;
+		}
+	}
+
+	private final CostTiers tiers;
+	private final int unknownSizeCost;
+	private final List<Route> routes = new ArrayList<>();
+	private final RouteClassifier routeClassifier;
+
+	private final LongAdder measuredRequests = new LongAdder();
+	private final LongAdder estimatedCost = new LongAdder();
+	private final LongAdder actualCost = new LongAdder();
+	private final LongAdder underestimatedRequests = new LongAdder();
+	private final LongAdder overestimatedRequests = new LongAdder();
+
+	public static synchronized RequestCostPolicy createInstance(Properties serviceProperties) {
+		if(instance != null) {
+			throw new IllegalStateException("Cannot create RequestCostPolicy instance more that once.");
+		}
+
+		instance = new RequestCostPolicy(serviceProperties);
+		return instance;
+	}
+
+	public static RequestCostPolicy getInstance() {
+		return instance;
+	}
+
+	private RequestCostPolicy(Properties serviceProperties) {
+		tiers = new CostTiers(REQUEST_COST_TIERS, serviceProperties.getProperty(REQUEST_COST_TIERS, ""));
+		String unknownProperty = serviceProperties.getProperty(REQUEST_COST_UNKNOWN_SIZE, "1").trim();
+		try {
+			unknownSizeCost = Integer.parseInt(unknownProperty);
+			if(unknownSizeCost < 1) {
+				throw new NumberFormatException("Cost must be at least 1");
+			}
+		}
+		catch(NumberFormatException e) {
+			logger.error("Format exception for service property \""+REQUEST_COST_UNKNOWN_SIZE+"\", value="+unknownProperty);
+			throw new IllegalArgumentException("Format exception for service property "+REQUEST_COST_UNKNOWN_SIZE+
+					", value="+unknownProperty, e);
+		}
+		if(!tiers.isEmpty()) {
+			logger.info("Request cost tiers="+tiers.text+", unknown size cost="+unknownSizeCost);
+		}
+
+		// Routes, each route is a bit of the route classifier
+		RouteClassifier.Builder builder = RouteClassifier.builder();
+		String routeList = serviceProperties.getProperty(REQUEST_COST_ROUTES, "");
+		for(String name : routeList.split("\\\\,")) { // delimiter is \\, in a properties file
+			name = name.trim();
+			if(name.isEmpty()) {
+				continue;
+			}
+			if(routes.size() == MAX_ROUTES) {
+				logger.error("Too many request cost routes, the maximum is "+MAX_ROUTES);
+				throw new IllegalArgumentException("Too many request cost routes in "+REQUEST_COST_ROUTES+", the maximum is "+MAX_ROUTES);
+			}
+			String prefix = REQUEST_COST_ROUTE_PREFIX+name+"_";
+			List<Pattern> uriPatterns = new ArrayList<>();
+			String uriList = serviceProperties.getProperty(prefix+"uri_pattern_list", "");
+			try {
+				for(String item : uriList.split("\\\\,")) {
+					item = item.trim();
+					if(!item.isEmpty()) {
+						uriPatterns.add(Pattern.compile(item));
+					}
+				}
+			}
+			catch(PatternSyntaxException e) {
+				logger.error("Invalid request cost URI pattern, route "+name+": "+e);
+				throw e;
+			}
+			if(uriPatterns.isEmpty()) {
+				logger.error("Request cost route "+name+" requires a URI pattern list");
+				throw new IllegalArgumentException("Request cost route "+name+" requires property "+prefix+"uri_pattern_list");
+			}
+			CostTiers routeTiers = new CostTiers(prefix+"tiers", serviceProperties.getProperty(prefix+"tiers", ""));
+			String costProperty = serviceProperties.getProperty(prefix+"cost", "0").trim();
+			int fixedCost;
+			try {
+				fixedCost = Integer.parseInt(costProperty);
+				if(fixedCost < 0) {
+					throw new NumberFormatException("Cost must not be negative");
+				}
+			}
+			catch(NumberFormatException e) {
+				logger.error("Format exception for service property \""+prefix+"cost\", value="+costProperty);
+				throw new IllegalArgumentException("Format exception for service property "+prefix+"cost, value="+costProperty, e);
+			}
+			builder.add(1 << routes.size(), uriPatterns);
+			routes.add(new Route(name, routeTiers, fixedCost));
+			logger.info("Request cost route "+name+" tiers="+routeTiers.text+", cost="+fixedCost+", URI patterns: "+uriList);
+		}
+		routeClassifier = routes.isEmpty() ? null : builder.build(RouteClassifier.DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * @return true if tiers or routes are configured, otherwise every request costs 1
+	 */
+	public boolean isEnabled() {
+		return !tiers.isEmpty() || routeClassifier != null;
+	}
+
+	/**
+	 * Set the cost function of a configured route.  The function is used instead of the tiers of the route.
+	 * @param routeName Name of a route in com_ibm_watson_health_common_request_cost_routes
+	 * @param function Cost function, null to use the tiers again
+	 */
+	public void setCostFunction(String routeName, RequestCostFunction function) {
+		for(Route route : routes) {
+			if(route.name.equals(routeName)) {
+				route.function = function;
+				return;
+			}
+		}
+		throw new IllegalArgumentException("Request cost route "+routeName+" is not configured in "+REQUEST_COST_ROUTES);
+	}
+
+	/**
+	 * Get the cost of a request
+	 * @param uri Request path info
+	 * @param size Request size in bytes, -1 if not known
+	 * @return Cost units, at least 1
+	 */
+	public int getCost(String uri, long size) {
+		Route route = null;
+		if(routeClassifier != null) {
+			int routeBits = routeClassifier.classify(uri);
+			if(routeBits != 0) {
+				route = routes.get(Integer.numberOfTrailingZeros(routeBits));
+			}
+		}
+
+		if(route != null) {
+			RequestCostFunction function = route.function;
+			if(function != null) {
+				return Math.max(1, function.getCost(uri, size));
+			}
+			if(route.fixedCost > 0) {
+				return route.fixedCost;
+			}
+			if(!route.tiers.isEmpty()) {
+				return size < 0 ? unknownSizeCost : route.tiers.getCost(size);
+			}
+		}
+		return size < 0 ? unknownSizeCost : tiers.getCost(size);
+	}
+
+	/**
+	 * Compare the estimated cost of a completed request to the cost of its actual size
+	 * @param uri Request path info
+	 * @param estimate Cost charged when the request was admitted
+	 * @param actualSize Size set with {@link ServiceThreadLocal#setInputTextSize(Integer)}
+	 */
+	public void recordActualSize(String uri, int estimate, long actualSize) {
+		int actual = getCost(uri, actualSize);
+		measuredRequests.increment();
+		estimatedCost.add(estimate);
+		actualCost.add(actual);
+		if(actual > estimate) {
+			underestimatedRequests.increment();
+		}
+		else if(actual < estimate) {
+			overestimatedRequests.increment();
+		}
+	}
+
+	/**
+	 * @return Estimate accuracy of the requests with a known actual size
+	 */
+	public RequestCostStatus getStatus() {
+		RequestCostStatus status = new RequestCostStatus();
+		status.setMeasuredRequests(measuredRequests.sum());
+		status.setEstimatedCost(estimatedCost.sum());
+		status.setActualCost(actualCost.sum());
+		status.setUnderestimatedRequests(underestimatedRequests.sum());
+		status.setOverestimatedRequests(overestimatedRequests.sum());
+		return status;
+	}
+}
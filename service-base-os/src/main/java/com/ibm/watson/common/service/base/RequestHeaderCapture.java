@@ -0,0 +1,137 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Immutable plan describing which incoming request headers are copied into thread local
+ * storage for later use (e.g. propagation on outgoing client requests).
+ *
+ * The plan is compiled once when MainServletFilter is initialized.  Each header name is assigned a
+ * fixed slot and a case-insensitive open addressing table maps a header name to its slot without
+ * allocating, so HTTP/2 lower case header names match the same as their canonical form.
+ * Capturing a request costs one container header lookup per slot instead of a scan of every
+ * incoming header name.
+ */
+public final class RequestHeaderCapture {
+
+	private final String[] names;	// Canonical header names in slot order
+	private final int[] table;		// Open addressing table of slot+1 values, 0 is empty
+	private final int mask;
+
+	/**
+	 * Build a capture plan.  Null, empty and duplicate (ignoring case) names are skipped.
+	 * @param headerNames Names of the headers to capture
+	 */
+	public RequestHeaderCapture(String... headerNames) {
+		List<String> uniqueNames = new ArrayList<>(headerNames.length);
+		for(String name : headerNames) {
+			if(name == null || name.trim().isEmpty()) {
+				continue;
+			}
+			name = name.trim();
+			boolean duplicate = false;
+			for(String existing : uniqueNames) {
+				if(existing.equalsIgnoreCase(name)) {
+					duplicate = true;
+					break;
+				}
+			}
+			if(!duplicate) {
+				uniqueNames.add(name);
+			}
+		}
+		names = uniqueNames.toArray(new String[uniqueNames.size()]);
+
+		// Size the table to a power of two at least twice the slot count to keep probe chains short
+		int tableSize = 4;
+		while(tableSize < names.length * 2) {
+			tableSize <<= 1;
+		}
+		table = new int[tableSize];
+		mask = tableSize - 1;
+		for(int slot = 0; slot < names.length; slot++) {
+			int index = caseInsensitiveHash(names[slot]) & mask;
+			while(table[index] != 0) {
+				index = (index + 1) & mask;
+			}
+			table[index] = slot + 1;
+		}
+	}
+
+	/**
+	 * Get the number of header slots in this plan
+	 * @return Slot count
+	 */
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	 * Get the canonical header name for a slot
+	 * @param slot Slot index
+	 * @return Header name as configured
+	 */
+	public String getName(int slot) {
+		return names[slot];
+	}
+
+	/**
+	 * Find the slot of a header name ignoring case.
+	 * @param headerName Header name to look up
+	 * @return Slot index or -1 if the header is not part of this plan
+	 */
+	public int slotOf(String headerName) {
+		if(headerName == null) {
+			return -1;
+		}
+		int index = caseInsensitiveHash(headerName) & mask;
+		int entry;
+		while((entry = table[index]) != 0) {
+			if(names[entry-1].equalsIgnoreCase(headerName)) {
+				return entry-1;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Capture the planned headers from a request.
+	 * @param request Incoming request
+	 * @return Captured headers or null if none of the planned headers are present
+	 */
+	public CapturedRequestHeaders capture(HttpServletRequest request) {
+		String[] values = null;
+		int count = 0;
+		for(int slot = 0; slot < names.length; slot++) {
+			// Container header lookup is case-insensitive
+			String value = request.getHeader(names[slot]);
+			if(value != null) {
+				if(values == null) {
+					values = new String[names.length];
+				}
+				values[slot] = value;
+				count++;
+			}
+		}
+
+		return values == null ? null : new CapturedRequestHeaders(this, values, count);
+	}
+
+	private static int caseInsensitiveHash(String name) {
+		int hash = 0;
+		for(int i = 0; i < name.length(); i++) {
+			hash = 31 * hash + Character.toLowerCase(name.charAt(i));
+		}
+		// Spread the high bits since the table is small
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,24 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+/**
+ * Generates the request ID of every incoming request and the correlation ID of requests
+ * that do not pass one in.  Implementations must be thread safe.
+ *
+ * The generator is selected with the service property
+ * com_ibm_watson_health_common_request_id_generator.  See {@link RequestIdGenerators} for the
+ * built-in values.  A fully qualified class name with a public no-argument constructor can also be given.
+ */
+public interface RequestIdGenerator {
+
+	/**
+	 * Generate a new unique ID
+	 * @return ID string
+	 */
+	public String generate();
+
+}
@@ -0,0 +1,122 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Built-in {@link RequestIdGenerator} implementations and selection from service properties.
+ *
+ *  com_ibm_watson_health_common_request_id_generator - Request ID generator to use.  Values are:
+ *                                  uuid - java.util.UUID.randomUUID(), backed by a shared SecureRandom (default)
+ *                                  random - random version 4 UUID from a per-thread random generator
+ *                                  time_ordered - version 7 UUID that sorts by creation time, per-thread random
+ *                                  or the fully qualified name of a RequestIdGenerator class.
+ *
+ * The random and time_ordered generators do not contend on a shared SecureRandom and never block
+ * on entropy, but they are not suitable where the IDs must be unguessable.
+ */
+public class RequestIdGenerators {
+	private static final Logger logger = LoggerFactory.getLogger(RequestIdGenerators.class.getName());
+
+	public static final String REQUEST_ID_GENERATOR_PROPERTY = "com_ibm_watson_health_common_request_id_generator";
+
+	public static final String UUID_GENERATOR = "uuid";
+	public static final String RANDOM_GENERATOR = "random";
+	public static final String TIME_ORDERED_GENERATOR = "time_ordered";
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/** java.util.UUID.randomUUID() generator */
+	public static final RequestIdGenerator UUID = new RequestIdGenerator() {
+		@Override
+		public String generate() {
+			return java.util.UUID.randomUUID().toString();
+		}
+	};
+
+	/** Version 4 (random) UUID generator using a per-thread random generator */
+	public static final RequestIdGenerator RANDOM = new RequestIdGenerator() {
+		@Override
+		public String generate() {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			long msb = (random.nextLong() & ~0xf000L) | 0x4000L;					// Version 4
+			long lsb = (random.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;	// IETF variant
+			return format(msb, lsb);
+		}
+	};
+
+	/** Version 7 (Unix epoch time ordered) UUID generator using a per-thread random generator */
+	public static final RequestIdGenerator TIME_ORDERED = new RequestIdGenerator() {
+		@Override
+		public String generate() {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			// 48 bits of milliseconds, 4 bits of version, 12 random bits
+			long msb = (System.currentTimeMillis() << 16) | 0x7000L | (random.nextInt() & 0x0fffL);
+			long lsb = (random.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;	// IETF variant
+			return format(msb, lsb);
+		}
+	};
+
+	private RequestIdGenerators() {
+	}
+
+	/**
+	 * Create the request ID generator selected by the service properties.
+	 * @param serviceProperties Service properties
+	 * @return Request ID generator
+	 */
+	public static RequestIdGenerator fromProperties(Properties serviceProperties) {
+		String value = serviceProperties.getProperty(REQUEST_ID_GENERATOR_PROPERTY, UUID_GENERATOR).trim();
+		logger.info("Property "+REQUEST_ID_GENERATOR_PROPERTY+"="+value);
+		switch(value) {
+		case "":
+		case UUID_GENERATOR:
+			return UUID;
+		case RANDOM_GENERATOR:
+			return RANDOM;
+		case TIME_ORDERED_GENERATOR:
+			return TIME_ORDERED;
+		default:
+			try {
+				Class<?> generatorClass = Class.forName(value, true, Thread.currentThread().getContextClassLoader());
+				return (RequestIdGenerator) generatorClass.getConstructor().newInstance();
+			}
+			catch(Exception | LinkageError e) {
+				logger.error("Invalid value for service property \""+REQUEST_ID_GENERATOR_PROPERTY+"\", value="+value);
+				throw new IllegalArgumentException("Invalid value for service property \""+REQUEST_ID_GENERATOR_PROPERTY+"\", value="+value, e);
+			}
+		}
+	}
+
+	/**
+	 * Format 128 bits in the canonical 8-4-4-4-12 UUID string form.
+	 */
+	static String format(long msb, long lsb) {
+		char[] buf = new char[36];
+		hex(msb >>> 32, buf, 0, 8);
+		buf[8] = '-';
+		hex(msb >>> 16, buf, 9, 4);
+		buf[13] = '-';
+		hex(msb, buf, 14, 4);
+		buf[18] = '-';
+		hex(lsb >>> 48, buf, 19, 4);
+		buf[23] = '-';
+		hex(lsb, buf, 24, 12);
+		return new String(buf);
+	}
+
+	private static void hex(long value, char[] buf, int offset, int digits) {
+		for(int i = offset + digits - 1; i >= offset; i--) {
+			buf[i] = HEX_DIGITS[(int) (value & 0xf)];
+			value >>>= 4;
+		}
+	}
+}
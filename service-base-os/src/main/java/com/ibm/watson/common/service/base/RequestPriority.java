@@ -0,0 +1,46 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+/**
+ * Priority (criticality) class of a request, highest first.  When the service is saturated the concurrent
+ * limit sheds lower classes first, see {@link ServiceConcurrentLimit}.  The class of a request is resolved
+ * by {@link RequestPriorityPolicy} and passed on to downstream services in the x-request-priority header.
+ */
+public enum RequestPriority {
+	CRITICAL,		// Must not be shed while lower classes are admitted
+	INTERACTIVE,	// A user is waiting for the response
+	BATCH;			// Batch and backfill work that can be retried later
+
+	public static final RequestPriority DEFAULT = INTERACTIVE;
+
+	private static final RequestPriority[] VALUES = values();
+
+	/**
+	 * Get the priority named by a header or property value
+	 * @param value Priority name ignoring case, may be null
+	 * @return Priority or null if the value does not name a priority
+	 */
+	public static RequestPriority parse(String value) {
+		if(value == null) {
+			return null;
+		}
+		value = value.trim();
+		for(RequestPriority priority : VALUES) {
+			if(priority.name().equalsIgnoreCase(value)) {
+				return priority;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return Header and property value of the priority
+	 */
+	public String toHeaderValue() {
+		return name().toLowerCase();
+	}
+}
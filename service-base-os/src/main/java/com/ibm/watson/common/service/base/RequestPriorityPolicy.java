@@ -0,0 +1,145 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the {@link RequestPriority} of incoming requests.  The configured priority of a request is the
+ * priority of its tenant if the tenant is listed, otherwise the highest priority with a URI pattern matching
+ * the request, otherwise the default.  The x-request-priority header of the request may lower the configured
+ * priority, so a caller can mark its own work as batch.  The header may only raise the priority if the header
+ * is trusted, which should be set for services that are only called by other services of the same call tree.
+ *
+ *  com_ibm_watson_health_common_request_priority_default - Priority of requests without a configured priority,
+ *  								critical, interactive or batch.  The default is interactive.
+ *  com_ibm_watson_health_common_request_priority_header_trusted - true if the x-request-priority header sets the
+ *  								priority, false if it can only lower it.  The default is false.
+ *  com_ibm_watson_health_common_request_priority_&lt;priority&gt;_uri_pattern_list - A list of regular expression patterns
+ *  								of the request URIs of a priority, separated with \\, like the concurrent URI pattern list.
+ *  com_ibm_watson_health_common_request_priority_&lt;priority&gt;_tenants - A list of the tenant IDs of a priority,
+ *  								separated with \\,
+ */
+public final class RequestPriorityPolicy {
+	private static final Logger logger = LoggerFactory.getLogger(RequestPriorityPolicy.class.getName());
+
+	public static final String REQUEST_PRIORITY_DEFAULT = "com_ibm_watson_health_common_request_priority_default";
+	public static final String REQUEST_PRIORITY_HEADER_TRUSTED = "com_ibm_watson_health_common_request_priority_header_trusted";
+	public static final String REQUEST_PRIORITY_PREFIX = "com_ibm_watson_health_common_request_priority_";
+	public static final String URI_PATTERN_LIST_SUFFIX = "_uri_pattern_list";
+	public static final String TENANTS_SUFFIX = "_tenants";
+
+	private final RequestPriority defaultPriority;
+	private final boolean headerTrusted;
+	private final Map<RequestPriority,List<Pattern>> uriPatterns = new HashMap<>();
+	private final Map<String,RequestPriority> tenantPriorities = new HashMap<>();
+
+	private RequestPriorityPolicy(Properties serviceProperties) {
+		String defaultProperty = serviceProperties.getProperty(REQUEST_PRIORITY_DEFAULT, RequestPriority.DEFAULT.toHeaderValue());
+		defaultPriority = RequestPriority.parse(defaultProperty);
+		if(defaultPriority == null) {
+			logger.error("Invalid service property \""+REQUEST_PRIORITY_DEFAULT+"\", value="+defaultProperty);
+			throw new IllegalArgumentException("Invalid service property "+REQUEST_PRIORITY_DEFAULT+", value="+defaultProperty);
+		}
+		headerTrusted = Boolean.parseBoolean(serviceProperties.getProperty(REQUEST_PRIORITY_HEADER_TRUSTED, "false").trim());
+		logger.info("Request priority default="+defaultPriority.toHeaderValue()+", header trusted="+headerTrusted);
+
+		for(RequestPriority priority : RequestPriority.values()) {
+			String uriProperty = REQUEST_PRIORITY_PREFIX+priority.toHeaderValue()+URI_PATTERN_LIST_SUFFIX;
+			String uriList = serviceProperties.getProperty(uriProperty, "");
+			List<Pattern> patterns = new ArrayList<>();
+			try {
+				for(String item : uriList.split("\\\\,")) { // delimiter is \\, in a properties file
+					item = item.trim();
+					if(!item.isEmpty()) {
+						patterns.add(Pattern.compile(item));
+					}
+				}
+			}
+			catch(PatternSyntaxException e) {
+				logger.error("Invalid request priority URI pattern, property "+uriProperty+": "+e);
+				throw e;
+			}
+			uriPatterns.put(priority, Collections.unmodifiableList(patterns));
+
+			String tenantProperty = REQUEST_PRIORITY_PREFIX+priority.toHeaderValue()+TENANTS_SUFFIX;
+			for(String tenantId : serviceProperties.getProperty(tenantProperty, "").split("\\\\,")) {
+				tenantId = tenantId.trim();
+				if(!tenantId.isEmpty()) {
+					RequestPriority previous = tenantPriorities.putIfAbsent(tenantId, priority);
+					if(previous != null) {
+						logger.error("Tenant "+tenantId+" is listed for request priorities "+previous.toHeaderValue()+
+								" and "+priority.toHeaderValue());
+						throw new IllegalArgumentException("Tenant "+tenantId+" is listed for more than one request priority");
+					}
+				}
+			}
+			if(!patterns.isEmpty() || tenantPriorities.containsValue(priority)) {
+				logger.info("Request priority "+priority.toHeaderValue()+" URI patterns: "+uriList+
+						", tenants: "+serviceProperties.getProperty(tenantProperty, ""));
+			}
+		}
+	}
+
+	/**
+	 * Create the policy from service properties
+	 * @param serviceProperties Service properties
+	 * @return Request priority policy
+	 */
+	public static RequestPriorityPolicy fromProperties(Properties serviceProperties) {
+		return new RequestPriorityPolicy(serviceProperties);
+	}
+
+	public RequestPriority getDefaultPriority() {
+		return defaultPriority;
+	}
+
+	public boolean isHeaderTrusted() {
+		return headerTrusted;
+	}
+
+	/**
+	 * Get the URI patterns of a priority, added to the {@link RouteClassifier} with {@link RouteClassifier#priority(RequestPriority)}
+	 * @param priority Priority
+	 * @return Patterns, may be empty
+	 */
+	public List<Pattern> getUriPatterns(RequestPriority priority) {
+		return uriPatterns.get(priority);
+	}
+
+	/**
+	 * Resolve the priority of a request
+	 * @param route Route classification of the request URI
+	 * @param tenantId Tenant of the request, may be null
+	 * @param headerValue Value of the x-request-priority header, may be null
+	 * @return Priority
+	 */
+	public RequestPriority resolve(int route, String tenantId, String headerValue) {
+		RequestPriority priority = tenantId != null ? tenantPriorities.get(tenantId) : null;
+		if(priority == null) {
+			priority = RouteClassifier.firstPriority(route);
+			if(priority == null) {
+				priority = defaultPriority;
+			}
+		}
+
+		RequestPriority requested = RequestPriority.parse(headerValue);
+		if(requested != null && (headerTrusted || requested.compareTo(priority) > 0)) {
+			priority = requested;
+		}
+		return priority;
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.watson.service.base.model.RequestPhaseStatus;
+
+/**
+ * Nanosecond phase timers of one request.  The request is always in one phase, and {@link #begin(Phase)} ends the
+ * current phase and starts the next, so the phases add up to the request time.  A phase can be entered more than
+ * once, its time is the sum.
+ *
+ * MainServletFilter starts the timers, moves the request through the phases and records the phases of each
+ * completed request in a histogram per phase.  The timers are bound to the request context, see
+ * {@link ServiceThreadLocal#getRequestTimings()}.  A request is processed by one thread at a time, so the timers
+ * are not synchronized.
+ */
+public final class RequestTimings {
+
+	/**
+	 * Processing phases in request order
+	 */
+	public enum Phase {
+		PRE_FILTER("pre"),		// MainServletFilter before admission: tenant, headers, entry log, rate limit
+		QUEUE_WAIT("queue"),	// Waiting for a concurrent limit permit
+		HANDLER("handler"),		// Downstream filters and the resource method
+		ENTITY_WRITE("write"),	// Serializing and writing the response entity
+		POST_LOG("log");		// Response log and metrics
+
+		private final String name;
+
+		Phase(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * @return Name used in the Server-Timing header, the log and the metrics
+		 */
+		public String getName() {
+			return name;
+		}
+	}
+
+	static final Phase[] PHASES = Phase.values();	// Shared copy of values()
+
+	// Time of all requests in each phase
+	private static final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+	static {
+		for(int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+	}
+
+	private final long startNanos;
+	private final long[] phaseNanos = new long[PHASES.length];
+	private int entered;	// Bit per phase entered
+	private Phase current = Phase.PRE_FILTER;
+	private long currentStartNanos;
+	private boolean recorded;
+	private Object flightEvent;	// Request event of ServiceFlightRecorder, null if not enabled
+
+	/**
+	 * Start the timers in the pre-filter phase
+	 * @param startNanos System.nanoTime() when the request arrived
+	 */
+	public RequestTimings(long startNanos) {
+		this.startNanos = startNanos;
+		currentStartNanos = startNanos;
+		entered = 1 << Phase.PRE_FILTER.ordinal();
+	}
+
+	public long getStartNanos() {
+		return startNanos;
+	}
+
+	public Phase getCurrentPhase() {
+		return current;
+	}
+
+	/**
+	 * @return Request event begun by {@link com.ibm.watson.common.service.base.jfr.ServiceFlightRecorder#beginRequest()},
+	 * null if the event is not enabled
+	 */
+	public Object getFlightEvent() {
+		return flightEvent;
+	}
+
+	public void setFlightEvent(Object flightEvent) {
+		this.flightEvent = flightEvent;
+	}
+
+	/**
+	 * End the current phase and start the next one
+	 * @param phase Next phase
+	 * @return Time the next phase started
+	 */
+	public long begin(Phase phase) {
+		long now = System.nanoTime();
+		phaseNanos[current.ordinal()] += now - currentStartNanos;
+		current = phase;
+		currentStartNanos = now;
+		entered |= 1 << phase.ordinal();
+		return now;
+	}
+
+	/**
+	 * @param phase Phase
+	 * @return Time of the ended periods of the phase in nanoseconds
+	 */
+	public long getNanos(Phase phase) {
+		return phaseNanos[phase.ordinal()];
+	}
+
+	/**
+	 * @param phase Phase
+	 * @return true if the request went through the phase
+	 */
+	public boolean hasEntered(Phase phase) {
+		return (entered & (1 << phase.ordinal())) != 0;
+	}
+
+	/**
+	 * Format the ended phases as a Server-Timing header value, for example pre;dur=0.412, queue;dur=0, handler;dur=12.803
+	 * @return Header value
+	 */
+	public String toServerTiming() {
+		StringBuilder sb = new StringBuilder();
+		for(Phase phase : PHASES) {
+			if(phase != current && hasEntered(phase)) {
+				if(sb.length() > 0) {
+					sb.append(", ");
+				}
+				sb.append(phase.getName()).append(";dur=").append(formatMs(phaseNanos[phase.ordinal()]));
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * End the current phase and add the time of each phase the request went through to the phase histograms.
+	 * Only the first call records.
+	 */
+	public void record() {
+		if(recorded) {
+			return;
+		}
+		recorded = true;
+		begin(current);
+		for(Phase phase : PHASES) {
+			if(hasEntered(phase)) {
+				histograms[phase.ordinal()].record(phaseNanos[phase.ordinal()]);
+			}
+		}
+	}
+
+	/**
+	 * @param nanos Time in nanoseconds
+	 * @return Milliseconds with up to three decimals
+	 */
+	public static String formatMs(long nanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(nanos, 0));
+		long fraction = micros % 1000;
+		if(fraction == 0) {
+			return Long.toString(micros / 1000);
+		}
+		StringBuilder sb = new StringBuilder().append(micros / 1000).append('.');
+		if(fraction < 100) {
+			sb.append(fraction < 10 ? "00" : "0");
+		}
+		return sb.append(fraction).toString();
+	}
+
+	/**
+	 * @param phase Phase
+	 * @return Histogram of the time of all requests in the phase
+	 */
+	public static LatencyHistogram getHistogram(Phase phase) {
+		return histograms[phase.ordinal()];
+	}
+
+	/**
+	 * @return Snapshots of the phase histograms in phase order
+	 */
+	public static List<RequestPhaseStatus> getPhaseStatus() {
+		List<RequestPhaseStatus> status = new ArrayList<>(PHASES.length);
+		for(Phase phase : PHASES) {
+			status.add(new RequestPhaseStatus(phase.getName(), histograms[phase.ordinal()].snapshot()));
+		}
+		return status;
+	}
+}
@@ -0,0 +1,346 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Classifies request URIs against all of the URI policy patterns at once (concurrent limit, log filter,
+ * fast lane, ...).  Each policy is a bit and a URI is classified to the set of policies with a matching pattern.
+ *
+ * The patterns are compiled when the classifier is built.  Patterns that are a literal, a literal followed
+ * by .* or .* followed by a literal are matched with an exact lookup, a prefix trie or a suffix check.  Any
+ * other pattern falls back to the regular expression.  Results are memoized per URI in a bounded cache so
+ * a repeated URI costs one lookup.  Matching is the same as Pattern.matcher(uri).matches().
+ */
+public final class RouteClassifier {
+
+	// Policy bits used by MainServletFilter
+	public static final int CONCURRENT_LIMIT = 1;	// Apply the concurrent limit
+	public static final int LOG_FILTER = 1 << 1;	// Skip entry and header logging
+	public static final int FAST_LANE = 1 << 2;		// Probe and status fast lane
+	public static final int STATUS = 1 << 3;		// Status endpoints
+
+	// Request priority classes use the bits from PRIORITY_SHIFT up, see priority(RequestPriority)
+	public static final int PRIORITY_SHIFT = 4;
+
+	// Concurrent limit bulkheads use the bits from BULKHEAD_SHIFT up, see bulkhead(int)
+	public static final int BULKHEAD_SHIFT = 8;
+	public static final int MAX_BULKHEADS = Integer.SIZE - BULKHEAD_SHIFT;
+
+	public static final int DEFAULT_CACHE_SIZE = 1024;
+
+	private static final RequestPriority[] PRIORITIES = RequestPriority.values();
+	private static final int PRIORITY_COUNT = PRIORITIES.length;	// Must fit below BULKHEAD_SHIFT
+
+	private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+	private final Map<String,Integer> exact;
+	private final TrieNode prefixes;
+	private final String[] suffixes;
+	private final int[] suffixPolicies;
+	private final Pattern[] regexes;
+	private final int[] regexPolicies;
+	private final BoundedConcurrentCache<String,Integer> memo;
+
+	private RouteClassifier(Builder builder, int cacheSize) {
+		exact = new HashMap<>(builder.exact);
+		prefixes = builder.prefixes;
+		suffixes = builder.suffixes.toArray(new String[builder.suffixes.size()]);
+		suffixPolicies = toArray(builder.suffixPolicies);
+		regexes = builder.regexes.toArray(new Pattern[builder.regexes.size()]);
+		regexPolicies = toArray(builder.regexPolicies);
+		memo = cacheSize > 0 ? new BoundedConcurrentCache<>(cacheSize) : null;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Classify a URI
+	 * @param uri Request path info, null is treated as empty
+	 * @return Policy bits of all matching patterns
+	 */
+	public int classify(String uri) {
+		if(uri == null) {
+			uri = "";
+		}
+		if(memo == null) {
+			return match(uri);
+		}
+		Integer policies = memo.get(uri);
+		if(policies == null) {
+			// Small values are cached by Integer.valueOf()
+			policies = memo.putIfAbsent(uri, match(uri));
+		}
+		return policies;
+	}
+
+	/**
+	 * Check if a classification includes a policy
+	 * @param policies Result of {@link #classify(String)}
+	 * @param policy Policy bit
+	 * @return true if the policy applies
+	 */
+	public static boolean has(int policies, int policy) {
+		return (policies & policy) != 0;
+	}
+
+	/**
+	 * Get the policy bit of a request priority class
+	 * @param priority Priority
+	 * @return Policy bit
+	 */
+	public static int priority(RequestPriority priority) {
+		return 1 << (PRIORITY_SHIFT+priority.ordinal());
+	}
+
+	/**
+	 * Get the highest request priority of a classification
+	 * @param policies Result of {@link #classify(String)}
+	 * @return Priority or null if no priority pattern matches
+	 */
+	public static RequestPriority firstPriority(int policies) {
+		int priorityBits = (policies >>> PRIORITY_SHIFT) & ((1 << PRIORITY_COUNT) - 1);
+		return priorityBits != 0 ? PRIORITIES[Integer.numberOfTrailingZeros(priorityBits)] : null;
+	}
+
+	/**
+	 * Get the policy bit of a concurrent limit bulkhead
+	 * @param index Bulkhead index, less than MAX_BULKHEADS
+	 * @return Policy bit
+	 */
+	public static int bulkhead(int index) {
+		if(index < 0 || index >= MAX_BULKHEADS) {
+			throw new IllegalArgumentException("Invalid bulkhead index "+index);
+		}
+		return 1 << (BULKHEAD_SHIFT+index);
+	}
+
+	/**
+	 * Get the first bulkhead of a classification
+	 * @param policies Result of {@link #classify(String)}
+	 * @return Bulkhead index or -1 if no bulkhead applies
+	 */
+	public static int firstBulkhead(int policies) {
+		int bulkheadBits = policies >>> BULKHEAD_SHIFT;
+		return bulkheadBits != 0 ? Integer.numberOfTrailingZeros(bulkheadBits) : -1;
+	}
+
+	public BoundedConcurrentCache<String,Integer> getMemo() {
+		return memo;
+	}
+
+	private int match(String uri) {
+		int policies = 0;
+
+		Integer exactPolicies = exact.get(uri);
+		if(exactPolicies != null) {
+			policies |= exactPolicies;
+		}
+
+		// Walk the trie along the URI, collecting the policies of every prefix that ends on the way
+		TrieNode node = prefixes;
+		for(int i = 0; node != null; i++) {
+			if(node.policies != 0 && isWildcardMatch(uri, i, uri.length())) {
+				policies |= node.policies;
+			}
+			if(i == uri.length()) {
+				break;
+			}
+			node = node.child(uri.charAt(i));
+		}
+
+		for(int i = 0; i < suffixes.length; i++) {
+			if((policies & suffixPolicies[i]) != suffixPolicies[i] && uri.endsWith(suffixes[i]) &&
+					isWildcardMatch(uri, 0, uri.length()-suffixes[i].length())) {
+				policies |= suffixPolicies[i];
+			}
+		}
+
+		for(int i = 0; i < regexes.length; i++) {
+			// Skip the regex if its policies are already known to apply
+			if((policies & regexPolicies[i]) != regexPolicies[i] && regexes[i].matcher(uri).matches()) {
+				policies |= regexPolicies[i];
+			}
+		}
+
+		return policies;
+	}
+
+	/**
+	 * Check that .* matches the given range, '.' does not match line terminators
+	 */
+	private static boolean isWildcardMatch(String uri, int start, int end) {
+		for(int i = start; i < end; i++) {
+			char c = uri.charAt(i);
+			if(c == '\n' || c == '\r' || c == '\u0085' || c == 0x2028 || c == 0x2029) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for(int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 * Character trie of literal prefixes
+	 */
+	private static final class TrieNode {
+		private char[] keys = new char[0];
+		private TrieNode[] children = new TrieNode[0];
+		private int policies;	// Policies of prefixes ending at this node
+
+		private TrieNode child(char c) {
+			for(int i = 0; i < keys.length; i++) {
+				if(keys[i] == c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		private TrieNode addChild(char c) {
+			TrieNode child = child(c);
+			if(child == null) {
+				child = new TrieNode();
+				int length = keys.length;
+				char[] newKeys = new char[length+1];
+				TrieNode[] newChildren = new TrieNode[length+1];
+				System.arraycopy(keys, 0, newKeys, 0, length);
+				System.arraycopy(children, 0, newChildren, 0, length);
+				newKeys[length] = c;
+				newChildren[length] = child;
+				keys = newKeys;
+				children = newChildren;
+			}
+			return child;
+		}
+	}
+
+	/**
+	 * Builder for a route classifier
+	 */
+	public static final class Builder {
+		private final Map<String,Integer> exact = new HashMap<>();
+		private final TrieNode prefixes = new TrieNode();
+		private final List<String> suffixes = new ArrayList<>();
+		private final List<Integer> suffixPolicies = new ArrayList<>();
+		private final List<Pattern> regexes = new ArrayList<>();
+		private final List<Integer> regexPolicies = new ArrayList<>();
+
+		private Builder() {
+		}
+
+		/**
+		 * Add patterns for a policy
+		 * @param policy Policy bit
+		 * @param patterns Patterns, may be null
+		 * @return this builder
+		 */
+		public Builder add(int policy, Collection<Pattern> patterns) {
+			if(patterns != null) {
+				for(Pattern pattern : patterns) {
+					add(policy, pattern);
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Add a pattern for a policy
+		 * @param policy Policy bit
+		 * @param pattern Pattern matched against the whole URI
+		 * @return this builder
+		 */
+		public Builder add(int policy, Pattern pattern) {
+			String regex = pattern.pattern();
+			if(pattern.flags() == 0) {
+				// Anchors are implied since the whole URI is matched
+				if(regex.startsWith("^")) {
+					regex = regex.substring(1);
+				}
+				if(regex.endsWith("$") && !regex.endsWith("\\$")) {
+					regex = regex.substring(0, regex.length()-1);
+				}
+
+				String literal = toLiteral(regex);
+				if(literal != null) {
+					exact.merge(literal, policy, (a, b) -> a | b);
+					return this;
+				}
+				if(regex.endsWith(".*") && !regex.endsWith("\\.*")) {
+					String prefix = toLiteral(regex.substring(0, regex.length()-2));
+					if(prefix != null) {
+						TrieNode node = prefixes;
+						for(int i = 0; i < prefix.length(); i++) {
+							node = node.addChild(prefix.charAt(i));
+						}
+						node.policies |= policy;
+						return this;
+					}
+				}
+				if(regex.startsWith(".*")) {
+					String suffix = toLiteral(regex.substring(2));
+					if(suffix != null) {
+						suffixes.add(suffix);
+						suffixPolicies.add(policy);
+						return this;
+					}
+				}
+			}
+
+			regexes.add(pattern);
+			regexPolicies.add(policy);
+			return this;
+		}
+
+		/**
+		 * Build the classifier
+		 * @param cacheSize Maximum number of memoized URIs, zero to disable the memo
+		 * @return Route classifier
+		 */
+		public RouteClassifier build(int cacheSize) {
+			return new RouteClassifier(this, cacheSize);
+		}
+
+		/**
+		 * Convert a regular expression to the literal string it matches
+		 * @return Literal or null if the expression is not a plain literal
+		 */
+		private static String toLiteral(String regex) {
+			StringBuilder literal = new StringBuilder(regex.length());
+			for(int i = 0; i < regex.length(); i++) {
+				char c = regex.charAt(i);
+				if(c == '\\') {
+					// Only escaped metacharacters are literals, \d etc. are not
+					if(i+1 < regex.length() && REGEX_METACHARACTERS.indexOf(regex.charAt(i+1)) >= 0) {
+						literal.append(regex.charAt(++i));
+						continue;
+					}
+					return null;
+				}
+				if(REGEX_METACHARACTERS.indexOf(c) >= 0) {
+					return null;
+				}
+				literal.append(c);
+			}
+			return literal.toString();
+		}
+	}
+}
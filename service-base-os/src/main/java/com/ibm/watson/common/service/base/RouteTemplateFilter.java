@@ -0,0 +1,165 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.annotation.Priority;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Path;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Captures the resource method matched by JAX-RS and its @Path template into the request context, see
+ * {@link ServiceThreadLocal#getMatchedRoute()}.  The template is also set in the
+ * {@link DefaultServiceMetrics#ROUTE_ATTRIBUTE} request attribute so the metrics and the response log of
+ * MainServletFilter key on the template instead of the request path.
+ *
+ * The template is built from the @Path annotations of the resource class and method once per class and
+ * method.  Methods of sub-resources returned by a locator have no template because the locator path is
+ * not known here, so those requests keep the request path.
+ *
+ * Registered by {@link ServiceApplication#getClasses()}.  Runs before the authentication filters so the
+ * route is known when a later filter aborts the request.
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION - 100)
+public class RouteTemplateFilter implements ContainerRequestFilter {
+
+	// Remove the regular expression of a template parameter, {id: [0-9]+} becomes {id}
+	private static final Pattern PARAMETER_REGEX = Pattern.compile("\\{\\s*([^}:\\s]+)\\s*:[^}]*\\}");
+	private static final MatchedRoute NO_TEMPLATE = new MatchedRoute(null, null, null);
+
+	// Templates of the resource methods of each resource class, bounded by the number of resource methods
+	private static final ClassValue<ConcurrentHashMap<Method,MatchedRoute>> routes = new ClassValue<ConcurrentHashMap<Method,MatchedRoute>>() {
+		@Override
+		protected ConcurrentHashMap<Method,MatchedRoute> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	@Context
+	private ResourceInfo resourceInfo;
+
+	@Context
+	private HttpServletRequest servletRequest;
+
+	@Override
+	public void filter(ContainerRequestContext requestContext) {
+		Class<?> resourceClass = resourceInfo.getResourceClass();
+		Method resourceMethod = resourceInfo.getResourceMethod();
+		if(resourceClass == null || resourceMethod == null) {
+			return;
+		}
+
+		MatchedRoute route = getMatchedRoute(resourceClass, resourceMethod);
+		if(route == NO_TEMPLATE) {
+			return;
+		}
+		ServiceThreadLocal.setMatchedRoute(route);
+		if(servletRequest != null) {
+			servletRequest.setAttribute(DefaultServiceMetrics.ROUTE_ATTRIBUTE, route.getTemplate());
+		}
+	}
+
+	/**
+	 * Get the route of a resource method
+	 * @param resourceClass Matched resource class
+	 * @param resourceMethod Matched resource method
+	 * @return Route, NO_TEMPLATE if the class is not a root resource
+	 */
+	static MatchedRoute getMatchedRoute(Class<?> resourceClass, Method resourceMethod) {
+		ConcurrentHashMap<Method,MatchedRoute> classRoutes = routes.get(resourceClass);
+		MatchedRoute route = classRoutes.get(resourceMethod);
+		if(route == null) {
+			route = classRoutes.computeIfAbsent(resourceMethod, method -> createRoute(resourceClass, method));
+		}
+		return route;
+	}
+
+	private static MatchedRoute createRoute(Class<?> resourceClass, Method resourceMethod) {
+		Path classPath = findClassPath(resourceClass);
+		if(classPath == null) {
+			return NO_TEMPLATE;
+		}
+		Path methodPath = findMethodPath(resourceClass, resourceMethod);
+
+		StringBuilder template = new StringBuilder();
+		appendSegment(template, classPath.value());
+		if(methodPath != null) {
+			appendSegment(template, methodPath.value());
+		}
+		if(template.length() == 0) {
+			template.append('/');
+		}
+		return new MatchedRoute(PARAMETER_REGEX.matcher(template).replaceAll("{$1}"), resourceClass, resourceMethod);
+	}
+
+	private static void appendSegment(StringBuilder template, String value) {
+		String segment = value.trim();
+		while(segment.startsWith("/")) {
+			segment = segment.substring(1);
+		}
+		while(segment.endsWith("/")) {
+			segment = segment.substring(0, segment.length()-1);
+		}
+		if(!segment.isEmpty()) {
+			template.append('/').append(segment);
+		}
+	}
+
+	/**
+	 * The @Path of a root resource is on the class, which may be a proxy or subclass of the annotated class
+	 */
+	private static Path findClassPath(Class<?> resourceClass) {
+		for(Class<?> type = resourceClass; type != null && type != Object.class; type = type.getSuperclass()) {
+			Path path = type.getAnnotation(Path.class);
+			if(path != null) {
+				return path;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * JAX-RS annotations of a method are inherited from the superclass or interface method it overrides
+	 */
+	private static Path findMethodPath(Class<?> resourceClass, Method resourceMethod) {
+		Path path = resourceMethod.getAnnotation(Path.class);
+		if(path != null) {
+			return path;
+		}
+		for(Class<?> type = resourceClass; type != null && type != Object.class; type = type.getSuperclass()) {
+			path = findMethodPath(type, resourceMethod.getName(), resourceMethod.getParameterTypes());
+			if(path != null) {
+				return path;
+			}
+			for(Class<?> iface : type.getInterfaces()) {
+				path = findMethodPath(iface, resourceMethod.getName(), resourceMethod.getParameterTypes());
+				if(path != null) {
+					return path;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static Path findMethodPath(Class<?> type, String name, Class<?>[] parameterTypes) {
+		try {
+			return type.getDeclaredMethod(name, parameterTypes).getAnnotation(Path.class);
+		}
+		catch(NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
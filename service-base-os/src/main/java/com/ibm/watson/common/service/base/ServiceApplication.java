@@ -10,6 +10,8 @@ import java.util.Set;
 
 import javax.ws.rs.core.Application;
 
+import com.ibm.watson.common.service.base.interceptors.RequestTimingInterceptor;
+
 public abstract class ServiceApplication extends Application {
 
 	public ServiceApplication() {
@@ -28,6 +30,8 @@ public abstract class ServiceApplication extends Application {
 
 		// Add handlers from this base project
 		classes.add(ServiceExceptionMapper.class);
+		classes.add(RouteTemplateFilter.class);
+		classes.add(RequestTimingInterceptor.class);
 	    //classes.add(newclass.class);
 		//classes.add(GZIPCompressInterceptor.class);
 	    return classes;
@@ -6,6 +6,10 @@
 
 package com.ibm.watson.common.service.base;
 
+import java.util.EnumSet;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterRegistration;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
@@ -38,9 +42,19 @@ public class ServiceBaseInitialization implements ServletContextListener {
 	protected String serviceDescription;
 	protected String swaggerPackages;
 
+	/**
+	 * Release what the application registered outside of its class loader
+	 */
 	@Override
 	public void contextDestroyed(ServletContextEvent event) {
-		//no-op
+		ServiceConcurrentLimit concurrentLimit = ServiceConcurrentLimit.getInstance();
+		if(concurrentLimit != null) {
+			concurrentLimit.shutdown();
+		}
+		JvmRuntimeSampler jvmSampler = JvmRuntimeSampler.getInstance();
+		if(jvmSampler != null) {
+			jvmSampler.shutdown();
+		}
 	}
 
 	/**
@@ -62,11 +76,20 @@ public class ServiceBaseInitialization implements ServletContextListener {
 		sc.setBuildTime(buildTime);
 		sc.setContextRoot(contextRoot);
 
+		// Register the concurrent limit MBeans now that the context root is known
+		ServiceConcurrentLimit concurrentLimit = ServiceConcurrentLimit.getInstance();
+		if(concurrentLimit != null) {
+			concurrentLimit.registerMBeans(contextRoot);
+		}
+
 		// Register and set order of servlet filters
 		ServletContext context = event.getServletContext();
 
 		String uriPattern = "/"+ServiceBaseConstants.SERVICE_API_ROOT+"/*";
-		context.addFilter("MainServletFilter", MainServletFilter.class).addMappingForUrlPatterns(null, false, uriPattern);
+		// Async supported so the concurrent limit can suspend requests, see ServiceConcurrentLimit
+		FilterRegistration.Dynamic mainFilter = context.addFilter("MainServletFilter", MainServletFilter.class);
+		mainFilter.setAsyncSupported(true);
+		mainFilter.addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST, DispatcherType.ASYNC), false, uriPattern);
 
 		// Initialize swagger
 		SwaggerSetup.initializeSwaggerBean(
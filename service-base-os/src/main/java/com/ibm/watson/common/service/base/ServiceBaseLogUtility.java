@@ -78,12 +78,29 @@ public class ServiceBaseLogUtility {
 		messageKv.addKv(ServiceLogKvBuilder.KV_KEY_API_VERB, getRequestMethod(request));
 		messageKv.addKv(ServiceLogKvBuilder.KV_KEY_API_TIME, Double.toString(elapsedSecs));
 		messageKv.addKv(ServiceLogKvBuilder.KV_KEY_API_RC, Integer.toString(servletResponse.getStatus()));
+		MatchedRoute matchedRoute = ServiceThreadLocal.getMatchedRoute();
+		if (matchedRoute != null) {
+			messageKv.addKv(ServiceLogKvBuilder.KV_KEY_API_ROUTE, matchedRoute.getTemplate());
+		}
+		RequestTimings timings = ServiceThreadLocal.getRequestTimings();
+		if (timings != null) {
+			// Phases ended before the response log
+			for (RequestTimings.Phase phase : RequestTimings.PHASES) {
+				if (phase != timings.getCurrentPhase() && timings.hasEntered(phase)) {
+					messageKv.addKv(ServiceLogKvBuilder.KV_KEY_PHASE_TIME_PREFIX + phase.getName() + "_ms",
+							RequestTimings.formatMs(timings.getNanos(phase)));
+				}
+			}
+		}
 		if (ServiceThreadLocal.getInputTextSize() != null) {
 			messageKv.addKv(ServiceLogKvBuilder.KV_KEY_API_REQ_SIZE, Integer.toString(ServiceThreadLocal.getInputTextSize()));
 		}
 		if (ServiceThreadLocal.getAnnotatorCount() != null) {
 			messageKv.addKv(ServiceLogKvBuilder.KV_KEY_API_REQ_COUNT, Integer.toString(ServiceThreadLocal.getAnnotatorCount()));
 		}
+		if (ServiceThreadLocal.getRequestCost() != null) {
+			messageKv.addKv(ServiceLogKvBuilder.KV_KEY_API_REQ_COST, Integer.toString(ServiceThreadLocal.getRequestCost()));
+		}
 	  //Log the CRN on exit
 		addCRNToLogMessage(messageKv);
 		logger.info("<" + getRequestMethod(request) + " " + getRequestURL(request) + messageKv);
@@ -102,7 +119,8 @@ public class ServiceBaseLogUtility {
         		String headerName = headerList.nextElement();
         		if(headerName.equalsIgnoreCase("cookie")) {
         		    continue;
-			} else if(headerName.equalsIgnoreCase("Authorization")) {
+			} else if(headerName.equalsIgnoreCase("Authorization")
+					|| headerName.equalsIgnoreCase(ServiceConcurrentLimitHandler.HEADER_ADMIN_API_KEY)) {
         		    headerBuffer.append(headerName).append(":\"*****\" ");
         		    continue;
         		}
@@ -132,9 +150,10 @@ public class ServiceBaseLogUtility {
 	 */
 	protected void addCRNToLogMessage(ServiceLogKvBuilder messageKv) {
 		//If we have a CRN, add it to the log
-		Map<String, String> userInfoMap = ServiceThreadLocal.getWatsonUserInfoMap();
-		if (sendOperationalLogs && userInfoMap != null && userInfoMap.containsKey("bluemix-crn")) {
-			messageKv.addKv(ServiceLogKvBuilder.KV_KEY_LOG_SOURCE_CRN, userInfoMap.get("bluemix-crn"));
+		WatsonUserInfo userInfo = ServiceThreadLocal.getWatsonUserInfo();
+		String crn = userInfo != null ? userInfo.getCrn() : null;
+		if (sendOperationalLogs && crn != null) {
+			messageKv.addKv(ServiceLogKvBuilder.KV_KEY_LOG_SOURCE_CRN, crn);
 			//This must always be set to true
 			messageKv.addKv(ServiceLogKvBuilder.KV_KEY_SAVE_SERVICE_COPY, "true");
 		}
@@ -172,6 +191,14 @@ public class ServiceBaseLogUtility {
         return (url != null ? url : "<unknown>");
     }
 
+    /**
+     * Get the URI patterns filtered for entry logging
+     * @return Log filter patterns or null if not loaded
+     */
+    public List<Pattern> getLogFilterPatterns() {
+        return logFilterUriPatterns;
+    }
+
     /**
      * Determine if URI should be filtered for entry logging
      * @param uri
@@ -5,16 +5,30 @@
  */
 package com.ibm.watson.common.service.base;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.ibm.watson.common.service.base.jfr.ServiceFlightRecorder;
+
 /**
  * This class is used to limit the number of concurrent incoming requests to help protect the process from
  * getting overrun with requests that could run the JVM out of memory or other resources.
@@ -36,8 +50,68 @@ import org.slf4j.LoggerFactory;
  *  								REST URIs that will be put under concurrent limit control.  The
  *  								patterns are separated with \\, to avoid conflicts with a simple comma
  *  								in the regular expression.
+ *  com_ibm_watson_health_common_concurrent_async_admission - If true, requests over the blocking threshold are suspended
+ *  								using servlet async processing instead of blocking the container thread.  The
+ *  								request is resumed on a container thread when a running request completes.
+ *  								Requests that do not support async processing still block.  The resumed request
+ *  								is an ASYNC dispatch, so the filters after MainServletFilter must be mapped with
+ *  								the ASYNC dispatcher type.  The default is false.
+ *  com_ibm_watson_health_common_concurrent_adaptive_limit - If true, the number of requests allowed to run in parallel is
+ *  								adjusted from the observed request latency (see {@link AdaptiveConcurrencyLimit}).
+ *  								The blocking threshold is the starting limit.  The default is false.
+ *  com_ibm_watson_health_common_concurrent_adaptive_min_limit - Lowest adaptive limit.  The default is 1.
+ *  com_ibm_watson_health_common_concurrent_adaptive_max_limit - Highest adaptive limit, must be less than the reject
+ *  								threshold.  The default is the reject threshold - 1.
+ *  com_ibm_watson_health_common_concurrent_adaptive_window_ms - Latency sample window, the limit is updated at most once
+ *  								per window.  The default is 1000.
+ *  com_ibm_watson_health_common_concurrent_tenant_fair_share - If true, permits are shared fairly across tenants, see
+ *  								{@link TenantFairShare} for the per tenant properties.  The default is false.
+ *  com_ibm_watson_health_common_concurrent_queue_timeout_ms - Maximum time a request waits for a permit.  A request that
+ *  								waits longer is rejected with a 503 and a Retry-After header.  A value of zero waits
+ *  								without limit.  The default is 0.
+ *  com_ibm_watson_health_common_concurrent_queue_policy - Order in which waiting requests get permits.  fifo is arrival order.
+ *  								lifo is arrival order until the queue is congested and newest first while it is, so
+ *  								requests whose callers are still waiting are served first.  codel is arrival order, but while
+ *  								the queue is congested requests that waited longer than the target are rejected.
+ *  								The default is fifo.
+ *  com_ibm_watson_health_common_concurrent_queue_target_ms - Queue wait target of the lifo and codel policies.  The queue is
+ *  								congested when requests have waited longer than the target for a whole interval.
+ *  								The default is 5.
+ *  com_ibm_watson_health_common_concurrent_queue_interval_ms - Queue congestion interval of the lifo and codel policies.
+ *  								The default is 100.
+ *  com_ibm_watson_health_common_concurrent_priority_reserve_percent - Percent of the reject threshold reserved for each higher
+ *  								{@link RequestPriority} class.  With 10 interactive requests are rejected at 90% of the
+ *  								reject threshold and batch requests at 80%, so lower classes are shed first and the
+ *  								headroom is left to higher classes.  Must be less than 50.  The default is 0.
+ *  com_ibm_watson_health_common_concurrent_cost_limit - Total cost of the requests allowed to run in parallel before
+ *  								blocking, see {@link RequestCostPolicy} for the cost of a request.  A request gets a permit
+ *  								if its cost fits under the limit with the cost of the running requests, or if nothing is
+ *  								running, so a request costing more than the limit still runs on its own.  With a blocking threshold both limits apply, without one
+ *  								only the cost limits running requests.  A value of zero disables the cost limit.
+ *  								The default is 0.
+ *  com_ibm_watson_health_common_concurrent_heap_shed_percent and related properties - Shed new requests while the heap
+ *  								occupancy after GC or the GC time is high, see {@link HeapPressureMonitor}.  The heap
+ *  								properties apply to the limit above and all bulkheads.
+ *  com_ibm_watson_health_common_concurrent_event_log_interval_ms - Interval of the concurrent event summaries.  The first
+ *  								block, reject or timeout event is logged right away and further events of the type are
+ *  								logged as one summary per interval with the event count and the peak concurrent
+ *  								requests.  A value of zero logs every event.  The default is 10000.
+ *  com_ibm_watson_health_common_concurrent_bulkheads - A list of bulkhead names separated with \\,.  Each bulkhead is a separate
+ *  								limit with its own URI patterns, thresholds and queue.  A request matching a bulkhead
+ *  								is only counted against the first matching bulkhead and not against the limit above.
+ *  com_ibm_watson_health_common_concurrent_bulkhead_<name>_<property> - Concurrent property of a bulkhead, for example
+ *  								com_ibm_watson_health_common_concurrent_bulkhead_lookup_reject_threshold.  The reject threshold
+ *  								and the URI pattern list are required.  Other properties default to the values above.
+ *
+ * Requests waiting for a permit are admitted highest priority class first, and within a class in the order of
+ * the queue policy.  Waiting requests count against the reject threshold, so the wait queue holds at most
+ * reject threshold - blocking threshold requests.
+ *
+ * Admission does not take a lock.  The request count is raised with a bounded compare-and-set so it never
+ * goes over the reject threshold, and blocking permits are taken the same way.  A request only queues when
+ * no permit is free, and a releasing request hands its permit to the next waiter.
  */
-public class ServiceConcurrentLimit {
+public class ServiceConcurrentLimit implements ServiceConcurrentLimitMXBean {
 	private static final Logger logger = LoggerFactory.getLogger(ServiceConcurrentLimit.class.getName());
 
 	protected static final long MEGABYTES = 1024*1024;
@@ -49,21 +123,136 @@ public class ServiceConcurrentLimit {
 	public static final String CONCURRENT_REJECT_THRESHOLD = "com_ibm_watson_health_common_concurrent_reject_threshold";
 	public static final String CONCURRENT_BLOCKING_THRESHOLD = "com_ibm_watson_health_common_concurrent_blocking_threshold"; // Must be <= com_ibm_watson_health_common_concurrent_reject_threshold
 	public static final String CONCURRENT_URL_PATTERN_LIST = "com_ibm_watson_health_common_concurrent_uri_pattern_list";
+	public static final String CONCURRENT_ASYNC_ADMISSION = "com_ibm_watson_health_common_concurrent_async_admission";
+	public static final String CONCURRENT_ADAPTIVE_LIMIT = "com_ibm_watson_health_common_concurrent_adaptive_limit";
+	public static final String CONCURRENT_ADAPTIVE_MIN_LIMIT = "com_ibm_watson_health_common_concurrent_adaptive_min_limit";
+	public static final String CONCURRENT_ADAPTIVE_MAX_LIMIT = "com_ibm_watson_health_common_concurrent_adaptive_max_limit";
+	public static final String CONCURRENT_ADAPTIVE_WINDOW = "com_ibm_watson_health_common_concurrent_adaptive_window_ms";
+	public static final String CONCURRENT_QUEUE_TIMEOUT = "com_ibm_watson_health_common_concurrent_queue_timeout_ms";
+	public static final String CONCURRENT_QUEUE_POLICY = "com_ibm_watson_health_common_concurrent_queue_policy";
+	public static final String CONCURRENT_QUEUE_TARGET = "com_ibm_watson_health_common_concurrent_queue_target_ms";
+	public static final String CONCURRENT_QUEUE_INTERVAL = "com_ibm_watson_health_common_concurrent_queue_interval_ms";
+	public static final String CONCURRENT_COST_LIMIT = "com_ibm_watson_health_common_concurrent_cost_limit";
+	public static final String CONCURRENT_EVENT_LOG_INTERVAL = "com_ibm_watson_health_common_concurrent_event_log_interval_ms";
+	public static final String CONCURRENT_PRIORITY_RESERVE = "com_ibm_watson_health_common_concurrent_priority_reserve_percent";
+	public static final String CONCURRENT_BULKHEADS = "com_ibm_watson_health_common_concurrent_bulkheads";
+	public static final String CONCURRENT_BULKHEAD_PREFIX = "com_ibm_watson_health_common_concurrent_bulkhead_";
+	private static final String CONCURRENT_PREFIX = "com_ibm_watson_health_common_concurrent_";
+	public static final String MBEAN_NAME = "com.ibm.watson.common.service.base:type=ServiceConcurrentLimit";
+
+	/**
+	 * Result of a request for a permit
+	 */
+	public enum Admission {
+		ADMITTED,	// Permit granted, run the request
+		QUEUED,		// Waiting for a permit, the waiter will be resumed when granted
+		REJECTED	// Reject threshold reached
+	}
+
+	/**
+	 * Order in which waiting requests get permits
+	 */
+	public enum QueuePolicy {
+		FIFO,	// Arrival order
+		LIFO,	// Newest first while the queue is congested
+		CODEL	// Arrival order, reject requests over the target wait while the queue is congested
+	}
+
+	private static final int MAX_RETRY_AFTER_SECONDS = 60;
+	private static final double LATENCY_SMOOTHING = 0.1;	// Weight of a new sample in the average request latency
+
+	/**
+	 * A request waiting for a permit because the blocking threshold has been reached
+	 */
+	public interface AdmissionWaiter {
+		/**
+		 * Called before the request is queued, so it always runs before {@link #resume()}.
+		 * It must not block.
+		 */
+		void suspend();
+
+		/**
+		 * Called when a permit has been handed to the request.  If this throws a runtime exception
+		 * the permit is released.
+		 */
+		void resume();
+
+		/**
+		 * Called when the request is dropped from the queue because it waited too long.  No permit
+		 * is handed to the request and it must be answered as rejected.  It must not block.
+		 */
+		void reject();
+	}
+
+	/**
+	 * A waiter in the queue
+	 */
+	static final class QueuedWaiter {
+		final AdmissionWaiter waiter;
+		final TenantFairShare.TenantShare share;	// null without fair share
+		final String tenantId;
+		final RequestPriority priority;
+		final int cost;
+		final long enqueuedNanos;
+
+		private QueuedWaiter(AdmissionWaiter waiter, TenantFairShare.TenantShare share, String tenantId,
+				RequestPriority priority, int cost, long enqueuedNanos) {
+			this.waiter = waiter;
+			this.share = share;
+			this.tenantId = tenantId;
+			this.priority = priority;
+			this.cost = cost;
+			this.enqueuedNanos = enqueuedNanos;
+		}
+	}
+
+	private final String bulkheadName;	// null for the main limit
+	private final List<ServiceConcurrentLimit> bulkheads = new ArrayList<>();
 
 	private int containerCpuCores;
 	
-	private Semaphore concurrentBlockingSema;
-	private volatile Object concurrentRequestsLock = new Object();  // Used to synchronize the counters below
-	private volatile int concurrentRequests;
-	private volatile int maxConcurrentRequests;
-	private volatile long totalBlockedRequests;
-	private volatile long totalRejectedRequests;
-
-	private int concurrentRejectThreshold;
-	private int concurrentBlockingThreshold;
-	private List<Pattern> concurrentUriPatternList = new ArrayList<Pattern>();
+	private final AtomicInteger concurrentRequests = new AtomicInteger();	// Running and queued requests
+	private final AtomicInteger runningRequests = new AtomicInteger();	// Requests holding a blocking permit
+	private final AtomicLong runningCost = new AtomicLong();	// Cost of the requests holding a blocking permit
+	private final AtomicInteger queuedRequests = new AtomicInteger();
+	private final List<ConcurrentLinkedDeque<QueuedWaiter>> waiters = new ArrayList<>();	// Per priority, without fair share
+	private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+	private final LongAdder totalBlockedRequests = new LongAdder();
+	private final LongAdder totalRejectedRequests = new LongAdder();
+	private final LongAdder[] priorityRejectedRequests = new LongAdder[RequestPriority.values().length];
+	private final LongAdder totalTimedOutRequests = new LongAdder();
+	private final LongAdder totalHeapRejectedRequests = new LongAdder();
+	private final LatencyHistogram queueTimeHistogram = new LatencyHistogram();
+	private volatile double averageLatencyNanos;	// Time requests hold a permit, zero until known
+
+	// Queue congestion, updated when waiters are taken in arrival order
+	private volatile boolean aboveTarget;
+	private volatile long firstAboveTargetNanos;
+	private volatile boolean congested;
+
+	// Settings that can be changed at runtime, see updateSettings
+	private volatile int concurrentRejectThreshold;
+	private volatile int[] priorityRejectThresholds;	// Reject threshold of each priority
+	private volatile int concurrentBlockingThreshold;
+	private volatile long concurrentCostLimit;
+	private volatile List<Pattern> concurrentUriPatternList = new ArrayList<Pattern>();
+	private volatile boolean enforced = true;
+	private List<Runnable> changeListeners = new CopyOnWriteArrayList<>();	// Shared by the main limit and the bulkheads
+	private final List<ObjectName> registeredMBeans = new ArrayList<>();	// Guarded by this
+
+	private int priorityReservePercent;
+	private boolean countLimitEnabled;	// false if only the cost limits running requests
 	private boolean concurrentThresholdEnabled;
 	private boolean concurrentBlockingThresholdEnabled;
+	private boolean asyncAdmissionEnabled;
+	private AdaptiveConcurrencyLimit adaptiveLimit;
+	private TenantFairShare fairShare;
+	private HeapPressureMonitor heapPressure;	// Shared by the main limit and the bulkheads
+	private ConcurrentEventLog eventLog;	// null if every event is logged
+	private long queueTimeoutNanos;
+	private QueuePolicy queuePolicy = QueuePolicy.FIFO;
+	private long queueTargetNanos;
+	private long queueIntervalNanos;
 
 
 	public static synchronized ServiceConcurrentLimit createInstance(Properties serviceProperties) {
@@ -80,6 +269,21 @@ public class ServiceConcurrentLimit {
 	}
 
 	private ServiceConcurrentLimit(Properties serviceProperties) {
+		this(serviceProperties, null);
+	}
+
+	private ServiceConcurrentLimit(Properties serviceProperties, String bulkheadName) {
+		this.bulkheadName = bulkheadName;
+		if(bulkheadName == null) {
+			// The heap is process wide, so the heap pressure properties are not per bulkhead
+			heapPressure = HeapPressureMonitor.create(serviceProperties);
+			// Bulkheads apply even if the main limit is not enabled
+			createBulkheads(serviceProperties);
+			if(heapPressure != null) {
+				heapPressure.addResumeListener(this::drainWaiters);
+			}
+		}
+
 		// Load concurrent reject threshold service property
 		String concurrentRequestsMaxProperty = serviceProperties.getProperty(CONCURRENT_REJECT_THRESHOLD, "0");
 		try {
@@ -143,7 +347,6 @@ public class ServiceConcurrentLimit {
 			
 			if((concurrentBlockingThreshold > 0) && (concurrentBlockingThreshold != concurrentRejectThreshold)) {
 				concurrentBlockingThresholdEnabled = true;
-				concurrentBlockingSema = new Semaphore(concurrentBlockingThreshold, true);
 			}
 			else {
 				concurrentBlockingThresholdEnabled = false;
@@ -156,6 +359,107 @@ public class ServiceConcurrentLimit {
 					concurrentRequestsMaxProperty, e);
 		}
 
+		// Limit running requests by their total cost
+		countLimitEnabled = concurrentBlockingThresholdEnabled;
+		String costLimitProperty = serviceProperties.getProperty(CONCURRENT_COST_LIMIT, "0").trim();
+		try {
+			concurrentCostLimit = Long.parseLong(costLimitProperty);
+			if(concurrentCostLimit < 0) {
+				throw new NumberFormatException("Cost limit must not be negative");
+			}
+		}
+		catch(NumberFormatException e) {
+			logger.error("Format exception for service property \""+CONCURRENT_COST_LIMIT+"\", value="+costLimitProperty);
+			throw new IllegalArgumentException("Format exception for service property "+CONCURRENT_COST_LIMIT+", value="+
+					costLimitProperty, e);
+		}
+		if(concurrentCostLimit > 0) {
+			if(!concurrentBlockingThresholdEnabled) {
+				// Only the cost limits running requests, queued requests still count against the reject threshold
+				concurrentBlockingThreshold = concurrentRejectThreshold;
+				concurrentBlockingThresholdEnabled = true;
+			}
+			logger.info("Concurrent cost limit="+concurrentCostLimit);
+		}
+
+		// Suspend instead of blocking container threads
+		asyncAdmissionEnabled = concurrentBlockingThresholdEnabled &&
+				Boolean.parseBoolean(serviceProperties.getProperty(CONCURRENT_ASYNC_ADMISSION, "false").trim());
+		logger.info("Concurrent async admission="+asyncAdmissionEnabled);
+
+		// Headroom reserved for higher priority classes
+		int priorityReserve = getIntProperty(serviceProperties, CONCURRENT_PRIORITY_RESERVE, 0);
+		if(priorityReserve < 0 || priorityReserve >= 50) {
+			logger.error("Invalid concurrent priority reserve "+priorityReserve+", must be at least 0 and less than 50");
+			throw new IllegalArgumentException("Invalid value for \""+CONCURRENT_PRIORITY_RESERVE+"\"="+priorityReserve+
+					", must be at least 0 and less than 50");
+		}
+		priorityReservePercent = priorityReserve;
+		priorityRejectThresholds = getPriorityRejectThresholds(concurrentRejectThreshold);
+		for(RequestPriority priority : RequestPriority.values()) {
+			priorityRejectedRequests[priority.ordinal()] = new LongAdder();
+			waiters.add(new ConcurrentLinkedDeque<>());
+		}
+		if(priorityReserve > 0) {
+			logger.info("Concurrent priority reject thresholds="+Arrays.toString(priorityRejectThresholds));
+		}
+
+		// Queue wait limit and order
+		int queueTimeout = getIntProperty(serviceProperties, CONCURRENT_QUEUE_TIMEOUT, 0);
+		int queueTarget = getIntProperty(serviceProperties, CONCURRENT_QUEUE_TARGET, 5);
+		int queueInterval = getIntProperty(serviceProperties, CONCURRENT_QUEUE_INTERVAL, 100);
+		String queuePolicyProperty = serviceProperties.getProperty(CONCURRENT_QUEUE_POLICY, QueuePolicy.FIFO.name()).trim();
+		try {
+			queuePolicy = QueuePolicy.valueOf(queuePolicyProperty.toUpperCase());
+			if(queueTimeout < 0 || queueTarget <= 0 || queueInterval <= 0) {
+				throw new IllegalArgumentException("Queue timeout must not be negative, target and interval must be positive");
+			}
+		}
+		catch(IllegalArgumentException e) {
+			logger.error("Invalid concurrent queue properties, policy="+queuePolicyProperty+", timeout="+queueTimeout+
+					", target="+queueTarget+", interval="+queueInterval);
+			throw new IllegalArgumentException("Invalid concurrent queue properties \""+CONCURRENT_QUEUE_POLICY+"\"="+
+					queuePolicyProperty+", \""+CONCURRENT_QUEUE_TIMEOUT+"\"="+queueTimeout+", \""+CONCURRENT_QUEUE_TARGET+"\"="+
+					queueTarget+", \""+CONCURRENT_QUEUE_INTERVAL+"\"="+queueInterval, e);
+		}
+		queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeout);
+		queueTargetNanos = TimeUnit.MILLISECONDS.toNanos(queueTarget);
+		queueIntervalNanos = TimeUnit.MILLISECONDS.toNanos(queueInterval);
+		logger.info("Concurrent queue policy="+queuePolicy+", timeout="+queueTimeout+"ms, target="+queueTarget+
+				"ms, interval="+queueInterval+"ms");
+
+		// Adjust the blocking threshold from request latency
+		if(countLimitEnabled &&
+				Boolean.parseBoolean(serviceProperties.getProperty(CONCURRENT_ADAPTIVE_LIMIT, "false").trim())) {
+			int minLimit = getIntProperty(serviceProperties, CONCURRENT_ADAPTIVE_MIN_LIMIT, 1);
+			int maxLimit = getIntProperty(serviceProperties, CONCURRENT_ADAPTIVE_MAX_LIMIT, concurrentRejectThreshold-1);
+			int windowMs = getIntProperty(serviceProperties, CONCURRENT_ADAPTIVE_WINDOW, 1000);
+			if(minLimit < 1 || maxLimit < minLimit || maxLimit >= concurrentRejectThreshold || windowMs <= 0) {
+				logger.error("Invalid adaptive concurrent limit properties, min="+minLimit+", max="+maxLimit+", window="+windowMs+
+						", reject threshold="+concurrentRejectThreshold);
+				throw new IllegalArgumentException("Invalid adaptive concurrent limit properties \""+CONCURRENT_ADAPTIVE_MIN_LIMIT+"\"="+
+						minLimit+", \""+CONCURRENT_ADAPTIVE_MAX_LIMIT+"\"="+maxLimit+", \""+CONCURRENT_ADAPTIVE_WINDOW+"\"="+windowMs+
+						", the limits must be between 1 and \""+CONCURRENT_REJECT_THRESHOLD+"\" - 1 and the window must be positive");
+			}
+			adaptiveLimit = new AdaptiveConcurrencyLimit(minLimit, maxLimit, concurrentBlockingThreshold, windowMs);
+			logger.info("Adaptive concurrent limit enabled, min="+minLimit+", max="+maxLimit+", window="+windowMs+"ms");
+		}
+
+		// Share permits across tenants
+		fairShare = TenantFairShare.create(serviceProperties);
+
+		// Summarize events instead of logging each one
+		int eventLogInterval = getIntProperty(serviceProperties, CONCURRENT_EVENT_LOG_INTERVAL, 10000);
+		if(eventLogInterval < 0) {
+			logger.error("Invalid value for service property \""+CONCURRENT_EVENT_LOG_INTERVAL+"\", value="+eventLogInterval);
+			throw new IllegalArgumentException("Invalid value for service property "+CONCURRENT_EVENT_LOG_INTERVAL+
+					", value="+eventLogInterval+", must not be negative");
+		}
+		if(eventLogInterval > 0) {
+			eventLog = new ConcurrentEventLog(eventLogInterval, this::writeConcurrentEvent);
+		}
+		logger.info("Concurrent event log interval="+eventLogInterval+"ms");
+
 		// Process concurrent URL prefix list
 		try {
 			String uriList = serviceProperties.getProperty(CONCURRENT_URL_PATTERN_LIST, "");
@@ -184,21 +488,158 @@ public class ServiceConcurrentLimit {
 		}
 	}
 
+	private int[] getPriorityRejectThresholds(int rejectThreshold) {
+		RequestPriority[] priorities = RequestPriority.values();
+		int[] thresholds = new int[priorities.length];
+		for(RequestPriority priority : priorities) {
+			int reserved = (int) Math.round(rejectThreshold * priorityReservePercent * priority.ordinal() / 100.0);
+			thresholds[priority.ordinal()] = Math.max(1, rejectThreshold - reserved);
+		}
+		return thresholds;
+	}
+
+	/**
+	 * Create the bulkheads from their prefixed properties
+	 */
+	private void createBulkheads(Properties serviceProperties) {
+		String bulkheadList = serviceProperties.getProperty(CONCURRENT_BULKHEADS, "");
+		for(String name : bulkheadList.split("\\\\,")) { // delimiter is \\, in a properties file
+			name = name.trim();
+			if(name.isEmpty()) {
+				continue;
+			}
+			if(bulkheads.size() == RouteClassifier.MAX_BULKHEADS) {
+				logger.error("Too many bulkheads in service property \""+CONCURRENT_BULKHEADS+"\", value="+bulkheadList);
+				throw new IllegalArgumentException("Too many bulkheads in service property "+CONCURRENT_BULKHEADS+
+						", maximum="+RouteClassifier.MAX_BULKHEADS);
+			}
+
+			// The bulkhead properties replace the main limit properties, except that its thresholds
+			// and URI patterns are not inherited
+			Properties bulkheadProperties = new Properties();
+			bulkheadProperties.putAll(serviceProperties);
+			bulkheadProperties.remove(CONCURRENT_REJECT_THRESHOLD);
+			bulkheadProperties.remove(CONCURRENT_BLOCKING_THRESHOLD);
+			bulkheadProperties.remove(CONCURRENT_URL_PATTERN_LIST);
+			String prefix = CONCURRENT_BULKHEAD_PREFIX+name+"_";
+			for(String key : serviceProperties.stringPropertyNames()) {
+				if(key.startsWith(prefix)) {
+					bulkheadProperties.setProperty(CONCURRENT_PREFIX+key.substring(prefix.length()), serviceProperties.getProperty(key));
+				}
+			}
+
+			logger.info("Creating concurrent limit bulkhead "+name);
+			ServiceConcurrentLimit bulkhead = new ServiceConcurrentLimit(bulkheadProperties, name);
+			if(!bulkhead.isConcurrentThresholdEnabled() || bulkhead.concurrentUriPatternList.isEmpty()) {
+				logger.error("Bulkhead "+name+" requires properties \""+prefix+"reject_threshold\" and \""+prefix+"uri_pattern_list\"");
+				throw new IllegalArgumentException("Bulkhead "+name+" requires properties "+prefix+"reject_threshold and "+
+						prefix+"uri_pattern_list");
+			}
+			bulkhead.changeListeners = changeListeners;
+			if(heapPressure != null) {
+				bulkhead.heapPressure = heapPressure;
+				heapPressure.addResumeListener(bulkhead::drainWaiters);
+			}
+			bulkheads.add(bulkhead);
+		}
+	}
+
+	/**
+	 * Get the bulkheads.  The index of a bulkhead is the index used for {@link RouteClassifier#bulkhead(int)}.
+	 * @return Bulkheads in configuration order, empty if none are configured
+	 */
+	public List<ServiceConcurrentLimit> getBulkheads() {
+		return Collections.unmodifiableList(bulkheads);
+	}
+
+	/**
+	 * @return Bulkhead name or null for the main limit
+	 */
+	public String getBulkheadName() {
+		return bulkheadName;
+	}
+
 	public int getConcurrentRequests() {
-		// TODO Do we need to synchronize on a read for these volatile type members?
-		return concurrentRequests;
+		return concurrentRequests.get();
 	}
 
 	public int getMaxConcurrentRequests() {
-		return maxConcurrentRequests;
+		return maxConcurrentRequests.get();
 	}
 
 	public long getTotalRejectedRequests() {
-		return totalRejectedRequests;
+		return totalRejectedRequests.sum();
+	}
+
+	/**
+	 * @return Requests rejected because the heap was under pressure, included in {@link #getTotalRejectedRequests()}
+	 */
+	public long getTotalHeapRejectedRequests() {
+		return totalHeapRejectedRequests.sum();
+	}
+
+	/**
+	 * @return Heap pressure monitor or null if heap pressure shedding is not enabled
+	 */
+	public HeapPressureMonitor getHeapPressureMonitor() {
+		return heapPressure;
 	}
 
 	public long getTotalBlockedRequests() {
-		return totalBlockedRequests;
+		return totalBlockedRequests.sum();
+	}
+
+	/**
+	 * @param priority Priority class
+	 * @return Number of rejected requests of the priority
+	 */
+	public long getTotalRejectedRequests(RequestPriority priority) {
+		return priorityRejectedRequests[priority.ordinal()].sum();
+	}
+
+	/**
+	 * @param priority Priority class
+	 * @return Reject threshold of the priority, lower than the reject threshold if a priority reserve is configured
+	 */
+	public int getConcurrentRejectThreshold(RequestPriority priority) {
+		return priorityRejectThresholds[priority.ordinal()];
+	}
+
+	/**
+	 * @return Number of requests rejected after waiting for a permit, over the queue timeout or dropped by the queue policy
+	 */
+	public long getTotalTimedOutRequests() {
+		return totalTimedOutRequests.sum();
+	}
+
+	/**
+	 * @return Histogram of the time requests waited for a permit
+	 */
+	public LatencyHistogram getQueueTimeHistogram() {
+		return queueTimeHistogram;
+	}
+
+	public QueuePolicy getQueuePolicy() {
+		return queuePolicy;
+	}
+
+	/**
+	 * @return Maximum queue wait in milliseconds, zero if there is no limit
+	 */
+	public long getQueueTimeoutMs() {
+		return TimeUnit.NANOSECONDS.toMillis(queueTimeoutNanos);
+	}
+
+	/**
+	 * Estimate when a rejected request may be retried, from the queue length, the number of permits
+	 * and the average time a request holds a permit.
+	 * @return Seconds for the Retry-After header, at least 1
+	 */
+	public int getRetryAfterSeconds() {
+		int permits = concurrentBlockingThresholdEnabled ? getConcurrentLimit() : concurrentRejectThreshold;
+		double waitNanos = averageLatencyNanos * (queuedRequests.get() + 1) / Math.max(permits, 1);
+		long seconds = (long) Math.ceil(waitNanos / TimeUnit.SECONDS.toNanos(1));
+		return (int) Math.max(1, Math.min(MAX_RETRY_AFTER_SECONDS, seconds));
 	}
 
 	public int getConcurrentRejectThreshold() {
@@ -209,10 +650,277 @@ public class ServiceConcurrentLimit {
 		return concurrentBlockingThreshold;
 	}
 
+	/**
+	 * Get the current number of requests allowed to run in parallel before blocking
+	 * @return Adaptive limit if enabled, otherwise the blocking threshold
+	 */
+	public int getConcurrentLimit() {
+		return adaptiveLimit != null ? adaptiveLimit.getLimit() : concurrentBlockingThreshold;
+	}
+
+	/**
+	 * @return Total cost of the requests allowed to run in parallel before blocking, zero if not limited
+	 */
+	public long getConcurrentCostLimit() {
+		return concurrentCostLimit;
+	}
+
+	/**
+	 * @return Cost of the requests holding a permit
+	 */
+	public long getRunningCost() {
+		return runningCost.get();
+	}
+
+	@Override
+	public boolean isEnforced() {
+		return enforced;
+	}
+
+	@Override
+	public void setEnforced(boolean enforced) {
+		updateSettings(null, null, null, null, enforced);
+	}
+
+	@Override
+	public void setConcurrentRejectThreshold(int rejectThreshold) {
+		updateSettings(rejectThreshold, null, null, null, null);
+	}
+
+	@Override
+	public void setConcurrentBlockingThreshold(int blockingThreshold) {
+		updateSettings(null, blockingThreshold, null, null, null);
+	}
+
+	@Override
+	public void setConcurrentCostLimit(long costLimit) {
+		updateSettings(null, null, costLimit, null, null);
+	}
+
+	@Override
+	public List<String> getConcurrentUriPatternList() {
+		List<String> patterns = new ArrayList<>();
+		for(Pattern pattern : concurrentUriPatternList) {
+			patterns.add(pattern.pattern());
+		}
+		return patterns;
+	}
+
+	@Override
+	public void setConcurrentUriPatternList(List<String> uriPatterns) {
+		updateSettings(null, null, null, uriPatterns, null);
+	}
+
+	/**
+	 * Change the settings of the limit while requests are in flight.  Running and queued requests keep their
+	 * permits.  A lower threshold rejects or queues new requests until enough requests complete, and a higher
+	 * threshold or a limit that is no longer enforced hands free permits to queued requests right away.
+	 * All settings are checked before any is changed.  Changes are not saved, a restart goes back to the
+	 * service properties.
+	 *
+	 * @param rejectThreshold New reject threshold or null to keep it
+	 * @param blockingThreshold New blocking threshold or null to keep it, only if a blocking threshold is configured
+	 * 				and the adaptive limit is not enabled
+	 * @param costLimit New cost limit or null to keep it, zero to not limit the cost
+	 * @param uriPatterns New URI patterns or null to keep them
+	 * @param enforce false to count requests without blocking or rejecting them, or null to keep it
+	 * @throws IllegalStateException if the limit is not enabled in the service properties
+	 * @throws IllegalArgumentException if a setting is not valid, nothing is changed
+	 */
+	public synchronized void updateSettings(Integer rejectThreshold, Integer blockingThreshold, Long costLimit,
+			List<String> uriPatterns, Boolean enforce) {
+		if(!concurrentThresholdEnabled) {
+			throw new IllegalStateException("The concurrent limit is not enabled in the service properties");
+		}
+		int newRejectThreshold = rejectThreshold != null ? rejectThreshold : concurrentRejectThreshold;
+		int newBlockingThreshold = blockingThreshold != null ? blockingThreshold : concurrentBlockingThreshold;
+		long newCostLimit = costLimit != null ? costLimit : concurrentCostLimit;
+		if(newRejectThreshold < 1) {
+			throw new IllegalArgumentException("Reject threshold must be at least 1, value="+newRejectThreshold);
+		}
+		if(blockingThreshold != null && (!countLimitEnabled || adaptiveLimit != null)) {
+			throw new IllegalArgumentException("The blocking threshold can only be changed if it is configured and the adaptive limit is not enabled");
+		}
+		if(countLimitEnabled) {
+			if(newBlockingThreshold < 1 || newBlockingThreshold >= newRejectThreshold) {
+				throw new IllegalArgumentException("Blocking threshold must be at least 1 and less than the reject threshold, value="+
+						newBlockingThreshold+", reject threshold="+newRejectThreshold);
+			}
+		}
+		else if(concurrentBlockingThresholdEnabled) {
+			// Only the cost limits running requests
+			newBlockingThreshold = newRejectThreshold;
+		}
+		if(adaptiveLimit != null && newRejectThreshold <= adaptiveLimit.getMaxLimit()) {
+			throw new IllegalArgumentException("Reject threshold must be above the adaptive maximum limit "+adaptiveLimit.getMaxLimit()+
+					", value="+newRejectThreshold);
+		}
+		if(newCostLimit < 0 || (newCostLimit > 0 && !concurrentBlockingThresholdEnabled)) {
+			throw new IllegalArgumentException("Cost limit must not be negative and needs a blocking threshold or a configured cost limit, value="+
+					newCostLimit);
+		}
+		List<Pattern> newUriPatterns = null;
+		if(uriPatterns != null) {
+			newUriPatterns = new ArrayList<>();
+			for(String item : uriPatterns) {
+				if(item != null && !item.trim().isEmpty()) {
+					try {
+						newUriPatterns.add(Pattern.compile(item.trim()));
+					}
+					catch(PatternSyntaxException e) {
+						throw new IllegalArgumentException("Invalid concurrent URI pattern: "+e.getMessage(), e);
+					}
+				}
+			}
+			if(newUriPatterns.isEmpty() && bulkheadName != null) {
+				throw new IllegalArgumentException("The URI pattern list of a bulkhead must not be empty");
+			}
+		}
+
+		concurrentRejectThreshold = newRejectThreshold;
+		priorityRejectThresholds = getPriorityRejectThresholds(newRejectThreshold);
+		concurrentBlockingThreshold = newBlockingThreshold;
+		concurrentCostLimit = newCostLimit;
+		if(newUriPatterns != null) {
+			concurrentUriPatternList = newUriPatterns;
+		}
+		if(enforce != null) {
+			enforced = enforce;
+		}
+		logger.info("Concurrent limit "+(bulkheadName != null ? "bulkhead "+bulkheadName+" " : "")+"settings changed, reject threshold="+
+				concurrentRejectThreshold+", blocking threshold="+concurrentBlockingThreshold+", cost limit="+concurrentCostLimit+
+				", enforced="+enforced+", URI patterns="+getConcurrentUriPatternList());
+
+		if(newUriPatterns != null) {
+			for(Runnable listener : changeListeners) {
+				try {
+					listener.run();
+				}
+				catch(RuntimeException e) {
+					// The settings are already changed, so the caller must not be told nothing was changed
+					logger.error("Concurrent limit change listener failed, the URI patterns may not apply to all requests", e);
+				}
+			}
+		}
+		if(concurrentBlockingThresholdEnabled) {
+			drainWaiters();
+		}
+	}
+
+	/**
+	 * Add a task run when the URI patterns of the limit or of a bulkhead change, used to rebuild route classifiers.
+	 * A task that fails is logged and does not undo the change.
+	 * @param listener Task
+	 */
+	public void addChangeListener(Runnable listener) {
+		changeListeners.add(listener);
+	}
+
+	/**
+	 * Register the main limit if enabled and the bulkheads with the platform MBean server.  The names have a
+	 * context key so applications in the same JVM do not collide.
+	 * @param contextRoot Context root of the application
+	 */
+	synchronized void registerMBeans(String contextRoot) {
+		String name = MBEAN_NAME+",context="+ObjectName.quote(contextRoot != null ? contextRoot : "");
+		if(concurrentThresholdEnabled) {
+			registerMBean(name, this);
+		}
+		for(ServiceConcurrentLimit bulkhead : bulkheads) {
+			registerMBean(name+",bulkhead="+ObjectName.quote(bulkhead.bulkheadName), bulkhead);
+		}
+	}
+
+	private void registerMBean(String name, ServiceConcurrentLimit limit) {
+		try {
+			ObjectName objectName = new ObjectName(name);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(limit, objectName);
+			registeredMBeans.add(objectName);
+			logger.info("Registered concurrent limit MBean "+name);
+		}
+		catch(JMException e) {
+			logger.warn("Unable to register concurrent limit MBean "+name+": "+e);
+		}
+	}
+
+	/**
+	 * Release what the limit and its bulkheads registered outside of the application when it stops, so
+	 * nothing keeps the limit and its class loader
+	 */
+	void shutdown() {
+		unregisterMBeans();
+		if(heapPressure != null) {
+			heapPressure.close();
+		}
+		if(eventLog != null) {
+			eventLog.close();
+		}
+		for(ServiceConcurrentLimit bulkhead : bulkheads) {
+			if(bulkhead.eventLog != null) {
+				bulkhead.eventLog.close();
+			}
+		}
+	}
+
+	private synchronized void unregisterMBeans() {
+		for(ObjectName objectName : registeredMBeans) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+				logger.info("Unregistered concurrent limit MBean "+objectName);
+			}
+			catch(JMException e) {
+				logger.warn("Unable to unregister concurrent limit MBean "+objectName+": "+e);
+			}
+		}
+		registeredMBeans.clear();
+	}
+
+	/**
+	 * @return Tenant fair share or null if not enabled
+	 */
+	public TenantFairShare getTenantFairShare() {
+		return fairShare;
+	}
+
+	/**
+	 * @return Adaptive limit or null if not enabled
+	 */
+	public AdaptiveConcurrencyLimit getAdaptiveLimit() {
+		return adaptiveLimit;
+	}
+
 	public boolean isConcurrentThresholdEnabled() {
 		return concurrentThresholdEnabled;
 	}
 
+	public boolean isAsyncAdmissionEnabled() {
+		return asyncAdmissionEnabled;
+	}
+
+	/**
+	 * Check if the limit has no free capacity, so a new request would block or be rejected.
+	 * @return true if saturated
+	 */
+	public boolean isSaturated() {
+		if(!concurrentThresholdEnabled) {
+			return false;
+		}
+		int threshold = concurrentBlockingThresholdEnabled ? getConcurrentLimit() : concurrentRejectThreshold;
+		return concurrentRequests.get() >= threshold || (concurrentCostLimit > 0 && runningCost.get() >= concurrentCostLimit);
+	}
+
+	public int getQueuedRequests() {
+		return queuedRequests.get();
+	}
+
+	/**
+	 * Get the URI patterns under concurrent limit control
+	 * @return Patterns, empty if the concurrent limit is not enabled
+	 */
+	public List<Pattern> getConcurrentUriPatterns() {
+		return concurrentThresholdEnabled ? Collections.unmodifiableList(concurrentUriPatternList) : Collections.<Pattern>emptyList();
+	}
+
 	public boolean shouldLimitRequest(String uri) {
 		boolean found=false;
 		if(concurrentThresholdEnabled) {
@@ -226,69 +934,599 @@ public class ServiceConcurrentLimit {
 		return found;
 	}
 
+	/**
+	 * Get a permit for a request, blocking the calling thread while the blocking threshold is reached.
+	 * @return true if the request may run, false if it is rejected
+	 */
 	public boolean acquireRequest() {
-		int maxAllowed = concurrentRejectThreshold;
-		boolean acquired = true;
-		int localConcurrentRequests = 0;
+		return acquireRequest((String) null);
+	}
 
-		// Keep track of concurrent requests if enabled
-		if(concurrentThresholdEnabled) {
-			synchronized(concurrentRequestsLock) {
-				if(concurrentRequests >= maxAllowed) {
-					//System.out.println("limit hit");
-					totalRejectedRequests++;
-					logConcurrentEvent("reject", concurrentRequests+1);
-					acquired = false;
+	/**
+	 * Get a permit for a request of a tenant, blocking the calling thread while the blocking threshold is reached.
+	 * @param tenantId Tenant ID used for the fair share, may be null
+	 * @return true if the request may run, false if it is rejected
+	 */
+	public boolean acquireRequest(String tenantId) {
+		return acquireRequest(tenantId, RequestPriority.DEFAULT);
+	}
+
+	/**
+	 * Get a permit for a request of a tenant and priority, blocking the calling thread while the blocking threshold is reached.
+	 * @param tenantId Tenant ID used for the fair share, may be null
+	 * @param priority Priority class of the request
+	 * @return true if the request may run, false if it is rejected
+	 */
+	public boolean acquireRequest(String tenantId, RequestPriority priority) {
+		return acquireRequest(tenantId, priority, 1);
+	}
+
+	/**
+	 * Get a permit for a request of a tenant, priority and cost, blocking the calling thread while no permit is free.
+	 * @param tenantId Tenant ID used for the fair share, may be null
+	 * @param priority Priority class of the request
+	 * @param cost Cost units of the request, see {@link RequestCostPolicy}
+	 * @return true if the request may run, false if it is rejected
+	 */
+	public boolean acquireRequest(String tenantId, RequestPriority priority, int cost) {
+		BlockingWaiter waiter = new BlockingWaiter();
+		Admission admission = acquireRequest(tenantId, priority, cost, waiter);
+		if(admission == Admission.QUEUED) {
+			return waiter.await(this);
+		}
+		return admission != Admission.REJECTED;
+	}
+
+	/**
+	 * Get a permit for a request without blocking.
+	 * @param waiter Waiter to queue if no permit is available
+	 * @return Admission result
+	 * @see #acquireRequest(String, AdmissionWaiter)
+	 */
+	public Admission acquireRequest(AdmissionWaiter waiter) {
+		return acquireRequest(null, waiter);
+	}
+
+	/**
+	 * Get a permit for a request of a tenant without blocking.  If the blocking threshold is reached the waiter is
+	 * suspended and queued, and resumed by the {@link #releaseRequest(String, long)} call that hands it a permit.
+	 * A queued request that gives up waiting must call {@link #cancelRequest(AdmissionWaiter, boolean)}.
+	 * The same tenant ID must be passed when the request is released.
+	 *
+	 * @param tenantId Tenant ID used for the fair share, may be null
+	 * @param waiter Waiter to queue if no permit is available
+	 * @return Admission result
+	 */
+	public Admission acquireRequest(String tenantId, AdmissionWaiter waiter) {
+		return acquireRequest(tenantId, RequestPriority.DEFAULT, waiter);
+	}
+
+	/**
+	 * Get a permit for a request of a tenant and priority without blocking.  Lower priority classes are rejected
+	 * before the reject threshold when a priority reserve is configured, and queued requests are resumed highest
+	 * priority first.
+	 *
+	 * @param tenantId Tenant ID used for the fair share, may be null
+	 * @param priority Priority class of the request
+	 * @param waiter Waiter to queue if no permit is available
+	 * @return Admission result
+	 * @see #acquireRequest(String, AdmissionWaiter)
+	 */
+	public Admission acquireRequest(String tenantId, RequestPriority priority, AdmissionWaiter waiter) {
+		return acquireRequest(tenantId, priority, 1, waiter);
+	}
+
+	/**
+	 * Get a permit for a request of a tenant, priority and cost without blocking.  The cost is added to the
+	 * running cost while the request holds its permit, and the same cost must be passed when the request is released.
+	 *
+	 * @param tenantId Tenant ID used for the fair share, may be null
+	 * @param priority Priority class of the request
+	 * @param cost Cost units of the request, see {@link RequestCostPolicy}
+	 * @param waiter Waiter to queue if no permit is available
+	 * @return Admission result
+	 * @see #acquireRequest(String, RequestPriority, AdmissionWaiter)
+	 */
+	public Admission acquireRequest(String tenantId, RequestPriority priority, int cost, AdmissionWaiter waiter) {
+		if(!concurrentThresholdEnabled) {
+			return Admission.ADMITTED;
+		}
+		// A limit that is not enforced still counts requests, so they are released correctly when it is enforced again
+		boolean enforcing = enforced;
+
+		// Shed new requests while the heap is under pressure, queueing needs a blocking threshold
+		if(enforcing && heapPressure != null && heapPressure.isUnderPressure() &&
+				(heapPressure.getAction() == HeapPressureMonitor.Action.REJECT || !concurrentBlockingThresholdEnabled)) {
+			totalRejectedRequests.increment();
+			priorityRejectedRequests[priority.ordinal()].increment();
+			totalHeapRejectedRequests.increment();
+			logConcurrentEvent("heap_reject", concurrentRequests.get()+1);
+			ServiceFlightRecorder.admission(bulkheadName, tenantId, priority, "heap_reject", 0, concurrentRequests.get()+1);
+			return Admission.REJECTED;
+		}
+
+		// Count the request against its tenant and the reject threshold
+		TenantFairShare.TenantShare share = null;
+		if(fairShare != null && (share = fairShare.addRequest(tenantId, enforcing)) == null) {
+			totalRejectedRequests.increment();
+			priorityRejectedRequests[priority.ordinal()].increment();
+			logConcurrentEvent("reject", concurrentRequests.get()+1);
+			ServiceFlightRecorder.admission(bulkheadName, tenantId, priority, "reject", 0, concurrentRequests.get()+1);
+			return Admission.REJECTED;
+		}
+		int rejectThreshold = enforcing ? priorityRejectThresholds[priority.ordinal()] : Integer.MAX_VALUE;
+		int localConcurrentRequests;	// Save count for logging since it could change
+		do {
+			localConcurrentRequests = concurrentRequests.get();
+			if(localConcurrentRequests >= rejectThreshold) {
+				if(share != null) {
+					share.removeRequest(false);
+					share.rejected();
 				}
-				else {
-					concurrentRequests++;
-					localConcurrentRequests = concurrentRequests; // Save count for next step since it could change
-					if(concurrentRequests > maxConcurrentRequests) {
-						maxConcurrentRequests = concurrentRequests;
+				totalRejectedRequests.increment();
+				priorityRejectedRequests[priority.ordinal()].increment();
+				logConcurrentEvent("reject", localConcurrentRequests+1);
+				ServiceFlightRecorder.admission(bulkheadName, tenantId, priority, "reject", 0, localConcurrentRequests+1);
+				return Admission.REJECTED;
+			}
+		} while(!concurrentRequests.compareAndSet(localConcurrentRequests, localConcurrentRequests+1));
+		localConcurrentRequests++;
+		updateMaxConcurrentRequests(localConcurrentRequests);
+
+		// Only take a permit ahead of queued requests when none are waiting
+		if(!concurrentBlockingThresholdEnabled || (queuedRequests.get() == 0 && tryAcquirePermit(cost))) {
+			if(share != null) {
+				share.admitted();
+			}
+			return Admission.ADMITTED;
+		}
+
+		try {
+			waiter.suspend();
+		}
+		catch(RuntimeException e) {
+			concurrentRequests.decrementAndGet();
+			if(share != null) {
+				share.removeRequest(false);
+			}
+			throw e;
+		}
+		QueuedWaiter queued = new QueuedWaiter(waiter, share, tenantId, priority, cost, System.nanoTime());
+		if(share != null) {
+			fairShare.enqueue(queued, queuedRequests);
+		}
+		else {
+			queuedRequests.incrementAndGet();
+			waiters.get(priority.ordinal()).offerLast(queued);
+		}
+		totalBlockedRequests.increment();
+		// A permit may have been released before the waiter was queued
+		drainWaiters();
+		logConcurrentEvent("block", localConcurrentRequests);
+		return Admission.QUEUED;
+	}
+
+	/**
+	 * Remove a queued request that gave up waiting for a permit.
+	 * @param waiter Queued waiter
+	 * @return true if removed, false if it already was handed a permit or rejected
+	 */
+	public boolean cancelRequest(AdmissionWaiter waiter) {
+		return cancelRequest(waiter, false);
+	}
+
+	/**
+	 * Remove a queued request that gave up waiting for a permit.
+	 * @param waiter Queued waiter
+	 * @param timedOut true if the request waited longer than the queue timeout and is rejected
+	 * @return true if removed, false if it already was handed a permit or rejected
+	 */
+	public boolean cancelRequest(AdmissionWaiter waiter, boolean timedOut) {
+		QueuedWaiter queued = null;
+		if(fairShare != null) {
+			queued = fairShare.remove(waiter, queuedRequests);
+		}
+		else {
+			search:
+			for(ConcurrentLinkedDeque<QueuedWaiter> priorityWaiters : waiters) {
+				for(QueuedWaiter item : priorityWaiters) {
+					if(item.waiter == waiter) {
+						if(priorityWaiters.removeFirstOccurrence(item)) {
+							queuedRequests.decrementAndGet();
+							queued = item;
+						}
+						break search;
 					}
 				}
 			}
+		}
+		if(queued == null) {
+			return false;
+		}
+
+		long waitNanos = System.nanoTime() - queued.enqueuedNanos;
+		queueTimeHistogram.record(waitNanos);
+		concurrentRequests.decrementAndGet();
+		if(queued.share != null) {
+			queued.share.removeRequest(false);
+		}
+		if(timedOut) {
+			if(queued.share != null) {
+				queued.share.rejected();
+			}
+			totalTimedOutRequests.increment();
+			logConcurrentEvent("timeout", concurrentRequests.get());
+			ServiceFlightRecorder.admission(bulkheadName, queued.tenantId, queued.priority, "timeout", waitNanos,
+					concurrentRequests.get());
+		}
+		return true;
+	}
 
-			if(acquired && concurrentBlockingThresholdEnabled) {
-				// Block if semaphore limit is met
-				try {
-					if(concurrentBlockingSema.availablePermits() <= 0){
-						// Since we can't lock on the concurrentBlockingSema, this count might be off slightly
-						// if the permit count changes before acquire is called.
-						totalBlockedRequests++;
-						logConcurrentEvent("block", localConcurrentRequests);
-						//System.out.println("blocking, current req="+concurrentRequests+", total blocked="+totalBlockedRequests);
-					}
-					concurrentBlockingSema.acquire(); // Will block if limit hit
+	/**
+	 * Release the permit of a completed request.  If requests are queued the permit is handed
+	 * to the oldest one.
+	 */
+	public void releaseRequest() {
+		releaseRequest(null, -1);
+	}
+
+	/**
+	 * Release the permit of a completed request and record its latency for the adaptive limit.
+	 * @param latencyNanos Time the request held its permit, negative if not known
+	 * @see #releaseRequest(String, long)
+	 */
+	public void releaseRequest(long latencyNanos) {
+		releaseRequest(null, latencyNanos);
+	}
+
+	/**
+	 * Release the permit of a completed request and record its latency for the adaptive limit.
+	 * If requests are queued the permit is handed to the oldest one, or to the next tenant in fair share order.
+	 * @param tenantId Tenant ID passed when the request was admitted
+	 * @param latencyNanos Time the request held its permit, negative if not known
+	 */
+	public void releaseRequest(String tenantId, long latencyNanos) {
+		releaseRequest(tenantId, 1, latencyNanos);
+	}
+
+	/**
+	 * Release the permit of a completed request with a cost.
+	 * @param tenantId Tenant ID passed when the request was admitted
+	 * @param cost Cost passed when the request was admitted
+	 * @param latencyNanos Time the request held its permit, negative if not known
+	 * @see #releaseRequest(String, long)
+	 */
+	public void releaseRequest(String tenantId, int cost, long latencyNanos) {
+		if(!concurrentThresholdEnabled) {
+			return;
+		}
+
+		if(fairShare != null) {
+			fairShare.getShare(tenantId).removeRequest(true);
+		}
+		if(latencyNanos >= 0) {
+			// Racy update, a lost sample does not matter for an average
+			double average = averageLatencyNanos;
+			averageLatencyNanos = average == 0 ? latencyNanos : average + (latencyNanos - average) * LATENCY_SMOOTHING;
+		}
+		// TODO stop from going negative?
+		concurrentRequests.decrementAndGet();
+		if(concurrentBlockingThresholdEnabled) {
+			runningCost.addAndGet(-cost);
+			int running = runningRequests.getAndDecrement();
+			if(adaptiveLimit != null && latencyNanos >= 0) {
+				adaptiveLimit.sample(latencyNanos, running);
+			}
+			drainWaiters();
+		}
+	}
+
+	/**
+	 * Hand free permits to queued requests.  Called after a permit is released and after a request is
+	 * queued, so a waiter is never left queued while a permit is free.
+	 */
+	private void drainWaiters() {
+		while(queuedRequests.get() > 0 && tryAcquirePermit()) {
+			long cost = runningCost.get();
+			QueuedWaiter next = pollWaiter();
+			if(next == null) {
+				// Taken by another thread or not queued yet, the queuing thread drains again.  Or the next
+				// waiter does not fit under the cost limit, try again if a request completed meanwhile since
+				// this thread held the permit it may have needed.
+				runningRequests.decrementAndGet();
+				if(runningCost.get() < cost) {
+					continue;
 				}
-				catch(InterruptedException e) {
-					// Just continue
+				break;
+			}
+			if(next.share != null) {
+				next.share.admitted();
+			}
+			try {
+				next.waiter.resume();
+			}
+			catch(RuntimeException e) {
+				// The waiter can no longer run, pass the permit on
+				logger.warn("Unable to resume queued request: "+e);
+				if(next.share != null) {
+					next.share.removeRequest(true);
 				}
+				concurrentRequests.decrementAndGet();
+				runningCost.addAndGet(-next.cost);
+				runningRequests.decrementAndGet();
 			}
 		}
+	}
 
-		return acquired;
+	/**
+	 * Take the next waiter to hand a permit to in queue policy order and reserve its cost.  Waiters over the
+	 * queue timeout, and with the codel policy waiters over the target while the queue is congested, are
+	 * rejected on the way.
+	 * @return Waiter or null if none are queued or the next waiter does not fit under the cost limit
+	 */
+	private QueuedWaiter pollWaiter() {
+		while(true) {
+			boolean newest = queuePolicy == QueuePolicy.LIFO && congested;
+			QueuedWaiter next;
+			if(fairShare != null) {
+				next = fairShare.poll(newest, queuedRequests, this::tryReserveCost);
+			}
+			else {
+				next = pollPriorityWaiter(newest);
+			}
+			if(next == null) {
+				return null;
+			}
+
+			long now = System.nanoTime();
+			long waitNanos = now - next.enqueuedNanos;
+			queueTimeHistogram.record(waitNanos);
+			if(!newest) {
+				updateCongestion(waitNanos, now);
+			}
+			if(queuedRequests.get() == 0) {
+				// An empty queue is not congested
+				aboveTarget = false;
+				congested = false;
+			}
+
+			if((queueTimeoutNanos > 0 && waitNanos >= queueTimeoutNanos) ||
+					(queuePolicy == QueuePolicy.CODEL && congested && waitNanos > queueTargetNanos)) {
+				runningCost.addAndGet(-next.cost);
+				expire(next, waitNanos);
+				continue;
+			}
+			// The queue time of a blocked request is known once it leaves the queue
+			ServiceFlightRecorder.admission(bulkheadName, next.tenantId, next.priority, "block", waitNanos,
+					concurrentRequests.get());
+			return next;
+		}
 	}
 
-	public void releaseRequest() {
-		if(concurrentThresholdEnabled) {
-			if(concurrentBlockingThresholdEnabled) {
-				concurrentBlockingSema.release();
+	/**
+	 * Take the next waiter of the highest priority with waiters without fair share.  The cost is reserved
+	 * before the waiter is removed, so a waiter that does not fit stays at the head of the queue.
+	 */
+	private QueuedWaiter pollPriorityWaiter(boolean newest) {
+		for(int i = 0; i < waiters.size(); i++) {
+			ConcurrentLinkedDeque<QueuedWaiter> priorityWaiters = waiters.get(i);
+			QueuedWaiter next;
+			while((next = newest ? priorityWaiters.peekLast() : priorityWaiters.peekFirst()) != null) {
+				if(!tryReserveCost(next.cost)) {
+					return null;
+				}
+				if(newest ? priorityWaiters.removeLastOccurrence(next) : priorityWaiters.removeFirstOccurrence(next)) {
+					queuedRequests.decrementAndGet();
+					return next;
+				}
+				// Taken or cancelled by another thread
+				runningCost.addAndGet(-next.cost);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The queue is congested once waiters have waited longer than the target for a whole interval, and
+	 * no longer congested when a waiter is under the target.  The state is updated without a lock, a lost
+	 * update only delays the change by one waiter.
+	 */
+	private void updateCongestion(long waitNanos, long now) {
+		if(queuePolicy == QueuePolicy.FIFO) {
+			return;
+		}
+		if(waitNanos <= queueTargetNanos) {
+			aboveTarget = false;
+			congested = false;
+		}
+		else if(!aboveTarget) {
+			firstAboveTargetNanos = now;
+			aboveTarget = true;
+		}
+		else if(now - firstAboveTargetNanos >= queueIntervalNanos) {
+			congested = true;
+		}
+	}
+
+	/**
+	 * Reject a waiter taken from the queue
+	 */
+	private void expire(QueuedWaiter queued, long waitNanos) {
+		concurrentRequests.decrementAndGet();
+		if(queued.share != null) {
+			queued.share.removeRequest(false);
+			queued.share.rejected();
+		}
+		totalTimedOutRequests.increment();
+		try {
+			queued.waiter.reject();
+		}
+		catch(RuntimeException e) {
+			logger.warn("Unable to reject queued request: "+e);
+		}
+		logConcurrentEvent("timeout", concurrentRequests.get());
+		ServiceFlightRecorder.admission(bulkheadName, queued.tenantId, queued.priority, "timeout", waitNanos,
+				concurrentRequests.get());
+	}
+
+	/**
+	 * Reserve the cost of a request and take a blocking permit
+	 * @return true if both were taken
+	 */
+	private boolean tryAcquirePermit(int cost) {
+		if(!tryReserveCost(cost)) {
+			return false;
+		}
+		if(!tryAcquirePermit()) {
+			runningCost.addAndGet(-cost);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Add the cost of a request to the running cost if it fits under the cost limit.  A request that
+	 * costs more than the limit on its own is only reserved while no cost is running.
+	 */
+	private boolean tryReserveCost(int cost) {
+		long limit = enforced ? concurrentCostLimit : 0;
+		long running;
+		do {
+			running = runningCost.get();
+			if(limit > 0 && running > 0 && running + cost > limit) {
+				return false;
+			}
+		} while(!runningCost.compareAndSet(running, running+cost));
+		return true;
+	}
+
+	/**
+	 * Take a blocking permit, the cost is reserved separately since with queued requests it is only known
+	 * once the waiter is taken from the queue
+	 */
+	private boolean tryAcquirePermit() {
+		if(!enforced) {
+			runningRequests.incrementAndGet();
+			return true;
+		}
+		// Under heap pressure requests are queued and run one at a time until the pressure is gone
+		int limit = heapPressure != null && heapPressure.isUnderPressure() ? 1 : getConcurrentLimit();
+		int running;
+		do {
+			running = runningRequests.get();
+			if(running >= limit) {
+				return false;
+			}
+		} while(!runningRequests.compareAndSet(running, running+1));
+		return true;
+	}
+
+	private void updateMaxConcurrentRequests(int count) {
+		int max;
+		do {
+			max = maxConcurrentRequests.get();
+			if(count <= max) {
+				return;
+			}
+		} while(!maxConcurrentRequests.compareAndSet(max, count));
+	}
+
+	private static int getIntProperty(Properties serviceProperties, String name, int defaultValue) {
+		String value = serviceProperties.getProperty(name);
+		if(value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		}
+		catch(NumberFormatException e) {
+			logger.error("Format exception for service property \""+name+"\", value="+value);
+			throw new IllegalArgumentException("Format exception for service property "+name+", value="+value, e);
+		}
+	}
+
+	/**
+	 * Waiter that parks the calling thread
+	 */
+	private static final class BlockingWaiter implements AdmissionWaiter {
+		private CountDownLatch granted;
+		private volatile boolean rejected;
+
+		@Override
+		public void suspend() {
+			granted = new CountDownLatch(1);
+		}
+
+		@Override
+		public void resume() {
+			granted.countDown();
+		}
+
+		@Override
+		public void reject() {
+			rejected = true;
+			granted.countDown();
+		}
+
+		/**
+		 * Wait for a permit until the queue timeout of the limit
+		 * @return true if a permit was handed to the request, false if it was rejected
+		 */
+		private boolean await(ServiceConcurrentLimit limit) {
+			// The permit is handed over by releaseRequest(), so keep waiting if interrupted
+			long timeoutNanos = limit.queueTimeoutNanos;
+			long deadline = System.nanoTime() + timeoutNanos;
+			boolean interrupted = false;
+			while(true) {
+				try {
+					if(timeoutNanos <= 0) {
+						granted.await();
+						break;
+					}
+					if(granted.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+						break;
+					}
+					if(limit.cancelRequest(this, true)) {
+						rejected = true;
+						break;
+					}
+					// Handed a permit or rejected meanwhile, the latch opens right away
+					timeoutNanos = 0;
+				}
+				catch(InterruptedException e) {
+					interrupted = true;
+				}
 			}
-			synchronized(concurrentRequestsLock) {
-				// TODO stop from going negative?
-				concurrentRequests--;
+			if(interrupted) {
+				Thread.currentThread().interrupt();
 			}
+			return !rejected;
 		}
 	}
 
 	/**
 	 * Log a concurrent event
-	 * This method makes a log entry when there is a concurrent limit or blocking event.
+	 * This method makes a log entry when there is a concurrent limit or blocking event, or counts the event
+	 * for the summary of the interval if an event of the type was already logged in the interval.
 	 * @param type Type of event, limit or block
 	 * @param localConcurrentRequests Concurrent request count at time of log call
 	 */
 	protected void logConcurrentEvent(String type, int localConcurrentRequests) {
+		if(eventLog != null) {
+			eventLog.record(type, localConcurrentRequests);
+		}
+		else {
+			writeConcurrentEvent(type, localConcurrentRequests, 1);
+		}
+	}
+
+	/**
+	 * Log an event or a summary of events of a type
+	 * @param type Event type
+	 * @param localConcurrentRequests Concurrent requests of the event, or the peak of the summarized events
+	 * @param count Number of events
+	 */
+	protected void writeConcurrentEvent(String type, int localConcurrentRequests, long count) {
 
 		Runtime rt = Runtime.getRuntime();
 		// TODO Could these values change between calls?
@@ -299,14 +1537,25 @@ public class ServiceConcurrentLimit {
 		// Build message key/values for logstash
 		ServiceLogKvBuilder messageKv = new ServiceLogKvBuilder();
 		messageKv.addKv(ServiceLogKvBuilder.KV_KEY_CONCURRENT_EVENT, type);
+		if(bulkheadName != null) {
+			messageKv.addKv(ServiceLogKvBuilder.KV_KEY_CONCURRENT_BULKHEAD, bulkheadName);
+		}
 		messageKv.addKv(ServiceLogKvBuilder.KV_KEY_CONCURRENT_REQ, Integer.toString(localConcurrentRequests));
-		messageKv.addKv(ServiceLogKvBuilder.KV_KEY_CONCURRENT_BLOCKS, Long.toString(totalBlockedRequests));
-		messageKv.addKv(ServiceLogKvBuilder.KV_KEY_CONCURRENT_REJECTS, Long.toString(totalRejectedRequests));
+		messageKv.addKv(ServiceLogKvBuilder.KV_KEY_CONCURRENT_EVENT_COUNT, Long.toString(count));
+		messageKv.addKv(ServiceLogKvBuilder.KV_KEY_CONCURRENT_BLOCKS, Long.toString(totalBlockedRequests.sum()));
+		messageKv.addKv(ServiceLogKvBuilder.KV_KEY_CONCURRENT_REJECTS, Long.toString(totalRejectedRequests.sum()));
+		if(concurrentCostLimit > 0) {
+			messageKv.addKv(ServiceLogKvBuilder.KV_KEY_CONCURRENT_COST, Long.toString(runningCost.get()));
+		}
 		messageKv.addKv(ServiceLogKvBuilder.KV_KEY_HEAP_MAX, Long.toString(heapMax));;
 		messageKv.addKv(ServiceLogKvBuilder.KV_KEY_HEAP_COMMIT, Long.toString(heapCommit));
 		messageKv.addKv(ServiceLogKvBuilder.KV_KEY_HEAP_INUSE, Long.toString(heapInUse));
+		if(heapPressure != null) {
+			messageKv.addKv(ServiceLogKvBuilder.KV_KEY_HEAP_AFTER_GC, Integer.toString(heapPressure.getHeapOccupancyPercent()));
+			messageKv.addKv(ServiceLogKvBuilder.KV_KEY_GC_TIME, Integer.toString(heapPressure.getGcTimePercent()));
+		}
 
-		logger.info("Concurrent event: "+type+messageKv);
+		logger.info((count > 1 ? "Concurrent event summary: " : "Concurrent event: ")+type+messageKv);
 	}
 
 }
@@ -0,0 +1,189 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.watson.service.base.model.ConcurrentLimitSettings;
+import com.ibm.watson.service.base.model.ServiceError;
+
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+
+/**
+ * Admin resource to view and change the concurrent limit settings at runtime, so a node can be tuned under
+ * load without a restart.  Changes are not saved, a restart goes back to the service properties.  The same
+ * settings can be changed through the {@link ServiceConcurrentLimitMXBean}.
+ *
+ * The resource is disabled unless an admin API key is configured, and each request must pass the key in the
+ * x-admin-api-key header.
+ *
+ *  com_ibm_watson_health_common_admin_api_key - Key of the admin resources.  The default is none, which disables them.
+ *
+ * Like {@link ServiceStatusHandler}, this class must be extended so that the @Path and @Api annotations
+ * get set in the extended class with the version prefix.
+ */
+//@Path("admin/concurrent_limit")  // Put this on the extended class with major version prefix
+//@Api(value = "admin")  // Put this on the extended class
+public abstract class ServiceConcurrentLimitHandler {
+	private static final Logger logger = LoggerFactory.getLogger(ServiceConcurrentLimitHandler.class.getName());
+
+	public static final String ADMIN_API_KEY_PROPERTY = "com_ibm_watson_health_common_admin_api_key";
+	public static final String HEADER_ADMIN_API_KEY = "x-admin-api-key";
+	public static final String PARAM_BULKHEAD = "bulkhead";
+
+	/**
+	 * Get the settings of the concurrent limit and its bulkheads
+	 * @param apiKey Admin API key
+	 * @return Settings of the main limit if enabled followed by the bulkheads
+	 */
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	@ApiOperation(value = "Get the concurrent limit settings", response = ConcurrentLimitSettings.class, responseContainer = "List")
+	@ApiResponses(value = {
+			@ApiResponse(code = 403, message = "Admin API key missing or not valid", response=ServiceError.class)
+	})
+	public Response getConcurrentLimitSettings(
+			@HeaderParam(HEADER_ADMIN_API_KEY)
+			@ApiParam(value = "Admin API key")
+			String apiKey) {
+		Response denied = checkApiKey(apiKey);
+		if(denied != null) {
+			return denied;
+		}
+
+		List<ConcurrentLimitSettings> settings = new ArrayList<>();
+		ServiceConcurrentLimit concurrentLimit = ServiceContext.getConcurrentLimit();
+		if(concurrentLimit != null) {
+			if(concurrentLimit.isConcurrentThresholdEnabled()) {
+				settings.add(getSettings(concurrentLimit));
+			}
+			for(ServiceConcurrentLimit bulkhead : concurrentLimit.getBulkheads()) {
+				settings.add(getSettings(bulkhead));
+			}
+		}
+		return Response.ok(settings).build();
+	}
+
+	/**
+	 * Change the settings of the concurrent limit or of a bulkhead.  Fields that are not set are not changed.
+	 * @param apiKey Admin API key
+	 * @param bulkheadName Bulkhead name, empty for the main limit
+	 * @param update New settings
+	 * @return Settings after the change
+	 */
+	@PUT
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	@ApiOperation(value = "Change the concurrent limit settings", response = ConcurrentLimitSettings.class)
+	@ApiResponses(value = {
+			@ApiResponse(code = 400, message = "Settings not valid, nothing was changed", response=ServiceError.class),
+			@ApiResponse(code = 403, message = "Admin API key missing or not valid", response=ServiceError.class),
+			@ApiResponse(code = 404, message = "Bulkhead not found", response=ServiceError.class),
+			@ApiResponse(code = 409, message = "Concurrent limit not enabled in the service properties", response=ServiceError.class)
+	})
+	public Response updateConcurrentLimitSettings(
+			@HeaderParam(HEADER_ADMIN_API_KEY)
+			@ApiParam(value = "Admin API key")
+			String apiKey,
+			@QueryParam(PARAM_BULKHEAD)
+			@DefaultValue("")
+			@ApiParam(value = "Bulkhead name, the main limit if not set")
+			String bulkheadName,
+			@ApiParam(value = "New settings, fields that are not set are not changed", required = true)
+			ConcurrentLimitSettings update) {
+		Response denied = checkApiKey(apiKey);
+		if(denied != null) {
+			return denied;
+		}
+		if(update == null) {
+			return error(Status.BAD_REQUEST, "Settings are required");
+		}
+
+		ServiceConcurrentLimit limit = ServiceContext.getConcurrentLimit();
+		if(limit != null && !bulkheadName.isEmpty()) {
+			ServiceConcurrentLimit match = null;
+			for(ServiceConcurrentLimit bulkhead : limit.getBulkheads()) {
+				if(bulkhead.getBulkheadName().equals(bulkheadName)) {
+					match = bulkhead;
+				}
+			}
+			if(match == null) {
+				return error(Status.NOT_FOUND, "Bulkhead "+bulkheadName+" is not configured");
+			}
+			limit = match;
+		}
+		if(limit == null) {
+			return error(Status.CONFLICT, "The concurrent limit is not enabled in the service properties");
+		}
+
+		try {
+			limit.updateSettings(update.getRejectThreshold(), update.getBlockingThreshold(), update.getCostLimit(),
+					update.getUriPatterns(), update.getEnforced());
+		}
+		catch(IllegalStateException e) {
+			return error(Status.CONFLICT, e.getMessage());
+		}
+		catch(IllegalArgumentException e) {
+			return error(Status.BAD_REQUEST, e.getMessage());
+		}
+		return Response.ok(getSettings(limit)).build();
+	}
+
+	private static ConcurrentLimitSettings getSettings(ServiceConcurrentLimit limit) {
+		ConcurrentLimitSettings settings = new ConcurrentLimitSettings();
+		settings.setBulkhead(limit.getBulkheadName());
+		settings.setEnforced(limit.isEnforced());
+		settings.setRejectThreshold(limit.getConcurrentRejectThreshold());
+		settings.setBlockingThreshold(limit.getConcurrentBlockingThreshold());
+		settings.setCostLimit(limit.getConcurrentCostLimit());
+		settings.setUriPatterns(limit.getConcurrentUriPatternList());
+		return settings;
+	}
+
+	/**
+	 * Check the admin API key in constant time
+	 * @return null if the key is valid, otherwise the 403 response
+	 */
+	private static Response checkApiKey(String apiKey) {
+		String expected = ServiceContext.getInstance().getServiceProperties().getProperty(ADMIN_API_KEY_PROPERTY, "").trim();
+		if(expected.isEmpty()) {
+			return error(Status.FORBIDDEN, "Admin resources are not enabled");
+		}
+		if(apiKey == null || !MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), apiKey.getBytes(StandardCharsets.UTF_8))) {
+			logger.warn("Admin request with a missing or invalid API key");
+			return error(Status.FORBIDDEN, "Admin API key missing or not valid");
+		}
+		return null;
+	}
+
+	private static Response error(Status status, String description) {
+		ServiceError se = new ServiceError().
+				setCode(status.getStatusCode()).
+				setMessage(status.getReasonPhrase()).
+				setDescription(description);
+		return Response.status(se.getCode()).entity(se).build();
+	}
+}
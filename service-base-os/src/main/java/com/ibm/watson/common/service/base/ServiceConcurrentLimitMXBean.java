@@ -0,0 +1,63 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.util.List;
+
+/**
+ * Management interface of a {@link ServiceConcurrentLimit}.  The main limit is registered as
+ * com.ibm.watson.common.service.base:type=ServiceConcurrentLimit,context="&lt;context root&gt;" and each bulkhead
+ * with an added bulkhead="&lt;name&gt;" key.  They are unregistered when the application stops.
+ *
+ * The setters change the limit while requests are in flight.  Changes are not saved, a restart goes back to
+ * the service properties.
+ */
+public interface ServiceConcurrentLimitMXBean {
+
+	/**
+	 * @return Bulkhead name or null for the main limit
+	 */
+	String getBulkheadName();
+
+	/**
+	 * @return false if requests are counted but never blocked or rejected
+	 */
+	boolean isEnforced();
+
+	void setEnforced(boolean enforced);
+
+	int getConcurrentRejectThreshold();
+
+	void setConcurrentRejectThreshold(int rejectThreshold);
+
+	int getConcurrentBlockingThreshold();
+
+	void setConcurrentBlockingThreshold(int blockingThreshold);
+
+	long getConcurrentCostLimit();
+
+	void setConcurrentCostLimit(long costLimit);
+
+	List<String> getConcurrentUriPatternList();
+
+	void setConcurrentUriPatternList(List<String> uriPatterns);
+
+	int getConcurrentLimit();
+
+	int getConcurrentRequests();
+
+	int getMaxConcurrentRequests();
+
+	int getQueuedRequests();
+
+	long getRunningCost();
+
+	long getTotalRejectedRequests();
+
+	long getTotalBlockedRequests();
+
+	long getTotalTimedOutRequests();
+}
@@ -25,6 +25,8 @@ import javax.ws.rs.core.UriInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.ibm.watson.common.service.base.security.TenantCache;
+
 /**
  * Singleton object to store service properties for global access.
  *
@@ -46,6 +48,14 @@ public class ServiceContext {
 
 	private static ServiceConcurrentLimit concurrentLimit;
 
+	private static TenantCache tenantCache;
+
+	private static ServiceFastLane fastLane;
+
+	private static ServiceRateLimit rateLimit;
+	private static RequestCostPolicy requestCostPolicy;
+	private static JvmRuntimeSampler jvmSampler;
+
 	private String contextRoot;
 	private Properties serviceProperties;
 	private String externalVersion = "0.0.0";
@@ -165,6 +175,21 @@ public class ServiceContext {
 			// TODO - catch exception here?????
 			concurrentLimit = ServiceConcurrentLimit.createInstance(serviceProperties);
 
+			// Create tenant cache object
+			tenantCache = TenantCache.createInstance(serviceProperties);
+
+			// Create fast lane object
+			fastLane = ServiceFastLane.createInstance(serviceProperties);
+
+			// Create rate limit object
+			rateLimit = ServiceRateLimit.createInstance(serviceProperties);
+
+			// Create request cost policy object
+			requestCostPolicy = RequestCostPolicy.createInstance(serviceProperties);
+
+			// Create JVM runtime sampler object
+			jvmSampler = JvmRuntimeSampler.createInstance(serviceProperties);
+
 			// Process tenant related properties
 
 			// Get and validate authentication type property
@@ -202,6 +227,11 @@ public class ServiceContext {
 			}
 			logger.info("Property: " + ENABLE_METRICS_PROPERTY + "=" + enableMetricsProperty);
 			enableMetrics = Boolean.parseBoolean(enableMetricsProperty);
+
+			// Create the default metrics, the service may replace them with setServiceMetrics()
+			if(enableMetrics && serviceMetrics == null) {
+				serviceMetrics = DefaultServiceMetrics.createInstance(serviceProperties);
+			}
 			
 		}
 		catch(Throwable e) {
@@ -320,6 +350,26 @@ public class ServiceContext {
 		return concurrentLimit;
 	}
 
+	public static TenantCache getTenantCache() {
+		return tenantCache;
+	}
+
+	public static ServiceFastLane getFastLane() {
+		return fastLane;
+	}
+
+	public static ServiceRateLimit getRateLimit() {
+		return rateLimit;
+	}
+
+	public static RequestCostPolicy getRequestCostPolicy() {
+		return requestCostPolicy;
+	}
+
+	public static JvmRuntimeSampler getJvmSampler() {
+		return jvmSampler;
+	}
+
     public static String getBaseRelativePath(HttpServletRequest req, UriInfo uriInfo){
     	String datapowerUrl = req.getHeader(HEADER_X_WATSON_DP_URL_IN);
     	if(datapowerUrl!=null && !datapowerUrl.isEmpty()){
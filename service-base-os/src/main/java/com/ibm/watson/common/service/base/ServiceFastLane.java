@@ -0,0 +1,263 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.MediaType;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Fast lane for Kubernetes probes and other status requests.  Requests matching the fast lane URI patterns
+ * skip the tenant, header capture, logging, metrics and concurrent limit processing of MainServletFilter,
+ * so probes are never queued behind admission control.
+ *
+ * The status handler publishes a JSON snapshot of each status response it builds.  A fast lane request
+ * is answered from the snapshot without reaching the REST layer when the snapshot is younger than the maximum age,
+ * or younger than the maximum stale age while the service is saturated (the concurrent limit has no free permits).
+ * Otherwise the request goes to the status handler, which refreshes the snapshot.  Only JSON responses are served
+ * from snapshots.
+ *
+ *  com_ibm_watson_health_common_fast_lane_uri_pattern_list - A list of regular expression patterns to match
+ *  								incoming REST URIs that use the fast lane.  The patterns are separated
+ *  								with \\, like the concurrent URI pattern list.  An empty value disables the fast lane.
+ *  								The default matches /vN/status, /vN/status/health_check and /vN/status/metrics.
+ *  com_ibm_watson_health_common_fast_lane_snapshot_max_age_ms - Maximum age of a snapshot served to a fast lane request
+ *  								while the service is not saturated.  A value of zero disables snapshots.
+ *  								The default is 1000.
+ *  com_ibm_watson_health_common_fast_lane_snapshot_max_stale_ms - Maximum age of a snapshot served to a fast lane request
+ *  								while the service is saturated.  Older snapshots are never served, so a service that
+ *  								stays saturated cannot report a stale status forever.  Must be >= the maximum age.
+ *  								The default is 30000.
+ */
+public class ServiceFastLane {
+	private static final Logger logger = LoggerFactory.getLogger(ServiceFastLane.class.getName());
+
+	public static final String FAST_LANE_URI_PATTERN_LIST = "com_ibm_watson_health_common_fast_lane_uri_pattern_list";
+	public static final String FAST_LANE_SNAPSHOT_MAX_AGE = "com_ibm_watson_health_common_fast_lane_snapshot_max_age_ms";
+	public static final String FAST_LANE_SNAPSHOT_MAX_STALE = "com_ibm_watson_health_common_fast_lane_snapshot_max_stale_ms";
+	public static final String FAST_LANE_URI_PATTERN_LIST_DEFAULT = "/v[0-9]+/status(/health_check|/metrics)?/?";
+	public static final long FAST_LANE_SNAPSHOT_MAX_AGE_DEFAULT = 1000;
+	public static final long FAST_LANE_SNAPSHOT_MAX_STALE_DEFAULT = 30000;
+
+	private static final String FORMAT_PARAMETER = "format";
+	private static final String LIVENESS_CHECK_PARAMETER = "liveness_check";
+	private static final String HEALTH_CHECK_SUFFIX = "/health_check";
+	private static final String METRICS_SUFFIX = "/metrics";
+
+	/**
+	 * Status responses that are published as snapshots
+	 */
+	public enum SnapshotType {
+		STATUS,			// GET status
+		LIVENESS_CHECK,	// GET status?liveness_check=true
+		HEALTH_CHECK	// GET status/health_check
+	}
+
+	private static volatile ServiceFastLane instance;
+
+	private final List<Pattern> uriPatternList = new ArrayList<>();
+	private final long snapshotMaxAgeNanos;
+	private final long snapshotMaxStaleNanos;
+	private final ObjectMapper mapper = new ObjectMapper().setSerializationInclusion(Include.NON_NULL);
+	private final AtomicReferenceArray<Snapshot> snapshots = new AtomicReferenceArray<>(SnapshotType.values().length);
+
+	private static final class Snapshot {
+		private final int status;
+		private final byte[] body;
+		private final long createdNanos;
+
+		private Snapshot(int status, byte[] body) {
+			this.status = status;
+			this.body = body;
+			createdNanos = System.nanoTime();
+		}
+	}
+
+	public static synchronized ServiceFastLane createInstance(Properties serviceProperties) {
+		if(instance != null) {
+			throw new IllegalStateException("Cannot create ServiceFastLane instance more that once.");
+		}
+
+		instance = new ServiceFastLane(serviceProperties);
+		return instance;
+	}
+
+	public static ServiceFastLane getInstance() {
+		return instance;
+	}
+
+	private ServiceFastLane(Properties serviceProperties) {
+		try {
+			String uriList = serviceProperties.getProperty(FAST_LANE_URI_PATTERN_LIST, FAST_LANE_URI_PATTERN_LIST_DEFAULT);
+			logger.info("Fast lane URI pattern property: "+uriList);
+			for(String item : uriList.split("\\\\,")) { // delimiter is \\, in a properties file
+				item = item.trim();
+				if(!item.isEmpty()) {
+					uriPatternList.add(Pattern.compile(item));
+				}
+			}
+		}
+		catch(PatternSyntaxException e) {
+			logger.error("Invalid fast lane URI pattern: "+e);
+			throw e;
+		}
+
+		long maxAge = getMillisProperty(serviceProperties, FAST_LANE_SNAPSHOT_MAX_AGE, FAST_LANE_SNAPSHOT_MAX_AGE_DEFAULT);
+		long maxStale = getMillisProperty(serviceProperties, FAST_LANE_SNAPSHOT_MAX_STALE, Math.max(maxAge, FAST_LANE_SNAPSHOT_MAX_STALE_DEFAULT));
+		if(maxStale < maxAge) {
+			logger.error("Service property "+FAST_LANE_SNAPSHOT_MAX_STALE+"="+maxStale+" is less than "+FAST_LANE_SNAPSHOT_MAX_AGE+"="+maxAge);
+			throw new IllegalArgumentException("Service property "+FAST_LANE_SNAPSHOT_MAX_STALE+"="+maxStale+" is less than "+
+					FAST_LANE_SNAPSHOT_MAX_AGE+"="+maxAge);
+		}
+		snapshotMaxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAge);
+		snapshotMaxStaleNanos = TimeUnit.MILLISECONDS.toNanos(maxStale);
+	}
+
+	private static long getMillisProperty(Properties serviceProperties, String name, long defaultValue) {
+		String property = serviceProperties.getProperty(name, Long.toString(defaultValue));
+		try {
+			long value = Long.parseLong(property.trim());
+			if(value < 0) {
+				throw new NumberFormatException("Value must not be negative");
+			}
+			logger.info("Property "+name+"="+value);
+			return value;
+		}
+		catch(NumberFormatException e) {
+			logger.error("Format exception for service property \""+name+"\", value="+property);
+			throw new IllegalArgumentException("Format exception for service property "+name+", value="+property, e);
+		}
+	}
+
+	public boolean isEnabled() {
+		return !uriPatternList.isEmpty();
+	}
+
+	public boolean isSnapshotEnabled() {
+		return snapshotMaxAgeNanos > 0;
+	}
+
+	/**
+	 * Get the fast lane URI patterns
+	 * @return Patterns
+	 */
+	public List<Pattern> getUriPatterns() {
+		return Collections.unmodifiableList(uriPatternList);
+	}
+
+	/**
+	 * Check if a request URI uses the fast lane
+	 * @param uri Request path info
+	 * @return true if the URI matches a fast lane pattern
+	 */
+	public boolean isFastLaneRequest(String uri) {
+		if(uri == null) {
+			return false;
+		}
+		for(Pattern item : uriPatternList) {
+			if(item.matcher(uri).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Publish the response of a status request as a snapshot
+	 * @param type Snapshot type
+	 * @param status HTTP status code of the response
+	 * @param entity Response entity, serialized to JSON
+	 */
+	public void updateSnapshot(SnapshotType type, int status, Object entity) {
+		if(!isSnapshotEnabled()) {
+			return;
+		}
+		try {
+			snapshots.set(type.ordinal(), new Snapshot(status, mapper.writeValueAsBytes(entity)));
+		}
+		catch(JsonProcessingException e) {
+			logger.warn("Unable to serialize status snapshot: "+e);
+		}
+	}
+
+	/**
+	 * Answer a fast lane request from a snapshot if possible
+	 *
+	 * @param request Fast lane request
+	 * @param response Response to write
+	 * @param saturated true if the service has no free capacity
+	 * @return true if the response was written, false if the request must be passed on
+	 * @throws IOException
+	 */
+	public boolean writeSnapshot(HttpServletRequest request, HttpServletResponse response, boolean saturated) throws IOException {
+		if(!isSnapshotEnabled() || !"GET".equals(request.getMethod()) || !acceptsJson(request)) {
+			return false;
+		}
+
+		SnapshotType type;
+		String uri = request.getPathInfo();
+		if(uri.endsWith(METRICS_SUFFIX) || uri.endsWith(METRICS_SUFFIX+"/")) {
+			// Metrics are read from the counters, there is no snapshot
+			return false;
+		}
+		else if(uri.endsWith(HEALTH_CHECK_SUFFIX) || uri.endsWith(HEALTH_CHECK_SUFFIX+"/")) {
+			type = SnapshotType.HEALTH_CHECK;
+		}
+		else {
+			String livenessCheck = request.getParameter(LIVENESS_CHECK_PARAMETER);
+			if(livenessCheck == null || livenessCheck.equalsIgnoreCase("false")) {
+				type = SnapshotType.STATUS;
+			}
+			else if(livenessCheck.equalsIgnoreCase("true")) {
+				type = SnapshotType.LIVENESS_CHECK;
+			}
+			else {
+				// Let the status handler report the invalid value
+				return false;
+			}
+		}
+
+		// While saturated an older snapshot is better than queueing the probe, up to the maximum stale age
+		Snapshot snapshot = snapshots.get(type.ordinal());
+		if(snapshot == null || System.nanoTime() - snapshot.createdNanos > (saturated ? snapshotMaxStaleNanos : snapshotMaxAgeNanos)) {
+			return false;
+		}
+
+		response.setStatus(snapshot.status);
+		response.setContentType(MediaType.APPLICATION_JSON);
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		response.setContentLength(snapshot.body.length);
+		response.getOutputStream().write(snapshot.body);
+		return true;
+	}
+
+	private boolean acceptsJson(HttpServletRequest request) {
+		String format = request.getParameter(FORMAT_PARAMETER);
+		if(format != null && !format.isEmpty()) {
+			return format.equals("json");
+		}
+		String accept = request.getHeader("Accept");
+		return accept == null || accept.isEmpty() || accept.contains("*/*") || accept.contains(MediaType.APPLICATION_JSON);
+	}
+}
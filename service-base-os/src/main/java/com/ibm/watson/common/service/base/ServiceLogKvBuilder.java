@@ -19,16 +19,24 @@ public class ServiceLogKvBuilder {
 	public static final String KV_KEY_API_RC = "api_rc";
 	public static final String KV_KEY_API_REQ_SIZE = "api_size_i";
 	public static final String KV_KEY_API_REQ_COUNT = "api_count_i";
+	public static final String KV_KEY_API_REQ_COST = "api_cost_i";
+	public static final String KV_KEY_API_ROUTE = "api_route";
+	public static final String KV_KEY_PHASE_TIME_PREFIX = "phase_";	// Followed by the phase name and _ms
 	public static final String KV_KEY_LOG_SOURCE_CRN = "logSourceCRN";
 	public static final String KV_KEY_SAVE_SERVICE_COPY = "saveServiceCopy";
 
 	public static final String KV_KEY_CONCURRENT_EVENT = "conc_event";
 	public static final String KV_KEY_CONCURRENT_REQ = "conc_req_i";
+	public static final String KV_KEY_CONCURRENT_EVENT_COUNT = "conc_event_count_i";
 	public static final String KV_KEY_CONCURRENT_REJECTS = "conc_rejects_i";
 	public static final String KV_KEY_CONCURRENT_BLOCKS = "conc_blocks_i";
+	public static final String KV_KEY_CONCURRENT_BULKHEAD = "conc_bulkhead";
+	public static final String KV_KEY_CONCURRENT_COST = "conc_cost_i";
 	public static final String KV_KEY_HEAP_MAX = "heap_max_i";
 	public static final String KV_KEY_HEAP_COMMIT = "heap_commit_i";
 	public static final String KV_KEY_HEAP_INUSE = "heap_inuse_i";
+	public static final String KV_KEY_HEAP_AFTER_GC = "heap_after_gc_pct_i";
+	public static final String KV_KEY_GC_TIME = "gc_time_pct_i";
 
     public static final String KV_MESSAGE_DELIMITER = "|";
     Map<String,String> kvMap = new LinkedHashMap<>();
@@ -0,0 +1,449 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Request rate limit per tenant and per route, next to the concurrent limit.  The concurrent limit bounds the
+ * requests in flight, the rate limit bounds how fast a tenant may send requests, so a tenant firing many cheap
+ * requests cannot take all of the capacity.  A request over a rate limit is answered with a 429 by MainServletFilter.
+ *
+ * Each limit is a token bucket with a refill rate in requests per second and a burst size.  A bucket is one
+ * theoretical arrival time updated with compare-and-set (the generic cell rate algorithm), so taking a token does not
+ * lock.  A full bucket holds no state that is not implied by its settings, so idle buckets are evicted when the
+ * number of buckets goes over the maximum.
+ *
+ *  com_ibm_watson_health_common_rate_limit_tenant_rate - Requests per second per tenant.  Requests without a tenant
+ *  								share one bucket.  A value of zero disables the tenant limit.  The default is 0.
+ *  com_ibm_watson_health_common_rate_limit_tenant_burst - Requests a tenant may send at once.  The default is the rate,
+ *  								at least 1.
+ *  com_ibm_watson_health_common_rate_limit_tenant_overrides - Settings of individual tenants, separated by \\,
+ *  								Each entry is the tenant ID followed by rate or burst values separated by ;
+ *  								for example tenant1;rate=100;burst=200\\,tenant2;rate=0  A rate of zero is not limited.
+ *  com_ibm_watson_health_common_rate_limit_routes - A list of route names separated with \\,.  Each route is a separate
+ *  								limit with its own URI patterns.  A request is only counted against the first matching route.
+ *  com_ibm_watson_health_common_rate_limit_route_&lt;name&gt;_uri_pattern_list - URI patterns of a route, separated with \\,
+ *  com_ibm_watson_health_common_rate_limit_route_&lt;name&gt;_rate - Requests per second of a route, required.
+ *  com_ibm_watson_health_common_rate_limit_route_&lt;name&gt;_burst - Burst size of a route.  The default is the rate.
+ *  com_ibm_watson_health_common_rate_limit_route_&lt;name&gt;_per_tenant - If true each tenant has its own bucket for the
+ *  								route, otherwise all tenants share one.  The default is true.
+ *  com_ibm_watson_health_common_rate_limit_max_buckets - Maximum number of buckets of the tenant limit and of each per
+ *  								tenant route.  The default is 10000.
+ */
+public class ServiceRateLimit {
+	private static final Logger logger = LoggerFactory.getLogger(ServiceRateLimit.class.getName());
+
+	public static final String RATE_LIMIT_TENANT_RATE = "com_ibm_watson_health_common_rate_limit_tenant_rate";
+	public static final String RATE_LIMIT_TENANT_BURST = "com_ibm_watson_health_common_rate_limit_tenant_burst";
+	public static final String RATE_LIMIT_TENANT_OVERRIDES = "com_ibm_watson_health_common_rate_limit_tenant_overrides";
+	public static final String RATE_LIMIT_ROUTES = "com_ibm_watson_health_common_rate_limit_routes";
+	public static final String RATE_LIMIT_ROUTE_PREFIX = "com_ibm_watson_health_common_rate_limit_route_";
+	public static final String RATE_LIMIT_MAX_BUCKETS = "com_ibm_watson_health_common_rate_limit_max_buckets";
+
+	private static final String RATE_KEY = "rate";
+	private static final String BURST_KEY = "burst";
+	private static final String TENANT_LIMIT_NAME = "tenant";
+	private static final int MAX_ROUTES = Integer.SIZE;
+
+	private static volatile ServiceRateLimit instance;
+
+	private final BucketSettings tenantSettings;	// null if there is no tenant limit
+	private final Map<String,BucketSettings> tenantOverrides = new HashMap<>();
+	private final BucketMap tenantBuckets;
+	private final List<Route> routes = new ArrayList<>();
+	private final RouteClassifier routeClassifier;
+	private final int maxBuckets;
+	private final LongAdder totalRateLimitedRequests = new LongAdder();
+
+	/**
+	 * Refill rate and burst size of a bucket
+	 */
+	private static final class BucketSettings {
+		private final double rate;
+		private final int burst;
+		private final long intervalNanos;	// Time to refill one token
+		private final long toleranceNanos;	// Time to refill the burst less one token
+
+		private BucketSettings(double rate, int burst) {
+			this.rate = rate;
+			this.burst = burst;
+			intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+			toleranceNanos = intervalNanos * (burst - 1);
+		}
+
+		private boolean isLimited() {
+			return rate > 0;
+		}
+
+		@Override
+		public String toString() {
+			return "rate="+rate+"/s, burst="+burst;
+		}
+	}
+
+	/**
+	 * Token bucket stored as the theoretical arrival time of the next request.  The bucket is full
+	 * when the time is not after the current time.
+	 */
+	private static final class TokenBucket {
+		private final BucketSettings settings;
+		private final AtomicLong arrivalNanos;
+
+		private TokenBucket(BucketSettings settings, long now) {
+			this.settings = settings;
+			arrivalNanos = new AtomicLong(now);
+		}
+
+		/**
+		 * Take a token
+		 * @return 0 if taken, otherwise nanoseconds until a token is available
+		 */
+		private long tryAcquire(long now) {
+			while(true) {
+				long arrival = arrivalNanos.get();
+				long start = arrival - now > 0 ? arrival : now;
+				long wait = start - now - settings.toleranceNanos;
+				if(wait > 0) {
+					return wait;
+				}
+				if(arrivalNanos.compareAndSet(arrival, start + settings.intervalNanos)) {
+					return 0;
+				}
+			}
+		}
+
+		/**
+		 * Give back a token taken by a request that was rejected by another bucket
+		 */
+		private void refund() {
+			arrivalNanos.addAndGet(-settings.intervalNanos);
+		}
+
+		private boolean isFull(long now) {
+			return arrivalNanos.get() - now <= 0;
+		}
+	}
+
+	/**
+	 * Buckets of one limit keyed by tenant, bounded by evicting full buckets
+	 */
+	private final class BucketMap {
+		private final String name;
+		private final ConcurrentHashMap<String,TokenBucket> buckets = new ConcurrentHashMap<>();
+		private final AtomicBoolean evicting = new AtomicBoolean();
+
+		private BucketMap(String name) {
+			this.name = name;
+		}
+
+		private TokenBucket get(String tenantId, BucketSettings settings, long now) {
+			TokenBucket bucket = buckets.get(tenantId);
+			if(bucket == null) {
+				bucket = buckets.computeIfAbsent(tenantId, key -> new TokenBucket(settings, now));
+				if(buckets.size() > maxBuckets) {
+					evict(tenantId, now);
+				}
+			}
+			return bucket;
+		}
+
+		/**
+		 * Evict full buckets, then any buckets until a tenth of the maximum is free so the next
+		 * sweep is not on the next new tenant
+		 * @param keep Tenant of the new bucket, its token is not taken yet
+		 */
+		private void evict(String keep, long now) {
+			if(!evicting.compareAndSet(false, true)) {
+				return;	// Another thread is evicting
+			}
+			try {
+				int evicted = 0;
+				for(Iterator<Map.Entry<String,TokenBucket>> it = buckets.entrySet().iterator(); it.hasNext(); ) {
+					Map.Entry<String,TokenBucket> entry = it.next();
+					if(entry.getValue().isFull(now) && !entry.getKey().equals(keep)) {
+						it.remove();
+						evicted++;
+					}
+				}
+				// Every bucket is in use, forget the state of some.  Those tenants start again with a full bucket.
+				int target = maxBuckets - maxBuckets / 10;
+				for(Iterator<String> it = buckets.keySet().iterator(); it.hasNext() && buckets.size() > target; ) {
+					if(!it.next().equals(keep)) {
+						it.remove();
+						evicted++;
+					}
+				}
+				if(logger.isDebugEnabled()) {
+					logger.debug("Evicted "+evicted+" "+name+" rate limit buckets, "+buckets.size()+" left");
+				}
+			}
+			finally {
+				evicting.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Rate limit of the requests matching a set of URI patterns
+	 */
+	private final class Route {
+		private final String name;
+		private final BucketSettings settings;
+		private final BucketMap tenantBuckets;	// null if the bucket is shared
+		private final TokenBucket sharedBucket;	// null if the route is per tenant
+
+		private Route(String name, BucketSettings settings, boolean perTenant) {
+			this.name = name;
+			this.settings = settings;
+			tenantBuckets = perTenant ? new BucketMap(name) : null;
+			sharedBucket = perTenant ? null : new TokenBucket(settings, System.nanoTime());
+		}
+
+		private TokenBucket getBucket(String tenantId, long now) {
+			return sharedBucket != null ? sharedBucket : tenantBuckets.get(tenantId, settings, now);
+		}
+	}
+
+	/**
+	 * A request over a rate limit
+	 */
+	public static final class Rejection {
+		private final String limitName;
+		private final int burst;
+		private final long waitNanos;
+
+		private Rejection(String limitName, int burst, long waitNanos) {
+			this.limitName = limitName;
+			this.burst = burst;
+			this.waitNanos = waitNanos;
+		}
+
+		/**
+		 * @return "tenant" or the name of the route
+		 */
+		public String getLimitName() {
+			return limitName;
+		}
+
+		/**
+		 * @return Burst size of the limit, the RateLimit-Limit header
+		 */
+		public int getLimit() {
+			return burst;
+		}
+
+		/**
+		 * @return Seconds until a token is available, the RateLimit-Reset and Retry-After headers
+		 */
+		public long getRetryAfterSeconds() {
+			return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+		}
+	}
+
+	public static synchronized ServiceRateLimit createInstance(Properties serviceProperties) {
+		if(instance != null) {
+			throw new IllegalStateException("Cannot create ServiceRateLimit instance more that once.");
+		}
+
+		instance = new ServiceRateLimit(serviceProperties);
+		return instance;
+	}
+
+	public static ServiceRateLimit getInstance() {
+		return instance;
+	}
+
+	private ServiceRateLimit(Properties serviceProperties) {
+		maxBuckets = (int) getNumberProperty(RATE_LIMIT_MAX_BUCKETS, serviceProperties.getProperty(RATE_LIMIT_MAX_BUCKETS), 10000, 1);
+
+		// Tenant limit and the tenants with their own settings
+		double tenantRate = getNumberProperty(RATE_LIMIT_TENANT_RATE, serviceProperties.getProperty(RATE_LIMIT_TENANT_RATE), 0, 0);
+		BucketSettings defaultTenantSettings = new BucketSettings(tenantRate,
+				(int) getNumberProperty(RATE_LIMIT_TENANT_BURST, serviceProperties.getProperty(RATE_LIMIT_TENANT_BURST),
+						Math.max(1, Math.ceil(tenantRate)), 1));
+		String overrides = serviceProperties.getProperty(RATE_LIMIT_TENANT_OVERRIDES, "");
+		for(String entry : overrides.split("\\\\,")) { // delimiter is \\, in a properties file
+			entry = entry.trim();
+			if(entry.isEmpty()) {
+				continue;
+			}
+			String[] fields = entry.split(";");
+			String tenantId = fields[0].trim();
+			Map<String,String> values = new HashMap<>();
+			for(int i = 1; i < fields.length; i++) {
+				String field = fields[i].trim();
+				int index = field.indexOf('=');
+				String key = index < 0 ? field : field.substring(0, index).trim();
+				if(index < 0 || !(key.equals(RATE_KEY) || key.equals(BURST_KEY))) {
+					logger.error("Invalid tenant rate limit override \""+entry+"\", expected rate or burst values");
+					throw new IllegalArgumentException("Invalid service property "+RATE_LIMIT_TENANT_OVERRIDES+", entry="+entry);
+				}
+				values.put(key, field.substring(index+1));
+			}
+			double rate = getNumberProperty(RATE_LIMIT_TENANT_OVERRIDES, values.get(RATE_KEY), defaultTenantSettings.rate, 0);
+			BucketSettings settings = new BucketSettings(rate, (int) getNumberProperty(RATE_LIMIT_TENANT_OVERRIDES,
+					values.get(BURST_KEY), Math.max(1, Math.ceil(rate)), 1));
+			tenantOverrides.put(tenantId, settings);
+			logger.info("Tenant "+tenantId+" rate limit "+(settings.isLimited() ? settings.toString() : "disabled"));
+		}
+		if(defaultTenantSettings.isLimited() || !tenantOverrides.isEmpty()) {
+			tenantSettings = defaultTenantSettings;
+			tenantBuckets = new BucketMap(TENANT_LIMIT_NAME);
+			logger.info("Tenant rate limit "+(defaultTenantSettings.isLimited() ? defaultTenantSettings.toString() : "disabled")+
+					", max buckets="+maxBuckets);
+		}
+		else {
+			tenantSettings = null;
+			tenantBuckets = null;
+		}
+
+		// Route limits, each route is a bit of the route classifier
+		RouteClassifier.Builder builder = RouteClassifier.builder();
+		String routeList = serviceProperties.getProperty(RATE_LIMIT_ROUTES, "");
+		for(String name : routeList.split("\\\\,")) { // delimiter is \\, in a properties file
+			name = name.trim();
+			if(name.isEmpty()) {
+				continue;
+			}
+			if(routes.size() == MAX_ROUTES) {
+				logger.error("Too many rate limit routes, the maximum is "+MAX_ROUTES);
+				throw new IllegalArgumentException("Too many rate limit routes in "+RATE_LIMIT_ROUTES+", the maximum is "+MAX_ROUTES);
+			}
+			String prefix = RATE_LIMIT_ROUTE_PREFIX+name+"_";
+			List<Pattern> uriPatterns = new ArrayList<>();
+			String uriList = serviceProperties.getProperty(prefix+"uri_pattern_list", "");
+			try {
+				for(String item : uriList.split("\\\\,")) {
+					item = item.trim();
+					if(!item.isEmpty()) {
+						uriPatterns.add(Pattern.compile(item));
+					}
+				}
+			}
+			catch(PatternSyntaxException e) {
+				logger.error("Invalid rate limit URI pattern, route "+name+": "+e);
+				throw e;
+			}
+			double rate = getNumberProperty(prefix+"rate", serviceProperties.getProperty(prefix+"rate"), 0, 0);
+			if(uriPatterns.isEmpty() || rate <= 0) {
+				logger.error("Rate limit route "+name+" requires a URI pattern list and a rate");
+				throw new IllegalArgumentException("Rate limit route "+name+" requires properties "+prefix+"uri_pattern_list and "+
+						prefix+"rate");
+			}
+			BucketSettings settings = new BucketSettings(rate, (int) getNumberProperty(prefix+"burst",
+					serviceProperties.getProperty(prefix+"burst"), Math.max(1, Math.ceil(rate)), 1));
+			boolean perTenant = Boolean.parseBoolean(serviceProperties.getProperty(prefix+"per_tenant", "true").trim());
+			builder.add(1 << routes.size(), uriPatterns);
+			routes.add(new Route(name, settings, perTenant));
+			logger.info("Rate limit route "+name+" "+settings+", per tenant="+perTenant+", URI patterns: "+uriList);
+		}
+		routeClassifier = routes.isEmpty() ? null : builder.build(RouteClassifier.DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * @return true if a tenant or route limit is configured
+	 */
+	public boolean isEnabled() {
+		return tenantBuckets != null || routeClassifier != null;
+	}
+
+	public long getTotalRateLimitedRequests() {
+		return totalRateLimitedRequests.sum();
+	}
+
+	/**
+	 * @return Number of tenant and route buckets
+	 */
+	public int getBucketCount() {
+		int count = tenantBuckets != null ? tenantBuckets.buckets.size() : 0;
+		for(Route route : routes) {
+			count += route.tenantBuckets != null ? route.tenantBuckets.buckets.size() : 1;
+		}
+		return count;
+	}
+
+	/**
+	 * Take a token for a request from its route bucket and its tenant bucket
+	 * @param tenantId Tenant of the request, may be null
+	 * @param uri Request path info
+	 * @return null if the request may run, otherwise the limit it is over
+	 */
+	public Rejection acquire(String tenantId, String uri) {
+		if(tenantId == null) {
+			tenantId = "";
+		}
+		long now = System.nanoTime();
+
+		TokenBucket routeBucket = null;
+		if(routeClassifier != null) {
+			int routeBits = routeClassifier.classify(uri);
+			if(routeBits != 0) {
+				Route route = routes.get(Integer.numberOfTrailingZeros(routeBits));
+				routeBucket = route.getBucket(tenantId, now);
+				long wait = routeBucket.tryAcquire(now);
+				if(wait > 0) {
+					return reject(route.name, route.settings, wait, tenantId);
+				}
+			}
+		}
+
+		if(tenantBuckets != null) {
+			BucketSettings settings = tenantOverrides.getOrDefault(tenantId, tenantSettings);
+			if(settings.isLimited()) {
+				long wait = tenantBuckets.get(tenantId, settings, now).tryAcquire(now);
+				if(wait > 0) {
+					if(routeBucket != null) {
+						routeBucket.refund();
+					}
+					return reject(TENANT_LIMIT_NAME, settings, wait, tenantId);
+				}
+			}
+		}
+		return null;
+	}
+
+	private Rejection reject(String limitName, BucketSettings settings, long waitNanos, String tenantId) {
+		totalRateLimitedRequests.increment();
+		if(logger.isDebugEnabled()) {
+			logger.debug("Rate limit "+limitName+" rejected a request of tenant "+tenantId+", wait="+
+					TimeUnit.NANOSECONDS.toMillis(waitNanos)+"ms");
+		}
+		return new Rejection(limitName, settings.burst, waitNanos);
+	}
+
+	private static double getNumberProperty(String name, String value, double defaultValue, double minValue) {
+		if(value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			double result = Double.parseDouble(value.trim());
+			if(result < minValue || Double.isNaN(result) || Double.isInfinite(result)) {
+				throw new NumberFormatException("Value must be at least "+minValue);
+			}
+			return result;
+		}
+		catch(NumberFormatException e) {
+			logger.error("Format exception for service property \""+name+"\", value="+value);
+			throw new IllegalArgumentException("Format exception for service property "+name+", value="+value, e);
+		}
+	}
+}
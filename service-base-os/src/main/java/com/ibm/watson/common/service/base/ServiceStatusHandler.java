@@ -5,8 +5,14 @@
  */
 package com.ibm.watson.common.service.base;
 
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.DefaultValue;
@@ -18,10 +24,13 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.ibm.watson.common.service.base.security.TenantCache;
+import com.ibm.watson.service.base.model.BulkheadStatus;
 import com.ibm.watson.service.base.model.ServiceError;
 import com.ibm.watson.service.base.model.ServiceStatus;
 import com.ibm.watson.service.base.model.ServiceStatus.ServiceState;
@@ -147,6 +156,12 @@ public abstract class ServiceStatusHandler {
 			}
 			serviceStatus.setAvailableProcessors(availableProcessors);
 
+			// JVM telemetry from the last background sample
+			JvmRuntimeSampler jvmSampler = ServiceContext.getJvmSampler();
+			if(jvmSampler != null) {
+				serviceStatus.setJvm(jvmSampler.getSnapshot());
+			}
+
 			// Concurrent limit related counters
 			ServiceConcurrentLimit concurrentLimit = ServiceContext.getConcurrentLimit();
 			if((concurrentLimit != null) && concurrentLimit.isConcurrentThresholdEnabled()) {
@@ -154,6 +169,80 @@ public abstract class ServiceStatusHandler {
 				serviceStatus.setMaxConcurrentRequests(concurrentLimit.getMaxConcurrentRequests());
 				serviceStatus.setTotalRejectedRequests(concurrentLimit.getTotalRejectedRequests());
 				serviceStatus.setTotalBlockedRequests(concurrentLimit.getTotalBlockedRequests());
+				if(concurrentLimit.getConcurrentBlockingThreshold() > 0) {
+					serviceStatus.setConcurrentLimit(concurrentLimit.getConcurrentLimit());
+					serviceStatus.setTotalTimedOutRequests(concurrentLimit.getTotalTimedOutRequests());
+					serviceStatus.setQueueTimeHistogram(concurrentLimit.getQueueTimeHistogram().snapshot());
+				}
+				if(concurrentLimit.getConcurrentCostLimit() > 0) {
+					serviceStatus.setRunningRequestCost(concurrentLimit.getRunningCost());
+				}
+				AdaptiveConcurrencyLimit adaptiveLimit = concurrentLimit.getAdaptiveLimit();
+				if(adaptiveLimit != null) {
+					serviceStatus.setConcurrentLimitHistory(adaptiveLimit.getHistory());
+				}
+				TenantFairShare fairShare = concurrentLimit.getTenantFairShare();
+				if(fairShare != null) {
+					serviceStatus.setTenantConcurrency(fairShare.getTenantStatus());
+				}
+			}
+			if((concurrentLimit != null) && !concurrentLimit.getBulkheads().isEmpty()) {
+				List<BulkheadStatus> bulkheads = new ArrayList<>();
+				for(ServiceConcurrentLimit bulkhead : concurrentLimit.getBulkheads()) {
+					BulkheadStatus bulkheadStatus = new BulkheadStatus();
+					bulkheadStatus.setName(bulkhead.getBulkheadName());
+					bulkheadStatus.setConcurrentRequests(bulkhead.getConcurrentRequests());
+					bulkheadStatus.setMaxConcurrentRequests(bulkhead.getMaxConcurrentRequests());
+					bulkheadStatus.setQueuedRequests(bulkhead.getQueuedRequests());
+					bulkheadStatus.setRejectThreshold(bulkhead.getConcurrentRejectThreshold());
+					bulkheadStatus.setTotalRejectedRequests(bulkhead.getTotalRejectedRequests());
+					bulkheadStatus.setTotalBlockedRequests(bulkhead.getTotalBlockedRequests());
+					if(bulkhead.getConcurrentBlockingThreshold() > 0) {
+						bulkheadStatus.setConcurrentLimit(bulkhead.getConcurrentLimit());
+						bulkheadStatus.setTotalTimedOutRequests(bulkhead.getTotalTimedOutRequests());
+						bulkheadStatus.setQueueTimeHistogram(bulkhead.getQueueTimeHistogram().snapshot());
+					}
+					if(bulkhead.getConcurrentCostLimit() > 0) {
+						bulkheadStatus.setRunningRequestCost(bulkhead.getRunningCost());
+					}
+					bulkheads.add(bulkheadStatus);
+				}
+				serviceStatus.setBulkheads(bulkheads);
+			}
+			HeapPressureMonitor heapPressure = concurrentLimit != null ? concurrentLimit.getHeapPressureMonitor() : null;
+			if(heapPressure != null) {
+				serviceStatus.setHeapPressure(heapPressure.isUnderPressure());
+				serviceStatus.setHeapOccupancyPercent(heapPressure.getHeapOccupancyPercent());
+				serviceStatus.setGcTimePercent(heapPressure.getGcTimePercent());
+				long heapRejected = concurrentLimit.getTotalHeapRejectedRequests();
+				for(ServiceConcurrentLimit bulkhead : concurrentLimit.getBulkheads()) {
+					heapRejected += bulkhead.getTotalHeapRejectedRequests();
+				}
+				serviceStatus.setTotalHeapRejectedRequests(heapRejected);
+			}
+
+			// Request cost estimate accuracy
+			RequestCostPolicy requestCostPolicy = ServiceContext.getRequestCostPolicy();
+			if((requestCostPolicy != null) && requestCostPolicy.isEnabled()) {
+				serviceStatus.setRequestCost(requestCostPolicy.getStatus());
+			}
+
+			// Time of the request processing phases
+			serviceStatus.setRequestPhases(RequestTimings.getPhaseStatus());
+
+			// Rate limit counters
+			ServiceRateLimit rateLimit = ServiceContext.getRateLimit();
+			if((rateLimit != null) && rateLimit.isEnabled()) {
+				serviceStatus.setTotalRateLimitedRequests(rateLimit.getTotalRateLimitedRequests());
+			}
+
+			// Tenant cache counters
+			TenantCache tenantCache = ServiceContext.getTenantCache();
+			if((tenantCache != null) && tenantCache.isEnabled()) {
+				serviceStatus.setTenantCacheSize(tenantCache.getSize());
+				serviceStatus.setTenantCacheHits(tenantCache.getHitCount());
+				serviceStatus.setTenantCacheMisses(tenantCache.getMissCount());
+				serviceStatus.setTenantCacheEvictions(tenantCache.getEvictionCount());
 			}
 
 			// Allow service status to be overridden by extended class
@@ -164,6 +253,13 @@ public abstract class ServiceStatusHandler {
 				adjustServiceStatus(serviceStatus);
 			}
 
+			// Publish for fast lane requests
+			ServiceFastLane fastLane = ServiceContext.getFastLane();
+			if(fastLane != null) {
+				fastLane.updateSnapshot(liveness_check ? ServiceFastLane.SnapshotType.LIVENESS_CHECK : ServiceFastLane.SnapshotType.STATUS,
+						Status.OK.getStatusCode(), serviceStatus);
+			}
+
 			serviceResponse = Response.ok(serviceStatus);
 
 			switch(format) {
@@ -224,8 +320,12 @@ public abstract class ServiceStatusHandler {
 
 			// Allow service status to be overridden by extended class
 			adjustServiceStatus(serviceStatus);
+			ServiceFastLane fastLane = ServiceContext.getFastLane();
 			if(serviceStatus.getServiceState() == ServiceState.OK) {
 				serviceResponse = Response.ok(serviceStatus);
+				if(fastLane != null) {
+					fastLane.updateSnapshot(ServiceFastLane.SnapshotType.HEALTH_CHECK, Status.OK.getStatusCode(), serviceStatus);
+				}
 			}
 			else {
 				ServiceError se = new ServiceError().
@@ -233,6 +333,9 @@ public abstract class ServiceStatusHandler {
 						setMessage(Status.INTERNAL_SERVER_ERROR.getReasonPhrase()).
 						setDescription(serviceStatus.getStateDetails());
 				serviceResponse = Response.status(se.getCode()).entity(se);
+				if(fastLane != null) {
+					fastLane.updateSnapshot(ServiceFastLane.SnapshotType.HEALTH_CHECK, se.getCode(), se);
+				}
 			}
 
 			switch(format) {
@@ -257,6 +360,37 @@ public abstract class ServiceStatusHandler {
 		}
 	}
 
+	/**
+	 * Get the request metrics in the Prometheus text format.  The metrics are read from lock-free counters
+	 * while they are written, so a scrape does not block requests.
+	 * @return Metrics, or 404 if the default metrics are not enabled
+	 */
+	@Path("metrics")
+	@GET
+	@Produces(DefaultServiceMetrics.PROMETHEUS_CONTENT_TYPE)
+	@ApiOperation(value = "Get the request metrics in the Prometheus text format", response = String.class)
+	@ApiResponses(value = {
+		@ApiResponse(code = 404, message = "Default metrics are not enabled", response=ServiceError.class)
+	})
+	public Response getMetrics() {
+		ServiceMetrics serviceMetrics = ServiceContext.getInstance().getServiceMetrics();
+		if(!(serviceMetrics instanceof DefaultServiceMetrics)) {
+			ServiceError se = new ServiceError().
+					setCode(Status.NOT_FOUND.getStatusCode()).
+					setMessage(Status.NOT_FOUND.getReasonPhrase()).
+					setDescription("Default metrics are not enabled");
+			return Response.status(se.getCode()).entity(se).type(MediaType.APPLICATION_JSON).build();
+		}
+
+		DefaultServiceMetrics metrics = (DefaultServiceMetrics) serviceMetrics;
+		StreamingOutput output = outputStream -> {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+			metrics.writePrometheus(writer);
+			writer.flush();
+		};
+		return Response.ok(output).header("Cache-Control", "no-cache").build();
+	}
+
 	/**
 	 * Override this method to update the service status such serviceState and stateDetails
 	 *
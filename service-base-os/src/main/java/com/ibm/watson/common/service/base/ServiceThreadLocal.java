@@ -6,7 +6,6 @@
 package com.ibm.watson.common.service.base;
 
 import java.text.ParseException;
-import java.util.HashMap;
 import java.util.Map;
 
 import javax.ws.rs.core.Response;
@@ -17,26 +16,18 @@ import com.ibm.watson.service.base.model.ServiceError;
 
 /**
  * Services utility class to assist in capturing key data points as thread-local variables.
+ * The values are held in the {@link RequestContext} bound to the thread.
  */
 public class ServiceThreadLocal {
 
-	private static final ThreadLocal<Integer> threadInputTextSize = new ThreadLocal<>();
-	private static final ThreadLocal<Integer> threadAnnotatorCount= new ThreadLocal<>();
-	private static final ThreadLocal<String> threadCorrelationId = new ThreadLocal<>();
-	private static final ThreadLocal<String> threadRequestId = new ThreadLocal<>();
-	private static final ThreadLocal<String> threadTenantArtifactVersion = new ThreadLocal<>();
-	private static final ThreadLocal<String> threadSuperTenantArtifactVersion = new ThreadLocal<>();
-	private static final ThreadLocal<Map<String,String>> threadRequestHeaders = new ThreadLocal<>();
-	private static final ThreadLocal<Map<String,String>> threadWatsonUserInfoMap = new ThreadLocal<>();
-	private static final ThreadLocal<Boolean> threadDebug = new ThreadLocal<>();
-
 	/**
 	 * Returns the thread-local variable for count of the number of annotators found within the pipeline request flow.
 	 *
 	 * @return Annotator count if present or null if not.
 	 */
 	public static Integer getAnnotatorCount() {
-		return threadAnnotatorCount.get();
+		RequestContext context = RequestContext.current();
+		return context != null ? context.getAnnotatorCount() : null;
 	}
 
 	/**
@@ -46,7 +37,10 @@ public class ServiceThreadLocal {
 	 * @throws ParseException
 	 */
 	public static void setAnnotatorCount(Integer annotatorCount) throws ParseException {
-		threadAnnotatorCount.set(annotatorCount);
+		RequestContext context = RequestContext.writable(annotatorCount != null);
+		if(context != null) {
+			context.setAnnotatorCount(annotatorCount);
+		}
 	}
 
 	/**
@@ -55,17 +49,22 @@ public class ServiceThreadLocal {
 	 * @return 	Input text size if present or null if not.
 	 */
 	public static Integer getInputTextSize() {
-		return threadInputTextSize.get();
+		RequestContext context = RequestContext.current();
+		return context != null ? context.getInputTextSize() : null;
 	}
 
 	/**
-	 * Sets the thread-local variable for request input text size.
+	 * Sets the thread-local variable for request input text size.  When request costs are configured
+	 * the cost of this size is compared to the cost charged at admission, see {@link RequestCostPolicy}.
 	 *
 	 * @param inputTextSize Size of the input text being processed.
 	 * @throws ParseException
 	 */
 	public static void setInputTextSize(Integer inputTextSize) throws ParseException {
-		threadInputTextSize.set(inputTextSize);
+		RequestContext context = RequestContext.writable(inputTextSize != null);
+		if(context != null) {
+			context.setInputTextSize(inputTextSize);
+		}
 	}
 
 	/**
@@ -74,7 +73,8 @@ public class ServiceThreadLocal {
 	 * @return Correlation ID if present or null if not.
 	 */
 	public static String getCorrelationId() {
-		return threadCorrelationId.get();
+		RequestContext context = RequestContext.current();
+		return context != null ? context.getCorrelationId() : null;
 	}
 
 	/**
@@ -83,7 +83,10 @@ public class ServiceThreadLocal {
 	 * @param correlationId Correlation ID
 	 */
 	public static void setCorrelationId(String correlationId) {
-		threadCorrelationId.set(correlationId);
+		RequestContext context = RequestContext.writable(correlationId != null);
+		if(context != null) {
+			context.setCorrelationId(correlationId);
+		}
 	}
 
 	/**
@@ -93,7 +96,8 @@ public class ServiceThreadLocal {
 	 * @return Request ID if present or null if not
 	 */
 	public static String getRequestId() {
-		return threadRequestId.get();
+		RequestContext context = RequestContext.current();
+		return context != null ? context.getRequestId() : null;
 	}
 
 	/**
@@ -103,7 +107,10 @@ public class ServiceThreadLocal {
 	 * @param requestId Request ID
 	 */
 	public static void setRequestId(String requestId) {
-		threadRequestId.set(requestId);
+		RequestContext context = RequestContext.writable(requestId != null);
+		if(context != null) {
+			context.setRequestId(requestId);
+		}
 	}
 
 	/**
@@ -111,7 +118,8 @@ public class ServiceThreadLocal {
 	 * @return
 	 */
 	public static String getTenantArtifactVersion() {
-		return threadTenantArtifactVersion.get();
+		RequestContext context = RequestContext.current();
+		return context != null ? context.getTenantArtifactVersion() : null;
 	}
 
 	/**
@@ -119,7 +127,10 @@ public class ServiceThreadLocal {
 	 * @param tenantArtifactVersion
 	 */
 	public static void setTenantArtifactVersion(String tenantArtifactVersion) {
-		threadTenantArtifactVersion.set(tenantArtifactVersion);
+		RequestContext context = RequestContext.writable(tenantArtifactVersion != null);
+		if(context != null) {
+			context.setTenantArtifactVersion(tenantArtifactVersion);
+		}
 	}
 
 	/**
@@ -127,7 +138,8 @@ public class ServiceThreadLocal {
 	 * @return
 	 */
 	public static String getSuperTenantArtifactVersion() {
-		return threadSuperTenantArtifactVersion.get();
+		RequestContext context = RequestContext.current();
+		return context != null ? context.getSuperTenantArtifactVersion() : null;
 	}
 
 	/**
@@ -135,7 +147,10 @@ public class ServiceThreadLocal {
 	 * @param superTenantArtifactVersion
 	 */
 	public static void setSuperTenantArtifactVersion(String superTenantArtifactVersion) {
-		threadSuperTenantArtifactVersion.set(superTenantArtifactVersion);
+		RequestContext context = RequestContext.writable(superTenantArtifactVersion != null);
+		if(context != null) {
+			context.setSuperTenantArtifactVersion(superTenantArtifactVersion);
+		}
 	}
 	
 	/**
@@ -143,7 +158,8 @@ public class ServiceThreadLocal {
 	 * @return
 	 */
 	public static Boolean getThreadDebug() {
-	  return threadDebug.get();
+	  RequestContext context = RequestContext.current();
+	  return context != null ? context.getDebug() : null;
 	}
 	
 	/**
@@ -151,51 +167,158 @@ public class ServiceThreadLocal {
 	 * @param debug
 	 */
 	public static void setThreadDebug(Boolean debug) {
-	  threadDebug.set(debug);
+	  RequestContext context = RequestContext.writable(debug != null);
+	  if(context != null) {
+	  	context.setDebug(debug);
+	  }
+	}
+
+	/**
+	 * Gets the priority class of the request.  It is passed to downstream services with the
+	 * x-request-priority header.
+	 *
+	 * @return Request priority if present or null if not
+	 */
+	public static RequestPriority getRequestPriority() {
+		RequestContext context = RequestContext.current();
+		return context != null ? context.getPriority() : null;
+	}
+
+	/**
+	 * Sets the priority class of the request.
+	 *
+	 * @param priority Request priority
+	 */
+	public static void setRequestPriority(RequestPriority priority) {
+		RequestContext context = RequestContext.writable(priority != null);
+		if(context != null) {
+			context.setPriority(priority);
+		}
+	}
+
+	/**
+	 * Gets the cost units the request was charged by the concurrent limit, see {@link RequestCostPolicy}.
+	 *
+	 * @return Request cost if present or null if not
+	 */
+	public static Integer getRequestCost() {
+		RequestContext context = RequestContext.current();
+		return context != null ? context.getRequestCost() : null;
+	}
+
+	/**
+	 * Sets the cost units the request was charged by the concurrent limit.
+	 *
+	 * @param requestCost Request cost
+	 */
+	public static void setRequestCost(Integer requestCost) {
+		RequestContext context = RequestContext.writable(requestCost != null);
+		if(context != null) {
+			context.setRequestCost(requestCost);
+		}
+	}
+
+	/**
+	 * Gets the JAX-RS resource method matched to the request and its @Path template, see {@link RouteTemplateFilter}.
+	 *
+	 * @return Matched route if present or null if not
+	 */
+	public static MatchedRoute getMatchedRoute() {
+		RequestContext context = RequestContext.current();
+		return context != null ? context.getMatchedRoute() : null;
+	}
+
+	/**
+	 * Sets the JAX-RS resource method matched to the request.
+	 *
+	 * @param matchedRoute Matched route
+	 */
+	public static void setMatchedRoute(MatchedRoute matchedRoute) {
+		RequestContext context = RequestContext.writable(matchedRoute != null);
+		if(context != null) {
+			context.setMatchedRoute(matchedRoute);
+		}
+	}
+
+	/**
+	 * Gets the phase timers of the request, see {@link RequestTimings}.
+	 *
+	 * @return Timers if present or null if not
+	 */
+	public static RequestTimings getRequestTimings() {
+		RequestContext context = RequestContext.current();
+		return context != null ? context.getTimings() : null;
 	}
 
 	/**
-	 * Gets the thread-local variable for request headers.
+	 * Sets the phase timers of the request.
+	 *
+	 * @param timings Timers
+	 */
+	public static void setRequestTimings(RequestTimings timings) {
+		RequestContext context = RequestContext.writable(timings != null);
+		if(context != null) {
+			context.setTimings(timings);
+		}
+	}
+
+	/**
+	 * Gets the thread-local variable for request headers.  Headers captured by MainServletFilter
+	 * are an immutable {@link CapturedRequestHeaders} map with case-insensitive keys.  Earlier versions
+	 * returned a mutable HashMap.  Callers that changed the returned map must copy it, or replace the
+	 * headers with {@link #setRequestHeaders(Map)}.
 	 *
 	 * @return request headers if present or null if not.
 	 */
 	public static Map<String,String> getRequestHeaders() {
-		return threadRequestHeaders.get();
+		RequestContext context = RequestContext.current();
+		return context != null ? context.getRequestHeaders() : null;
 	}
 
 	/**
-	 * Sets the thread-local variable for request headers.
+	 * Sets the thread-local variable for request headers.  The X-Watson-UserInfo header
+	 * is parsed from the headers.
 	 *
 	 * @param requestHeaders Request headers
 	 */
 	public static void setRequestHeaders(Map<String,String> requestHeaders) {
-		threadRequestHeaders.set(requestHeaders);
-		if (requestHeaders == null) {
-			threadWatsonUserInfoMap.set(null);
-		} else {
-			Map<String, String> userInfoMap = new HashMap<String, String>();
-			String watsonUserInfo = requestHeaders.get(MainServletFilter.HEADER_WATSON_USER_INFO);
-			if (watsonUserInfo != null) {
-				String[] wuiValues = watsonUserInfo.split(";");
-				for (int i = 0; i < wuiValues.length; ++i) {
-					String[] nameValue = wuiValues[i].split("=");
-					if (nameValue.length != 2) {
-						continue;
-					}
-					userInfoMap.put(nameValue[0], nameValue[1]);
-				}
-			}
-			threadWatsonUserInfoMap.set(userInfoMap);
+		setRequestHeaders(requestHeaders, requestHeaders == null ? null :
+			WatsonUserInfo.parse(requestHeaders.get(MainServletFilter.HEADER_WATSON_USER_INFO)));
+	}
+
+	/**
+	 * Sets the thread-local variables for request headers and the already parsed X-Watson-UserInfo header.
+	 *
+	 * @param requestHeaders Request headers
+	 * @param watsonUserInfo Parsed X-Watson-UserInfo header
+	 */
+	public static void setRequestHeaders(Map<String,String> requestHeaders, WatsonUserInfo watsonUserInfo) {
+		RequestContext context = RequestContext.writable(requestHeaders != null || watsonUserInfo != null);
+		if(context != null) {
+			context.setRequestHeaders(requestHeaders);
+			context.setWatsonUserInfo(watsonUserInfo);
 		}
 	}
 
+	/**
+	 * Returns the X-Watson-UserInfo header of the request.  The header is parsed once
+	 * per request and cached in ServiceThreadLocal.
+	 * @return User info if present or null if not
+	 */
+	public static WatsonUserInfo getWatsonUserInfo() {
+		RequestContext context = RequestContext.current();
+		return context != null ? context.getWatsonUserInfo() : null;
+	}
+
 	/**
 	 * Returns a map of the key/value pairs specified in the X-Watson-UserInfo.  These need
 	 * to be parsed from the header so it's faster to do it once and cache it in ServiceThreadLocal
-	 * @return
+	 * @return Unmodifiable map or null if not present
+	 * @see #getWatsonUserInfo()
 	 */
 	public static Map<String, String> getWatsonUserInfoMap() {
-		return threadWatsonUserInfoMap.get();
+		WatsonUserInfo watsonUserInfo = getWatsonUserInfo();
+		return watsonUserInfo != null ? watsonUserInfo.asMap() : null;
 	}
 
 	/**
@@ -213,6 +336,10 @@ public class ServiceThreadLocal {
 			ServiceThreadLocal.setTenantArtifactVersion(null);
 			ServiceThreadLocal.setSuperTenantArtifactVersion(null);
 			ServiceThreadLocal.setThreadDebug(null);
+			ServiceThreadLocal.setRequestPriority(null);
+			ServiceThreadLocal.setRequestCost(null);
+			ServiceThreadLocal.setMatchedRoute(null);
+			ServiceThreadLocal.setRequestTimings(null);
 			// TODO Why is parse exception here?
 			} catch (ParseException e) {
 			  ServiceError se = new ServiceError().setCode(Status.INTERNAL_SERVER_ERROR.getStatusCode()).setMessage(Status.INTERNAL_SERVER_ERROR.getReasonPhrase()).setDescription("Exception while processing thread-local cleanup: " + e.toString());
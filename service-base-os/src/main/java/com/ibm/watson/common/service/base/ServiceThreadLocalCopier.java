@@ -13,7 +13,8 @@ import org.slf4j.MDC;
 
 
 /**
- * Class required in order to pass values from ServiceThreadLocal thread local to child threads
+ * Class required in order to pass values from ServiceThreadLocal thread local to child threads.
+ * The whole {@link RequestContext} of the parent is passed, including the tenant and API version.
  *
  *
  *
@@ -30,43 +31,24 @@ import org.slf4j.MDC;
  */
 public class ServiceThreadLocalCopier {
 
-	private Map<String,String> mdcMap;
-	private Integer inputTextSize;
-	private Integer annotatorCount;
-	private static String correlationId;
-	private static String requestId;
-	private static String tenantArtifactVersion;
-	private static String superTenantArtifactVersion;
-	private final Map<String,String> requestHeaders = new HashMap<String,String>();
+	private final Map<String,String> mdcMap;
+	private final RequestContext requestContext;
 
 	public ServiceThreadLocalCopier (){
 		mdcMap = MDC.getCopyOfContextMap();
-		annotatorCount = ServiceThreadLocal.getAnnotatorCount();
-		inputTextSize = ServiceThreadLocal.getInputTextSize();
-		correlationId = ServiceThreadLocal.getCorrelationId();
-		requestId = ServiceThreadLocal.getRequestId();
-		tenantArtifactVersion = ServiceThreadLocal.getTenantArtifactVersion();
-		superTenantArtifactVersion = ServiceThreadLocal.getSuperTenantArtifactVersion();
-		Map<String, String> headers = ServiceThreadLocal.getRequestHeaders();
-
-		if ( headers != null ) {
-			for(String header : headers.keySet()) {
-				requestHeaders.put(header,  headers.get(header));
-			}
-		}
+		// Captured without copying, the child gets its own copy if it changes a value
+		requestContext = RequestContext.capture();
 	}
 
 	public void recreateServiceThreadLocal() throws ParseException {
-		ServiceThreadLocal.setAnnotatorCount(annotatorCount);
-		ServiceThreadLocal.setCorrelationId(correlationId);
-		ServiceThreadLocal.setRequestId(requestId);
-		ServiceThreadLocal.setInputTextSize(inputTextSize);
-		ServiceThreadLocal.setRequestHeaders(requestHeaders);
-		ServiceThreadLocal.setTenantArtifactVersion(tenantArtifactVersion);
-		ServiceThreadLocal.setSuperTenantArtifactVersion(superTenantArtifactVersion);
+		RequestContext.restore(requestContext);
+		if ( ServiceThreadLocal.getRequestHeaders() == null ) {
+			WatsonUserInfo watsonUserInfo = ServiceThreadLocal.getWatsonUserInfo();
+			ServiceThreadLocal.setRequestHeaders(new HashMap<String,String>(),
+					watsonUserInfo != null ? watsonUserInfo : WatsonUserInfo.EMPTY);
+		}
 
 		// Add parent thread's mdc map copy to this thread
 		MDC.setContextMap(mdcMap);
 	}
 }
-
@@ -0,0 +1,461 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.watson.common.service.base.ServiceConcurrentLimit.AdmissionWaiter;
+import com.ibm.watson.common.service.base.ServiceConcurrentLimit.QueuedWaiter;
+import com.ibm.watson.service.base.model.TenantConcurrencyStatus;
+
+/**
+ * Per tenant fair share of the concurrent limit, used by {@link ServiceConcurrentLimit}.
+ *
+ * Each tenant may have at most max requests in flight (running and queued), additional requests of
+ * the tenant are rejected while other tenants are still admitted.  Queued requests wait in a queue per tenant.
+ * When a permit frees up it goes to a tenant that is running fewer than its guaranteed minimum share,
+ * otherwise to the tenant with the fewest running requests for its weight, so tenants share the permits in
+ * proportion to their weights.  Ties are broken round robin and requests of one tenant are taken highest
+ * priority class first, and within a class in the order of the queue policy.
+ *
+ *  com_ibm_watson_health_common_concurrent_tenant_fair_share - If true, permits are shared fairly across tenants.
+ *  								The default is false.
+ *  com_ibm_watson_health_common_concurrent_tenant_weight - Default tenant weight.  The default is 1.
+ *  com_ibm_watson_health_common_concurrent_tenant_min_share - Default number of running requests a tenant gets
+ *  								ahead of other tenants when permits free up.  The default is 0.
+ *  com_ibm_watson_health_common_concurrent_tenant_max_requests - Default maximum requests in flight per tenant.
+ *  								A value of zero means only the reject threshold applies.  The default is 0.
+ *  com_ibm_watson_health_common_concurrent_tenant_overrides - Settings of individual tenants, separated by \\,
+ *  								Each entry is the tenant ID followed by weight, min_share or max_requests values
+ *  								separated by ; for example tenant1;weight=4;max_requests=20\\,tenant2;min_share=2
+ */
+public final class TenantFairShare {
+	private static final Logger logger = LoggerFactory.getLogger(TenantFairShare.class.getName());
+
+	public static final String TENANT_FAIR_SHARE = "com_ibm_watson_health_common_concurrent_tenant_fair_share";
+	public static final String TENANT_WEIGHT = "com_ibm_watson_health_common_concurrent_tenant_weight";
+	public static final String TENANT_MIN_SHARE = "com_ibm_watson_health_common_concurrent_tenant_min_share";
+	public static final String TENANT_MAX_REQUESTS = "com_ibm_watson_health_common_concurrent_tenant_max_requests";
+	public static final String TENANT_OVERRIDES = "com_ibm_watson_health_common_concurrent_tenant_overrides";
+
+	private static final String WEIGHT_KEY = "weight";
+	private static final String MIN_SHARE_KEY = "min_share";
+	private static final String MAX_REQUESTS_KEY = "max_requests";
+
+	// Idle tenants are evicted once this many are tracked, so the map does not grow without bound
+	static final int MAX_TRACKED_TENANTS = 4096;
+	// Most active tenants reported in the status
+	static final int MAX_STATUS_TENANTS = 100;
+	static final String DEFAULT_TENANT = "";
+
+	private final TenantSettings defaultSettings;
+	private final Map<String,TenantSettings> overrides = new HashMap<>();
+	private final ConcurrentHashMap<String,TenantShare> shares = new ConcurrentHashMap<>();
+	private final TenantShare defaultShare;
+
+	// Guards the tenant queues and the backlog
+	private final ReentrantLock queueLock = new ReentrantLock();
+	private final ArrayDeque<TenantShare> backlog = new ArrayDeque<>();	// Tenants with queued requests
+
+	/**
+	 * Settings of a tenant
+	 */
+	private static final class TenantSettings {
+		private final int weight;
+		private final int minShare;
+		private final int maxRequests;
+
+		private TenantSettings(int weight, int minShare, int maxRequests) {
+			this.weight = weight;
+			this.minShare = minShare;
+			this.maxRequests = maxRequests;
+		}
+	}
+
+	/**
+	 * Admission state of a tenant
+	 */
+	static final class TenantShare {
+		private static final int EVICTED = Integer.MIN_VALUE;	// inFlight of a share removed from the map
+
+		private final String tenantId;
+		private final TenantSettings settings;
+		private final AtomicInteger inFlight = new AtomicInteger();	// Running and queued
+		private final AtomicInteger active = new AtomicInteger();	// Holding a permit
+		private final List<ArrayDeque<QueuedWaiter>> waiters = new ArrayList<>();	// Per priority, guarded by queueLock
+		private int queued;	// Guarded by queueLock
+		private final LongAdder totalBlocked = new LongAdder();
+		private final LongAdder totalRejected = new LongAdder();
+
+		private TenantShare(String tenantId, TenantSettings settings) {
+			this.tenantId = tenantId;
+			this.settings = settings;
+			for(int i = 0; i < RequestPriority.values().length; i++) {
+				waiters.add(new ArrayDeque<>());
+			}
+		}
+
+		/**
+		 * Count a new request unless the tenant is at its maximum
+		 * @param limited false to count the request even if the tenant is at its maximum
+		 * @return 1 if counted, 0 if the tenant is at its maximum, -1 if the share was evicted
+		 */
+		private int tryAddRequest(boolean limited) {
+			int count;
+			do {
+				count = inFlight.get();
+				if(count == EVICTED) {
+					return -1;
+				}
+				if(limited && settings.maxRequests > 0 && count >= settings.maxRequests) {
+					totalRejected.increment();
+					return 0;
+				}
+			} while(!inFlight.compareAndSet(count, count+1));
+			return 1;
+		}
+
+		/**
+		 * Mark the share evicted if it has no requests in flight, called with queueLock held
+		 */
+		private boolean evict() {
+			return queued == 0 && inFlight.compareAndSet(0, EVICTED);
+		}
+
+		/**
+		 * Remove a request that was rejected, cancelled or completed
+		 * @param running true if the request held a permit
+		 */
+		void removeRequest(boolean running) {
+			inFlight.decrementAndGet();
+			if(running) {
+				active.decrementAndGet();
+			}
+		}
+
+		void admitted() {
+			active.incrementAndGet();
+		}
+
+		void rejected() {
+			totalRejected.increment();
+		}
+
+		private void addWaiter(QueuedWaiter waiter) {
+			waiters.get(waiter.priority.ordinal()).addLast(waiter);
+			queued++;
+		}
+
+		/**
+		 * Get the next waiter of the highest priority with waiters without removing it
+		 */
+		private QueuedWaiter peekWaiter(boolean newest) {
+			for(ArrayDeque<QueuedWaiter> priorityWaiters : waiters) {
+				QueuedWaiter waiter = newest ? priorityWaiters.peekLast() : priorityWaiters.peekFirst();
+				if(waiter != null) {
+					return waiter;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Take the next waiter of the highest priority with waiters
+		 */
+		private QueuedWaiter pollWaiter(boolean newest) {
+			for(ArrayDeque<QueuedWaiter> priorityWaiters : waiters) {
+				QueuedWaiter waiter = newest ? priorityWaiters.pollLast() : priorityWaiters.pollFirst();
+				if(waiter != null) {
+					queued--;
+					return waiter;
+				}
+			}
+			return null;
+		}
+
+		private QueuedWaiter removeWaiter(AdmissionWaiter waiter) {
+			for(ArrayDeque<QueuedWaiter> priorityWaiters : waiters) {
+				for(Iterator<QueuedWaiter> it = priorityWaiters.iterator(); it.hasNext(); ) {
+					QueuedWaiter queued = it.next();
+					if(queued.waiter == waiter) {
+						it.remove();
+						this.queued--;
+						return queued;
+					}
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Selection order, lower goes first.  Tenants below their minimum share come before all others.
+		 */
+		private double rank() {
+			int running = active.get();
+			if(running < settings.minShare) {
+				return (double) running / settings.minShare - 1;
+			}
+			return (double) running / settings.weight;
+		}
+	}
+
+	/**
+	 * Create the fair share if enabled
+	 * @param serviceProperties Service properties
+	 * @return Fair share or null if not enabled
+	 */
+	static TenantFairShare create(Properties serviceProperties) {
+		if(!Boolean.parseBoolean(serviceProperties.getProperty(TENANT_FAIR_SHARE, "false").trim())) {
+			return null;
+		}
+		return new TenantFairShare(serviceProperties);
+	}
+
+	private TenantFairShare(Properties serviceProperties) {
+		defaultSettings = new TenantSettings(
+				getIntProperty(TENANT_WEIGHT, serviceProperties.getProperty(TENANT_WEIGHT), 1, 1),
+				getIntProperty(TENANT_MIN_SHARE, serviceProperties.getProperty(TENANT_MIN_SHARE), 0, 0),
+				getIntProperty(TENANT_MAX_REQUESTS, serviceProperties.getProperty(TENANT_MAX_REQUESTS), 0, 0));
+		logger.info("Tenant fair share enabled, weight="+defaultSettings.weight+", min share="+defaultSettings.minShare+
+				", max requests="+defaultSettings.maxRequests);
+
+		String overrideList = serviceProperties.getProperty(TENANT_OVERRIDES, "");
+		for(String item : overrideList.split("\\\\,")) { // delimiter is \\, in a properties file
+			item = item.trim();
+			if(item.isEmpty()) {
+				continue;
+			}
+			String[] fields = item.split(";");
+			String tenantId = fields[0].trim();
+			Map<String,String> values = new HashMap<>();
+			for(int i = 1; i < fields.length; i++) {
+				int index = fields[i].indexOf('=');
+				String key = index > 0 ? fields[i].substring(0, index).trim() : fields[i].trim();
+				if(index < 0 || !(key.equals(WEIGHT_KEY) || key.equals(MIN_SHARE_KEY) || key.equals(MAX_REQUESTS_KEY))) {
+					logger.error("Invalid entry in service property \""+TENANT_OVERRIDES+"\", value="+item);
+					throw new IllegalArgumentException("Invalid entry in service property "+TENANT_OVERRIDES+", value="+item);
+				}
+				values.put(key, fields[i].substring(index+1));
+			}
+			TenantSettings settings = new TenantSettings(
+					getIntProperty(TENANT_OVERRIDES, values.get(WEIGHT_KEY), defaultSettings.weight, 1),
+					getIntProperty(TENANT_OVERRIDES, values.get(MIN_SHARE_KEY), defaultSettings.minShare, 0),
+					getIntProperty(TENANT_OVERRIDES, values.get(MAX_REQUESTS_KEY), defaultSettings.maxRequests, 0));
+			overrides.put(tenantId, settings);
+			logger.info("Tenant "+tenantId+" weight="+settings.weight+", min share="+settings.minShare+
+					", max requests="+settings.maxRequests);
+		}
+
+		defaultShare = new TenantShare(DEFAULT_TENANT, defaultSettings);
+		shares.put(DEFAULT_TENANT, defaultShare);
+	}
+
+	/**
+	 * Count a new request against its tenant
+	 * @param tenantId Tenant ID, null for the default tenant
+	 * @param limited false to count the request even if the tenant is at its maximum
+	 * @return Tenant state or null if the tenant is at its maximum
+	 */
+	TenantShare addRequest(String tenantId, boolean limited) {
+		while(true) {
+			TenantShare share = getShare(tenantId);
+			int result = share.tryAddRequest(limited);
+			if(result >= 0) {
+				return result > 0 ? share : null;
+			}
+			// Evicted after it was looked up, the next lookup creates a new share
+		}
+	}
+
+	/**
+	 * Get the admission state of a tenant.  A tenant with requests in flight is never evicted, so
+	 * this returns the share the requests were counted against.
+	 * @param tenantId Tenant ID, null for the default tenant
+	 * @return Tenant state
+	 */
+	TenantShare getShare(String tenantId) {
+		if(tenantId == null) {
+			return defaultShare;
+		}
+		TenantShare share = shares.get(tenantId);
+		if(share == null) {
+			if(shares.size() >= MAX_TRACKED_TENANTS) {
+				// If every tracked tenant has requests in flight the map grows past the limit,
+				// it is still bounded by the requests in flight
+				evictIdleShares();
+			}
+			TenantSettings settings = overrides.get(tenantId);
+			share = shares.computeIfAbsent(tenantId,
+					id -> new TenantShare(id, settings != null ? settings : defaultSettings));
+		}
+		return share;
+	}
+
+	/**
+	 * Remove the tenants without requests in flight or queued
+	 */
+	private void evictIdleShares() {
+		queueLock.lock();
+		try {
+			if(shares.size() < MAX_TRACKED_TENANTS) {
+				// Evicted by another thread
+				return;
+			}
+			int evicted = 0;
+			for(Iterator<TenantShare> it = shares.values().iterator(); it.hasNext(); ) {
+				TenantShare share = it.next();
+				if(share != defaultShare && share.evict()) {
+					it.remove();
+					evicted++;
+				}
+			}
+			logger.debug("Evicted "+evicted+" idle tenants");
+		}
+		finally {
+			queueLock.unlock();
+		}
+	}
+
+	/**
+	 * Queue a waiter behind the other requests of its tenant
+	 */
+	void enqueue(QueuedWaiter queued, AtomicInteger queuedRequests) {
+		TenantShare share = queued.share;
+		queueLock.lock();
+		try {
+			if(share.queued == 0) {
+				backlog.addLast(share);
+			}
+			share.addWaiter(queued);
+			share.totalBlocked.increment();
+			queuedRequests.incrementAndGet();
+		}
+		finally {
+			queueLock.unlock();
+		}
+	}
+
+	/**
+	 * Take the next waiter of the next tenant
+	 * @param newest Take the newest waiter of the tenant instead of the oldest
+	 * @param reserveCost Reserves the cost of the waiter, the waiter stays queued if it fails
+	 * @return Waiter or null if none are queued or the cost of the next waiter could not be reserved
+	 */
+	QueuedWaiter poll(boolean newest, AtomicInteger queuedRequests, IntPredicate reserveCost) {
+		queueLock.lock();
+		try {
+			TenantShare next = null;
+			double nextRank = Double.MAX_VALUE;
+			for(TenantShare share : backlog) {
+				double rank = share.rank();
+				if(rank < nextRank) {
+					next = share;
+					nextRank = rank;
+				}
+			}
+			if(next == null || !reserveCost.test(next.peekWaiter(newest).cost)) {
+				return null;
+			}
+
+			QueuedWaiter waiter = next.pollWaiter(newest);
+			// Move the tenant to the end of the backlog for round robin among equal ranks
+			backlog.remove(next);
+			if(next.queued > 0) {
+				backlog.addLast(next);
+			}
+			queuedRequests.decrementAndGet();
+			return waiter;
+		}
+		finally {
+			queueLock.unlock();
+		}
+	}
+
+	/**
+	 * Remove a queued waiter
+	 * @return Queued waiter or null if it is not queued
+	 */
+	QueuedWaiter remove(AdmissionWaiter waiter, AtomicInteger queuedRequests) {
+		queueLock.lock();
+		try {
+			for(Iterator<TenantShare> it = backlog.iterator(); it.hasNext(); ) {
+				TenantShare share = it.next();
+				QueuedWaiter queued = share.removeWaiter(waiter);
+				if(queued != null) {
+					if(share.queued == 0) {
+						it.remove();
+					}
+					queuedRequests.decrementAndGet();
+					return queued;
+				}
+			}
+			return null;
+		}
+		finally {
+			queueLock.unlock();
+		}
+	}
+
+	/**
+	 * Get the counters of the most active tracked tenants
+	 * @return Status per tenant, at most {@link #MAX_STATUS_TENANTS} ordered by requests in flight and then
+	 * 			by blocked and rejected requests
+	 */
+	public List<TenantConcurrencyStatus> getTenantStatus() {
+		Collection<TenantShare> values = shares.values();
+		List<TenantConcurrencyStatus> status = new ArrayList<>(values.size());
+		for(TenantShare share : values) {
+			int inFlight = share.inFlight.get();
+			if(inFlight == TenantShare.EVICTED) {
+				continue;
+			}
+			int active = share.active.get();
+			status.add(new TenantConcurrencyStatus(share.tenantId, active, Math.max(0, inFlight-active),
+					share.totalBlocked.sum(), share.totalRejected.sum()));
+		}
+		if(status.size() > MAX_STATUS_TENANTS) {
+			status.sort(Comparator.comparingInt(
+					(TenantConcurrencyStatus tenant) -> tenant.getActiveRequests() + tenant.getQueuedRequests())
+					.thenComparingLong(tenant -> tenant.getTotalBlockedRequests() + tenant.getTotalRejectedRequests())
+					.reversed());
+			status = new ArrayList<>(status.subList(0, MAX_STATUS_TENANTS));
+		}
+		return status;
+	}
+
+	private static int getIntProperty(String name, String value, int defaultValue, int minValue) {
+		if(value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			int result = Integer.parseInt(value.trim());
+			if(result < minValue) {
+				throw new NumberFormatException("Value must be at least "+minValue);
+			}
+			return result;
+		}
+		catch(NumberFormatException e) {
+			logger.error("Format exception for service property \""+name+"\", value="+value);
+			throw new IllegalArgumentException("Format exception for service property "+name+", value="+value, e);
+		}
+	}
+}
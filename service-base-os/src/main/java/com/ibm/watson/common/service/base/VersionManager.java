@@ -9,11 +9,11 @@ import java.text.ParseException;
 import java.util.Date;
 
 /**
- * Manager for API version tracking.
+ * Manager for API version tracking.  The version is held in the {@link RequestContext}
+ * bound to the thread.
  *
  */
 public class VersionManager {
-	private static final ThreadLocal<Date> threadVersion = new ThreadLocal<>();
 
 	/**
 	 * Returns version (date) of the current API
@@ -21,7 +21,8 @@ public class VersionManager {
 	 * @return date - Version being processed.
 	 */
 	public static Date getVersion() {
-		return threadVersion.get();
+		RequestContext context = RequestContext.current();
+		return context != null ? context.getVersion() : null;
 	}
 
 	/**
@@ -32,6 +33,9 @@ public class VersionManager {
 	 * @throws ParseException
 	 */
 	static void setVersion(Date version) throws ParseException {
-		threadVersion.set(version);
+		RequestContext context = RequestContext.writable(version != null);
+		if(context != null) {
+			context.setVersion(version);
+		}
 	}
 }
@@ -0,0 +1,210 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable view of the name=value pairs of the X-Watson-UserInfo header, for example
+ * "bluemix-crn=crn:v1:...;bluemix-iamid=IBMid-123;OrgId=IBM;UserId=myuserid".
+ *
+ * The header is parsed once per request by MainServletFilter and saved in ServiceThreadLocal so
+ * tenant resolution, operational logging and the activity tracker share the same result.
+ * Parsing is a single pass over the header without regular expressions, with the same results as the
+ * tokenizer MainServletFilter used before.  Pairs are separated by ';' and split on '=' ignoring empty pieces,
+ * so "OrgId==x" is OrgId x.  Pairs that do not split into exactly a name and a value are skipped, for example
+ * "a=b=c" or "OrgId=".  Names and values are trimmed, so a blank value is the empty string.  If a name is
+ * repeated the first value is used.  Names are case sensitive.
+ */
+public final class WatsonUserInfo {
+
+	public static final String BLUEMIX_CRN = "bluemix-crn";
+	public static final String BLUEMIX_IAM_ID = "bluemix-iamid";
+	public static final String BLUEMIX_SUBJECT = "bluemix-subject";
+	public static final String BLUEMIX_RESOURCE_GROUP = "bluemix-resource-group";
+	public static final String BLUEMIX_INSTANCE_ID = "bluemix-instance-id";
+	public static final String ORG_ID = "OrgId";
+	public static final String USER_ID = "UserId";
+
+	/** User info of a request without the header */
+	public static final WatsonUserInfo EMPTY = new WatsonUserInfo(null, new String[0], new String[0], 0);
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	private final String headerValue;
+	private final String[] names;
+	private final String[] values;
+	private final int count;
+
+	private WatsonUserInfo(String headerValue, String[] names, String[] values, int count) {
+		this.headerValue = headerValue;
+		this.names = names;
+		this.values = values;
+		this.count = count;
+	}
+
+	/**
+	 * Parse an X-Watson-UserInfo header value
+	 * @param headerValue Header value, may be null
+	 * @return Parsed user info, {@link #EMPTY} if the value is null or empty
+	 */
+	public static WatsonUserInfo parse(String headerValue) {
+		if(headerValue == null || headerValue.isEmpty()) {
+			return EMPTY;
+		}
+
+		String[] names = null;
+		String[] values = null;
+		int count = 0;
+		int length = headerValue.length();
+		int start = 0;
+		while(start < length) {
+			// Find the end of the pair and the pieces between its '=' separators, empty pieces do not count
+			int end = start;
+			int pieces = 0;
+			int nameStart = -1, nameEnd = -1, valueStart = -1, valueEnd = -1;
+			for(char c; end < length && (c = headerValue.charAt(end)) != ';'; end++) {
+				if(c != '=' && (end == start || headerValue.charAt(end - 1) == '=')) {
+					pieces++;
+					if(pieces == 1) {
+						nameStart = end;
+					}
+					else if(pieces == 2) {
+						valueStart = end;
+					}
+				}
+				if(c == '=' && pieces == 1 && nameEnd < 0) {
+					nameEnd = end;
+				}
+				else if(c == '=' && pieces == 2 && valueEnd < 0) {
+					valueEnd = end;
+				}
+			}
+			if(pieces == 2) {
+				String name = trim(headerValue, nameStart, nameEnd);
+				String value = trim(headerValue, valueStart, valueEnd < 0 ? end : valueEnd);
+				if(value == null) {
+					value = "";
+				}
+				if(name != null && indexOf(names, count, name) < 0) {
+					if(names == null) {
+						names = new String[INITIAL_CAPACITY];
+						values = new String[INITIAL_CAPACITY];
+					}
+					else if(count == names.length) {
+						String[] newNames = new String[count * 2];
+						String[] newValues = new String[count * 2];
+						System.arraycopy(names, 0, newNames, 0, count);
+						System.arraycopy(values, 0, newValues, 0, count);
+						names = newNames;
+						values = newValues;
+					}
+					names[count] = name;
+					values[count] = value;
+					count++;
+				}
+			}
+			start = end + 1;
+		}
+
+		if(count == 0) {
+			// Keep the header value for MainServletFilter.getPropertyFromHeaderValue overrides
+			return new WatsonUserInfo(headerValue, EMPTY.names, EMPTY.values, 0);
+		}
+		return new WatsonUserInfo(headerValue, names, values, count);
+	}
+
+	/**
+	 * Get the value of a name
+	 * @param name Name within the header, case sensitive
+	 * @return Trimmed value or null if not present
+	 */
+	public String get(String name) {
+		int index = indexOf(names, count, name);
+		return index < 0 ? null : values[index];
+	}
+
+	/**
+	 * Get the header value this user info was parsed from
+	 * @return Header value or null
+	 */
+	public String getHeaderValue() {
+		return headerValue;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	public String getCrn() {
+		return get(BLUEMIX_CRN);
+	}
+
+	public String getIamId() {
+		return get(BLUEMIX_IAM_ID);
+	}
+
+	public String getSubject() {
+		return get(BLUEMIX_SUBJECT);
+	}
+
+	public String getResourceGroup() {
+		return get(BLUEMIX_RESOURCE_GROUP);
+	}
+
+	public String getInstanceId() {
+		return get(BLUEMIX_INSTANCE_ID);
+	}
+
+	public String getOrgId() {
+		return get(ORG_ID);
+	}
+
+	public String getUserId() {
+		return get(USER_ID);
+	}
+
+	/**
+	 * Get the name=value pairs as a map.  A new unmodifiable map is built on each call.
+	 * @return Map of names to values in header order
+	 */
+	public Map<String,String> asMap() {
+		Map<String,String> map = new LinkedHashMap<>(count*4/3+1);
+		for(int i = 0; i < count; i++) {
+			map.put(names[i], values[i]);
+		}
+		return Collections.unmodifiableMap(map);
+	}
+
+	@Override
+	public String toString() {
+		return asMap().toString();
+	}
+
+	private static int indexOf(String[] names, int count, String name) {
+		for(int i = 0; i < count; i++) {
+			if(names[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Trimmed substring, null if empty
+	 */
+	private static String trim(String s, int start, int end) {
+		while(start < end && s.charAt(start) <= ' ') {
+			start++;
+		}
+		while(end > start && s.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		return start == end ? null : s.substring(start, end);
+	}
+}
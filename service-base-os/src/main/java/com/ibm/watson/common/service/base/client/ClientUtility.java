@@ -29,8 +29,7 @@ public class ClientUtility {
 
 		// Add common client filters and properties here
 		builder.register(new ProcessClientRequestFilter());
-		// TODO uncomment the following line once code is added to the response filter
-		// builder.register(new ProcessClientResponseFilter());
+		builder.register(new ProcessClientResponseFilter());
 
 		return builder;
 
@@ -16,14 +16,19 @@ import javax.ws.rs.ext.Provider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.ibm.watson.common.service.base.RequestPriority;
 import com.ibm.watson.common.service.base.ServiceBaseUtility;
 import com.ibm.watson.common.service.base.ServiceThreadLocal;
+import com.ibm.watson.common.service.base.jfr.ServiceFlightRecorder;
 import com.ibm.watson.common.service.base.security.MainServletFilter;
 
 @Provider
 public class ProcessClientRequestFilter implements ClientRequestFilter {
 	private static final Logger logger = LoggerFactory.getLogger(ProcessClientRequestFilter.class.getName());
 
+	// Request property holding the JFR client call event, committed by ProcessClientResponseFilter
+	static final String FLIGHT_EVENT_PROPERTY = "com.ibm.watson.common.service.base.client.flightEvent";
+
 //	public ProcessClientRequestFilter() {
 //		System.out.println("in clientRequestFilter constructor");
 //	}
@@ -51,6 +56,15 @@ public class ProcessClientRequestFilter implements ClientRequestFilter {
       outgoingHeaders.putSingle(MainServletFilter.HEADER_DEBUG, debug.toString());
 		}
 
+		// Pass the request priority on so the whole call tree is shed in the same order
+		RequestPriority priority = ServiceThreadLocal.getRequestPriority();
+		if (priority != null) {
+			MultivaluedMap<String,Object> outgoingHeaders = requestContext.getHeaders();
+			if(!outgoingHeaders.containsKey(MainServletFilter.HEADER_REQUEST_PRIORITY)) {
+				outgoingHeaders.putSingle(MainServletFilter.HEADER_REQUEST_PRIORITY, priority.toHeaderValue());
+			}
+		}
+
 		//Get the the tenant and super tenant versions and set them into the appropriate outgoing headers
 		String tenantVersion = ServiceThreadLocal.getTenantArtifactVersion();
 		if (tenantVersion != null && !tenantVersion.trim().isEmpty()) {
@@ -65,19 +79,25 @@ public class ProcessClientRequestFilter implements ClientRequestFilter {
 		}
 
 		// Propagate specific headers to outgoing client request if present.
+		// Captured headers iterate their fixed slots directly without rehashing.
 		Map<String,String> headersToPropagate = ServiceThreadLocal.getRequestHeaders();
 		if(headersToPropagate !=null) {
 			MultivaluedMap<String,Object> outgoingHeaders = requestContext.getHeaders();
-			for(String headerName : headersToPropagate.keySet()) {
+			headersToPropagate.forEach((headerName, headerValue) -> {
 				// Only add if not already in outgoing request
 				if(!outgoingHeaders.containsKey(headerName)) {
-					String headerValue = headersToPropagate.get(headerName);
 					if(headerValue != null && !headerValue.isEmpty()) {
 						outgoingHeaders.putSingle(headerName, headerValue);
 						if(logger.isDebugEnabled()) logger.debug("Adding header to client request: "+headerName+": "+headerValue);
 					}
 				}
-			}
+			});
+		}
+
+		// Time the call until the response filter
+		Object flightEvent = ServiceFlightRecorder.beginClientCall();
+		if(flightEvent != null) {
+			requestContext.setProperty(FLIGHT_EVENT_PROPERTY, flightEvent);
 		}
 	}
 }
@@ -6,12 +6,15 @@
 package com.ibm.watson.common.service.base.client;
 
 import java.io.IOException;
+import java.net.URI;
 
 import javax.ws.rs.client.ClientRequestContext;
 import javax.ws.rs.client.ClientResponseContext;
 import javax.ws.rs.client.ClientResponseFilter;
 import javax.ws.rs.ext.Provider;
 
+import com.ibm.watson.common.service.base.jfr.ServiceFlightRecorder;
+
 @Provider
 public class ProcessClientResponseFilter implements ClientResponseFilter {
 
@@ -23,8 +26,14 @@ public class ProcessClientResponseFilter implements ClientResponseFilter {
     public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext)
             throws IOException {
 
-            // Nothing to do yet
-			// TODO uncomment for this class in ClientUtility when code is added here
+		// Commit the JFR client call event begun by the request filter
+		Object flightEvent = requestContext.getProperty(ProcessClientRequestFilter.FLIGHT_EVENT_PROPERTY);
+		if(flightEvent != null) {
+			URI uri = requestContext.getUri();
+			String host = uri.getPort() >= 0 ? uri.getHost()+":"+uri.getPort() : uri.getHost();
+			ServiceFlightRecorder.commitClientCall(flightEvent, requestContext.getMethod(), host, uri.getRawPath(),
+					responseContext.getStatus());
+		}
 	}
 
 }
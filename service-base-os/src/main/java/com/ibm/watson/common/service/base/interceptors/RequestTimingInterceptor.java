@@ -0,0 +1,49 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base.interceptors;
+
+import java.io.IOException;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import com.ibm.watson.common.service.base.RequestTimings;
+import com.ibm.watson.common.service.base.ServiceThreadLocal;
+import com.ibm.watson.common.service.base.security.MainServletFilter;
+
+/**
+ * Times the entity write phase of a request, see {@link RequestTimings}.  When debug is set with the x-debug
+ * header, the Server-Timing header with the phases before the entity write is added here, the last point where
+ * response headers can be changed.
+ *
+ * Registered by {@link com.ibm.watson.common.service.base.ServiceApplication#getClasses()}.
+ */
+@Provider
+public class RequestTimingInterceptor implements WriterInterceptor {
+
+	@Override
+	public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+		RequestTimings timings = ServiceThreadLocal.getRequestTimings();
+		if(timings == null || timings.getCurrentPhase() != RequestTimings.Phase.HANDLER) {
+			context.proceed();
+			return;
+		}
+
+		timings.begin(RequestTimings.Phase.ENTITY_WRITE);
+		if(Boolean.TRUE.equals(ServiceThreadLocal.getThreadDebug())) {
+			context.getHeaders().putSingle(MainServletFilter.HEADER_SERVER_TIMING, timings.toServerTiming());
+		}
+		try {
+			context.proceed();
+		}
+		finally {
+			// Back in the handler until the filter chain returns
+			timings.begin(RequestTimings.Phase.HANDLER);
+		}
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Request blocked, rejected or timed out by a concurrent limit.  Blocked requests are emitted when they leave
+ * the queue, so the queue time is known, and may be emitted by the thread of the request that released the permit.
+ */
+@Name("com.ibm.watson.common.service.Admission")
+@Label("Service Admission")
+@Category({"Watson Service", "Concurrent Limit"})
+@Description("Request blocked, rejected or timed out by a concurrent limit")
+@Enabled(false)
+@StackTrace(false)
+final class AdmissionEvent extends Event {
+
+	@Label("Limit")
+	@Description("Bulkhead name, main for the main limit")
+	String limit;
+
+	@Label("Tenant")
+	String tenant;
+
+	@Label("Priority")
+	String priority;
+
+	@Label("Outcome")
+	@Description("block, reject, heap_reject or timeout")
+	String outcome;
+
+	@Label("Queue Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long queueTime;
+
+	@Label("Concurrent Requests")
+	int concurrentRequests;
+}
@@ -0,0 +1,43 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Downstream request from ProcessClientRequestFilter to ProcessClientResponseFilter.  Calls that fail without
+ * a response are not emitted.
+ */
+@Name("com.ibm.watson.common.service.ClientCall")
+@Label("Service Client Call")
+@Category({"Watson Service", "Client"})
+@Description("Downstream request made with a client from ClientUtility")
+@Enabled(false)
+@StackTrace(false)
+final class ClientCallEvent extends Event {
+
+	@Label("Method")
+	String method;
+
+	@Label("Host")
+	String host;
+
+	@Label("Path")
+	@Description("Target path without the query")
+	String path;
+
+	@Label("Status")
+	int status;
+
+	@Label("Correlation ID")
+	String correlationId;
+}
@@ -0,0 +1,102 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base.jfr;
+
+import com.ibm.watson.common.service.base.RequestPriority;
+import com.ibm.watson.common.service.base.ServiceThreadLocal;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * JFR implementation of the service events.  Only loaded by {@link ServiceFlightRecorder} when the JVM supports JFR.
+ *
+ * The event types are checked before an event is created, so a disabled event costs a field read.  Events with
+ * a duration are committed only if they are over the threshold of the recording settings.
+ */
+final class JfrServiceEvents implements ServiceFlightRecorder.ServiceEvents {
+	private static final String MAIN_LIMIT = "main";
+
+	private final EventType requestType;
+	private final EventType admissionType;
+	private final EventType clientCallType;
+
+	JfrServiceEvents() {
+		if(!FlightRecorder.isAvailable()) {
+			throw new IllegalStateException("Flight recorder is not available");
+		}
+		// Registers the events
+		requestType = EventType.getEventType(RequestEvent.class);
+		admissionType = EventType.getEventType(AdmissionEvent.class);
+		clientCallType = EventType.getEventType(ClientCallEvent.class);
+	}
+
+	@Override
+	public Object beginRequest() {
+		if(!requestType.isEnabled()) {
+			return null;
+		}
+		RequestEvent event = new RequestEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void commitRequest(Object event, String method, String route, String tenantId, int status) {
+		RequestEvent requestEvent = (RequestEvent) event;
+		requestEvent.end();
+		if(requestEvent.shouldCommit()) {
+			requestEvent.method = method;
+			requestEvent.route = route;
+			requestEvent.tenant = tenantId;
+			requestEvent.status = status;
+			requestEvent.correlationId = ServiceThreadLocal.getCorrelationId();
+			requestEvent.commit();
+		}
+	}
+
+	@Override
+	public void admission(String limit, String tenantId, RequestPriority priority, String outcome, long queueNanos,
+			int concurrentRequests) {
+		if(!admissionType.isEnabled()) {
+			return;
+		}
+		AdmissionEvent event = new AdmissionEvent();
+		if(event.shouldCommit()) {
+			event.limit = limit != null ? limit : MAIN_LIMIT;
+			event.tenant = tenantId;
+			event.priority = priority != null ? priority.toHeaderValue() : null;
+			event.outcome = outcome;
+			event.queueTime = queueNanos;
+			event.concurrentRequests = concurrentRequests;
+			event.commit();
+		}
+	}
+
+	@Override
+	public Object beginClientCall() {
+		if(!clientCallType.isEnabled()) {
+			return null;
+		}
+		ClientCallEvent event = new ClientCallEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void commitClientCall(Object event, String method, String host, String path, int status) {
+		ClientCallEvent clientCallEvent = (ClientCallEvent) event;
+		clientCallEvent.end();
+		if(clientCallEvent.shouldCommit()) {
+			clientCallEvent.method = method;
+			clientCallEvent.host = host;
+			clientCallEvent.path = path;
+			clientCallEvent.status = status;
+			clientCallEvent.correlationId = ServiceThreadLocal.getCorrelationId();
+			clientCallEvent.commit();
+		}
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Request processed by MainServletFilter, from its arrival to the response log
+ */
+@Name("com.ibm.watson.common.service.Request")
+@Label("Service Request")
+@Category({"Watson Service", "Request"})
+@Description("Request processed by the service from its arrival to the response log")
+@Enabled(false)
+@StackTrace(false)
+final class RequestEvent extends Event {
+
+	@Label("Method")
+	String method;
+
+	@Label("Route")
+	@Description("Route template, or the path if no resource matched")
+	String route;
+
+	@Label("Tenant")
+	String tenant;
+
+	@Label("Status")
+	int status;
+
+	@Label("Correlation ID")
+	String correlationId;
+}
@@ -0,0 +1,142 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base.jfr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.watson.common.service.base.RequestPriority;
+
+/**
+ * Emits the service Java Flight Recorder events: a request event for each request processed by MainServletFilter,
+ * an admission event for each request blocked or rejected by a concurrent limit, and a client call event for each
+ * downstream call made with a client from {@link com.ibm.watson.common.service.base.client.ClientUtility ClientUtility}.
+ *
+ * The events are disabled unless a recording enables them.  The settings file shipped in the jar,
+ * {@value #SETTINGS_RESOURCE}, enables them with a 10 ms threshold for requests and client calls.  It only holds
+ * the service events, so start it next to a recording with the JVM settings; each recording contains the events
+ * of all the recordings running at the same time.  For example
+ *
+ * <pre>
+ *	unzip -j service-base-os.jar com/ibm/watson/common/service/base/jfr/service.jfc
+ *	jcmd &lt;pid&gt; JFR.start name=jvm settings=default
+ *	jcmd &lt;pid&gt; JFR.start name=service settings=./service.jfc duration=60s filename=service.jfr
+ * </pre>
+ *
+ * This class does not reference JFR, the events are only loaded when the JVM supports JFR, so the framework
+ * still runs on JVMs without it.  Without JFR the methods return right away, and with JFR each method only checks
+ * whether its event is enabled before doing anything else.  Events that begin return an opaque event that must be
+ * passed to the commit method, null when the event is not enabled.
+ */
+public final class ServiceFlightRecorder {
+	private static final Logger logger = LoggerFactory.getLogger(ServiceFlightRecorder.class.getName());
+
+	public static final String SETTINGS_RESOURCE = "/com/ibm/watson/common/service/base/jfr/service.jfc";
+
+	private static final String JFR_CLASS = "jdk.jfr.FlightRecorder";
+	private static final String EVENTS_CLASS = "com.ibm.watson.common.service.base.jfr.JfrServiceEvents";
+
+	// null if the JVM does not support JFR
+	private static final ServiceEvents events = loadEvents();
+
+	/**
+	 * Event methods, implemented with JFR events by {@link JfrServiceEvents}
+	 */
+	interface ServiceEvents {
+		Object beginRequest();
+		void commitRequest(Object event, String method, String route, String tenantId, int status);
+		void admission(String limit, String tenantId, RequestPriority priority, String outcome, long queueNanos, int concurrentRequests);
+		Object beginClientCall();
+		void commitClientCall(Object event, String method, String host, String path, int status);
+	}
+
+	private ServiceFlightRecorder() {
+	}
+
+	private static ServiceEvents loadEvents() {
+		try {
+			Class.forName(JFR_CLASS);
+		}
+		catch(ClassNotFoundException | LinkageError e) {
+			logger.info("Flight recorder events disabled, the JVM does not support JFR");
+			return null;
+		}
+		try {
+			return (ServiceEvents) Class.forName(EVENTS_CLASS).getDeclaredConstructor().newInstance();
+		}
+		catch(ReflectiveOperationException | RuntimeException | LinkageError e) {
+			logger.warn("Flight recorder events disabled, unable to register the events: "+e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the JVM supports JFR and the events are registered
+	 */
+	public static boolean isAvailable() {
+		return events != null;
+	}
+
+	/**
+	 * Begin the request event when a request arrives
+	 * @return Event to pass to {@link #commitRequest(Object, String, String, String, int)}, null if not enabled
+	 */
+	public static Object beginRequest() {
+		return events != null ? events.beginRequest() : null;
+	}
+
+	/**
+	 * End the request event and commit it if it is over the threshold
+	 * @param event Event returned by {@link #beginRequest()}, may be null
+	 * @param method HTTP method
+	 * @param route Route template, or the path if no resource matched
+	 * @param tenantId Tenant ID, may be null
+	 * @param status Response status
+	 */
+	public static void commitRequest(Object event, String method, String route, String tenantId, int status) {
+		if(event != null) {
+			events.commitRequest(event, method, route, tenantId, status);
+		}
+	}
+
+	/**
+	 * Emit an admission event for a request that was blocked, rejected or timed out by a concurrent limit
+	 * @param limit Bulkhead name or null for the main limit
+	 * @param tenantId Tenant ID, may be null
+	 * @param priority Priority class, may be null
+	 * @param outcome Event type of the concurrent limit log: block, reject, heap_reject or timeout
+	 * @param queueNanos Time spent in the queue, zero if the request was not queued
+	 * @param concurrentRequests Concurrent requests of the limit
+	 */
+	public static void admission(String limit, String tenantId, RequestPriority priority, String outcome, long queueNanos,
+			int concurrentRequests) {
+		if(events != null) {
+			events.admission(limit, tenantId, priority, outcome, queueNanos, concurrentRequests);
+		}
+	}
+
+	/**
+	 * Begin the client call event when a downstream request is sent
+	 * @return Event to pass to {@link #commitClientCall(Object, String, String, String, int)}, null if not enabled
+	 */
+	public static Object beginClientCall() {
+		return events != null ? events.beginClientCall() : null;
+	}
+
+	/**
+	 * End the client call event and commit it if it is over the threshold
+	 * @param event Event returned by {@link #beginClientCall()}, may be null
+	 * @param method HTTP method
+	 * @param host Target host and port
+	 * @param path Target path without the query
+	 * @param status Response status
+	 */
+	public static void commitClientCall(Object event, String method, String host, String path, int status) {
+		if(event != null) {
+			events.commitClientCall(event, method, host, path, status);
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base.security;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response.Status;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibm.watson.service.base.model.ServiceError;
+
+/**
+ * Registry of pre-serialized ServiceError response bodies for the requests MainServletFilter rejects
+ * itself.  Each body is serialized once to UTF-8 bytes when the registry is built and only the
+ * correlation ID (and more info text where used) is spliced in when the response is written.  This keeps
+ * rejecting a request cheap at exactly the time the service is overloaded.
+ */
+public class CannedErrorResponses {
+
+	public enum Type {
+		AUTHENTICATION_NOT_CONFIGURED,	// 500, authentication type property invalid
+		INITIALIZATION_FAILED,			// 500, service initialization failed
+		ILLEGAL_CHARACTER,				// 400, IllegalArgumentException while processing the request
+		NOT_ACCEPTABLE,					// 406, other RuntimeException while processing the request
+		CONCURRENT_LIMIT,				// 503, concurrent reject threshold reached
+		RATE_LIMIT						// 429, tenant or route rate limit reached
+	}
+
+	private static final String MORE_INFO_MARKER = "@@moreInfo@@";
+	private static final String CORRELATION_ID_MARKER = "@@correlationId@@";
+	private static final String MORE_INFO_FIELD = ",\"moreInfo\":";
+	private static final String CORRELATION_ID_FIELD = ",\"correlationId\":";
+
+	private final ObjectMapper mapper = new ObjectMapper().setSerializationInclusion(Include.NON_NULL);
+	private final AtomicReferenceArray<Template> templates = new AtomicReferenceArray<>(Type.values().length);
+
+	/**
+	 * Build the registry with the default error bodies for all response types.
+	 */
+	public CannedErrorResponses() {
+		register(Type.AUTHENTICATION_NOT_CONFIGURED, new ServiceError(Status.INTERNAL_SERVER_ERROR.getStatusCode())
+				.setMessage(Status.INTERNAL_SERVER_ERROR.getReasonPhrase())
+				.setDescription("Authentication type not configured"));
+		register(Type.INITIALIZATION_FAILED, new ServiceError(Status.INTERNAL_SERVER_ERROR.getStatusCode())
+				.setMessage(Status.INTERNAL_SERVER_ERROR.getReasonPhrase())
+				.setDescription("Service initialization failed"));
+		register(Type.ILLEGAL_CHARACTER, new ServiceError(HttpServletResponse.SC_BAD_REQUEST)
+				.setMessage("Illegal character found in request")
+				.setDescription("The specified URL could not be resolved due to illegal characters.")
+				.setMoreInfo(MORE_INFO_MARKER));
+		register(Type.NOT_ACCEPTABLE, new ServiceError(HttpServletResponse.SC_NOT_ACCEPTABLE)
+				.setMessage("Request could not be completed at this time, check syntax")
+				.setDescription("The request could not be resolved to a published API.")
+				.setMoreInfo(MORE_INFO_MARKER));
+		register(Type.CONCURRENT_LIMIT, new ServiceError(HttpServletResponse.SC_SERVICE_UNAVAILABLE)
+				.setDescription("Too many concurrent requests"));
+		register(Type.RATE_LIMIT, new ServiceError(Status.TOO_MANY_REQUESTS.getStatusCode())
+				.setMessage(Status.TOO_MANY_REQUESTS.getReasonPhrase())
+				.setDescription("Request rate limit reached")
+				.setMoreInfo(MORE_INFO_MARKER));
+	}
+
+	/**
+	 * Register (or replace) the error body for a response type.  The correlation ID of the error is
+	 * ignored and filled in per response.  Set the more info field to any non-null value to have
+	 * it filled in per response.
+	 *
+	 * @param type Response type
+	 * @param error Error body to pre-serialize
+	 */
+	public void register(Type type, ServiceError error) {
+		templates.set(type.ordinal(), new Template(error));
+	}
+
+	/**
+	 * Write a canned error response.  The status, content type and content length are set on the response.
+	 *
+	 * @param type Response type
+	 * @param response Response to write
+	 * @param correlationId Correlation ID of the request or null
+	 * @param moreInfo More info text if supported by the response type, or null
+	 * @throws IOException
+	 */
+	public void write(Type type, HttpServletResponse response, String correlationId, String moreInfo) throws IOException {
+		Template template = templates.get(type.ordinal());
+		byte[] body = template.render(correlationId, moreInfo);
+
+		response.setStatus(template.status);
+		response.setContentType(MediaType.APPLICATION_JSON);
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		response.setContentLength(body.length);
+		OutputStream out;
+		try {
+			out = response.getOutputStream();
+		}
+		catch(IllegalStateException e) {
+			// A writer was already obtained downstream, fall back to it
+			response.getWriter().print(new String(body, StandardCharsets.UTF_8));
+			return;
+		}
+		out.write(body);
+	}
+
+	/**
+	 * Pre-serialized body split around the optional more info and correlation ID fields.
+	 */
+	private final class Template {
+		private final int status;
+		private final byte[] head;		// Up to the more info field
+		private final byte[] middle;	// Between the more info and correlation ID fields
+		private final byte[] tail;		// After the correlation ID field
+		private final boolean hasMoreInfo;
+
+		private Template(ServiceError error) {
+			status = error.getCode();
+			hasMoreInfo = error.getMoreInfo() != null;
+			String savedCorrelationId = error.getCorrelationId();
+			String savedMoreInfo = error.getMoreInfo();
+			String json;
+			try {
+				error.setCorrelationId(CORRELATION_ID_MARKER);
+				if(hasMoreInfo) {
+					error.setMoreInfo(MORE_INFO_MARKER);
+				}
+				json = mapper.writeValueAsString(error);
+			}
+			catch(JsonProcessingException e) {
+				throw new IllegalStateException("Unable to serialize canned error response", e);
+			}
+			finally {
+				error.setCorrelationId(savedCorrelationId);
+				error.setMoreInfo(savedMoreInfo);
+			}
+
+			String correlationIdField = CORRELATION_ID_FIELD+"\""+CORRELATION_ID_MARKER+"\"";
+			int correlationIdIndex = json.indexOf(correlationIdField);
+			int moreInfoIndex = json.length();
+			int moreInfoEnd = json.length();
+			if(hasMoreInfo) {
+				String moreInfoField = MORE_INFO_FIELD+"\""+MORE_INFO_MARKER+"\"";
+				moreInfoIndex = json.indexOf(moreInfoField);
+				moreInfoEnd = moreInfoIndex + moreInfoField.length();
+			}
+			// ServiceError declares moreInfo before correlationId, the template relies on that order
+			if(correlationIdIndex < 0 || moreInfoIndex < 0 || (hasMoreInfo && moreInfoIndex > correlationIdIndex)) {
+				throw new IllegalStateException("Unexpected canned error response layout: "+json);
+			}
+			if(hasMoreInfo) {
+				head = json.substring(0, moreInfoIndex).getBytes(StandardCharsets.UTF_8);
+				middle = json.substring(moreInfoEnd, correlationIdIndex).getBytes(StandardCharsets.UTF_8);
+			}
+			else {
+				head = json.substring(0, correlationIdIndex).getBytes(StandardCharsets.UTF_8);
+				middle = new byte[0];
+			}
+			tail = json.substring(correlationIdIndex + correlationIdField.length()).getBytes(StandardCharsets.UTF_8);
+		}
+
+		private byte[] render(String correlationId, String moreInfo) {
+			byte[] moreInfoValue = hasMoreInfo && moreInfo != null ? JsonStringEncoder.getInstance().quoteAsUTF8(moreInfo) : null;
+			byte[] correlationIdValue = correlationId != null ? JsonStringEncoder.getInstance().quoteAsUTF8(correlationId) : null;
+
+			int length = head.length + middle.length + tail.length;
+			if(moreInfoValue != null) {
+				length += MORE_INFO_FIELD.length() + moreInfoValue.length + 2;
+			}
+			if(correlationIdValue != null) {
+				length += CORRELATION_ID_FIELD.length() + correlationIdValue.length + 2;
+			}
+
+			byte[] body = new byte[length];
+			int pos = copy(head, body, 0);
+			if(moreInfoValue != null) {
+				pos = copyField(MORE_INFO_FIELD, moreInfoValue, body, pos);
+			}
+			pos = copy(middle, body, pos);
+			if(correlationIdValue != null) {
+				pos = copyField(CORRELATION_ID_FIELD, correlationIdValue, body, pos);
+			}
+			copy(tail, body, pos);
+
+			return body;
+		}
+
+		private int copy(byte[] src, byte[] dest, int pos) {
+			System.arraycopy(src, 0, dest, pos, src.length);
+			return pos + src.length;
+		}
+
+		private int copyField(String field, byte[] quotedValue, byte[] dest, int pos) {
+			// Field names are ASCII
+			for(int i = 0; i < field.length(); i++) {
+				dest[pos++] = (byte) field.charAt(i);
+			}
+			dest[pos++] = '"';
+			pos = copy(quotedValue, dest, pos);
+			dest[pos++] = '"';
+			return pos;
+		}
+	}
+}
@@ -10,38 +10,54 @@ import java.io.IOException;
 import java.net.URLEncoder;
 import java.security.InvalidParameterException;
 import java.security.MessageDigest;
-import java.util.Enumeration;
-import java.util.HashMap;
+import java.text.ParseException;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.StringTokenizer;
-import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
+import javax.servlet.FilterRegistration;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.ValidationException;
-import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response.Status;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
-import com.fasterxml.jackson.annotation.JsonInclude.Include;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibm.watson.common.service.base.MatchedRoute;
+import com.ibm.watson.common.service.base.RequestContext;
+import com.ibm.watson.common.service.base.RouteClassifier;
+import com.ibm.watson.common.service.base.RequestHeaderCapture;
+import com.ibm.watson.common.service.base.RequestCostPolicy;
+import com.ibm.watson.common.service.base.RequestPriority;
+import com.ibm.watson.common.service.base.RequestPriorityPolicy;
+import com.ibm.watson.common.service.base.RequestTimings;
+import com.ibm.watson.common.service.base.RequestIdGenerator;
+import com.ibm.watson.common.service.base.RequestIdGenerators;
 import com.ibm.watson.common.service.base.ServiceBaseLogUtility;
 import com.ibm.watson.common.service.base.ServiceConcurrentLimit;
 import com.ibm.watson.common.service.base.ServiceContext;
 import com.ibm.watson.common.service.base.ServiceContext.AuthenticationType;
+import com.ibm.watson.common.service.base.ServiceFastLane;
+import com.ibm.watson.common.service.base.ServiceRateLimit;
 import com.ibm.watson.common.service.base.ServiceMetrics;
 import com.ibm.watson.common.service.base.ServiceThreadLocal;
+import com.ibm.watson.common.service.base.ServiceThreadLocalCopier;
+import com.ibm.watson.common.service.base.WatsonUserInfo;
+import com.ibm.watson.common.service.base.jfr.ServiceFlightRecorder;
 import com.ibm.watson.service.base.model.ServiceError;
 
 /**
@@ -58,6 +74,13 @@ public class MainServletFilter implements Filter {
 
 	// Config properties
 	public static final String TEST_DELAY_PROPERTY = "test_delay_seconds";
+	public static final String ROUTE_CACHE_SIZE_PROPERTY = "com_ibm_watson_health_common_route_cache_size";
+
+	// Requests delayed by the test delay property
+	private static final String TEST_DELAY_URI_PATTERN = "/v1/status.*";
+
+	// Request attribute holding the state of a request queued by the concurrent limit
+	private static final String QUEUED_REQUEST_ATTRIBUTE = MainServletFilter.class.getName()+".queuedRequest";
 
 	// Main auth header for datapower and deadbolt authentication
 	public static final String HEADER_WATSON_USER_INFO = "X-Watson-UserInfo";
@@ -93,6 +116,12 @@ public class MainServletFilter implements Filter {
 	
 	public static final String HEADER_DEBUG = "x-debug";
 
+	// Phase timing of the request, added when the x-debug header is true.  See RequestTimings.
+	public static final String HEADER_SERVER_TIMING = "Server-Timing";
+
+	// Priority class of the request, see RequestPriorityPolicy
+	public static final String HEADER_REQUEST_PRIORITY = "x-request-priority";
+
 	// Cross site support header names
 	public static final String HEADER_ACCESS_CONTROL_ORIGIN = "Access-Control-Allow-Origin";
 	// @see https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Strict-Transport-Security
@@ -129,17 +158,33 @@ public class MainServletFilter implements Filter {
 
 	public static void setNormalizeTenantId(boolean normalizeTenantId) {
 		MainServletFilter.normalizeTenantId = normalizeTenantId;
+		// Cached tenants were built with the previous setting
+		TenantCache tenantCache = ServiceContext.getTenantCache();
+		if(tenantCache != null) {
+			tenantCache.clear();
+		}
 	}
 	// Member variables
 	protected ServiceBaseLogUtility logUtility;
 	protected ServiceConcurrentLimit concurrentLimit;
+	protected ServiceFastLane fastLane;
+	protected ServiceRateLimit rateLimit;
+	protected RequestCostPolicy requestCostPolicy;
+	protected volatile RouteClassifier routeClassifier;	// Rebuilt when the concurrent limit URI patterns change
 	protected long testDelaySeconds;
+	protected RequestHeaderCapture headerCapture;
+	protected RequestIdGenerator requestIdGenerator = RequestIdGenerators.UUID;
+	protected RequestPriorityPolicy requestPriorityPolicy;
+	// Built at construction so the reject paths work even if init() fails
+	protected final CannedErrorResponses cannedResponses = new CannedErrorResponses();
+	// Tenant resolution uses the parsed user info unless a subclass changes how header properties are read
+	private final boolean propertyHookOverridden = overridesPropertyHook(getClass());
 
 
-	private class TenantImpl implements Tenant {
+	private static final class TenantImpl implements Tenant {
 
-		private String tenantId_;
-		private String userId_;
+		private final String tenantId_;
+		private final String userId_;
 
 		private TenantImpl(String tenantId, String userId) {
 			tenantId_ = tenantId;
@@ -171,9 +216,39 @@ public class MainServletFilter implements Filter {
 
 			logUtility = ServiceBaseLogUtility.getInstance();
 			concurrentLimit = ServiceContext.getConcurrentLimit();
+			fastLane = ServiceContext.getFastLane();
+			if(fastLane != null && !fastLane.isEnabled()) {
+				fastLane = null;
+			}
+			rateLimit = ServiceContext.getRateLimit();
+			if(rateLimit != null && !rateLimit.isEnabled()) {
+				rateLimit = null;
+			}
+			requestCostPolicy = ServiceContext.getRequestCostPolicy();
+			if(requestCostPolicy != null && !requestCostPolicy.isEnabled()) {
+				requestCostPolicy = null;
+			}
+			headerCapture = buildHeaderCapture(ServiceContext.getInstance());
+			if(concurrentLimit != null) {
+				cannedResponses.register(CannedErrorResponses.Type.CONCURRENT_LIMIT,
+						new ServiceError(HttpServletResponse.SC_SERVICE_UNAVAILABLE)
+						.setDescription("Too many concurrent requests")
+						.setMoreInfo(""));	// Filled in with the current reject threshold, which can change at runtime
+			}
 
-	    	// Load test delay property if present.  This is used to help with chaos testing
 	    	Properties serviceProperties = ServiceContext.getInstance().getServiceProperties();
+	    	requestIdGenerator = RequestIdGenerators.fromProperties(serviceProperties);
+	    	requestPriorityPolicy = RequestPriorityPolicy.fromProperties(serviceProperties);
+	    	routeClassifier = buildRouteClassifier(serviceProperties);
+	    	if(concurrentLimit != null) {
+	    		concurrentLimit.addChangeListener(() -> routeClassifier = buildRouteClassifier(serviceProperties));
+	    	}
+
+	    	if(isAsyncAdmissionEnabled()) {
+	    		checkAsyncFilterMappings(config);
+	    	}
+
+	    	// Load test delay property if present.  This is used to help with chaos testing
 	    	String testDelayProperty = serviceProperties.getProperty(TEST_DELAY_PROPERTY);
 	    	if(testDelayProperty != null) {
 	    		testDelaySeconds = Long.parseLong(testDelayProperty);
@@ -185,6 +260,90 @@ public class MainServletFilter implements Filter {
 		}
 	}
 
+	private boolean isAsyncAdmissionEnabled() {
+		if(concurrentLimit == null) {
+			return false;
+		}
+		if(concurrentLimit.isAsyncAdmissionEnabled()) {
+			return true;
+		}
+		for(ServiceConcurrentLimit bulkhead : concurrentLimit.getBulkheads()) {
+			if(bulkhead.isAsyncAdmissionEnabled()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Queued requests are resumed with an ASYNC dispatch, which skips filters mapped only for REQUEST
+	 * dispatches.  The servlet API does not expose the dispatcher types of a filter mapping, so the
+	 * other filters of the application are listed for the service owner to check.
+	 */
+	private void checkAsyncFilterMappings(FilterConfig config) {
+		Map<String, ? extends FilterRegistration> registrations = config.getServletContext().getFilterRegistrations();
+		if(registrations == null) {
+			return;
+		}
+		for(FilterRegistration registration : registrations.values()) {
+			if(!registration.getName().equals(config.getFilterName())) {
+				logger.warn("Concurrent async admission is enabled.  Filter "+registration.getName()+" ("+
+						registration.getClassName()+") must be mapped with the ASYNC dispatcher type to run on queued requests, "+
+						"URL patterns="+registration.getUrlPatternMappings()+" servlets="+registration.getServletNameMappings());
+			}
+		}
+	}
+
+	/**
+	 * Build the plan of request headers to save in thread local storage.
+	 * Override to capture additional headers.
+	 * @param serviceContext Service context
+	 * @return Header capture plan
+	 */
+	protected RequestHeaderCapture buildHeaderCapture(ServiceContext serviceContext) {
+		return new RequestHeaderCapture(HEADER_WATSON_USER_INFO, HEADER_DP_CLIENET_ID, HEADER_DP_WATSON_TRAN_ID,
+				HEADER_AUTHORIZATION_TOKEN, HEADER_WATSON_INSTANCE_PARAMETERS, serviceContext.getAuthenticationHeaderName());
+	}
+
+	/**
+	 * Build the classifier for the URI policies of the filter.  Override to add policies.
+	 * @param serviceProperties Service properties
+	 * @return Route classifier
+	 */
+	protected RouteClassifier buildRouteClassifier(Properties serviceProperties) {
+		String cacheSizeProperty = serviceProperties.getProperty(ROUTE_CACHE_SIZE_PROPERTY, Integer.toString(RouteClassifier.DEFAULT_CACHE_SIZE));
+		int cacheSize;
+		try {
+			cacheSize = Integer.parseInt(cacheSizeProperty.trim());
+		}
+		catch(NumberFormatException e) {
+			logger.error("Format exception for service property \""+ROUTE_CACHE_SIZE_PROPERTY+"\", value="+cacheSizeProperty);
+			throw new IllegalArgumentException("Format exception for service property "+ROUTE_CACHE_SIZE_PROPERTY+", value="+
+					cacheSizeProperty, e);
+		}
+		logger.info("Property "+ROUTE_CACHE_SIZE_PROPERTY+"="+cacheSize);
+
+		RouteClassifier.Builder builder = RouteClassifier.builder()
+				.add(RouteClassifier.LOG_FILTER, logUtility.getLogFilterPatterns())
+				.add(RouteClassifier.STATUS, Pattern.compile(TEST_DELAY_URI_PATTERN));
+		if(concurrentLimit != null) {
+			builder.add(RouteClassifier.CONCURRENT_LIMIT, concurrentLimit.getConcurrentUriPatterns());
+			List<ServiceConcurrentLimit> bulkheads = concurrentLimit.getBulkheads();
+			for(int i = 0; i < bulkheads.size(); i++) {
+				builder.add(RouteClassifier.bulkhead(i), bulkheads.get(i).getConcurrentUriPatterns());
+			}
+		}
+		if(fastLane != null) {
+			builder.add(RouteClassifier.FAST_LANE, fastLane.getUriPatterns());
+		}
+		if(requestPriorityPolicy != null) {
+			for(RequestPriority priority : RequestPriority.values()) {
+				builder.add(RouteClassifier.priority(priority), requestPriorityPolicy.getUriPatterns(priority));
+			}
+		}
+		return builder.build(Math.max(cacheSize, 0));
+	}
+
 	@Override
 	public void destroy() {
 		// nothing required here
@@ -196,7 +355,7 @@ public class MainServletFilter implements Filter {
 			ServletResponse response,
 			FilterChain filterChain) throws IOException, ServletException {
 
-        long initialTime = System.currentTimeMillis();
+        long initialNanos = System.nanoTime();
 
 // TODO - not sure if this check is needed
 //		if (!(request instanceof HttpServletRequest)) {
@@ -205,6 +364,19 @@ public class MainServletFilter implements Filter {
 //			return;
 //		}
 
+		// Async dispatches only need processing when resuming a request queued by the concurrent limit
+		if(request.getDispatcherType() == DispatcherType.ASYNC) {
+			Object queuedRequest = request.getAttribute(QUEUED_REQUEST_ATTRIBUTE);
+			if(queuedRequest instanceof QueuedRequest) {
+				request.removeAttribute(QUEUED_REQUEST_ATTRIBUTE);
+				resumeQueuedRequest((QueuedRequest) queuedRequest, filterChain);
+			}
+			else {
+				filterChain.doFilter(request, response);
+			}
+			return;
+		}
+
 		ServiceContext serviceContext = ServiceContext.getInstance();
 		ServiceMetrics serviceMetrics = serviceContext.getServiceMetrics();
 
@@ -213,14 +385,33 @@ public class MainServletFilter implements Filter {
 		HttpServletRequest httpRequest = (HttpServletRequest)request;
 		HttpServletResponse httpResponse = (HttpServletResponse)response;
 
+		// Classify the URI once for all URI policies
+		RouteClassifier classifier = routeClassifier;
+		int route = classifier != null ? classifier.classify(httpRequest.getPathInfo()) : 0;
+
+		// Probes and status requests skip the rest of the filter processing.  After an initialization
+		// failure they take the normal path, which rejects every request with a 500.
+		if(fastLane != null && RouteClassifier.has(route, RouteClassifier.FAST_LANE) &&
+				serviceContext.getAuthenticationType() != null && !serviceContext.getInitializationFailed()) {
+			processTestDelay(route);
+			processFastLane(httpRequest, httpResponse, filterChain);
+			return;
+		}
+
 		try {
-			cleanupThreadLocal();
+			// Start from an empty request context, the MDC is cleaned up when each request ends
+			RequestContext.clear();
+
+			// Time the phases of the request from its arrival
+			RequestTimings timings = new RequestTimings(initialNanos);
+			timings.setFlightEvent(ServiceFlightRecorder.beginRequest());
+			ServiceThreadLocal.setRequestTimings(timings);
 
 			// Add correlation ID to ThreadLocal and MDC for logging
 			processCorrelationId(httpRequest, httpResponse);
 
 			// Add request ID to ThreadLocal
-			ServiceThreadLocal.setRequestId(UUID.randomUUID().toString());
+			ServiceThreadLocal.setRequestId(requestIdGenerator.generate());
 
 			//Add the tenant artifact version from the input header if it exists.
 			processTenantArtifactVersion(httpRequest);
@@ -237,20 +428,22 @@ public class MainServletFilter implements Filter {
 				// If authType is null, service initialization failed.
 				// Reject all requests
 				logger.error("Authentication type not configured - returning 500");
-				httpResponse.setStatus(Status.INTERNAL_SERVER_ERROR.getStatusCode());
-				httpResponse.setContentType(MediaType.APPLICATION_JSON);
-				ServiceError se = new ServiceError(Status.INTERNAL_SERVER_ERROR.getStatusCode());
-				se.setMessage(Status.INTERNAL_SERVER_ERROR.getReasonPhrase());
-				se.setDescription("Authentication type not configured");
-				ObjectMapper om = new ObjectMapper();
-				om.setSerializationInclusion(Include.NON_NULL);
-				httpResponse.getWriter().print(om.writeValueAsString(se));
+				cannedResponses.write(CannedErrorResponses.Type.AUTHENTICATION_NOT_CONFIGURED, httpResponse,
+						ServiceThreadLocal.getCorrelationId(), null);
 				// Do not pass on request
 				return;
 			}
 
+			// Save specific headers in thread local storage for later use.  X-Watson-UserInfo is
+			// parsed once here and shared by tenant resolution, logging and the activity tracker.
+			WatsonUserInfo userInfo = WatsonUserInfo.parse(getUserInfoHeaderValue(httpRequest));
+			Map<String,String> headerMap = headerCapture != null ? headerCapture.capture(httpRequest) : null;
+			if(headerMap != null || !userInfo.isEmpty()) {
+				ServiceThreadLocal.setRequestHeaders(headerMap, userInfo);
+			}
+
 			// Get tenant ID and user ID from headers based on authType
-			Tenant tenant = buildTenant(authType, serviceContext, httpRequest);
+			Tenant tenant = resolveTenant(authType, serviceContext, httpRequest, userInfo);
 			String tenantId = tenant.getTenantId();
 			String tenantUserId = tenant.getUserId();
 
@@ -267,64 +460,27 @@ public class MainServletFilter implements Filter {
 				MDC.put(USER_ID_KEY, tenantUserId);
 			}
 
-			// Save specific headers in thread local storage for later use
-			// The headers to copy could become a service parameter
-			String HEADERS_TO_COPY[];
-			if (serviceContext.getAuthenticationHeaderName() != null && !serviceContext.getAuthenticationHeaderName().isEmpty()) {
-				HEADERS_TO_COPY= new String[]{HEADER_WATSON_USER_INFO, HEADER_DP_CLIENET_ID, HEADER_DP_WATSON_TRAN_ID, HEADER_AUTHORIZATION_TOKEN, HEADER_WATSON_INSTANCE_PARAMETERS, serviceContext.getAuthenticationHeaderName()};
-			}else {
-				HEADERS_TO_COPY = new String[]{HEADER_WATSON_USER_INFO, HEADER_DP_CLIENET_ID, HEADER_DP_WATSON_TRAN_ID, HEADER_AUTHORIZATION_TOKEN, HEADER_WATSON_INSTANCE_PARAMETERS};
-			}
-			Map<String,String> headerMap = new HashMap<>();
-			Enumeration<String> headerNames = httpRequest.getHeaderNames();
-			int matchCount = 0;
-			while(headerNames.hasMoreElements() && matchCount < HEADERS_TO_COPY.length) {
-				String headerName = headerNames.nextElement();
-				// Do simple linear search for headers to copy.  May want to do a map lookup if list gets large
-				for(String matchItem : HEADERS_TO_COPY) {
-					if(headerName.equals(matchItem)) {
-						matchCount++;
-						headerMap.put(matchItem, httpRequest.getHeader(matchItem));
-						break;
-					}
-				}
-			}
-			if(headerMap.size() > 0) {
-				ServiceThreadLocal.setRequestHeaders(headerMap);
-			}
+			// Resolve the priority class used by admission and passed to downstream services
+			RequestPriority priority = requestPriorityPolicy != null ?
+					requestPriorityPolicy.resolve(route, tenantId, httpRequest.getHeader(HEADER_REQUEST_PRIORITY)) :
+					RequestPriority.DEFAULT;
+			ServiceThreadLocal.setRequestPriority(priority);
 
 			// Log request entry and headers if not filtered
 			boolean headerLogged = false;
-			if(!logUtility.filterLog(httpRequest.getPathInfo())) {
+			if(!RouteClassifier.has(route, RouteClassifier.LOG_FILTER)) {
 				logUtility.logRequest(httpRequest);
 				logUtility.logRequestHeader(httpRequest);
 		        headerLogged = true;
 			}
 
-			// Testing only - add sleep to simulate log API call if enabled via system property
-			// Currently only delays the status endpoints
-			if(testDelaySeconds > 0) {
-				if(httpRequest.getPathInfo().startsWith("/v1/status")) {
-					try {
-						Thread.sleep(testDelaySeconds*1000);
-					}
-					catch(InterruptedException e) {
-						// Ignore
-					}
-				}
-			}
+			processTestDelay(route);
 
 			// Reject all incoming requests if service initialization has failed
 			if(ServiceContext.getInstance().getInitializationFailed()) {
 				logger.error("Service initialization failed.  Cannot complete request, returning 500");
-				((HttpServletResponse) response).setStatus(Status.INTERNAL_SERVER_ERROR.getStatusCode());
-				((HttpServletResponse) response).setContentType(MediaType.APPLICATION_JSON);
-				ServiceError se = new ServiceError(Status.INTERNAL_SERVER_ERROR.getStatusCode());
-				se.setMessage(Status.INTERNAL_SERVER_ERROR.getReasonPhrase());
-				se.setDescription("Service initialization failed");
-				ObjectMapper om = new ObjectMapper();
-				om.setSerializationInclusion(Include.NON_NULL);
-				((HttpServletResponse) response).getWriter().print(om.writeValueAsString(se));
+				cannedResponses.write(CannedErrorResponses.Type.INITIALIZATION_FAILED, httpResponse,
+						ServiceThreadLocal.getCorrelationId(), null);
 				// Do not pass on request
 			}
 //			else if (serviceContext.getAuthenticationType() != AuthenticationType.legacy &&
@@ -341,91 +497,387 @@ public class MainServletFilter implements Filter {
 //				httpResponse.getWriter().print(om.writeValueAsString(se));
 //				// Request will not get passed on
 //			}
+			else if(isRateLimited(tenantId, httpRequest, httpResponse)) {
+				// Too many requests from the tenant or to the route, 429 written
+			}
 			else {
 				// Pass on request unless concurrent limit has been met
 				boolean acquireGranted = false;
+				long admittedNanos = 0;
+				// Limit access based on uri, to the first matching bulkhead or the main limit
+				ServiceConcurrentLimit limit = selectConcurrentLimit(route);
+				int cost = 1;
 				try {
 					boolean allowRequest = true;
-					// Limit access based on uri
-					if(concurrentLimit.shouldLimitRequest(httpRequest.getPathInfo())) {
-						acquireGranted = concurrentLimit.acquireRequest(); // May block
+					if(limit != null) {
+						if(requestCostPolicy != null) {
+							cost = requestCostPolicy.getCost(httpRequest.getPathInfo(), httpRequest.getContentLengthLong());
+							ServiceThreadLocal.setRequestCost(cost);
+						}
+						timings.begin(RequestTimings.Phase.QUEUE_WAIT);
+						if(limit.isAsyncAdmissionEnabled() && httpRequest.isAsyncSupported()) {
+							QueuedRequest queuedRequest = new QueuedRequest(httpRequest, httpResponse, initialNanos, headerLogged,
+									limit, tenantId, cost);
+							ServiceConcurrentLimit.Admission admission = limit.acquireRequest(tenantId, priority, cost, queuedRequest);
+							if(admission == ServiceConcurrentLimit.Admission.QUEUED) {
+								// Request is suspended and will be resumed by an async dispatch
+								return;
+							}
+							acquireGranted = admission == ServiceConcurrentLimit.Admission.ADMITTED;
+						}
+						else {
+							acquireGranted = limit.acquireRequest(tenantId, priority, cost); // May block
+						}
 						allowRequest = acquireGranted;
 					}
 
 					// Process request if not at the concurrent request maximum or limit check should be skipped
 					if(allowRequest) {
+						admittedNanos = timings.begin(RequestTimings.Phase.HANDLER);
 						if (serviceMetrics != null) serviceMetrics.filterEntry(httpRequest, httpResponse);
 						// Execute downstream filters ============
 						filterChain.doFilter(request, response);
 					}
 					else {
 						// Too many concurrent requests, return unavailable status
-						httpResponse.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
-						httpResponse.setContentType(MediaType.APPLICATION_JSON);
-						ServiceError se = new ServiceError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
-						se.setDescription("Too many concurrent requests, "+concurrentLimit.getConcurrentRejectThreshold());
-						ObjectMapper om = new ObjectMapper();
-						httpResponse.getWriter().print(om.writeValueAsString(se));
+						writeConcurrentLimitResponse(limit, httpResponse, ServiceThreadLocal.getCorrelationId());
 					}
 				}
 				finally {
 					// Free up a request if acquired
 					if(acquireGranted) {
-						concurrentLimit.releaseRequest();
+						recordActualCost(httpRequest, cost);
+						limit.releaseRequest(tenantId, cost, System.nanoTime() - admittedNanos);
 					}
 				}
 			}
 
 			// Process response ======================
-			// Post processing code here..
+			processResponse(httpRequest, httpResponse, initialNanos, headerLogged, serviceMetrics);
 
-			// Log request headers on non 2xx responses and header not already logged.
-			// This will occur if the log request was filtered.  We still want the headers on errors.
-			if(!headerLogged && (httpResponse.getStatus() >= 300)) {
-				logUtility.logRequestHeader(httpRequest);
+		} catch (RuntimeException re) {
+			writeRuntimeError(re, httpResponse);
+		} finally {
+			// Clean up ThreadLocal objects
+			cleanupThreadLocal();
+		}
+	}
+
+	/**
+	 * Take a rate limit token for a request.  A request over the limit is answered with a 429 and the
+	 * Retry-After and RateLimit headers.
+	 * @return true if the request is over the rate limit and was answered
+	 */
+	private boolean isRateLimited(String tenantId, HttpServletRequest httpRequest, HttpServletResponse httpResponse)
+			throws IOException {
+		if(rateLimit == null) {
+			return false;
+		}
+		ServiceRateLimit.Rejection rejection = rateLimit.acquire(tenantId, httpRequest.getPathInfo());
+		if(rejection == null) {
+			return false;
+		}
+		String retryAfter = Long.toString(rejection.getRetryAfterSeconds());
+		httpResponse.setHeader("Retry-After", retryAfter);
+		httpResponse.setHeader("RateLimit-Limit", Integer.toString(rejection.getLimit()));
+		httpResponse.setHeader("RateLimit-Remaining", "0");
+		httpResponse.setHeader("RateLimit-Reset", retryAfter);
+		cannedResponses.write(CannedErrorResponses.Type.RATE_LIMIT, httpResponse, ServiceThreadLocal.getCorrelationId(),
+				"Rate limit "+rejection.getLimitName());
+		return true;
+	}
+
+	/**
+	 * Compare the cost charged to a completed request to the cost of the actual size set by the service
+	 */
+	private void recordActualCost(HttpServletRequest httpRequest, int cost) {
+		Integer actualSize = ServiceThreadLocal.getInputTextSize();
+		if(requestCostPolicy != null && actualSize != null) {
+			requestCostPolicy.recordActualSize(httpRequest.getPathInfo(), cost, actualSize);
+		}
+	}
+
+	/**
+	 * Select the concurrent limit of a request
+	 * @param route Route classification
+	 * @return First matching bulkhead, the main limit if the route is under concurrent limit control, or null
+	 */
+	private ServiceConcurrentLimit selectConcurrentLimit(int route) {
+		if(concurrentLimit == null) {
+			return null;
+		}
+		int bulkhead = RouteClassifier.firstBulkhead(route);
+		if(bulkhead >= 0) {
+			return concurrentLimit.getBulkheads().get(bulkhead);
+		}
+		return RouteClassifier.has(route, RouteClassifier.CONCURRENT_LIMIT) ? concurrentLimit : null;
+	}
+
+	/**
+	 * Write the unavailable response of a request rejected by a concurrent limit, with a Retry-After
+	 * estimated from the queue of the limit
+	 */
+	private void writeConcurrentLimitResponse(ServiceConcurrentLimit limit, HttpServletResponse httpResponse,
+			String correlationId) throws IOException {
+		httpResponse.setHeader("Retry-After", String.valueOf(limit.getRetryAfterSeconds()));
+		cannedResponses.write(CannedErrorResponses.Type.CONCURRENT_LIMIT, httpResponse, correlationId,
+				getLimitInfo(limit));
+	}
+
+	private static String getLimitInfo(ServiceConcurrentLimit limit) {
+		return limit.getBulkheadName() != null ?
+				"Bulkhead "+limit.getBulkheadName()+", reject threshold "+limit.getConcurrentRejectThreshold() :
+				"Reject threshold "+limit.getConcurrentRejectThreshold();
+	}
+
+	/**
+	 * Testing only - add sleep to simulate log API call if enabled via system property
+	 * Currently only delays the status endpoints
+	 */
+	private void processTestDelay(int route) {
+		if(testDelaySeconds > 0) {
+			if(RouteClassifier.has(route, RouteClassifier.STATUS)) {
+				try {
+					Thread.sleep(testDelaySeconds*1000);
+				}
+				catch(InterruptedException e) {
+					// Ignore
+				}
 			}
+		}
+	}
 
-	        // Log response with API time
-	        double elapsedSecs = (System.currentTimeMillis() - initialTime) / 1000.0;
-	        logUtility.logResponse(httpRequest, httpResponse, elapsedSecs);
-	        if (serviceMetrics != null) serviceMetrics.filterExit(httpRequest, httpResponse, elapsedSecs);
+	/**
+	 * Process a fast lane request.  Only the response headers are set.  The request is answered from
+	 * the status snapshot if possible, otherwise it is passed on without tenant, logging, metrics or
+	 * concurrent limit processing.
+	 */
+	private void processFastLane(HttpServletRequest httpRequest, HttpServletResponse httpResponse, FilterChain filterChain)
+			throws IOException, ServletException {
+		processAccessControl(httpResponse);
 
-		} catch (RuntimeException re) {
-			if (re instanceof IllegalArgumentException) {
-				logger.error(String.valueOf(HttpServletResponse.SC_BAD_REQUEST), re);
-				httpResponse.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-				httpResponse.setContentType(MediaType.APPLICATION_JSON);
-				ServiceError se = new ServiceError(HttpServletResponse.SC_BAD_REQUEST);
-				se.setMessage("Illegal character found in request");
-				se.setDescription("The specified URL could not be resolved due to illegal characters.");
-				se.setMoreInfo(re.getMessage());
-				ObjectMapper om = new ObjectMapper();
-				om.setSerializationInclusion(Include.NON_NULL);
-				httpResponse.getWriter().print(om.writeValueAsString(se));
-			} else {
-				logger.error(String.valueOf(HttpServletResponse.SC_NOT_ACCEPTABLE), re);
-				httpResponse.setStatus(HttpServletResponse.SC_NOT_ACCEPTABLE);
-				httpResponse.setContentType(MediaType.APPLICATION_JSON);
-				ServiceError se = new ServiceError(HttpServletResponse.SC_NOT_ACCEPTABLE);
-				se.setMessage("Request could not be completed at this time, check syntax");
-				se.setDescription("The request could not be resolved to a published API.");
-				se.setMoreInfo(re.getMessage());
-				ObjectMapper om = new ObjectMapper();
-				om.setSerializationInclusion(Include.NON_NULL);
-				httpResponse.getWriter().print(om.writeValueAsString(se));
+		boolean saturated = concurrentLimit != null && concurrentLimit.isSaturated();
+		if(fastLane.writeSnapshot(httpRequest, httpResponse, saturated)) {
+			return;
+		}
+
+		try {
+			RequestContext.clear();
+			filterChain.doFilter(httpRequest, httpResponse);
+		}
+		finally {
+			RequestContext.clear();
+		}
+	}
+
+	/**
+	 * Run a request that was suspended waiting for a concurrent limit permit.  The permit was
+	 * handed to the request before it was dispatched, unless the request was dropped from the queue.
+	 */
+	private void resumeQueuedRequest(QueuedRequest queuedRequest, FilterChain filterChain) throws IOException, ServletException {
+		HttpServletRequest httpRequest = queuedRequest.request;
+		HttpServletResponse httpResponse = queuedRequest.response;
+		ServiceMetrics serviceMetrics = ServiceContext.getInstance().getServiceMetrics();
+
+		try {
+			queuedRequest.restoreThreadLocals();
+
+			if(queuedRequest.rejected) {
+				// Waited too long, no permit was handed to the request
+				writeConcurrentLimitResponse(queuedRequest.limit, httpResponse, ServiceThreadLocal.getCorrelationId());
+			}
+			else {
+				RequestTimings timings = ServiceThreadLocal.getRequestTimings();
+				long admittedNanos = timings != null ? timings.begin(RequestTimings.Phase.HANDLER) : System.nanoTime();
+				try {
+					if (serviceMetrics != null) serviceMetrics.filterEntry(httpRequest, httpResponse);
+					// Execute downstream filters ============
+					filterChain.doFilter(httpRequest, httpResponse);
+				}
+				finally {
+					recordActualCost(httpRequest, queuedRequest.cost);
+					queuedRequest.limit.releaseRequest(queuedRequest.tenantId, queuedRequest.cost, System.nanoTime() - admittedNanos);
+				}
 			}
+
+			// Process response ======================
+			processResponse(httpRequest, httpResponse, queuedRequest.initialNanos, queuedRequest.headerLogged, serviceMetrics);
+
+		} catch (RuntimeException re) {
+			writeRuntimeError(re, httpResponse);
 		} finally {
 			// Clean up ThreadLocal objects
 			cleanupThreadLocal();
 		}
 	}
 
+	private void processResponse(HttpServletRequest httpRequest, HttpServletResponse httpResponse, long initialNanos,
+			boolean headerLogged, ServiceMetrics serviceMetrics) {
+		// Post processing code here..
+		RequestTimings timings = ServiceThreadLocal.getRequestTimings();
+		long exitNanos;
+		if(timings != null) {
+			exitNanos = timings.begin(RequestTimings.Phase.POST_LOG);
+			// Responses with an entity got the header from RequestTimingInterceptor
+			if(Boolean.TRUE.equals(ServiceThreadLocal.getThreadDebug()) && !httpResponse.isCommitted() &&
+					!httpResponse.containsHeader(HEADER_SERVER_TIMING)) {
+				httpResponse.setHeader(HEADER_SERVER_TIMING, timings.toServerTiming());
+			}
+		}
+		else {
+			exitNanos = System.nanoTime();
+		}
+
+		// Log request headers on non 2xx responses and header not already logged.
+		// This will occur if the log request was filtered.  We still want the headers on errors.
+		if(!headerLogged && (httpResponse.getStatus() >= 300)) {
+			logUtility.logRequestHeader(httpRequest);
+		}
+
+        // Log response with API time
+        double elapsedSecs = (exitNanos - initialNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        logUtility.logResponse(httpRequest, httpResponse, elapsedSecs);
+        if (serviceMetrics != null) serviceMetrics.filterExit(httpRequest, httpResponse, elapsedSecs);
+        if (timings != null) {
+        	timings.record();
+        	if (timings.getFlightEvent() != null) commitFlightEvent(timings.getFlightEvent(), httpRequest, httpResponse);
+        }
+	}
+
+	/**
+	 * Commit the JFR request event with the route template, or the path if no resource matched
+	 */
+	private void commitFlightEvent(Object flightEvent, HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
+		MatchedRoute matchedRoute = ServiceThreadLocal.getMatchedRoute();
+		Tenant tenant = TenantManager.getTenant();
+		ServiceFlightRecorder.commitRequest(flightEvent, httpRequest.getMethod(),
+				matchedRoute != null ? matchedRoute.getTemplate() : httpRequest.getPathInfo(),
+				tenant != null ? tenant.getTenantId() : null, httpResponse.getStatus());
+	}
+
+	private void writeRuntimeError(RuntimeException re, HttpServletResponse httpResponse) throws IOException {
+		if (re instanceof IllegalArgumentException) {
+			logger.error(String.valueOf(HttpServletResponse.SC_BAD_REQUEST), re);
+			cannedResponses.write(CannedErrorResponses.Type.ILLEGAL_CHARACTER, httpResponse,
+					ServiceThreadLocal.getCorrelationId(), re.getMessage());
+		} else {
+			logger.error(String.valueOf(HttpServletResponse.SC_NOT_ACCEPTABLE), re);
+			cannedResponses.write(CannedErrorResponses.Type.NOT_ACCEPTABLE, httpResponse,
+					ServiceThreadLocal.getCorrelationId(), re.getMessage());
+		}
+	}
+
+	/**
+	 * A request suspended with servlet async processing while it waits for a concurrent limit permit.
+	 * The thread local state of the request is saved when it is suspended and restored when the
+	 * async dispatch runs the request.  No thread is held while the request is queued.
+	 *
+	 * The request is resumed with an ASYNC dispatch because the container recycles the filter chain once
+	 * the original doFilter returns, so the saved chain cannot be continued.  Filters after this filter
+	 * only see the resumed request if they are mapped with the ASYNC dispatcher type.
+	 */
+	private final class QueuedRequest implements ServiceConcurrentLimit.AdmissionWaiter, AsyncListener {
+		private final HttpServletRequest request;
+		private final HttpServletResponse response;
+		private final long initialNanos;
+		private final boolean headerLogged;
+		private final ServiceConcurrentLimit limit;
+		private final String tenantId;
+		private final int cost;
+		private AsyncContext asyncContext;
+		private ServiceThreadLocalCopier serviceThreadLocal;
+		private volatile boolean rejected;
+
+		private QueuedRequest(HttpServletRequest request, HttpServletResponse response, long initialNanos, boolean headerLogged,
+				ServiceConcurrentLimit limit, String tenantId, int cost) {
+			this.request = request;
+			this.response = response;
+			this.initialNanos = initialNanos;
+			this.headerLogged = headerLogged;
+			this.limit = limit;
+			this.tenantId = tenantId;
+			this.cost = cost;
+		}
+
+		@Override
+		public void suspend() {
+			// Runs on the request thread so the thread local state can be saved
+			serviceThreadLocal = new ServiceThreadLocalCopier();
+			request.setAttribute(QUEUED_REQUEST_ATTRIBUTE, this);
+			try {
+				asyncContext = request.startAsync(request, response);
+			}
+			catch(RuntimeException e) {
+				request.removeAttribute(QUEUED_REQUEST_ATTRIBUTE);
+				throw e;
+			}
+			asyncContext.setTimeout(limit.getQueueTimeoutMs()); // Zero waits like a blocked request would
+			asyncContext.addListener(this);
+		}
+
+		@Override
+		public void resume() {
+			asyncContext.dispatch();
+		}
+
+		@Override
+		public void reject() {
+			// Answered on the dispatch thread so the thread local state is restored for logging
+			rejected = true;
+			asyncContext.dispatch();
+		}
+
+		private void restoreThreadLocals() {
+			try {
+				serviceThreadLocal.recreateServiceThreadLocal();
+			}
+			catch(ParseException e) {
+				// Not thrown by the copier
+				logger.warn("Unable to restore thread local state: "+e);
+			}
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) throws IOException {
+			if(limit.cancelRequest(this, true)) {
+				request.removeAttribute(QUEUED_REQUEST_ATTRIBUTE);
+				try {
+					// Restore the request state so the response is logged and timed like other rejections
+					restoreThreadLocals();
+					writeConcurrentLimitResponse(limit, response, ServiceThreadLocal.getCorrelationId());
+					processResponse(request, response, initialNanos, headerLogged, ServiceContext.getInstance().getServiceMetrics());
+				}
+				finally {
+					cleanupThreadLocal();
+					asyncContext.complete();
+				}
+			}
+		}
+
+		@Override
+		public void onError(AsyncEvent event) throws IOException {
+			// Client went away while waiting
+			if(limit.cancelRequest(this)) {
+				request.removeAttribute(QUEUED_REQUEST_ATTRIBUTE);
+			}
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) throws IOException {
+			// nothing required here
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) throws IOException {
+			// nothing required here
+		}
+	}
+
 	/**
 	 * Cleanup any thread local objects
 	 */
 	protected void cleanupThreadLocal() {
-		TenantManager.setTenant(null);
-		ServiceThreadLocal.doCleanup();
+		RequestContext.clear();
 		MDC.remove(CORRELATION_ID_KEY);
 		MDC.remove(TENANT_ID_KEY);
 		MDC.remove(USER_ID_KEY);
@@ -460,29 +912,34 @@ public class MainServletFilter implements Filter {
 	 *
 	 * @return The property value trimmed of whitespace or <i>null</i> if
 	 * property is not found
+	 * @see WatsonUserInfo
 	 */
 	protected String getPropertyFromHeaderValue(String headerValue, String propertyName) {
+		return WatsonUserInfo.parse(headerValue).get(propertyName);
+	}
 
-		String propertyValue = null;
-
-		if (headerValue != null) {
-			StringTokenizer tokenizer = new StringTokenizer(headerValue, ";");
-			while (tokenizer.hasMoreTokens()) {
-				String token = tokenizer.nextToken();
-				StringTokenizer propertyTokenizer = new StringTokenizer(token, "=");
-				// tokens with multiple equals signs are not valid
-				if (propertyTokenizer.countTokens() == 2) {
-					String name = propertyTokenizer.nextToken().trim();
-					String value = propertyTokenizer.nextToken();
-					if (name.equals(propertyName)) {
-						propertyValue = value.trim();
-						break;
-					}
-				}
-			}
+	/**
+	 * Get a property of the X-Watson-UserInfo header for tenant resolution.  The header is already parsed,
+	 * so {@link #getPropertyFromHeaderValue(String, String)} is only called if a subclass overrides it.
+	 */
+	private String getUserInfoProperty(WatsonUserInfo userInfo, String propertyName) {
+		if(propertyHookOverridden) {
+			return getPropertyFromHeaderValue(userInfo.getHeaderValue(), propertyName);
 		}
+		return userInfo.get(propertyName);
+	}
 
-		return propertyValue;
+	private static boolean overridesPropertyHook(Class<?> filterClass) {
+		for(Class<?> c = filterClass; c != null && c != MainServletFilter.class; c = c.getSuperclass()) {
+			try {
+				c.getDeclaredMethod("getPropertyFromHeaderValue", String.class, String.class);
+				return true;
+			}
+			catch(NoSuchMethodException e) {
+				// Check the superclass
+			}
+		}
+		return false;
 	}
 
 //	public static String buildUserInfoHeader(Tenant tenant) {
@@ -516,7 +973,7 @@ public class MainServletFilter implements Filter {
 			MDC.put(CORRELATION_ID_KEY, correlationId);
 		} else {
 			// Generate a correlation ID
-			correlationId = UUID.randomUUID().toString();
+			correlationId = requestIdGenerator.generate();
 			MDC.put(CORRELATION_ID_KEY, correlationId);
 		}
 		// Set correlation ID in response header if not already present
@@ -599,16 +1056,58 @@ public class MainServletFilter implements Filter {
 		
 	}
 
-	private Tenant buildTenant(AuthenticationType authType, ServiceContext serviceContext, HttpServletRequest httpRequest) {
+	/**
+	 * Get the tenant of the request from the tenant cache, building it on a cache miss.
+	 * Tenants are cached by the authentication type and the values of the headers
+	 * that type builds the tenant from.
+	 */
+	private Tenant resolveTenant(AuthenticationType authType, ServiceContext serviceContext, HttpServletRequest httpRequest,
+			WatsonUserInfo watsonUserInfo) {
+		TenantCache tenantCache = ServiceContext.getTenantCache();
+		if(tenantCache == null || !tenantCache.isEnabled()) {
+			return buildTenant(authType, serviceContext, httpRequest, watsonUserInfo);
+		}
+
+		String userInfo = null;
+		String clientId = null;
+		String customHeader = null;
+		switch(authType) {
+			case legacy:
+			case datapower_test:
+				userInfo = watsonUserInfo.getHeaderValue();
+				clientId = httpRequest.getHeader(HEADER_DP_CLIENET_ID);
+				break;
+			case apim:
+				clientId = httpRequest.getHeader(HEADER_DP_CLIENET_ID);
+				break;
+			case datapower:
+			case deadbolt:
+				userInfo = watsonUserInfo.getHeaderValue();
+				break;
+			case custom_header:
+				String customHeaderName = serviceContext.getAuthenticationHeaderName();
+				if(customHeaderName != null) {
+					customHeader = httpRequest.getHeader(customHeaderName);
+				}
+				break;
+			default:
+				// Should not get here
+				break;
+		}
+
+		return tenantCache.getTenant(authType, userInfo, clientId, customHeader,
+				() -> buildTenant(authType, serviceContext, httpRequest, watsonUserInfo));
+	}
+
+	private Tenant buildTenant(AuthenticationType authType, ServiceContext serviceContext, HttpServletRequest httpRequest,
+			WatsonUserInfo userInfo) {
 		String threadTenantId = null;
 		String threadUserId = null;
-		String userInfoHeader = null;
 
 		switch(authType) {
 			case legacy:
 				// First check for X-Watson-UserInfo:bluemix-instance-id (From deadbolt)
-				userInfoHeader = getUserInfoHeaderValue(httpRequest);
-				threadTenantId = getPropertyFromHeaderValue(userInfoHeader, HEADER_CLOUD_BLUEMIX_INSTANCE_ID);
+				threadTenantId = getUserInfoProperty(userInfo, HEADER_CLOUD_BLUEMIX_INSTANCE_ID);
 
 				// If not found, try to get tenant ID from X-IBM-Client-ID (From APIM)
 				if(threadTenantId == null) {
@@ -622,8 +1121,8 @@ public class MainServletFilter implements Filter {
 				}
 				// If not found, try to use X-Watson-UserInfo:orgId (From datapower)
 				if(threadTenantId == null) {
-					threadTenantId = getPropertyFromHeaderValue(userInfoHeader, HEADER_WATSON_ORG_ID);
-					threadUserId = getPropertyFromHeaderValue(userInfoHeader, HEADER_WATSON_USER_ID);
+					threadTenantId = getUserInfoProperty(userInfo, HEADER_WATSON_ORG_ID);
+					threadUserId = getUserInfoProperty(userInfo, HEADER_WATSON_USER_ID);
 				}
 				break;
 			case apim:
@@ -639,16 +1138,14 @@ public class MainServletFilter implements Filter {
 				break;
 			case datapower:
 				// Get tenant ID and user ID from header X-Watson-UserInfo
-				userInfoHeader = getUserInfoHeaderValue(httpRequest);
-				threadTenantId = getPropertyFromHeaderValue(userInfoHeader, HEADER_WATSON_ORG_ID);
-				threadUserId = getPropertyFromHeaderValue(userInfoHeader, HEADER_WATSON_USER_ID);
+				threadTenantId = getUserInfoProperty(userInfo, HEADER_WATSON_ORG_ID);
+				threadUserId = getUserInfoProperty(userInfo, HEADER_WATSON_USER_ID);
 				break;
 			case datapower_test:
 				// Get tenant ID and user ID from header X-Watson-UserInfo
 				// Allow for tenant override
-				userInfoHeader = getUserInfoHeaderValue(httpRequest);
-				threadTenantId = getPropertyFromHeaderValue(userInfoHeader, HEADER_WATSON_ORG_ID);
-				threadUserId = getPropertyFromHeaderValue(userInfoHeader, HEADER_WATSON_USER_ID);
+				threadTenantId = getUserInfoProperty(userInfo, HEADER_WATSON_ORG_ID);
+				threadUserId = getUserInfoProperty(userInfo, HEADER_WATSON_USER_ID);
 
 				// Override tenant ID if X-IBM-Client-ID is set.  This can be a security exposure.
 				// This is used for DET testing
@@ -670,8 +1167,7 @@ public class MainServletFilter implements Filter {
 				break;
 			case deadbolt:
 				// Get tenant ID from header X-Watson-UserInfo:bluemix-instance-id
-				userInfoHeader = getUserInfoHeaderValue(httpRequest);
-				threadTenantId = getPropertyFromHeaderValue(userInfoHeader, HEADER_CLOUD_BLUEMIX_INSTANCE_ID);
+				threadTenantId = getUserInfoProperty(userInfo, HEADER_CLOUD_BLUEMIX_INSTANCE_ID);
 				threadUserId = null;
 				break;
 			default:
@@ -689,7 +1185,7 @@ public class MainServletFilter implements Filter {
 	 * @param tenantId
 	 * @return tenantId which is urlEncoded ( replacing  % with !,+ with !! , @ with *, and no empty  spaces.
 	 *  If the resulting urlEncoded tenantId is greater than 128 take the first 63 characters and append it 
-	 *  with message digest using SHA 256algorithm.
+	 *  with the hex encoded message digest using SHA 256algorithm.
 	 *  Period characters at the end of the ID are removed as they are not compatible with some artifactstore back ends.
 	 *  Throws exception in case of any issues
 	 */ 
@@ -714,7 +1210,7 @@ public class MainServletFilter implements Filter {
 				if (tenantId.length() > 128) {
 					MessageDigest md = MessageDigest.getInstance("SHA-256");
 					tenantId = tenantId.substring(0, 63) + "_" +
-							md.digest(tenantId.getBytes("UTF-8"));
+							toHex(md.digest(tenantId.getBytes("UTF-8")));
 					logger.debug("Truncated tenantId : {}", tenantId);
 				}
 			}
@@ -727,4 +1223,14 @@ public class MainServletFilter implements Filter {
 		return tenantId;
 	}
 
+	private static String toHex(byte[] bytes) {
+		final char[] hexDigits = "0123456789abcdef".toCharArray();
+		char[] hex = new char[bytes.length * 2];
+		for(int i = 0; i < bytes.length; i++) {
+			hex[i*2] = hexDigits[(bytes[i] >> 4) & 0xf];
+			hex[i*2+1] = hexDigits[bytes[i] & 0xf];
+		}
+		return new String(hex);
+	}
+
 }
@@ -0,0 +1,154 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.common.service.base.security;
+
+import java.util.Objects;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.watson.common.service.base.BoundedConcurrentCache;
+import com.ibm.watson.common.service.base.ServiceContext.AuthenticationType;
+
+/**
+ * Bounded cache of the tenants resolved by MainServletFilter.  Callers typically reuse a small set of
+ * tenants so the header parsing and tenant ID normalization only need to run on a cache miss.
+ * The cache key is the authentication type plus the raw values of the headers the tenant is built from.
+ *
+ *  com_ibm_watson_health_common_tenant_cache_size - Maximum number of cached tenants.  A value of zero
+ *                                  disables the cache.  The default is 1024.
+ */
+public class TenantCache {
+	private static final Logger logger = LoggerFactory.getLogger(TenantCache.class.getName());
+
+	public static final String TENANT_CACHE_SIZE = "com_ibm_watson_health_common_tenant_cache_size";
+	public static final int TENANT_CACHE_SIZE_DEFAULT = 1024;
+
+	private static volatile TenantCache instance;
+
+	private final BoundedConcurrentCache<Key,Tenant> cache;
+
+	/**
+	 * Cache key.  Tenants are built from at most three headers so the key holds them as fields
+	 * instead of concatenating the values.
+	 */
+	private static final class Key {
+		private final AuthenticationType authType;
+		private final String userInfo;
+		private final String clientId;
+		private final String customHeader;
+		private final int hash;
+
+		private Key(AuthenticationType authType, String userInfo, String clientId, String customHeader) {
+			this.authType = authType;
+			this.userInfo = userInfo;
+			this.clientId = clientId;
+			this.customHeader = customHeader;
+			hash = Objects.hash(authType, userInfo, clientId, customHeader);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj) {
+				return true;
+			}
+			if(!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hash == other.hash && authType == other.authType &&
+					Objects.equals(userInfo, other.userInfo) &&
+					Objects.equals(clientId, other.clientId) &&
+					Objects.equals(customHeader, other.customHeader);
+		}
+	}
+
+	public static synchronized TenantCache createInstance(Properties serviceProperties) {
+		if(instance != null) {
+			throw new IllegalStateException("Cannot create TenantCache instance more that once.");
+		}
+
+		instance = new TenantCache(serviceProperties);
+		return instance;
+	}
+
+	public static TenantCache getInstance() {
+		return instance;
+	}
+
+	private TenantCache(Properties serviceProperties) {
+		String cacheSizeProperty = serviceProperties.getProperty(TENANT_CACHE_SIZE, Integer.toString(TENANT_CACHE_SIZE_DEFAULT));
+		int cacheSize;
+		try {
+			cacheSize = Integer.parseInt(cacheSizeProperty.trim());
+			if(cacheSize < 0) {
+				throw new NumberFormatException("Value must not be negative");
+			}
+		}
+		catch(NumberFormatException e) {
+			logger.error("Format exception for service property \""+TENANT_CACHE_SIZE+"\", value="+cacheSizeProperty);
+			throw new IllegalArgumentException("Format exception for service property "+TENANT_CACHE_SIZE+", value="+
+					cacheSizeProperty, e);
+		}
+		logger.info("Property "+TENANT_CACHE_SIZE+"="+cacheSize);
+
+		cache = cacheSize > 0 ? new BoundedConcurrentCache<>(cacheSize) : null;
+	}
+
+	/**
+	 * Get the tenant for a set of authentication header values, building and caching it on a miss.
+	 *
+	 * @param authType Authentication type
+	 * @param userInfo Raw X-Watson-UserInfo header value
+	 * @param clientId Raw X-IBM-Client-ID header value
+	 * @param customHeader Raw value of the custom authentication header
+	 * @param builder Builds the tenant on a cache miss
+	 * @return Tenant
+	 */
+	public Tenant getTenant(AuthenticationType authType, String userInfo, String clientId, String customHeader,
+			Supplier<Tenant> builder) {
+		if(cache == null) {
+			return builder.get();
+		}
+		return cache.get(new Key(authType, userInfo, clientId, customHeader), key -> builder.get());
+	}
+
+	/**
+	 * Remove all cached tenants.  Used when a setting that changes tenant resolution is updated.
+	 */
+	public void clear() {
+		if(cache != null) {
+			cache.clear();
+		}
+	}
+
+	public boolean isEnabled() {
+		return cache != null;
+	}
+
+	public int getSize() {
+		return cache != null ? cache.size() : 0;
+	}
+
+	public long getHitCount() {
+		return cache != null ? cache.getHitCount() : 0;
+	}
+
+	public long getMissCount() {
+		return cache != null ? cache.getMissCount() : 0;
+	}
+
+	public long getEvictionCount() {
+		return cache != null ? cache.getEvictionCount() : 0;
+	}
+}
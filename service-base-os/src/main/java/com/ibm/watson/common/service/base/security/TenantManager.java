@@ -7,21 +7,33 @@
 
 package com.ibm.watson.common.service.base.security;
 
+import com.ibm.watson.common.service.base.RequestContext;
+
 /**
  * Class that provides tracking of the Tenant associated with the API
- * request being processed on the current Thread.
+ * request being processed on the current Thread.  The tenant is held in the
+ * {@link RequestContext} bound to the thread.
  */
 public class TenantManager {
 
-	private static final ThreadLocal<Tenant> tenantForThread_ = new ThreadLocal<>();
+	/**
+	 * Token required by {@link RequestContext#setCurrentTenant(Tenant, Access)}.  Only TenantManager
+	 * can create it, so the tenant can only be set through the package visible {@link #setTenant(Tenant)}.
+	 */
+	public static final class Access {
+		private Access() {
+		}
+	}
 
+	private static final Access access = new Access();
 
 	public static Tenant getTenant() {
-		return tenantForThread_.get();
+		RequestContext context = RequestContext.current();
+		return context != null ? context.getTenant() : null;
 	}
 
 	// package visibility
 	static void setTenant(Tenant t) {
-		tenantForThread_.set(t);
+		RequestContext.setCurrentTenant(t, access);
 	}
 }
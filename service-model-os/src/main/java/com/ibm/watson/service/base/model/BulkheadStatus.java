@@ -0,0 +1,134 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.service.base.model;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * Concurrent limit counters of one bulkhead
+ */
+@XmlRootElement(name="bulkheadStatus")
+@XmlAccessorType(XmlAccessType.FIELD)
+@ApiModel(value="bulkhead status", description="Object representing the concurrent limit counters of a bulkhead")
+public class BulkheadStatus {
+
+	@XmlElement
+	@ApiModelProperty(value="bulkhead name")
+	protected String name;
+	@XmlElement
+	@ApiModelProperty(value="number of concurrent requests")
+	protected Integer concurrentRequests;
+	@XmlElement
+	@ApiModelProperty(value="maximum number of concurrent requests during uptime")
+	protected Integer maxConcurrentRequests;
+	@XmlElement
+	@ApiModelProperty(value="current limit of concurrently running requests before blocking")
+	protected Integer concurrentLimit;
+	@XmlElement
+	@ApiModelProperty(value="cost units of the running requests when a concurrent cost limit is configured")
+	protected Long runningRequestCost;
+	@XmlElement
+	@ApiModelProperty(value="number of requests waiting for a permit")
+	protected Integer queuedRequests;
+	@XmlElement
+	@ApiModelProperty(value="configured reject threshold")
+	protected Integer rejectThreshold;
+	@XmlElement
+	@ApiModelProperty(value="number of rejected requests")
+	protected Long totalRejectedRequests;
+	@XmlElement
+	@ApiModelProperty(value="number of blocked requests")
+	protected Long totalBlockedRequests;
+	@XmlElement
+	@ApiModelProperty(value="number of requests rejected after waiting too long for a permit")
+	protected Long totalTimedOutRequests;
+	@XmlElement
+	@ApiModelProperty(value="time requests waited for a concurrent limit permit")
+	protected HistogramSnapshot queueTimeHistogram;
+
+	public String getName() {
+		return name;
+	}
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Integer getConcurrentRequests() {
+		return concurrentRequests;
+	}
+	public void setConcurrentRequests(Integer concurrentRequests) {
+		this.concurrentRequests = concurrentRequests;
+	}
+
+	public Integer getMaxConcurrentRequests() {
+		return maxConcurrentRequests;
+	}
+	public void setMaxConcurrentRequests(Integer maxConcurrentRequests) {
+		this.maxConcurrentRequests = maxConcurrentRequests;
+	}
+
+	public Integer getConcurrentLimit() {
+		return concurrentLimit;
+	}
+	public void setConcurrentLimit(Integer concurrentLimit) {
+		this.concurrentLimit = concurrentLimit;
+	}
+
+	public Integer getQueuedRequests() {
+		return queuedRequests;
+	}
+	public void setQueuedRequests(Integer queuedRequests) {
+		this.queuedRequests = queuedRequests;
+	}
+
+	public Integer getRejectThreshold() {
+		return rejectThreshold;
+	}
+	public void setRejectThreshold(Integer rejectThreshold) {
+		this.rejectThreshold = rejectThreshold;
+	}
+
+	public Long getTotalRejectedRequests() {
+		return totalRejectedRequests;
+	}
+	public void setTotalRejectedRequests(Long totalRejectedRequests) {
+		this.totalRejectedRequests = totalRejectedRequests;
+	}
+
+	public Long getTotalBlockedRequests() {
+		return totalBlockedRequests;
+	}
+	public void setTotalBlockedRequests(Long totalBlockedRequests) {
+		this.totalBlockedRequests = totalBlockedRequests;
+	}
+
+	public Long getTotalTimedOutRequests() {
+		return totalTimedOutRequests;
+	}
+	public void setTotalTimedOutRequests(Long totalTimedOutRequests) {
+		this.totalTimedOutRequests = totalTimedOutRequests;
+	}
+
+	public HistogramSnapshot getQueueTimeHistogram() {
+		return queueTimeHistogram;
+	}
+	public void setQueueTimeHistogram(HistogramSnapshot queueTimeHistogram) {
+		this.queueTimeHistogram = queueTimeHistogram;
+	}
+
+	public Long getRunningRequestCost() {
+		return runningRequestCost;
+	}
+	public void setRunningRequestCost(Long runningRequestCost) {
+		this.runningRequestCost = runningRequestCost;
+	}
+}
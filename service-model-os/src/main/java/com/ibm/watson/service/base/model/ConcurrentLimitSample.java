@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.service.base.model;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * One update of the adaptive concurrent request limit
+ */
+@XmlRootElement(name="concurrentLimitSample")
+@XmlAccessorType(XmlAccessType.FIELD)
+@ApiModel(value="concurrent limit sample", description="Object representing an update of the adaptive concurrent request limit")
+public class ConcurrentLimitSample {
+
+	@XmlElement
+	@ApiModelProperty(value="time of the update in milliseconds since the epoch")
+	protected Long timestamp;
+	@XmlElement
+	@ApiModelProperty(value="concurrent request limit after the update")
+	protected Integer limit;
+	@XmlElement
+	@ApiModelProperty(value="average request latency in milliseconds during the sample window")
+	protected Double latencyMs;
+	@XmlElement
+	@ApiModelProperty(value="no-load request latency baseline in milliseconds")
+	protected Double noLoadLatencyMs;
+	@XmlElement
+	@ApiModelProperty(value="number of requests sampled during the window")
+	protected Long sampleCount;
+
+	public ConcurrentLimitSample() {
+	}
+
+	public ConcurrentLimitSample(long timestamp, int limit, double latencyMs, double noLoadLatencyMs, long sampleCount) {
+		this.timestamp = timestamp;
+		this.limit = limit;
+		this.latencyMs = latencyMs;
+		this.noLoadLatencyMs = noLoadLatencyMs;
+		this.sampleCount = sampleCount;
+	}
+
+	public Long getTimestamp() {
+		return timestamp;
+	}
+	public void setTimestamp(Long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	public Integer getLimit() {
+		return limit;
+	}
+	public void setLimit(Integer limit) {
+		this.limit = limit;
+	}
+
+	public Double getLatencyMs() {
+		return latencyMs;
+	}
+	public void setLatencyMs(Double latencyMs) {
+		this.latencyMs = latencyMs;
+	}
+
+	public Double getNoLoadLatencyMs() {
+		return noLoadLatencyMs;
+	}
+	public void setNoLoadLatencyMs(Double noLoadLatencyMs) {
+		this.noLoadLatencyMs = noLoadLatencyMs;
+	}
+
+	public Long getSampleCount() {
+		return sampleCount;
+	}
+	public void setSampleCount(Long sampleCount) {
+		this.sampleCount = sampleCount;
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.service.base.model;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * Runtime settings of the concurrent limit or of a bulkhead.  Null fields of an update are not changed.
+ */
+@XmlRootElement(name="concurrentLimitSettings")
+@XmlAccessorType(XmlAccessType.FIELD)
+@ApiModel(value="concurrent limit settings", description="Object representing the runtime settings of a concurrent limit")
+public class ConcurrentLimitSettings {
+
+	@XmlElement
+	@ApiModelProperty(value="bulkhead name, not set for the main limit", readOnly=true)
+	protected String bulkhead;
+	@XmlElement
+	@ApiModelProperty(value="false if requests are counted but never blocked or rejected")
+	protected Boolean enforced;
+	@XmlElement
+	@ApiModelProperty(value="number of running and queued requests before requests are rejected")
+	protected Integer rejectThreshold;
+	@XmlElement
+	@ApiModelProperty(value="number of running requests before requests are queued")
+	protected Integer blockingThreshold;
+	@XmlElement
+	@ApiModelProperty(value="cost units of running requests before requests are queued, zero if not limited")
+	protected Long costLimit;
+	@XmlElement
+	@ApiModelProperty(value="regular expression patterns of the request URIs under the limit")
+	protected List<String> uriPatterns;
+
+	public String getBulkhead() {
+		return bulkhead;
+	}
+	public void setBulkhead(String bulkhead) {
+		this.bulkhead = bulkhead;
+	}
+
+	public Boolean getEnforced() {
+		return enforced;
+	}
+	public void setEnforced(Boolean enforced) {
+		this.enforced = enforced;
+	}
+
+	public Integer getRejectThreshold() {
+		return rejectThreshold;
+	}
+	public void setRejectThreshold(Integer rejectThreshold) {
+		this.rejectThreshold = rejectThreshold;
+	}
+
+	public Integer getBlockingThreshold() {
+		return blockingThreshold;
+	}
+	public void setBlockingThreshold(Integer blockingThreshold) {
+		this.blockingThreshold = blockingThreshold;
+	}
+
+	public Long getCostLimit() {
+		return costLimit;
+	}
+	public void setCostLimit(Long costLimit) {
+		this.costLimit = costLimit;
+	}
+
+	public List<String> getUriPatterns() {
+		return uriPatterns;
+	}
+	public void setUriPatterns(List<String> uriPatterns) {
+		this.uriPatterns = uriPatterns;
+	}
+}
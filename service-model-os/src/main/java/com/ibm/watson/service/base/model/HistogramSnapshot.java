@@ -0,0 +1,106 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.service.base.model;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * Point in time copy of a latency histogram
+ */
+@XmlRootElement(name="histogramSnapshot")
+@XmlAccessorType(XmlAccessType.FIELD)
+@ApiModel(value="histogram snapshot", description="Object representing the counts of a latency histogram")
+public class HistogramSnapshot {
+
+	@XmlElement
+	@ApiModelProperty(value="number of recorded values")
+	protected Long count;
+	@XmlElement
+	@ApiModelProperty(value="sum of the recorded values in milliseconds")
+	protected Double sumMs;
+	@XmlElement
+	@ApiModelProperty(value="largest recorded value in milliseconds")
+	protected Double maxMs;
+	@XmlElement
+	@ApiModelProperty(value="50th percentile in milliseconds, upper bound of the bucket")
+	protected Double p50Ms;
+	@XmlElement
+	@ApiModelProperty(value="90th percentile in milliseconds, upper bound of the bucket")
+	protected Double p90Ms;
+	@XmlElement
+	@ApiModelProperty(value="99th percentile in milliseconds, upper bound of the bucket")
+	protected Double p99Ms;
+	@XmlElement
+	@ApiModelProperty(value="upper bound in milliseconds of each bucket except the last, which has no bound")
+	protected List<Double> bucketBoundsMs;
+	@XmlElement
+	@ApiModelProperty(value="number of values in each bucket")
+	protected List<Long> bucketCounts;
+
+	public Long getCount() {
+		return count;
+	}
+	public void setCount(Long count) {
+		this.count = count;
+	}
+
+	public Double getSumMs() {
+		return sumMs;
+	}
+	public void setSumMs(Double sumMs) {
+		this.sumMs = sumMs;
+	}
+
+	public Double getMaxMs() {
+		return maxMs;
+	}
+	public void setMaxMs(Double maxMs) {
+		this.maxMs = maxMs;
+	}
+
+	public Double getP50Ms() {
+		return p50Ms;
+	}
+	public void setP50Ms(Double p50Ms) {
+		this.p50Ms = p50Ms;
+	}
+
+	public Double getP90Ms() {
+		return p90Ms;
+	}
+	public void setP90Ms(Double p90Ms) {
+		this.p90Ms = p90Ms;
+	}
+
+	public Double getP99Ms() {
+		return p99Ms;
+	}
+	public void setP99Ms(Double p99Ms) {
+		this.p99Ms = p99Ms;
+	}
+
+	public List<Double> getBucketBoundsMs() {
+		return bucketBoundsMs;
+	}
+	public void setBucketBoundsMs(List<Double> bucketBoundsMs) {
+		this.bucketBoundsMs = bucketBoundsMs;
+	}
+
+	public List<Long> getBucketCounts() {
+		return bucketCounts;
+	}
+	public void setBucketCounts(List<Long> bucketCounts) {
+		this.bucketCounts = bucketCounts;
+	}
+}
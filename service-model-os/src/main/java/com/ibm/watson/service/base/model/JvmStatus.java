@@ -0,0 +1,266 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.service.base.model;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * JVM runtime telemetry sampled in the background.  Rates are over the last sampling interval.
+ */
+@XmlRootElement(name="jvmStatus")
+@XmlAccessorType(XmlAccessType.FIELD)
+@ApiModel(value="jvm status", description="Object representing the JVM runtime telemetry of the last sample")
+public class JvmStatus {
+
+	@XmlElement
+	@ApiModelProperty(value="time of the sample in milliseconds since the epoch")
+	protected Long sampleTime;
+	@XmlElement
+	@ApiModelProperty(value="milliseconds between the sample and the previous one, the interval of the rates")
+	protected Long sampleIntervalMs;
+	@XmlElement
+	@ApiModelProperty(value="number of garbage collections since the JVM started")
+	protected Long gcCount;
+	@XmlElement
+	@ApiModelProperty(value="time spent in garbage collection since the JVM started in milliseconds")
+	protected Long gcTimeMs;
+	@XmlElement
+	@ApiModelProperty(value="number of garbage collections in the sampling interval")
+	protected Long gcIntervalCount;
+	@XmlElement
+	@ApiModelProperty(value="percent of the sampling interval spent in garbage collection")
+	protected Integer gcTimePercent;
+	@XmlElement
+	@ApiModelProperty(value="heap allocation rate of the live threads in megabytes per second, not set if not supported")
+	protected Double allocationRateMbPerSec;
+	@XmlElement
+	@ApiModelProperty(value="usage of each memory pool")
+	protected List<MemoryPoolStatus> memoryPools;
+	@XmlElement
+	@ApiModelProperty(value="number of live threads")
+	protected Integer threadCount;
+	@XmlElement
+	@ApiModelProperty(value="number of live daemon threads")
+	protected Integer daemonThreadCount;
+	@XmlElement
+	@ApiModelProperty(value="peak number of live threads")
+	protected Integer peakThreadCount;
+	@XmlElement
+	@ApiModelProperty(value="number of threads started since the JVM started")
+	protected Long totalStartedThreadCount;
+	@XmlElement
+	@ApiModelProperty(value="number of loaded classes")
+	protected Integer loadedClassCount;
+	@XmlElement
+	@ApiModelProperty(value="number of classes loaded since the JVM started")
+	protected Long totalLoadedClassCount;
+	@XmlElement
+	@ApiModelProperty(value="number of classes unloaded since the JVM started")
+	protected Long unloadedClassCount;
+	@XmlElement
+	@ApiModelProperty(value="number of direct buffers")
+	protected Long directBufferCount;
+	@XmlElement
+	@ApiModelProperty(value="memory used by direct buffers in bytes")
+	protected Long directBufferUsedBytes;
+	@XmlElement
+	@ApiModelProperty(value="total capacity of direct buffers in bytes")
+	protected Long directBufferCapacityBytes;
+	@XmlElement
+	@ApiModelProperty(value="number of mapped buffers")
+	protected Long mappedBufferCount;
+	@XmlElement
+	@ApiModelProperty(value="memory used by mapped buffers in bytes")
+	protected Long mappedBufferUsedBytes;
+	@XmlElement
+	@ApiModelProperty(value="total capacity of mapped buffers in bytes")
+	protected Long mappedBufferCapacityBytes;
+	@XmlElement
+	@ApiModelProperty(value="recent CPU usage of the JVM process in percent of all processors, not set if not supported")
+	protected Integer processCpuPercent;
+	@XmlElement
+	@ApiModelProperty(value="recent CPU usage of the system in percent of all processors, not set if not supported")
+	protected Integer systemCpuPercent;
+	@XmlElement
+	@ApiModelProperty(value="system load average of the last minute, not set if not supported")
+	protected Double systemLoadAverage;
+
+	public Long getSampleTime() {
+		return sampleTime;
+	}
+	public void setSampleTime(Long sampleTime) {
+		this.sampleTime = sampleTime;
+	}
+
+	public Long getSampleIntervalMs() {
+		return sampleIntervalMs;
+	}
+	public void setSampleIntervalMs(Long sampleIntervalMs) {
+		this.sampleIntervalMs = sampleIntervalMs;
+	}
+
+	public Long getGcCount() {
+		return gcCount;
+	}
+	public void setGcCount(Long gcCount) {
+		this.gcCount = gcCount;
+	}
+
+	public Long getGcTimeMs() {
+		return gcTimeMs;
+	}
+	public void setGcTimeMs(Long gcTimeMs) {
+		this.gcTimeMs = gcTimeMs;
+	}
+
+	public Long getGcIntervalCount() {
+		return gcIntervalCount;
+	}
+	public void setGcIntervalCount(Long gcIntervalCount) {
+		this.gcIntervalCount = gcIntervalCount;
+	}
+
+	public Integer getGcTimePercent() {
+		return gcTimePercent;
+	}
+	public void setGcTimePercent(Integer gcTimePercent) {
+		this.gcTimePercent = gcTimePercent;
+	}
+
+	public Double getAllocationRateMbPerSec() {
+		return allocationRateMbPerSec;
+	}
+	public void setAllocationRateMbPerSec(Double allocationRateMbPerSec) {
+		this.allocationRateMbPerSec = allocationRateMbPerSec;
+	}
+
+	public List<MemoryPoolStatus> getMemoryPools() {
+		return memoryPools;
+	}
+	public void setMemoryPools(List<MemoryPoolStatus> memoryPools) {
+		this.memoryPools = memoryPools;
+	}
+
+	public Integer getThreadCount() {
+		return threadCount;
+	}
+	public void setThreadCount(Integer threadCount) {
+		this.threadCount = threadCount;
+	}
+
+	public Integer getDaemonThreadCount() {
+		return daemonThreadCount;
+	}
+	public void setDaemonThreadCount(Integer daemonThreadCount) {
+		this.daemonThreadCount = daemonThreadCount;
+	}
+
+	public Integer getPeakThreadCount() {
+		return peakThreadCount;
+	}
+	public void setPeakThreadCount(Integer peakThreadCount) {
+		this.peakThreadCount = peakThreadCount;
+	}
+
+	public Long getTotalStartedThreadCount() {
+		return totalStartedThreadCount;
+	}
+	public void setTotalStartedThreadCount(Long totalStartedThreadCount) {
+		this.totalStartedThreadCount = totalStartedThreadCount;
+	}
+
+	public Integer getLoadedClassCount() {
+		return loadedClassCount;
+	}
+	public void setLoadedClassCount(Integer loadedClassCount) {
+		this.loadedClassCount = loadedClassCount;
+	}
+
+	public Long getTotalLoadedClassCount() {
+		return totalLoadedClassCount;
+	}
+	public void setTotalLoadedClassCount(Long totalLoadedClassCount) {
+		this.totalLoadedClassCount = totalLoadedClassCount;
+	}
+
+	public Long getUnloadedClassCount() {
+		return unloadedClassCount;
+	}
+	public void setUnloadedClassCount(Long unloadedClassCount) {
+		this.unloadedClassCount = unloadedClassCount;
+	}
+
+	public Long getDirectBufferCount() {
+		return directBufferCount;
+	}
+	public void setDirectBufferCount(Long directBufferCount) {
+		this.directBufferCount = directBufferCount;
+	}
+
+	public Long getDirectBufferUsedBytes() {
+		return directBufferUsedBytes;
+	}
+	public void setDirectBufferUsedBytes(Long directBufferUsedBytes) {
+		this.directBufferUsedBytes = directBufferUsedBytes;
+	}
+
+	public Long getDirectBufferCapacityBytes() {
+		return directBufferCapacityBytes;
+	}
+	public void setDirectBufferCapacityBytes(Long directBufferCapacityBytes) {
+		this.directBufferCapacityBytes = directBufferCapacityBytes;
+	}
+
+	public Long getMappedBufferCount() {
+		return mappedBufferCount;
+	}
+	public void setMappedBufferCount(Long mappedBufferCount) {
+		this.mappedBufferCount = mappedBufferCount;
+	}
+
+	public Long getMappedBufferUsedBytes() {
+		return mappedBufferUsedBytes;
+	}
+	public void setMappedBufferUsedBytes(Long mappedBufferUsedBytes) {
+		this.mappedBufferUsedBytes = mappedBufferUsedBytes;
+	}
+
+	public Long getMappedBufferCapacityBytes() {
+		return mappedBufferCapacityBytes;
+	}
+	public void setMappedBufferCapacityBytes(Long mappedBufferCapacityBytes) {
+		this.mappedBufferCapacityBytes = mappedBufferCapacityBytes;
+	}
+
+	public Integer getProcessCpuPercent() {
+		return processCpuPercent;
+	}
+	public void setProcessCpuPercent(Integer processCpuPercent) {
+		this.processCpuPercent = processCpuPercent;
+	}
+
+	public Integer getSystemCpuPercent() {
+		return systemCpuPercent;
+	}
+	public void setSystemCpuPercent(Integer systemCpuPercent) {
+		this.systemCpuPercent = systemCpuPercent;
+	}
+
+	public Double getSystemLoadAverage() {
+		return systemLoadAverage;
+	}
+	public void setSystemLoadAverage(Double systemLoadAverage) {
+		this.systemLoadAverage = systemLoadAverage;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.service.base.model;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * Usage of one JVM memory pool
+ */
+@XmlRootElement(name="memoryPoolStatus")
+@XmlAccessorType(XmlAccessType.FIELD)
+@ApiModel(value="memory pool status", description="Object representing the usage of a JVM memory pool")
+public class MemoryPoolStatus {
+
+	@XmlElement
+	@ApiModelProperty(value="memory pool name")
+	protected String name;
+	@XmlElement
+	@ApiModelProperty(value="HEAP or NON_HEAP")
+	protected String type;
+	@XmlElement
+	@ApiModelProperty(value="used memory in megabytes")
+	protected Long usedMb;
+	@XmlElement
+	@ApiModelProperty(value="committed memory in megabytes")
+	protected Long committedMb;
+	@XmlElement
+	@ApiModelProperty(value="maximum memory in megabytes, not set if undefined")
+	protected Long maxMb;
+	@XmlElement
+	@ApiModelProperty(value="used memory after the last collection of the pool in megabytes, not set if not collected")
+	protected Long usedAfterGcMb;
+
+	public String getName() {
+		return name;
+	}
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getType() {
+		return type;
+	}
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public Long getUsedMb() {
+		return usedMb;
+	}
+	public void setUsedMb(Long usedMb) {
+		this.usedMb = usedMb;
+	}
+
+	public Long getCommittedMb() {
+		return committedMb;
+	}
+	public void setCommittedMb(Long committedMb) {
+		this.committedMb = committedMb;
+	}
+
+	public Long getMaxMb() {
+		return maxMb;
+	}
+	public void setMaxMb(Long maxMb) {
+		this.maxMb = maxMb;
+	}
+
+	public Long getUsedAfterGcMb() {
+		return usedAfterGcMb;
+	}
+	public void setUsedAfterGcMb(Long usedAfterGcMb) {
+		this.usedAfterGcMb = usedAfterGcMb;
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.service.base.model;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * Accuracy of the request cost estimates, for requests whose actual size was set by the service
+ */
+@XmlRootElement(name="requestCostStatus")
+@XmlAccessorType(XmlAccessType.FIELD)
+@ApiModel(value="request cost status", description="Object representing the accuracy of the request cost estimates")
+public class RequestCostStatus {
+
+	@XmlElement
+	@ApiModelProperty(value="number of requests with a known actual size")
+	protected Long measuredRequests;
+	@XmlElement
+	@ApiModelProperty(value="cost units charged to the measured requests at admission")
+	protected Long estimatedCost;
+	@XmlElement
+	@ApiModelProperty(value="cost units of the actual size of the measured requests")
+	protected Long actualCost;
+	@XmlElement
+	@ApiModelProperty(value="number of measured requests that cost more than charged")
+	protected Long underestimatedRequests;
+	@XmlElement
+	@ApiModelProperty(value="number of measured requests that cost less than charged")
+	protected Long overestimatedRequests;
+
+	public Long getMeasuredRequests() {
+		return measuredRequests;
+	}
+	public void setMeasuredRequests(Long measuredRequests) {
+		this.measuredRequests = measuredRequests;
+	}
+
+	public Long getEstimatedCost() {
+		return estimatedCost;
+	}
+	public void setEstimatedCost(Long estimatedCost) {
+		this.estimatedCost = estimatedCost;
+	}
+
+	public Long getActualCost() {
+		return actualCost;
+	}
+	public void setActualCost(Long actualCost) {
+		this.actualCost = actualCost;
+	}
+
+	public Long getUnderestimatedRequests() {
+		return underestimatedRequests;
+	}
+	public void setUnderestimatedRequests(Long underestimatedRequests) {
+		this.underestimatedRequests = underestimatedRequests;
+	}
+
+	public Long getOverestimatedRequests() {
+		return overestimatedRequests;
+	}
+	public void setOverestimatedRequests(Long overestimatedRequests) {
+		this.overestimatedRequests = overestimatedRequests;
+	}
+}
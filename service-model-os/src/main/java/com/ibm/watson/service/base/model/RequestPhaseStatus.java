@@ -0,0 +1,52 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.service.base.model;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * Time requests spent in one phase of request processing
+ */
+@XmlRootElement(name="requestPhaseStatus")
+@XmlAccessorType(XmlAccessType.FIELD)
+@ApiModel(value="request phase status", description="Object representing the time requests spent in a processing phase")
+public class RequestPhaseStatus {
+
+	@XmlElement
+	@ApiModelProperty(value="phase name: pre, queue, handler, write or log")
+	protected String phase;
+	@XmlElement
+	@ApiModelProperty(value="time of the requests that went through the phase")
+	protected HistogramSnapshot timeHistogram;
+
+	public RequestPhaseStatus() {
+	}
+
+	public RequestPhaseStatus(String phase, HistogramSnapshot timeHistogram) {
+		this.phase = phase;
+		this.timeHistogram = timeHistogram;
+	}
+
+	public String getPhase() {
+		return phase;
+	}
+	public void setPhase(String phase) {
+		this.phase = phase;
+	}
+
+	public HistogramSnapshot getTimeHistogram() {
+		return timeHistogram;
+	}
+	public void setTimeHistogram(HistogramSnapshot timeHistogram) {
+		this.timeHistogram = timeHistogram;
+	}
+}
@@ -5,6 +5,8 @@
  */
 package com.ibm.watson.service.base.model;
 
+import java.util.List;
+
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
@@ -62,6 +64,63 @@ public class ServiceStatus {
 	@XmlElement
 	@ApiModelProperty(value="number of blocked requests")
 	protected Long totalBlockedRequests;
+	@XmlElement
+	@ApiModelProperty(value="number of requests rejected after waiting too long for a permit")
+	protected Long totalTimedOutRequests;
+	@XmlElement
+	@ApiModelProperty(value="time requests waited for a concurrent limit permit")
+	protected HistogramSnapshot queueTimeHistogram;
+	@XmlElement
+	@ApiModelProperty(value="current limit of concurrently running requests before blocking")
+	protected Integer concurrentLimit;
+	@XmlElement
+	@ApiModelProperty(value="cost units of the running requests when a concurrent cost limit is configured")
+	protected Long runningRequestCost;
+	@XmlElement
+	@ApiModelProperty(value="accuracy of the request cost estimates")
+	protected RequestCostStatus requestCost;
+	@XmlElement
+	@ApiModelProperty(value="recent updates of the adaptive concurrent request limit, oldest first")
+	protected List<ConcurrentLimitSample> concurrentLimitHistory;
+	@XmlElement
+	@ApiModelProperty(value="concurrent limit counters per tenant")
+	protected List<TenantConcurrencyStatus> tenantConcurrency;
+	@XmlElement
+	@ApiModelProperty(value="concurrent limit counters per bulkhead")
+	protected List<BulkheadStatus> bulkheads;
+	@XmlElement
+	@ApiModelProperty(value="true while new requests are shed because of heap pressure")
+	protected Boolean heapPressure;
+	@XmlElement
+	@ApiModelProperty(value="heap occupancy after the last garbage collection in percent")
+	protected Integer heapOccupancyPercent;
+	@XmlElement
+	@ApiModelProperty(value="percent of recent time spent in garbage collection")
+	protected Integer gcTimePercent;
+	@XmlElement
+	@ApiModelProperty(value="number of requests rejected because of heap pressure, including bulkheads")
+	protected Long totalHeapRejectedRequests;
+	@XmlElement
+	@ApiModelProperty(value="number of requests rejected by a tenant or route rate limit")
+	protected Long totalRateLimitedRequests;
+	@XmlElement
+	@ApiModelProperty(value="number of tenants in the tenant cache")
+	protected Integer tenantCacheSize;
+	@XmlElement
+	@ApiModelProperty(value="number of tenant cache hits")
+	protected Long tenantCacheHits;
+	@XmlElement
+	@ApiModelProperty(value="number of tenant cache misses")
+	protected Long tenantCacheMisses;
+	@XmlElement
+	@ApiModelProperty(value="number of tenants evicted from the tenant cache")
+	protected Long tenantCacheEvictions;
+	@XmlElement
+	@ApiModelProperty(value="time requests spent in each processing phase")
+	protected List<RequestPhaseStatus> requestPhases;
+	@XmlElement
+	@ApiModelProperty(value="JVM runtime telemetry of the last background sample")
+	protected JvmStatus jvm;
 
 
 	public String getVersion() {
@@ -161,4 +220,137 @@ public class ServiceStatus {
 	public void setTotalBlockedRequests(Long totalBlockedRequests) {
 		this.totalBlockedRequests = totalBlockedRequests;
 	}
+
+	public Long getTotalTimedOutRequests() {
+		return totalTimedOutRequests;
+	}
+	public void setTotalTimedOutRequests(Long totalTimedOutRequests) {
+		this.totalTimedOutRequests = totalTimedOutRequests;
+	}
+
+	public HistogramSnapshot getQueueTimeHistogram() {
+		return queueTimeHistogram;
+	}
+	public void setQueueTimeHistogram(HistogramSnapshot queueTimeHistogram) {
+		this.queueTimeHistogram = queueTimeHistogram;
+	}
+
+	public Integer getConcurrentLimit() {
+		return concurrentLimit;
+	}
+	public void setConcurrentLimit(Integer concurrentLimit) {
+		this.concurrentLimit = concurrentLimit;
+	}
+
+	public List<ConcurrentLimitSample> getConcurrentLimitHistory() {
+		return concurrentLimitHistory;
+	}
+	public void setConcurrentLimitHistory(List<ConcurrentLimitSample> concurrentLimitHistory) {
+		this.concurrentLimitHistory = concurrentLimitHistory;
+	}
+
+	public List<TenantConcurrencyStatus> getTenantConcurrency() {
+		return tenantConcurrency;
+	}
+	public void setTenantConcurrency(List<TenantConcurrencyStatus> tenantConcurrency) {
+		this.tenantConcurrency = tenantConcurrency;
+	}
+
+	public List<BulkheadStatus> getBulkheads() {
+		return bulkheads;
+	}
+	public void setBulkheads(List<BulkheadStatus> bulkheads) {
+		this.bulkheads = bulkheads;
+	}
+
+	public Long getRunningRequestCost() {
+		return runningRequestCost;
+	}
+	public void setRunningRequestCost(Long runningRequestCost) {
+		this.runningRequestCost = runningRequestCost;
+	}
+
+	public RequestCostStatus getRequestCost() {
+		return requestCost;
+	}
+	public void setRequestCost(RequestCostStatus requestCost) {
+		this.requestCost = requestCost;
+	}
+
+	public Boolean getHeapPressure() {
+		return heapPressure;
+	}
+	public void setHeapPressure(Boolean heapPressure) {
+		this.heapPressure = heapPressure;
+	}
+
+	public Integer getHeapOccupancyPercent() {
+		return heapOccupancyPercent;
+	}
+	public void setHeapOccupancyPercent(Integer heapOccupancyPercent) {
+		this.heapOccupancyPercent = heapOccupancyPercent;
+	}
+
+	public Integer getGcTimePercent() {
+		return gcTimePercent;
+	}
+	public void setGcTimePercent(Integer gcTimePercent) {
+		this.gcTimePercent = gcTimePercent;
+	}
+
+	public Long getTotalHeapRejectedRequests() {
+		return totalHeapRejectedRequests;
+	}
+	public void setTotalHeapRejectedRequests(Long totalHeapRejectedRequests) {
+		this.totalHeapRejectedRequests = totalHeapRejectedRequests;
+	}
+
+	public Long getTotalRateLimitedRequests() {
+		return totalRateLimitedRequests;
+	}
+	public void setTotalRateLimitedRequests(Long totalRateLimitedRequests) {
+		this.totalRateLimitedRequests = totalRateLimitedRequests;
+	}
+
+	public Integer getTenantCacheSize() {
+		return tenantCacheSize;
+	}
+	public void setTenantCacheSize(Integer tenantCacheSize) {
+		this.tenantCacheSize = tenantCacheSize;
+	}
+
+	public Long getTenantCacheHits() {
+		return tenantCacheHits;
+	}
+	public void setTenantCacheHits(Long tenantCacheHits) {
+		this.tenantCacheHits = tenantCacheHits;
+	}
+
+	public Long getTenantCacheMisses() {
+		return tenantCacheMisses;
+	}
+	public void setTenantCacheMisses(Long tenantCacheMisses) {
+		this.tenantCacheMisses = tenantCacheMisses;
+	}
+
+	public Long getTenantCacheEvictions() {
+		return tenantCacheEvictions;
+	}
+	public void setTenantCacheEvictions(Long tenantCacheEvictions) {
+		this.tenantCacheEvictions = tenantCacheEvictions;
+	}
+
+	public List<RequestPhaseStatus> getRequestPhases() {
+		return requestPhases;
+	}
+	public void setRequestPhases(List<RequestPhaseStatus> requestPhases) {
+		this.requestPhases = requestPhases;
+	}
+
+	public JvmStatus getJvm() {
+		return jvm;
+	}
+	public void setJvm(JvmStatus jvm) {
+		this.jvm = jvm;
+	}
 }
@@ -0,0 +1,86 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.watson.service.base.model;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * Concurrent limit counters of one tenant
+ */
+@XmlRootElement(name="tenantConcurrencyStatus")
+@XmlAccessorType(XmlAccessType.FIELD)
+@ApiModel(value="tenant concurrency status", description="Object representing the concurrent limit counters of a tenant")
+public class TenantConcurrencyStatus {
+
+	@XmlElement
+	@ApiModelProperty(value="tenant ID, empty for requests without a tracked tenant")
+	protected String tenantId;
+	@XmlElement
+	@ApiModelProperty(value="number of running requests")
+	protected Integer activeRequests;
+	@XmlElement
+	@ApiModelProperty(value="number of requests waiting for a permit")
+	protected Integer queuedRequests;
+	@XmlElement
+	@ApiModelProperty(value="number of blocked requests")
+	protected Long totalBlockedRequests;
+	@XmlElement
+	@ApiModelProperty(value="number of rejected requests")
+	protected Long totalRejectedRequests;
+
+	public TenantConcurrencyStatus() {
+	}
+
+	public TenantConcurrencyStatus(String tenantId, int activeRequests, int queuedRequests, long totalBlockedRequests,
+			long totalRejectedRequests) {
+		this.tenantId = tenantId;
+		this.activeRequests = activeRequests;
+		this.queuedRequests = queuedRequests;
+		this.totalBlockedRequests = totalBlockedRequests;
+		this.totalRejectedRequests = totalRejectedRequests;
+	}
+
+	public String getTenantId() {
+		return tenantId;
+	}
+	public void setTenantId(String tenantId) {
+		this.tenantId = tenantId;
+	}
+
+	public Integer getActiveRequests() {
+		return activeRequests;
+	}
+	public void setActiveRequests(Integer activeRequests) {
+		this.activeRequests = activeRequests;
+	}
+
+	public Integer getQueuedRequests() {
+		return queuedRequests;
+	}
+	public void setQueuedRequests(Integer queuedRequests) {
+		this.queuedRequests = queuedRequests;
+	}
+
+	public Long getTotalBlockedRequests() {
+		return totalBlockedRequests;
+	}
+	public void setTotalBlockedRequests(Long totalBlockedRequests) {
+		this.totalBlockedRequests = totalBlockedRequests;
+	}
+
+	public Long getTotalRejectedRequests() {
+		return totalRejectedRequests;
+	}
+	public void setTotalRejectedRequests(Long totalRejectedRequests) {
+		this.totalRejectedRequests = totalRejectedRequests;
+	}
+}